@@ -0,0 +1,51 @@
+####################################################
+#This program is a periodic task with a deadline.
+#Every 10ms it does a job of 20000 additions that
+#must be done within the 10ms (it says it needs 2ms
+#for each).  It runs 20 jobs and then exits.  Run it
+#with -P edf (and -t so jobs can be preempted).
+###################################################
+
+#Declare the deadline
+SET r0 2000    #budget: 2000us per job
+PUSH r0
+SET r0 10000   #relative deadline: 10000us
+PUSH r0
+SET r0 10000   #period: 10000us
+PUSH r0
+SET r0 16      #DEADLINE sys call id
+PUSH r0
+TRAP
+
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program if it was refused
+
+#Initialize the variables
+SET r1 0       #job counter
+SET r2 1       #increment amount
+SET r3 20      #number of jobs
+
+#do one job
+:job
+SET r4 0       #work counter
+SET r0 20000   #work limit
+:work
+ADD r4 r2 r4
+BNE r4 r0 work
+
+ADD r1 r2 r1
+BLT r1 r3 next #more jobs to do?
+BRANCH exit
+
+#the job is done: wait for the next one
+:next
+SET r0 8       #YIELD sys call id
+PUSH r0
+TRAP
+BRANCH job
+
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,99 @@
+####################################################
+# This program reads 64 sectors of the disk chosen
+# pseudo-randomly (x = (37x + 11) mod 1024) and then
+# writes 64 more the same way.  The disk device must
+# have id 2 and at least 1024 sectors.  The sector
+# buffer is at logical address 500 so run with -s 1000.
+###################################################
+
+#Reserve the disk device
+SET r0 2       #device #2 (disk)
+PUSH r0        #push argument on stack
+SET r4 3       #OPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the device
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #sector number (x)
+SET r3 64      #limit
+
+#Read loop
+:rloop
+SET r0 2       #device #2 (disk)
+PUSH r0        #push device number
+PUSH r2        #push sector number
+SET r0 500     #buffer address
+PUSH r0        #push buffer address
+SET r4 10      #READBLOCK sys call id
+PUSH r4        #push sys call id
+TRAP           #read the sector
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Next sector: x = (37x + 11) mod 1024
+SET r0 37
+MUL r2 r2 r0
+SET r0 11
+ADD r2 r2 r0
+SET r0 1024
+DIV r4 r2 r0
+MUL r4 r4 r0
+SUB r2 r2 r4
+
+SET r0 1
+ADD r1 r1 r0
+BNE r1 r3 rloop
+
+#Write loop
+SET r1 0       #counter
+:wloop
+SET r0 2       #device #2 (disk)
+PUSH r0        #push device number
+PUSH r2        #push sector number
+SET r0 500     #buffer address
+PUSH r0        #push buffer address
+SET r4 11      #WRITEBLOCK sys call id
+PUSH r4        #push sys call id
+TRAP           #write the sector
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Next sector: x = (37x + 11) mod 1024
+SET r0 37
+MUL r2 r2 r0
+SET r0 11
+ADD r2 r2 r0
+SET r0 1024
+DIV r4 r2 r0
+MUL r4 r4 r0
+SUB r2 r2 r4
+
+SET r0 1
+ADD r1 r1 r0
+BNE r1 r3 wloop
+
+#close the disk device
+SET r0 2       #device number 2 (disk)
+PUSH r0        #push device number
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the device
+POP r4
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
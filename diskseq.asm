@@ -0,0 +1,94 @@
+####################################################
+# This program writes 64 consecutive sectors of the
+# disk and then reads them back in order.  Word 0 of
+# each sector is set to the sector number and checked
+# when it is read back; a mismatch is OUTPUT.
+# The disk device must have id 2.  The sector buffer
+# is at logical address 500 so run with -s 1000.
+###################################################
+
+#Reserve the disk device
+SET r0 2       #device #2 (disk)
+PUSH r0        #push argument on stack
+SET r4 3       #OPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the device
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Initialize the variables
+SET r1 0       #sector number
+SET r2 1       #increment amount
+SET r3 64      #limit
+
+#Write loop
+:wloop
+SET r0 500     #buffer address
+SAVE r1 r0     #tag the buffer with the sector number
+
+SET r0 2       #device #2 (disk)
+PUSH r0        #push device number
+PUSH r1        #push sector number
+SET r0 500     #buffer address
+PUSH r0        #push buffer address
+SET r4 11      #WRITEBLOCK sys call id
+PUSH r4        #push sys call id
+TRAP           #write the sector
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+ADD r1 r2 r1
+BNE r1 r3 wloop
+
+#Read loop
+SET r1 0       #sector number
+:rloop
+SET r0 2       #device #2 (disk)
+PUSH r0        #push device number
+PUSH r1        #push sector number
+SET r0 500     #buffer address
+PUSH r0        #push buffer address
+SET r4 10      #READBLOCK sys call id
+PUSH r4        #push sys call id
+TRAP           #read the sector
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Check the sector number stored in the sector
+SET r0 500     #buffer address
+LOAD r4 r0     #sector number from the disk
+BNE r4 r1 bad  #report a mismatch
+BRANCH next
+
+:bad
+PUSH r4        #push the bad value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push sys call id
+TRAP           #print it
+
+:next
+ADD r1 r2 r1
+BNE r1 r3 rloop
+
+#close the disk device
+SET r0 2       #device number 2 (disk)
+PUSH r0        #push device number
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the device
+POP r4
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
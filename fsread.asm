@@ -0,0 +1,71 @@
+####################################################
+# This program reads the file named 'data' (see
+# fswrite.asm) to the end and outputs how many words
+# it read and their sum.  Run with a disk and a file
+# system (-k and -F).
+###################################################
+
+#Open the file
+SET r0 1684108385  #file name 'data'
+PUSH r0        #push file name
+SET r0 0       #mode 0 (read)
+PUSH r0        #push mode
+SET r4 12      #FOPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the file
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#save the file descriptor
+POP r3         #file descriptor in r3
+
+#Initialize the variables
+SET r1 0       #number of words read
+SET r2 0       #sum of the words
+
+#Read loop
+:loop
+PUSH r3        #push file descriptor
+SET r4 13      #FREAD sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #read a word
+
+#Stop at the end of the file (or on any other error)
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 done #stop reading
+
+#add up the word
+POP r4         #the word
+ADD r2 r4 r2
+SET r0 1       #increment amount
+ADD r1 r0 r1
+BRANCH loop    #repeat
+
+#output the results and close the file
+:done
+PUSH r1        #push the number of words
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #output it
+PUSH r2        #push the sum
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #output it
+
+PUSH r3        #push file descriptor
+SET r4 15      #FCLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the file
+
+#Retrieve but ignore success/error code (we're exiting anyway)
+POP r4
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
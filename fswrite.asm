@@ -0,0 +1,61 @@
+####################################################
+# This program writes the numbers 3, 6, 9 ... 3000
+# to a file named 'data' (1684108385 is 'data' as
+# four packed characters), creating it if it doesn't
+# exist.  Run with a disk and a file system (-k and
+# -F).
+###################################################
+
+#Create the file
+SET r0 1684108385  #file name 'data'
+PUSH r0        #push file name
+SET r0 1       #mode 1 (create or truncate)
+PUSH r0        #push mode
+SET r4 12      #FOPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the file
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#save the file descriptor
+POP r3         #file descriptor in r3
+
+#Initialize the variables
+SET r1 0       #value
+SET r2 3000    #limit
+
+#Write loop
+:loop
+SET r0 3       #increment amount
+ADD r1 r0 r1
+
+PUSH r3        #push file descriptor
+PUSH r1        #push value to write
+SET r4 14      #FWRITE sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #write the value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+BNE r1 r2 loop #repeat 1000 times
+
+#close the file (this writes it to the disk)
+PUSH r3        #push file descriptor
+SET r4 15      #FCLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the file
+
+#Retrieve but ignore success/error code (we're exiting anyway)
+POP r4
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,86 @@
+####################################################
+# This program sends the numbers 1 to 100 to node 1
+# of a cluster, which sends each one back (see
+# netpong.asm), then reads the replies and outputs
+# their sum.  The net device should have id 3 (see
+# cluster.cfg).
+###################################################
+
+#Reserve the net device
+SET r0 3       #device #3 (net)
+PUSH r0        #push argument on stack
+SET r4 3       #OPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the device
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #increment amount
+SET r3 100     #limit
+
+#Send loop: the writes complete as soon as the words are buffered so
+#they go out in batches
+:send
+ADD r1 r2 r1
+SET r0 3       #device #3 (net)
+PUSH r0        #push device number
+SET r0 1       #node 1
+PUSH r0        #push address (the node to send to)
+PUSH r1        #push value to send
+SET r0 6       #WRITE system call
+PUSH r0        #push system call id
+TRAP           #system call to send the value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+BNE r1 r3 send
+
+#Receive loop
+SET r1 0       #counter
+SET r3 0       #sum
+:recv
+ADD r1 r2 r1
+SET r0 3       #device #3 (net)
+PUSH r0        #push device number
+SET r0 1       #node 1
+PUSH r0        #push address (the node to read from)
+SET r0 5       #READ system call
+PUSH r0        #push system call id
+TRAP           #system call to read a value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#add up the reply
+POP r4
+ADD r3 r4 r3
+SET r0 100     #limit
+BNE r1 r0 recv
+
+#output the sum
+PUSH r3        #push the sum
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #output it
+
+#close the net device
+SET r4 3       #net device id
+PUSH r4        #push device number 3 (net)
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the device
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,74 @@
+####################################################
+# This program reads 100 words from node 0 of a
+# cluster and sends each one back (see netping.asm).
+# The net device should have id 3 (see cluster.cfg).
+###################################################
+
+#Reserve the net device
+SET r0 3       #device #3 (net)
+PUSH r0        #push argument on stack
+SET r4 3       #OPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the device
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #increment amount
+SET r3 100     #limit
+
+#Main Loop
+:loop
+ADD r1 r2 r1
+
+#Read a word from node 0
+SET r0 3       #device #3 (net)
+PUSH r0        #push device number
+SET r0 0       #node 0
+PUSH r0        #push address (the node to read from)
+SET r0 5       #READ system call
+PUSH r0        #push system call id
+TRAP           #system call to read a value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#save the word
+POP r4
+
+#Send it back to node 0
+SET r0 3       #device #3 (net)
+PUSH r0        #push device number
+SET r0 0       #node 0
+PUSH r0        #push address (the node to send to)
+PUSH r4        #push value to send
+SET r0 6       #WRITE system call
+PUSH r0        #push system call id
+TRAP           #system call to send the value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#loop test
+BNE r1 r3 loop
+
+#close the net device
+SET r4 3       #net device id
+PUSH r4        #push device number 3 (net)
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the device
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,96 @@
+####################################################
+#This program reads ten keystrokes from any keyboard
+#in a device pool and prints them to the console.
+#The pool should have id 99 (see machine.cfg).  The
+#console device should have id 1.
+###################################################
+
+#Reserve any free keyboard in the pool
+SET r0 99      #pool #99 (keyboards)
+PUSH r0        #push argument on stack
+SET r4 3       #OPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the device
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Reserve the console device
+SET r0 1       #device #1 (console output)
+PUSH r0        #push argument on stack
+SET r4 3       #OPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the device
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #increment amount
+SET r3 10      #limit
+
+#Main Loop
+:loop
+ADD r1 r2 r1
+
+#Read a keystroke from the keyboard the pool gave us
+SET r0 99      #pool #99 (keyboards)
+PUSH r0        #push device number
+PUSH r0        #push address (arg not used by this device so any val will do)
+SET r0 5       #READ system call
+PUSH r0        #push system call id
+TRAP           #system call to read the value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#save the keystroke
+POP r4         #save the value in r4
+
+#Write the value to the console
+SET r0 1       #device #1 (console output)
+PUSH r0        #push device number
+PUSH r0        #push address (arg not used by this device so any val will do)
+PUSH r4        #push value to send to device
+SET r0 6       #WRITE system call
+PUSH r0        #push system call id
+TRAP           #system call to write the value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#loop test
+BNE r1 r3 loop
+
+#give the keyboard back to the pool
+SET r4 99      #pool #99 (keyboards)
+PUSH r4        #push device number
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the device
+
+#Retrieve but ignore success/error code (we're exiting anyway)
+POP r4
+
+#close the console device
+SET r4 1       #console device id
+PUSH r4        #push device number 1 (console output)
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the device
+
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
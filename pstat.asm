@@ -0,0 +1,86 @@
+####################################################
+#This program counts to 100, yielding the CPU every
+#10, and then reads its own accounting counters: it
+#outputs the instructions it has run, the number of
+#system calls it has made and how many of them were
+#YIELDs.  Run it with -p to see the table of every
+#process' counters at exit.
+###################################################
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #increment amount
+SET r3 100     #limit
+SET r4 0       #count since the last yield
+
+#Main Loop
+:loop
+ADD r1 r2 r1
+ADD r4 r2 r4
+SET r0 10      #yield every 10
+BNE r4 r0 next
+
+#yield the CPU to other processes
+SET r4 0
+SET r0 8       #YIELD sys call id
+PUSH r0
+TRAP
+
+:next
+BLT r1 r3 loop
+
+#Output the instructions run so far
+SET r0 -1      #this process
+PUSH r0
+SET r0 0       #instructions counter
+PUSH r0
+SET r0 0       #(no device or system call)
+PUSH r0
+SET r0 17      #PSTAT sys call id
+PUSH r0
+TRAP
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+SET r0 1       #OUTPUT sys call id
+PUSH r0
+TRAP
+
+#Output the system calls made so far
+SET r0 -1      #this process
+PUSH r0
+SET r0 3       #system calls counter
+PUSH r0
+SET r0 -1      #all of them
+PUSH r0
+SET r0 17      #PSTAT sys call id
+PUSH r0
+TRAP
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+SET r0 1       #OUTPUT sys call id
+PUSH r0
+TRAP
+
+#Output the YIELDs made
+SET r0 -1      #this process
+PUSH r0
+SET r0 3       #system calls counter
+PUSH r0
+SET r0 8       #YIELD
+PUSH r0
+SET r0 17      #PSTAT sys call id
+PUSH r0
+TRAP
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+SET r0 1       #OUTPUT sys call id
+PUSH r0
+TRAP
+
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,116 @@
+package sos;
+
+/**
+ * This class is the machine that the benchmarks which play the part of the
+ * CPU ({@link SchedBench}, {@link WakeupBench} and {@link SyscallBench})
+ * run SOS on: RAM, an interrupt controller, a CPU and the OS.  The
+ * benchmark makes system calls for whichever process is running directly
+ * from its own thread, so only the OS's work is timed.
+ *
+ * @see SOS
+ */
+class BenchMachine
+{
+    /** the address space of each process */
+    static final int ALLOC = 32;
+
+    private InterruptController m_IC;
+    private CPU m_CPU;
+    private SOS m_OS;
+    private Program m_prog;             // what every process "runs"
+
+    /**
+     * constructor
+     *
+     * @param numProcs  the most processes the RAM must hold
+     * @param extra     the words of RAM to leave after their address spaces
+     */
+    BenchMachine(int numProcs, int extra)
+    {
+        RAM ram = new RAM((numProcs * (ALLOC + 1)) + extra, 0);
+        m_IC = new InterruptController();
+        m_CPU = new CPU(ram, m_IC);
+        m_OS = new SOS(m_CPU, ram);
+
+        //The program is never run, it just has to fit in the address space
+        m_prog = new Program();
+        m_prog.load("count10.asm", false);
+    }//ctor
+
+    /** @return the interrupt controller */
+    InterruptController getInterruptController()
+    {
+        return m_IC;
+    }
+
+    /** @return the CPU */
+    CPU getCPU()
+    {
+        return m_CPU;
+    }
+
+    /** @return the OS */
+    SOS getOS()
+    {
+        return m_OS;
+    }
+
+    /**
+     * createProcesses
+     *
+     * creates processes with ALLOC word address spaces
+     *
+     * @param n  how many
+     */
+    void createProcesses(int n)
+    {
+        for(int i = 0; i < n; i++)
+        {
+            m_OS.createProcess(m_prog, ALLOC);
+        }
+    }//createProcesses
+
+    /**
+     * syscall
+     *
+     * makes a system call for the running process
+     *
+     * @param id    the system call
+     * @param args  its arguments
+     */
+    void syscall(int id, int... args)
+    {
+        for(int arg : args)
+        {
+            m_CPU.pushStack(arg);
+        }
+        m_CPU.pushStack(id);
+        m_OS.systemCall();
+    }//syscall
+
+    /**
+     * syscallResult
+     *
+     * makes a system call for the running process and takes its result
+     *
+     * @param id    the system call
+     * @param args  its arguments
+     * @return the value it left on top of the stack
+     */
+    int syscallResult(int id, int... args)
+    {
+        syscall(id, args);
+        return m_CPU.popStack();
+    }//syscallResult
+
+    /**
+     * getPid
+     *
+     * @return the id of the running process
+     */
+    int getPid()
+    {
+        return syscallResult(SOS.SYSCALL_GETPID);
+    }
+
+};//class BenchMachine
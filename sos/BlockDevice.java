@@ -0,0 +1,55 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This interface extends {@link Device} for devices that store data in
+ * fixed-size sectors and can transfer a whole sector directly to or from
+ * RAM (as a DMA controller would).  A sector transfer completes with an
+ * {@link InterruptController#INT_BLOCK_DONE} interrupt whose address is the
+ * sector number.
+ *
+ * @see DiskDevice
+ * @see SOS
+ */
+public interface BlockDevice extends Device
+{
+    /**
+     * getSectorSize
+     *
+     * @return the number of words in a sector
+     */
+    public int getSectorSize();
+
+    /**
+     * getNumSectors
+     *
+     * @return the number of sectors on the device
+     */
+    public int getNumSectors();
+
+    /**
+     * readBlock
+     *
+     * records a request to copy a sector into RAM.  As with
+     * {@link Device#read} the OS is responsible for making sure the device
+     * is available and that the request is valid.
+     *
+     * @param sector   the sector to read
+     * @param physAddr the physical RAM address to copy the sector to
+     * @param tag      handed back with the completion interrupt
+     */
+    public void readBlock(int sector, int physAddr, int tag);
+
+    /**
+     * writeBlock
+     *
+     * records a request to copy a sector's worth of RAM onto the device.
+     *
+     * @param sector   the sector to write
+     * @param physAddr the physical RAM address to copy the sector from
+     * @param tag      handed back with the completion interrupt
+     */
+    public void writeBlock(int sector, int physAddr, int tag);
+
+};//interface BlockDevice
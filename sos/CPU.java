@@ -68,7 +68,8 @@ public class CPU implements Runnable
     private boolean m_verbose = false;
 
     /**
-     * This array contains all the registers on the "chip".
+     * This array contains all the registers on the "chip".  It is the
+     * register bank of the running process (see {@link #setRegisters}).
      **/
     private int m_registers[];
 
@@ -87,6 +88,42 @@ public class CPU implements Runnable
      **/
     private InterruptController m_IC = null;
 
+    /**
+     * The number of instructions between clock interrupts (0 for none)
+     **/
+    private int m_clockFreq = 0;
+
+    /**
+     * The number of instructions executed since the last clock interrupt
+     **/
+    private int m_ticks = 0;
+
+    /**
+     * Set when a timer device has posted a clock interrupt that has not
+     * been handed to the OS yet
+     **/
+    private boolean m_clockPending = false;
+
+    /**
+     * Set while the CPU is halted because the OS has nothing for it to run,
+     * and when to wake it if no interrupt arrives first (System.nanoTime, 0
+     * for never)
+     **/
+    private boolean m_halted = false;
+    private long m_haltUntil = 0;
+
+    /**
+     * The number of times the CPU halted and the total time (ns) it spent
+     * halted
+     **/
+    private long m_halts = 0;
+    private long m_haltedNs = 0;
+
+    /**
+     * The number of instructions the CPU has run
+     **/
+    private long m_instructions = 0;
+
     //======================================================================
     //Callback Interface
     //----------------------------------------------------------------------
@@ -99,11 +136,15 @@ public class CPU implements Runnable
      */
     public interface TrapHandler
     {
-        public void interruptIOReadComplete(int devID, int addr, int data);
-        public void interruptIOWriteComplete(int devID, int addr);
+        public void interruptIOReadComplete(int devID, int addr, int data, int tag);
+        public void interruptIOWriteComplete(int devID, int addr, int tag);
+        public void interruptIOBlockComplete(int devID, int sector, int tag);
+        public void interruptIORoom(int devID);
         public void interruptIllegalMemoryAccess(int addr);
         public void interruptDivideByZero();
         public void interruptIllegalInstruction(int[] instr);
+        public void interruptClock();
+        public void interruptWake();
         public void systemCall();
     };//interface TrapHandler
 
@@ -147,6 +188,112 @@ public class CPU implements Runnable
         m_TH = th;
     }
 
+    /**
+     * setClockFreq
+     *
+     * has the CPU raise a clock interrupt every so many instructions
+     *
+     * @param freq the number of instructions between clock interrupts (0 to
+     *             turn the instruction clock off)
+     */
+    public void setClockFreq(int freq)
+    {
+        m_clockFreq = Math.max(0, freq);
+    }
+
+    /**
+     * getClockFreq
+     *
+     * @return the number of instructions between clock interrupts (0 if
+     *         the instruction clock is off)
+     */
+    public int getClockFreq()
+    {
+        return m_clockFreq;
+    }
+
+    /**
+     * getClockCount
+     *
+     * @return the number of instructions executed since the last clock
+     *         interrupt or {@link #resetClock} (0 if the instruction clock
+     *         is off)
+     */
+    public int getClockCount()
+    {
+        return m_ticks;
+    }
+
+    /**
+     * resetClock
+     *
+     * restarts the count of instructions until the next clock interrupt so
+     * a newly scheduled process gets a whole time slice
+     */
+    public void resetClock()
+    {
+        m_ticks = 0;
+    }
+
+    /**
+     * halt
+     *
+     * stops the CPU running instructions until an interrupt arrives.  The OS
+     * calls this when no process is Ready.  The CPU thread sleeps (using no
+     * host CPU) until a device posts an interrupt, hands the interrupt to
+     * the OS and then calls {@link TrapHandler#interruptWake} so the OS can
+     * pick a process to run, halting again if there still is none.  The
+     * registers are left as they are.
+     *
+     * @param until  System.nanoTime() when to wake even if no interrupt
+     *               arrives (0 to wait for one as long as it takes)
+     */
+    public void halt(long until)
+    {
+        m_halted = true;
+        m_haltUntil = until;
+    }
+
+    /**
+     * isHalted
+     *
+     * @return true if the OS has halted the CPU
+     */
+    public boolean isHalted()
+    {
+        return m_halted;
+    }
+
+    /**
+     * getHalts
+     *
+     * @return the number of times the CPU has halted
+     */
+    public long getHalts()
+    {
+        return m_halts;
+    }
+
+    /**
+     * getHaltedTime
+     *
+     * @return the total time (ns) the CPU has spent halted
+     */
+    public long getHaltedTime()
+    {
+        return m_haltedNs;
+    }
+
+    /**
+     * getInterruptController
+     *
+     * @return the interrupt controller attached to this CPU
+     */
+    public InterruptController getInterruptController()
+    {
+        return m_IC;
+    }
+
     /**
      * getPC
      *
@@ -197,6 +344,30 @@ public class CPU implements Runnable
         return m_registers;
     }
 
+    /**
+     * getInstructionCount
+     *
+     * @return the number of instructions the CPU has run
+     */
+    public long getInstructionCount()
+    {
+        return m_instructions;
+    }
+
+    /**
+     * setRegisters
+     *
+     * switches the CPU to another register bank.  The CPU runs on the bank
+     * itself, so this is the whole of a context switch: the bank it was
+     * running on keeps the registers of the process that was running.
+     *
+     * @param bank  the registers (NUMREG of them)
+     */
+    public void setRegisters(int[] bank)
+    {
+        m_registers = bank;
+    }
+
     /**
      * setPC
      *
@@ -340,17 +511,28 @@ public class CPU implements Runnable
         {
             System.out.println("CPU received interrupt: type=" + intData[0]
                                + " dev=" + intData[1] + " addr=" + intData[2]
-                               + " data=" + intData[3]);
+                               + " data=" + intData[3] + " tag=" + intData[4]);
         }
 
         //Dispatch the interrupt to the OS
         switch(intData[0])
         {
             case InterruptController.INT_READ_DONE:
-                m_TH.interruptIOReadComplete(intData[1], intData[2], intData[3]);
+                m_TH.interruptIOReadComplete(intData[1], intData[2], intData[3],
+                                             intData[4]);
                 break;
             case InterruptController.INT_WRITE_DONE:
-                m_TH.interruptIOWriteComplete(intData[1], intData[2]);
+                m_TH.interruptIOWriteComplete(intData[1], intData[2], intData[4]);
+                break;
+            case InterruptController.INT_BLOCK_DONE:
+                m_TH.interruptIOBlockComplete(intData[1], intData[2], intData[4]);
+                break;
+            case InterruptController.INT_ROOM:
+                m_TH.interruptIORoom(intData[1]);
+                break;
+            case InterruptController.INT_CLOCK:
+                //Handled after the next instruction (see run)
+                m_clockPending = true;
                 break;
             default:
                 System.out.println("CPU ERROR:  Illegal Interrupt Received.");
@@ -360,6 +542,29 @@ public class CPU implements Runnable
 
     }//checkForIOInterrupt
 
+    /**
+     * waitWhileHalted
+     *
+     * sleeps until an interrupt arrives or the halt times out, hands the
+     * interrupt (if any) to the OS and then tells the OS the CPU is awake
+     */
+    private void waitWhileHalted()
+    {
+        long start = System.nanoTime();
+        m_halts++;
+        m_IC.waitForInterrupt(m_haltUntil);
+        m_haltedNs += System.nanoTime() - start;
+
+        m_halted = false;
+        checkForIOInterrupt();
+
+        //No process was running to be charged for a clock tick
+        m_clockPending = false;
+        m_ticks = 0;
+
+        m_TH.interruptWake();
+    }//waitWhileHalted
+
 
     /**
      * validMemory
@@ -397,7 +602,7 @@ public class CPU implements Runnable
      * @param registers the registers array to use.
      */
     public void pushStack(int value, int[] registers) {
-        if (!validMemory(m_registers[SP] + registers[BASE], registers)) {
+        if (!validMemory(registers[SP] + registers[BASE], registers)) {
             //Stack overflow!
             //This was probably deliberate because we had to overwrite the
             //program with stack memory to do this.
@@ -456,11 +661,23 @@ public class CPU implements Runnable
        
         while (true) {
 
+            //A halted CPU sleeps until the OS has a process for it to run.
+            //That process' saved PC is at the instruction it last ran (e.g.
+            //its TRAP), just as if it had been switched to by a TRAP.
+            if (m_halted) {
+                waitWhileHalted();
+                if (! m_halted) {
+                    m_registers[PC] += INSTRSIZE;
+                }
+                continue;
+            }
+
             //Check for ID Interrupt
             checkForIOInterrupt();
 
             //Fetch next instruction
             int instr[] = m_RAM.fetch(m_registers[BASE] + m_registers[PC]);
+            m_instructions++;
 
             //Debug information if enabled
             if (m_verbose) {
@@ -541,6 +758,20 @@ public class CPU implements Runnable
                     return;
             }//switch
 
+            //Give the OS the clock interrupt at the same point as a TRAP so
+            //a preempted process is saved just like one making a system call
+            if (m_clockPending || ((m_clockFreq > 0) && (++m_ticks >= m_clockFreq))) {
+                m_clockPending = false;
+                m_ticks = 0;
+                m_TH.interruptClock();
+            }
+
+            //The OS had nothing else to run so the registers belong to a
+            //process that is blocked or gone
+            if (m_halted) {
+                continue;
+            }
+
             m_registers[PC] += INSTRSIZE; //Increment the PC counter
 
             //Check for out of bounds PC
@@ -10,15 +10,34 @@ import java.util.*;
  * @see SOS
  * @see Device
  */
-public class ConsoleDevice implements Device, Runnable
+public class ConsoleDevice implements Device, Runnable, DeviceEventLoop.Serviceable
 {
-    private int m_maxLatency = 1000;   // maximum latency in ns
-    private int m_minLatency = 500;    // minimum latnecy in ns
+    private LatencyModel m_latency = LatencyModel.uniform(500, 1000); // request time in ns
     private int m_Id = -999;           // the OS assigned device ID
-    private boolean m_request = false; // is the device currently processing a request?
-    private int m_addr = 0;            // address to write to
-    private int m_data = 0;            // data associated with the current request
+    private DeviceQueue m_queue = new DeviceQueue(1); // pending requests
     private InterruptController m_IC;  // reference to the interrupt controller
+    private DeviceSignal m_signal = new DeviceSignal(); // wakes run() on a request
+    private DeviceEventLoop.Handle m_loop = null; // set if driven by an event loop
+    private ConsoleSink m_sink = null; // buffered output (null for System.out)
+
+    /**
+     * class Provider
+     *
+     * creates consoles for a machine description (type "console")
+     */
+    public static class Provider implements DeviceProvider
+    {
+        public String getType()
+        {
+            return "console";
+        }
+
+        public Device create(InterruptController ic, RAM ram, int id,
+                             Properties params)
+        {
+            return new ConsoleDevice(ic);
+        }
+    }//class Provider
 
     /**
      * This constructor uses the default values for latency)
@@ -42,8 +61,7 @@ public class ConsoleDevice implements Device, Runnable
             min = tmp;
         }
         
-        m_minLatency = min;
-        m_maxLatency = max;
+        m_latency = LatencyModel.uniform(min, max);
         m_IC = ic;
     }//ctor
 
@@ -84,11 +102,45 @@ public class ConsoleDevice implements Device, Runnable
     /**
      * isAvailable
      *
-     * this device is available if no requests are currently being processed
+     * this device is available if its command queue has room for another
+     * request
      */
     public boolean isAvailable()
     {
-        return !m_request;
+        return !m_queue.isFull();
+    }
+
+    /**
+     * getQueueDepth
+     *
+     * @return the number of requests the device can hold at once
+     */
+    public int getQueueDepth()
+    {
+        return m_queue.getDepth();
+    }
+
+    /**
+     * setQueueDepth
+     *
+     * sets the number of requests the device can hold at once.  Must be
+     * called before the device is used.
+     *
+     * @param depth the new queue depth
+     */
+    public void setQueueDepth(int depth)
+    {
+        m_queue = new DeviceQueue(depth);
+    }
+
+    /**
+     * getQueue
+     *
+     * @return the device's command queue (for statistics)
+     */
+    public DeviceQueue getQueue()
+    {
+        return m_queue;
     }
     
     /**
@@ -118,7 +170,7 @@ public class ConsoleDevice implements Device, Runnable
      * not implemented
      * 
      */
-    public int read(int addr /*not used*/)
+    public int read(int addr /*not used*/, int tag /*not used*/)
     {
         //This method should never be called
         return -1;
@@ -133,53 +185,143 @@ public class ConsoleDevice implements Device, Runnable
      * As a result, the function does not check to make sure that the
      * device is ready for this request (that's the OS's job).
      */
-    public void write(int addr /*not used*/, int data)
+    public void write(int addr /*not used*/, int data, int tag)
     {
-        m_addr = addr;
-        m_data = data;
-        m_request = true;
+        //If the device was idle it must be started
+        if (m_queue.add(addr, data, tag))
+        {
+            if (m_loop != null)
+            {
+                m_loop.submit();
+            }
+            else
+            {
+                m_signal.post();
+            }
+        }
     }
     
+    /**
+     * setLatencyModel
+     *
+     * replaces the model that decides how long each write takes
+     *
+     * @param model the new model
+     */
+    public void setLatencyModel(LatencyModel model)
+    {
+        m_latency = model;
+    }
+
+    /**
+     * setSeed
+     *
+     * restarts the latency model's generator from a seed
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed)
+    {
+        m_latency.setSeed(seed);
+    }
+
+    /**
+     * setSink
+     *
+     * sends this console's output through a buffered sink instead of
+     * printing each value with System.out.println.  Must be called before the
+     * device is used.
+     *
+     * @param sink the sink to print to
+     */
+    public void setSink(ConsoleSink sink)
+    {
+        m_sink = sink;
+    }
+
+    /**
+     * setEventLoop
+     *
+     * has this device driven by an event loop rather than by its own
+     * thread.  Must be called before the device is used and {@link #run}
+     * must not be called afterwards.
+     *
+     * @param loop the loop that will service this device's requests
+     */
+    public void setEventLoop(DeviceEventLoop loop)
+    {
+        m_loop = loop.register(this);
+    }
+
+    /**
+     * startRequest
+     *
+     * @return the latency of the current request in nanoseconds
+     */
+    public long startRequest()
+    {
+        return m_latency.next();
+    }//startRequest
+
+    /**
+     * finishRequest
+     *
+     * prints the data for the request at the head of the queue, removes the
+     * request from the queue and notifies the CPU
+     *
+     * @return true if there are more requests to service
+     */
+    public boolean finishRequest()
+    {
+        //print the data
+        if (m_sink != null)
+        {
+            m_sink.print(m_queue.getData());
+        }
+        else
+        {
+            System.out.println("\nCONSOLE: " + m_queue.getData());
+        }
+
+        //Make room for another request (before the CPU hears there is some)
+        int addr = m_queue.getAddr();
+        int tag = m_queue.getTag();
+        boolean more = m_queue.remove();
+
+        //Notify the CPU of completed operation
+        m_IC.putData(InterruptController.INT_WRITE_DONE, m_Id, addr, -999, tag);
+        return more;
+    }//finishRequest
+
     /**
      * run
      *
      * This method represents the device + controller.  It watches for reqeusts
-     * (via m_request and m_data) and handles them.  It also inserts a random
+     * (via m_queue) and handles them.  It also inserts a random
      * latency to simulate the amount of time required.
      *
      * (I have no idea whether the default latency setting (500-1000 ns) is at
      * all realistic and, of course, the time spent calling System.out.println
-     * and Math.random() probably overshadows it.  If someone has info on raw
-     * video latencies I will change this code to reflect that data.)
+     * probably overshadows it.  Other latencies can be modeled with
+     * {@link #setLatencyModel}.)
      */
     public void run()
     {
         //Device runs until program ends
         while(true)
         {
-            //While there is no request to process, yield the CPU to another thread
-            while (!m_request)
-            {
-                Thread.yield();
-            }
+            //Wait (without burning the host CPU) for a request to process
+            m_signal.await();
 
-            //We've received a request.  Sleep to simulate the latency
-            try
+            //Work through the queue until it is empty
+            boolean more = true;
+            while (more)
             {
-                int rn = (int)(Math.random() * 2147483647); // random #
-                int latency = (rn % (m_maxLatency - m_minLatency)) + m_minLatency;
-                Thread.sleep(latency / 1000, latency % 1000);
-            }
-            catch(InterruptedException e) {} // should never happen
-            
-            //print the data
-            System.out.println("\nCONSOLE: " + m_data);
+                //We've received a request.  Sleep to simulate the latency
+                LatencyModel.sleep(startRequest());
 
-            //Notify the CPU of completed operation
-            m_IC.putData(InterruptController.INT_WRITE_DONE, m_Id, m_addr, -999);
-
-            //Make the device available for another request
-            m_request = false;
+                more = finishRequest();
+            }
         }//while
     }//run
 
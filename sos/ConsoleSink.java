@@ -0,0 +1,313 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * This class is a buffered, asynchronous backend for the console device.
+ * Each value the console prints is formatted straight into a large direct
+ * buffer (no Strings, no PrintStream lock) and a background thread writes
+ * full buffers out to stdout or a file through an NIO channel.  Two buffers
+ * are used so the console can keep filling one while the other is being
+ * written; if both are full the console waits for the writer.
+ *
+ * Buffered output is written out at least every {@link #FLUSH_INTERVAL_MS}
+ * and everything is written out by {@link #close}, which Sim calls when the
+ * simulation ends.  Output from the console is therefore delayed (and may
+ * appear after other output printed at the same time) but never lost.
+ *
+ * @see ConsoleDevice
+ * @see Sim
+ */
+public class ConsoleSink implements Runnable
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the default size of each buffer in bytes */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /** how often a partially filled buffer is written out */
+    public static final long FLUSH_INTERVAL_MS = 50;
+
+    /** the text printed before each value */
+    private static final byte[] PREFIX = "\nCONSOLE: ".getBytes();
+
+    /** the longest record: prefix, sign, 10 digits and a newline */
+    private static final int MAX_RECORD = PREFIX.length + 12;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private WritableByteChannel m_out;  // where the output goes
+    private ByteBuffer m_active;        // the buffer being filled
+    private ByteBuffer m_spare;         // empty buffer (null while being written)
+    private ByteBuffer m_pending = null;// full buffer waiting to be written
+    private boolean m_closed = false;   // has close() been called?
+    private Thread m_writer = null;     // the background writer thread
+    private byte[] m_digits = new byte[12]; // scratch space for formatting
+    private long m_records = 0;         // number of values printed
+    private long m_bytes = 0;           // number of bytes written out
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param out         the channel to write the output to
+     * @param bufferSize  the size of each of the two buffers in bytes
+     */
+    public ConsoleSink(WritableByteChannel out, int bufferSize)
+    {
+        bufferSize = Math.max(bufferSize, MAX_RECORD);
+        m_out = out;
+        m_active = ByteBuffer.allocateDirect(bufferSize);
+        m_spare = ByteBuffer.allocateDirect(bufferSize);
+    }//ctor
+
+    /**
+     * toStdout
+     *
+     * @return a sink that writes to the process' standard output
+     */
+    public static ConsoleSink toStdout(int bufferSize)
+    {
+        return new ConsoleSink(new FileOutputStream(FileDescriptor.out).getChannel(),
+                               bufferSize);
+    }//toStdout
+
+    /**
+     * toFile
+     *
+     * @return a sink that writes to the given file (replacing its contents)
+     */
+    public static ConsoleSink toFile(String fileName, int bufferSize)
+        throws IOException
+    {
+        FileChannel fc = FileChannel.open(new File(fileName).toPath(),
+                                          java.nio.file.StandardOpenOption.CREATE,
+                                          java.nio.file.StandardOpenOption.WRITE,
+                                          java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
+        return new ConsoleSink(fc, bufferSize);
+    }//toFile
+
+    /**
+     * start
+     *
+     * starts the background writer thread
+     */
+    public void start()
+    {
+        m_writer = new Thread(this, "ConsoleSink");
+        m_writer.setDaemon(true);
+        m_writer.start();
+    }//start
+
+    /**
+     * getRecords
+     *
+     * @return the number of values printed through this sink
+     */
+    public synchronized long getRecords()
+    {
+        return m_records;
+    }
+
+    /**
+     * getBytes
+     *
+     * @return the number of bytes that have reached the output so far
+     */
+    public synchronized long getBytes()
+    {
+        return m_bytes;
+    }
+
+    /**
+     * handOff
+     *
+     * gives the active buffer to the writer thread and makes the spare
+     * buffer active.  Waits if the writer is still busy with the other
+     * buffer.  The caller must hold this object's lock.
+     */
+    private void handOff()
+    {
+        while ((m_pending != null) || (m_spare == null))
+        {
+            try
+            {
+                wait();
+            }
+            catch(InterruptedException e) {} // should never happen
+        }
+        m_pending = m_active;
+        m_active = m_spare;
+        m_spare = null;
+        notifyAll();
+    }//handOff
+
+    /**
+     * print
+     *
+     * prints a value the way the console device always has: a blank line,
+     * "CONSOLE: " and the value
+     *
+     * @param value the value to print
+     */
+    public synchronized void print(int value)
+    {
+        if (m_active.remaining() < MAX_RECORD)
+        {
+            handOff();
+        }
+
+        m_active.put(PREFIX);
+
+        //Format the digits backwards into the scratch space
+        long v = value;
+        if (v < 0)
+        {
+            m_active.put((byte)'-');
+            v = -v;
+        }
+        int n = 0;
+        do
+        {
+            m_digits[n++] = (byte)('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        while (n > 0)
+        {
+            m_active.put(m_digits[--n]);
+        }
+        m_active.put((byte)'\n');
+
+        m_records++;
+
+        //Once closed there is no writer thread so write it out now
+        if (m_closed)
+        {
+            writeOut(m_active);
+        }
+    }//print
+
+    /**
+     * writeOut
+     *
+     * writes the contents of a buffer to the output channel and clears it
+     */
+    private void writeOut(ByteBuffer buf)
+    {
+        buf.flip();
+        try
+        {
+            while (buf.hasRemaining())
+            {
+                m_bytes += m_out.write(buf);
+            }
+        }
+        catch(IOException e)
+        {
+            System.err.println("CONSOLE: output failed: " + e.getMessage());
+        }
+        buf.clear();
+    }//writeOut
+
+    /**
+     * run
+     *
+     * The writer thread.  Writes out each buffer handed off by the console,
+     * and any partially filled buffer every FLUSH_INTERVAL_MS, until the sink
+     * is closed.
+     */
+    public void run()
+    {
+        while (true)
+        {
+            ByteBuffer buf = null;
+            synchronized(this)
+            {
+                while ((m_pending == null) && !m_closed)
+                {
+                    try
+                    {
+                        wait(FLUSH_INTERVAL_MS);
+                    }
+                    catch(InterruptedException e) {} // should never happen
+
+                    //Write out whatever has built up so far
+                    if ((m_pending == null) && (m_spare != null)
+                        && (m_active.position() > 0))
+                    {
+                        handOff();
+                    }
+                }
+                if (m_pending == null)
+                {
+                    return;     // closed and nothing left to write
+                }
+                buf = m_pending;
+                m_pending = null;
+            }
+
+            writeOut(buf);
+
+            synchronized(this)
+            {
+                m_spare = buf;
+                notifyAll();
+            }
+        }//while
+    }//run
+
+    /**
+     * close
+     *
+     * writes out everything that has been buffered and waits for it to
+     * reach the output.  Values printed after close are written out
+     * immediately.
+     */
+    public void close()
+    {
+        synchronized(this)
+        {
+            m_closed = true;
+            notifyAll();
+        }
+
+        //Let the writer finish what it has
+        if (m_writer != null)
+        {
+            try
+            {
+                m_writer.join();
+            }
+            catch(InterruptedException e) {} // should never happen
+        }
+
+        synchronized(this)
+        {
+            if (m_pending != null)
+            {
+                writeOut(m_pending);
+                m_spare = m_pending;
+                m_pending = null;
+            }
+            writeOut(m_active);
+            if (m_out instanceof FileChannel)
+            {
+                try
+                {
+                    ((FileChannel)m_out).force(false);
+                }
+                catch(IOException e) {} // nothing more we can do
+            }
+        }
+    }//close
+
+};//class ConsoleSink
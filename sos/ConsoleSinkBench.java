@@ -0,0 +1,64 @@
+package sos;
+
+import java.io.*;
+
+/**
+ * This class is a benchmark that compares the console device's original
+ * output path (System.out.println of a String per value) against a
+ * {@link ConsoleSink} writing to stdout or to a file.  Each mode prints the
+ * same values and the write rate is reported on stderr, so stdout can be
+ * redirected (e.g. to /dev/null) without hiding the results.
+ *
+ * Usage: java sos.ConsoleSinkBench [println|stdout|file] [count] [file]
+ *
+ * @see ConsoleSink
+ * @see ConsoleDevice
+ */
+public class ConsoleSinkBench
+{
+    public static void main(String[] args) throws IOException
+    {
+        String mode = "stdout";
+        int count = 5000000;
+        String fileName = "console.out";
+        if (args.length > 0)
+        {
+            mode = args[0];
+        }
+        if (args.length > 1)
+        {
+            count = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2)
+        {
+            fileName = args[2];
+        }
+
+        long start = System.nanoTime();
+        if (mode.equals("println"))
+        {
+            for(int i = 0; i < count; i++)
+            {
+                System.out.println("\nCONSOLE: " + i);
+            }
+            System.out.flush();
+        }
+        else
+        {
+            ConsoleSink sink = mode.equals("file")
+                ? ConsoleSink.toFile(fileName, ConsoleSink.DEFAULT_BUFFER_SIZE)
+                : ConsoleSink.toStdout(ConsoleSink.DEFAULT_BUFFER_SIZE);
+            sink.start();
+            for(int i = 0; i < count; i++)
+            {
+                sink.print(i);
+            }
+            sink.close();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+
+        System.err.println(String.format("%-8s %10d writes %8.3fs %12.0f writes/s",
+                                         mode, count, secs, count / secs));
+    }//main
+
+};//class ConsoleSinkBench
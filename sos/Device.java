@@ -40,9 +40,40 @@ public interface Device
     /**
      * isAvailable
      *
-     * returns true if the device is available for use
+     * returns true if the device can accept another request (i.e., its
+     * command queue is not full)
      */
     public boolean isAvailable();
+
+    /**
+     * getQueueDepth
+     *
+     * @return the number of requests the device can hold at once
+     */
+    public int getQueueDepth();
+
+    /**
+     * setQueueDepth
+     *
+     * sets the number of requests the device can hold at once.  Must be
+     * called before the device is used.
+     */
+    public void setQueueDepth(int depth);
+
+    /**
+     * getQueue
+     *
+     * @return the device's command queue (for statistics)
+     */
+    public DeviceQueue getQueue();
+
+    /**
+     * setEventLoop
+     *
+     * has this device driven by an event loop rather than by its own
+     * thread.  Must be called before the device is used.
+     */
+    public void setEventLoop(DeviceEventLoop loop);
     
     /**
      * isReadable
@@ -65,8 +96,10 @@ public interface Device
      *
      * method records a request for service from the device and as such is
      * analagous to setting a value in a register on the device's controller.
+     * The tag is handed back with the completion interrupt so the OS can tell
+     * which request completed.
      */
-    public int read(int addr);
+    public int read(int addr, int tag);
     
     /**
      * write
@@ -74,8 +107,26 @@ public interface Device
      * method records a request for service from the device and as such is
      * analagous to setting a value in a register on the device's controller.
      * As a result, the function does not check to make sure that the
-     * device is ready for this request (that's the OS's job).
+     * device is ready for this request (that's the OS's job).  The tag is
+     * handed back with the completion interrupt.
+     */
+    public void write(int addr, int data, int tag);
+
+    /**
+     * setLatencyModel
+     *
+     * replaces the model that decides how long this device's requests take.
+     * Must be called before the device is used.
+     */
+    public void setLatencyModel(LatencyModel model);
+
+    /**
+     * setSeed
+     *
+     * restarts every random number generator the device uses (including
+     * its latency model's) from a seed so its behavior can be repeated.
+     * Must be called after {@link #setLatencyModel}.
      */
-    public void write(int addr, int data);
+    public void setSeed(long seed);
     
 };//interface Device
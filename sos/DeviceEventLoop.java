@@ -0,0 +1,188 @@
+package sos;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * This class drives any number of devices from a single thread.  Instead of
+ * each device sleeping on its own thread for the duration of a request, the
+ * device submits the request to the loop, the loop asks the device how long
+ * the request will take and schedules the completion on a {@link TimerWheel}
+ * at that deadline.  When the deadline passes the loop calls back into the
+ * device, which finishes the request and posts the interrupt to the
+ * {@link InterruptController}.
+ *
+ * Between deadlines the loop thread parks, so an idle machine uses no host
+ * CPU no matter how many devices it has.
+ *
+ * @see Sim
+ * @see TimerWheel
+ */
+public class DeviceEventLoop implements Runnable
+{
+    //======================================================================
+    // Callback Interface
+    //----------------------------------------------------------------------
+
+    /**
+     * Serviceable
+     *
+     * This interface should be implemented by devices that can be driven by
+     * a DeviceEventLoop.
+     */
+    public interface Serviceable
+    {
+        /**
+         * startRequest
+         *
+         * called on the loop thread when a submitted request starts
+         *
+         * @return how long the request will take in nanoseconds
+         */
+        public long startRequest();
+
+        /**
+         * finishRequest
+         *
+         * called on the loop thread when the request's latency has passed.
+         * The device completes the request and posts its interrupt.
+         *
+         * @return true if the device has another request queued, in which
+         *         case the loop starts it right away.  A device that returns
+         *         false must submit again when it has more to do.
+         */
+        public boolean finishRequest();
+    };//interface Serviceable
+
+    /**
+     * class Handle
+     *
+     * A device's registration with the loop.  Devices call {@link #submit}
+     * (from any thread) to start a request.
+     */
+    public class Handle extends TimerWheel.Timer
+    {
+        private Serviceable m_dev;  // the device this handle belongs to
+
+        private Handle(Serviceable dev)
+        {
+            m_dev = dev;
+        }
+
+        /**
+         * submit
+         *
+         * starts an idle device.  The device must not submit again until
+         * finishRequest has returned false.
+         */
+        public void submit()
+        {
+            m_submitted.add(this);
+            if (m_parked)
+            {
+                LockSupport.unpark(m_thread);
+            }
+        }//submit
+
+        /**
+         * expire
+         *
+         * the request's deadline has passed so let the device finish it and
+         * start the next one if there is one
+         */
+        protected void expire()
+        {
+            if (m_dev.finishRequest())
+            {
+                m_wheel.schedule(this, System.nanoTime() + m_dev.startRequest());
+            }
+        }
+    }//class Handle
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    /** requests submitted by the OS that the loop has not started yet */
+    private ConcurrentLinkedQueue<Handle> m_submitted =
+        new ConcurrentLinkedQueue<Handle>();
+
+    /** pending request completions */
+    private TimerWheel m_wheel = new TimerWheel(System.nanoTime());
+
+    /** the thread running the loop */
+    private volatile Thread m_thread = null;
+
+    /** is the loop thread parked (or about to park)? */
+    private volatile boolean m_parked = false;
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * the constructor does nothing special
+     */
+    public DeviceEventLoop()
+    {
+    }
+
+    /**
+     * register
+     *
+     * registers a device with this loop
+     *
+     * @param dev the device
+     * @return the handle the device uses to submit requests
+     */
+    public Handle register(Serviceable dev)
+    {
+        return new Handle(dev);
+    }
+
+    /**
+     * run
+     *
+     * starts requests as they are submitted and finishes them as their
+     * deadlines pass.  Runs until the program ends.
+     */
+    public void run()
+    {
+        m_thread = Thread.currentThread();
+
+        while (true)
+        {
+            //Start everything that has been submitted
+            long now = System.nanoTime();
+            Handle h;
+            while ((h = m_submitted.poll()) != null)
+            {
+                m_wheel.schedule(h, now + h.m_dev.startRequest());
+            }
+
+            //Finish everything that is due
+            m_wheel.advance(System.nanoTime());
+
+            //Sleep until the next deadline or until something is submitted
+            m_parked = true;
+            if (m_submitted.isEmpty())
+            {
+                long next = m_wheel.nextDeadline();
+                if (next == Long.MAX_VALUE)
+                {
+                    LockSupport.park(this);
+                }
+                else
+                {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0)
+                    {
+                        LockSupport.parkNanos(this, wait);
+                    }
+                }
+            }
+            m_parked = false;
+        }//while
+    }//run
+
+};//class DeviceEventLoop
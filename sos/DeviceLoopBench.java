@@ -0,0 +1,128 @@
+package sos;
+
+import java.util.*;
+import java.lang.management.*;
+
+/**
+ * This class is a benchmark that compares running devices with a thread
+ * each against driving them all from one {@link DeviceEventLoop}.  For each
+ * device count it creates that many KeyboardDevices, keeps every one of them
+ * busy with back-to-back reads (playing the part of the CPU by draining the
+ * interrupt controller) for a fixed time and reports the completion rate,
+ * the number of live threads and the request-to-interrupt latency.
+ *
+ * Usage: java sos.DeviceLoopBench [millis_per_run] [devices ...]
+ *
+ * @see DeviceEventLoop
+ * @see KeyboardDevice
+ */
+public class DeviceLoopBench
+{
+    /**
+     * runOnce
+     *
+     * runs one measurement
+     *
+     * @param numDevices  how many devices to create
+     * @param useLoop     true to use an event loop, false for a thread each
+     * @param millis      how long to measure for
+     */
+    private static void runOnce(int numDevices, boolean useLoop, long millis)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+
+        InterruptController ic = new InterruptController();
+        KeyboardDevice[] devs = new KeyboardDevice[numDevices];
+        DeviceEventLoop loop = useLoop ? new DeviceEventLoop() : null;
+        for(int i = 0; i < numDevices; i++)
+        {
+            devs[i] = new KeyboardDevice(ic);
+            devs[i].setId(i);
+            if (useLoop)
+            {
+                devs[i].setEventLoop(loop);
+            }
+            else
+            {
+                Thread t = new Thread(devs[i]);
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+        if (useLoop)
+        {
+            Thread t = new Thread(loop);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        //Start a request on every device
+        long[] issued = new long[numDevices];
+        for(int i = 0; i < numDevices; i++)
+        {
+            issued[i] = System.nanoTime();
+            devs[i].read(0, i);
+        }
+
+        //Act as the CPU: take each interrupt and start another request
+        LatencyHistogram latency = new LatencyHistogram();
+        long start = System.nanoTime();
+        long end = start + (millis * 1000000L);
+        int liveThreads = threads.getThreadCount() - threadsBefore;
+        long done = 0;
+        while (System.nanoTime() < end)
+        {
+            int[] intData = ic.getData();
+            int dev = intData[1];
+            long now = System.nanoTime();
+            latency.record(now - issued[dev]);
+            done++;
+
+            //The device clears its busy flag just after posting the interrupt
+            while (!devs[dev].isAvailable())
+            {
+                Thread.onSpinWait();
+            }
+            issued[dev] = System.nanoTime();
+            devs[dev].read(0, dev);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format("%-7s %7d %8d %12.0f ",
+                                         useLoop ? "loop" : "thread",
+                                         numDevices, liveThreads,
+                                         done / (elapsed / 1e9))
+                           + latency);
+    }//runOnce
+
+    public static void main(String[] args)
+    {
+        long millis = 2000;
+        int[] counts = { 1, 10, 100, 500 };
+        if (args.length > 0)
+        {
+            millis = Long.parseLong(args[0]);
+        }
+        if (args.length > 1)
+        {
+            counts = new int[args.length - 1];
+            for(int i = 1; i < args.length; i++)
+            {
+                counts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println(String.format("%-7s %7s %8s %12s ", "runtime",
+                                         "devices", "threads", "ops/s")
+                           + LatencyHistogram.header());
+        for(int n : counts)
+        {
+            runOnce(n, false, millis);
+            runOnce(n, true, millis);
+        }
+
+        System.exit(0);
+    }//main
+
+};//class DeviceLoopBench
@@ -0,0 +1,41 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * This interface is implemented by each kind of device that can be put in
+ * a machine.  Providers are found with {@link ServiceLoader}: a provider is
+ * listed in META-INF/services/sos.DeviceProvider on the class path, so new
+ * kinds of device can be added without changing Sim.
+ *
+ * @see MachineConfig
+ * @see Device
+ */
+public interface DeviceProvider
+{
+    /**
+     * getType
+     *
+     * @return the name the machine description uses for this kind of
+     *         device (e.g. "console")
+     */
+    public String getType();
+
+    /**
+     * create
+     *
+     * creates one device of this kind
+     *
+     * @param ic      the interrupt controller the device posts to
+     * @param ram     the machine's RAM (for devices that transfer to it)
+     * @param id      the id the device will have
+     * @param params  device specific settings from the machine description
+     * @return the new device
+     * @throws IOException if the settings are not valid or the device
+     *         can't be created
+     */
+    public Device create(InterruptController ic, RAM ram, int id,
+                         Properties params) throws IOException;
+
+};//interface DeviceProvider
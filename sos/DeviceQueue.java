@@ -0,0 +1,270 @@
+package sos;
+
+/**
+ * This class is the command queue on a device's controller.  The OS adds
+ * tagged requests to the tail (up to the queue depth) and the device works
+ * through them from the head, handing each request's tag back with its
+ * completion interrupt.  The request at the head stays in the queue (and
+ * counts towards its depth) until the device removes it.
+ *
+ * The queue also keeps statistics on its depth: the time-weighted average
+ * and maximum over the whole run, the least and greatest average in a
+ * {@link #WINDOW_NS} window and the averages in the last
+ * {@link #WINDOWS_KEPT} windows, so the depth can be followed over time.
+ *
+ * @see Device
+ */
+public class DeviceQueue
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** length of each window in the depth-over-time statistics (100ms) */
+    public static final long WINDOW_NS = 100000000L;
+
+    /** the number of recent windows whose averages are kept */
+    public static final int WINDOWS_KEPT = 10;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private int m_capacity;             // the queue depth
+    private int[] m_op;                 // device specific operation code
+    private int[] m_addr;               // address of each request
+    private int[] m_data;               // data of each request
+    private int[] m_tag;                // tag of each request
+    private long[] m_time;              // when each request was added (nanoTime)
+    private int m_head = 0;             // index of the request being serviced
+    private int m_size = 0;             // number of requests in the queue
+
+    private long m_start;               // when statistics began (nanoTime)
+    private long m_lastChange;          // when the size last changed
+    private long m_area = 0;            // integral of size over time (ns)
+    private int m_maxSize = 0;          // largest size seen
+    private long m_added = 0;           // number of requests added
+
+    //m_area in the recent windows (by window number % WINDOWS_KEPT) and
+    //the least and greatest area of a whole window
+    private long[] m_windowArea = new long[WINDOWS_KEPT];
+    private long m_window = 0;          // the window being accumulated
+    private long m_minWindowArea = Long.MAX_VALUE;
+    private long m_maxWindowArea = 0;
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param depth the maximum number of requests the queue holds (at least 1)
+     */
+    public DeviceQueue(int depth)
+    {
+        m_capacity = Math.max(1, depth);
+        m_op = new int[m_capacity];
+        m_addr = new int[m_capacity];
+        m_data = new int[m_capacity];
+        m_tag = new int[m_capacity];
+        m_time = new long[m_capacity];
+        m_start = System.nanoTime();
+        m_lastChange = m_start;
+    }//ctor
+
+    /**
+     * getDepth
+     *
+     * @return the maximum number of requests the queue holds
+     */
+    public int getDepth()
+    {
+        return m_capacity;
+    }
+
+    /**
+     * size
+     *
+     * @return the number of requests in the queue (including the one being
+     *         serviced)
+     */
+    public synchronized int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * isFull
+     *
+     * @return true if no more requests can be added
+     */
+    public synchronized boolean isFull()
+    {
+        return m_size == m_capacity;
+    }
+
+    /**
+     * accumulate
+     *
+     * adds the time since the last change at the current size to the
+     * statistics
+     */
+    private void accumulate(long now)
+    {
+        long from = m_lastChange;
+        while (from < now)
+        {
+            long window = (from - m_start) / WINDOW_NS;
+            if (window != m_window)
+            {
+                //The previous window is complete
+                long area = m_windowArea[(int)(m_window % WINDOWS_KEPT)];
+                m_minWindowArea = Math.min(m_minWindowArea, area);
+                m_maxWindowArea = Math.max(m_maxWindowArea, area);
+                m_window = window;
+                m_windowArea[(int)(window % WINDOWS_KEPT)] = 0;
+            }
+            long windowEnd = m_start + ((window + 1) * WINDOW_NS);
+            long to = Math.min(now, windowEnd);
+            m_windowArea[(int)(window % WINDOWS_KEPT)] += (to - from) * m_size;
+            from = to;
+        }
+        m_area += (now - m_lastChange) * m_size;
+        m_lastChange = now;
+    }//accumulate
+
+    /**
+     * add
+     *
+     * adds a request to the tail of the queue.  The caller is responsible for
+     * making sure the queue is not full.
+     *
+     * @param addr the address for the request
+     * @param data the data for the request (ignored for reads)
+     * @param tag  the tag to hand back when the request completes
+     * @return true if the queue was empty (so the device is idle and must be
+     *         started)
+     */
+    public synchronized boolean add(int addr, int data, int tag)
+    {
+        return add(0, addr, data, tag);
+    }//add
+
+    /**
+     * add
+     *
+     * adds a request for a device that supports more than one kind of
+     * operation to the tail of the queue.  The caller is responsible for
+     * making sure the queue is not full.
+     *
+     * @param op   a device specific operation code
+     * @param addr the address for the request
+     * @param data the data for the request
+     * @param tag  the tag to hand back when the request completes
+     * @return true if the queue was empty (so the device is idle and must be
+     *         started)
+     */
+    public synchronized boolean add(int op, int addr, int data, int tag)
+    {
+        long now = System.nanoTime();
+        accumulate(now);
+
+        int idx = (m_head + m_size) % m_capacity;
+        m_op[idx] = op;
+        m_addr[idx] = addr;
+        m_data[idx] = data;
+        m_tag[idx] = tag;
+        m_time[idx] = now;
+        m_size++;
+        m_added++;
+        m_maxSize = Math.max(m_maxSize, m_size);
+
+        return m_size == 1;
+    }//add
+
+    /** @return the operation code of the request at the head of the queue */
+    public synchronized int getOp()
+    {
+        return m_op[m_head];
+    }
+
+    /** @return the address of the request at the head of the queue */
+    public synchronized int getAddr()
+    {
+        return m_addr[m_head];
+    }
+
+    /** @return the data of the request at the head of the queue */
+    public synchronized int getData()
+    {
+        return m_data[m_head];
+    }
+
+    /** @return the tag of the request at the head of the queue */
+    public synchronized int getTag()
+    {
+        return m_tag[m_head];
+    }
+
+    /** @return when the request at the head of the queue was added (nanoTime) */
+    public synchronized long getAddTime()
+    {
+        return m_time[m_head];
+    }
+
+    /**
+     * remove
+     *
+     * removes the request at the head of the queue once it is complete
+     *
+     * @return true if there are more requests to service
+     */
+    public synchronized boolean remove()
+    {
+        accumulate(System.nanoTime());
+
+        m_head = (m_head + 1) % m_capacity;
+        m_size--;
+
+        return m_size > 0;
+    }//remove
+
+    /**
+     * printStats
+     *
+     * prints the depth statistics for this queue
+     *
+     * @param name a name for the device that owns the queue
+     */
+    public synchronized void printStats(String name)
+    {
+        long now = System.nanoTime();
+        accumulate(now);
+
+        double elapsed = Math.max(1, now - m_start);
+        System.out.println(String.format(
+            "%s: depth=%d requests=%d mean depth=%.2f max depth=%d",
+            name, m_capacity, m_added, m_area / elapsed, m_maxSize));
+
+        //Depth over time: the range over the whole windows and the most
+        //recent windows (the last one may be partly over)
+        StringBuilder sb = new StringBuilder("  mean depth per "
+                                             + (WINDOW_NS / 1000000) + "ms:");
+        if (m_window > 0)
+        {
+            sb.append(String.format(" min=%.2f max=%.2f over %d windows,",
+                                    m_minWindowArea / (double)WINDOW_NS,
+                                    m_maxWindowArea / (double)WINDOW_NS,
+                                    m_window));
+        }
+        long first = Math.max(0, m_window - WINDOWS_KEPT + 1);
+        sb.append(" last " + (m_window - first + 1) + ":");
+        for(long w = first; w <= m_window; w++)
+        {
+            sb.append(String.format(" %.2f", m_windowArea[(int)(w % WINDOWS_KEPT)]
+                                             / (double)WINDOW_NS));
+        }
+        System.out.println(sb);
+    }//printStats
+
+};//class DeviceQueue
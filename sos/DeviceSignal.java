@@ -0,0 +1,126 @@
+package sos;
+
+import java.util.concurrent.locks.*;
+
+/**
+ * This class is the handoff between the OS and a device thread.  When the OS
+ * records a request in the device's "controller registers" it calls
+ * {@link #post} and the device thread, which waits in {@link #await}, wakes up
+ * to service it.
+ *
+ * An idle device thread first spins for a short while (so a request that
+ * arrives right away is picked up without a trip through the scheduler) and
+ * then parks until it is unparked by the next post.  The spin budget adapts:
+ * it doubles whenever a request arrives while spinning and halves whenever
+ * the thread has to park.  A spin limit of zero parks immediately.
+ *
+ * @see KeyboardDevice
+ * @see ConsoleDevice
+ */
+public class DeviceSignal
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the smallest spin budget used by the adaptive spin */
+    private static final int MIN_SPINS = 16;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    /**
+     * the maximum number of spins used by signals that are created without
+     * an explicit limit.  This is set from the command line by Sim.
+     */
+    private static int s_defaultSpinLimit = 0;
+
+    private volatile boolean m_pending = false; // has a request been posted?
+    private volatile Thread m_waiter = null;    // the thread in await (if any)
+    private int m_spinLimit;                    // upper bound on spins
+    private int m_spins;                        // current adaptive budget
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * This constructor uses the default spin limit
+     */
+    public DeviceSignal()
+    {
+        this(s_defaultSpinLimit);
+    }
+
+    /**
+     * This constructor expects the maximum number of times an idle device
+     * should spin before parking (0 to always park right away)
+     */
+    public DeviceSignal(int spinLimit)
+    {
+        m_spinLimit = Math.max(0, spinLimit);
+        m_spins = Math.min(MIN_SPINS, m_spinLimit);
+    }//ctor
+
+    /**
+     * setDefaultSpinLimit
+     *
+     * sets the spin limit used by signals created after this call
+     *
+     * @param spinLimit the maximum number of spins (0 to never spin)
+     */
+    public static void setDefaultSpinLimit(int spinLimit)
+    {
+        s_defaultSpinLimit = Math.max(0, spinLimit);
+    }
+
+    /**
+     * post
+     *
+     * signals that a request is ready and wakes the waiting device thread.
+     * Any writes made before this call are visible to the device thread when
+     * it returns from {@link #await}.
+     */
+    public void post()
+    {
+        m_pending = true;
+        Thread waiter = m_waiter;
+        if (waiter != null)
+        {
+            LockSupport.unpark(waiter);
+        }
+    }//post
+
+    /**
+     * await
+     *
+     * blocks the calling thread until {@link #post} is called, then consumes
+     * the signal.  Only one thread may wait on a signal at a time.
+     */
+    public void await()
+    {
+        //Spin for a while in case the request is about to arrive
+        for(int i = 0; i < m_spins; i++)
+        {
+            if (m_pending)
+            {
+                m_spins = Math.min(m_spinLimit, m_spins * 2);
+                m_pending = false;
+                return;
+            }
+            Thread.onSpinWait();
+        }
+
+        //Nothing yet so give up the host CPU until we are unparked
+        m_waiter = Thread.currentThread();
+        while (!m_pending)
+        {
+            LockSupport.park(this);
+        }
+        m_waiter = null;
+        m_spins = Math.max(Math.min(MIN_SPINS, m_spinLimit), m_spins / 2);
+        m_pending = false;
+    }//await
+
+};//class DeviceSignal
@@ -0,0 +1,516 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * This class simulates a sharable, readable and writeable disk drive.  The
+ * contents of the disk live in a disk image file that is memory-mapped, so
+ * they persist from one simulation to the next.
+ *
+ * The disk is divided into sectors of {@link #SECTOR_WORDS} words, arranged
+ * in tracks of {@link #SECTORS_PER_TRACK} sectors.  Besides the usual one
+ * word read and write requests (the address is a word address on the disk)
+ * it supports whole-sector transfers directly into and out of RAM via
+ * {@link BlockDevice}.
+ *
+ * Each request is charged a seek time proportional to the number of tracks
+ * the head moves, a random rotational delay and a transfer time for the
+ * words moved.
+ *
+ * @see Sim
+ * @see SOS
+ * @see BlockDevice
+ */
+public class DiskDevice implements BlockDevice, Runnable, DeviceEventLoop.Serviceable
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the number of words in a sector */
+    public static final int SECTOR_WORDS = 64;
+
+    /** the number of sectors on each track */
+    public static final int SECTORS_PER_TRACK = 32;
+
+    /** the number of sectors in a new disk image by default */
+    public static final int DEFAULT_SECTORS = 1024;
+
+    //Operation codes for requests in the command queue
+    private static final int OP_READ         = 0;
+    private static final int OP_WRITE        = 1;
+    private static final int OP_READ_SECTOR  = 2;
+    private static final int OP_WRITE_SECTOR = 3;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private int m_Id = -1;                  // the OS assigned device ID
+    private InterruptController m_IC;       // reference to the interrupt controller
+    private RAM m_RAM;                      // the RAM sectors are transferred to
+    private DeviceQueue m_queue = new DeviceQueue(1); // pending requests
+    private DeviceSignal m_signal = new DeviceSignal(); // wakes run() on a request
+    private DeviceEventLoop.Handle m_loop = null; // set if driven by an event loop
+
+    private FileChannel m_channel;          // the open disk image
+    private MappedByteBuffer m_mapped;      // the disk image mapped into memory
+    private IntBuffer m_words;              // the disk image as words
+    private int m_numSectors;               // the size of the disk
+
+    private int m_headTrack = 0;            // the track the head is over
+    private int[] m_sectorBuf = new int[SECTOR_WORDS]; // staging for transfers
+    private int m_data = 0;                 // the data for the current request
+
+    private int m_trackSeekNs = 20000;      // time to move the head one track
+    private int m_settleNs = 200000;        // time for the head to settle
+    private int m_rotationNs = 4000000;     // time for one rotation
+    private SplittableRandom m_random = new SplittableRandom(); // source of rotational delays
+    private LatencyModel m_rotation = null; // rotational delay (null for uniform)
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Provider
+     *
+     * creates disks for a machine description (type "disk")
+     */
+    public static class Provider implements DeviceProvider
+    {
+        public String getType()
+        {
+            return "disk";
+        }
+
+        public Device create(InterruptController ic, RAM ram, int id,
+                             Properties params)
+            throws IOException
+        {
+            //image=disk%d.img gives each disk its own image
+            String image = params.getProperty("image");
+            if (image == null)
+            {
+                throw new IOException("disk needs an image");
+            }
+            return new DiskDevice(ic, ram, String.format(image, id),
+                                  MachineConfig.getInt(params, "sectors",
+                                                       DEFAULT_SECTORS));
+        }
+    }//class Provider
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * opens (or creates) the disk image and maps it into memory.  An
+     * existing image keeps its size; a new one is created with the given
+     * number of sectors.
+     *
+     * @param ic         the interrupt controller to post completions to
+     * @param ram        the RAM sector transfers are made to/from
+     * @param imageFile  the path of the disk image
+     * @param numSectors the number of sectors in a new image
+     */
+    public DiskDevice(InterruptController ic, RAM ram, String imageFile,
+                      int numSectors) throws IOException
+    {
+        m_IC = ic;
+        m_RAM = ram;
+
+        m_channel = FileChannel.open(new File(imageFile).toPath(),
+                                     java.nio.file.StandardOpenOption.CREATE,
+                                     java.nio.file.StandardOpenOption.READ,
+                                     java.nio.file.StandardOpenOption.WRITE);
+        long sectorBytes = SECTOR_WORDS * 4L;
+        if (m_channel.size() >= sectorBytes)
+        {
+            numSectors = (int)(m_channel.size() / sectorBytes);
+        }
+        m_numSectors = Math.max(1, numSectors);
+
+        m_mapped = m_channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                 m_numSectors * sectorBytes);
+        m_words = m_mapped.asIntBuffer();
+    }//ctor
+
+    /**
+     * setLatency
+     *
+     * sets the timing of the disk
+     *
+     * @param trackSeekNs  time to move the head one track in ns
+     * @param settleNs     time for the head to settle after a seek in ns
+     * @param rotationNs   time for one rotation of the platter in ns
+     */
+    public void setLatency(int trackSeekNs, int settleNs, int rotationNs)
+    {
+        m_trackSeekNs = Math.max(0, trackSeekNs);
+        m_settleNs = Math.max(0, settleNs);
+        m_rotationNs = Math.max(1, rotationNs);
+    }//setLatency
+
+    /**
+     * setLatencyModel
+     *
+     * replaces the rotational delay, which is otherwise uniform over one
+     * rotation, with a model.  Seek and transfer times still depend on the
+     * head position and the request.
+     *
+     * @param model the new model
+     */
+    public void setLatencyModel(LatencyModel model)
+    {
+        m_rotation = model;
+    }
+
+    /**
+     * setSeed
+     *
+     * restarts the generator for rotational delays from a seed
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed)
+    {
+        SplittableRandom r = new SplittableRandom(seed);
+        m_random = r.split();
+        if (m_rotation != null)
+        {
+            m_rotation.setSeed(r.nextLong());
+        }
+    }
+
+    /**
+     * getId
+     *
+     * @return the device id of this device
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the device id of this device
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * isSharable
+     *
+     * @return true
+     */
+    public boolean isSharable()
+    {
+        return true;
+    }
+
+    /**
+     * isAvailable
+     *
+     * @return true if the command queue has room for another request
+     */
+    public boolean isAvailable()
+    {
+        return !m_queue.isFull();
+    }
+
+    /**
+     * getQueueDepth
+     *
+     * @return the number of requests the device can hold at once
+     */
+    public int getQueueDepth()
+    {
+        return m_queue.getDepth();
+    }
+
+    /**
+     * setQueueDepth
+     *
+     * sets the number of requests the device can hold at once.  Must be
+     * called before the device is used.
+     *
+     * @param depth the new queue depth
+     */
+    public void setQueueDepth(int depth)
+    {
+        m_queue = new DeviceQueue(depth);
+    }
+
+    /**
+     * getQueue
+     *
+     * @return the device's command queue (for statistics)
+     */
+    public DeviceQueue getQueue()
+    {
+        return m_queue;
+    }
+
+    /**
+     * isReadable
+     *
+     * @return true
+     */
+    public boolean isReadable()
+    {
+        return true;
+    }
+
+    /**
+     * isWriteable
+     *
+     * @return true
+     */
+    public boolean isWriteable()
+    {
+        return true;
+    }
+
+    /**
+     * getSectorSize
+     *
+     * @return the number of words in a sector
+     */
+    public int getSectorSize()
+    {
+        return SECTOR_WORDS;
+    }
+
+    /**
+     * getNumSectors
+     *
+     * @return the number of sectors on the disk
+     */
+    public int getNumSectors()
+    {
+        return m_numSectors;
+    }
+
+    /**
+     * enqueue
+     *
+     * adds a request to the command queue, starting the device if it was
+     * idle
+     */
+    private void enqueue(int op, int addr, int data, int tag)
+    {
+        if (m_queue.add(op, addr, data, tag))
+        {
+            if (m_loop != null)
+            {
+                m_loop.submit();
+            }
+            else
+            {
+                m_signal.post();
+            }
+        }
+    }//enqueue
+
+    /**
+     * read
+     *
+     * records a request to read one word.  Addresses past the end of the
+     * disk wrap around.
+     *
+     * @param addr the word address on the disk
+     */
+    public int read(int addr, int tag)
+    {
+        enqueue(OP_READ, addr, 0, tag);
+        return -9999;           // no longer used
+    }//read
+
+    /**
+     * write
+     *
+     * records a request to write one word.  Addresses past the end of the
+     * disk wrap around.
+     *
+     * @param addr the word address on the disk
+     */
+    public void write(int addr, int data, int tag)
+    {
+        enqueue(OP_WRITE, addr, data, tag);
+    }//write
+
+    /**
+     * readBlock
+     *
+     * records a request to copy a sector into RAM
+     */
+    public void readBlock(int sector, int physAddr, int tag)
+    {
+        enqueue(OP_READ_SECTOR, sector, physAddr, tag);
+    }//readBlock
+
+    /**
+     * writeBlock
+     *
+     * records a request to copy a sector's worth of RAM onto the disk
+     */
+    public void writeBlock(int sector, int physAddr, int tag)
+    {
+        enqueue(OP_WRITE_SECTOR, sector, physAddr, tag);
+    }//writeBlock
+
+    /**
+     * wordIndex
+     *
+     * @return the index in the disk image of a word address
+     */
+    private int wordIndex(int addr)
+    {
+        int size = m_numSectors * SECTOR_WORDS;
+        return ((addr % size) + size) % size;
+    }
+
+    /**
+     * setEventLoop
+     *
+     * has this device driven by an event loop rather than by its own
+     * thread.  Must be called before the device is used and {@link #run}
+     * must not be called afterwards.
+     *
+     * @param loop the loop that will service this device's requests
+     */
+    public void setEventLoop(DeviceEventLoop loop)
+    {
+        m_loop = loop.register(this);
+    }
+
+    /**
+     * startRequest
+     *
+     * moves the head to the track of the request at the head of the queue
+     *
+     * @return the seek, rotation and transfer time of the request in ns
+     */
+    public long startRequest()
+    {
+        int op = m_queue.getOp();
+        boolean sectorOp = (op == OP_READ_SECTOR) || (op == OP_WRITE_SECTOR);
+        int sector = sectorOp ? m_queue.getAddr()
+                              : (wordIndex(m_queue.getAddr()) / SECTOR_WORDS);
+        int track = sector / SECTORS_PER_TRACK;
+
+        //Seek
+        long latency = 0;
+        int distance = Math.abs(track - m_headTrack);
+        if (distance > 0)
+        {
+            latency += m_settleNs + ((long)distance * m_trackSeekNs);
+        }
+        m_headTrack = track;
+
+        //Wait for the sector to come around and then transfer it
+        long sectorNs = m_rotationNs / SECTORS_PER_TRACK;
+        latency += (m_rotation != null) ? m_rotation.next()
+                                        : (long)(m_random.nextDouble() * m_rotationNs);
+        latency += sectorOp ? sectorNs : Math.max(1, sectorNs / SECTOR_WORDS);
+
+        return latency;
+    }//startRequest
+
+    /**
+     * finishRequest
+     *
+     * carries out the request at the head of the queue, removes it from the
+     * queue and posts its completion interrupt
+     *
+     * @return true if there are more requests to service
+     */
+    public boolean finishRequest()
+    {
+        int op = m_queue.getOp();
+        int addr = m_queue.getAddr();
+        int data = m_queue.getData();
+        int tag = m_queue.getTag();
+
+        //Make room for another request (before the CPU hears there is some)
+        boolean more = m_queue.remove();
+
+        switch(op)
+        {
+            case OP_READ:
+                m_data = m_words.get(wordIndex(addr));
+                m_IC.putData(InterruptController.INT_READ_DONE, m_Id, addr,
+                             m_data, tag);
+                break;
+            case OP_WRITE:
+                m_words.put(wordIndex(addr), data);
+                m_IC.putData(InterruptController.INT_WRITE_DONE, m_Id, addr,
+                             -999, tag);
+                break;
+            case OP_READ_SECTOR:
+                m_words.position(addr * SECTOR_WORDS);
+                m_words.get(m_sectorBuf);
+                m_RAM.writeBlock(data, m_sectorBuf);
+                m_IC.putData(InterruptController.INT_BLOCK_DONE, m_Id, addr,
+                             -999, tag);
+                break;
+            case OP_WRITE_SECTOR:
+                m_RAM.readBlock(data, m_sectorBuf);
+                m_words.position(addr * SECTOR_WORDS);
+                m_words.put(m_sectorBuf);
+                m_IC.putData(InterruptController.INT_BLOCK_DONE, m_Id, addr,
+                             -999, tag);
+                break;
+        }//switch
+
+        return more;
+    }//finishRequest
+
+    /**
+     * flush
+     *
+     * forces everything written to the disk out to the image file
+     */
+    public void flush()
+    {
+        m_mapped.force();
+    }
+
+    /**
+     * run
+     *
+     * This method represents the device + controller.  It watches for
+     * requests (via m_queue) and handles them after sleeping for the seek,
+     * rotation and transfer time.
+     */
+    public void run()
+    {
+        //Device runs until program ends
+        while(true)
+        {
+            //Wait (without burning the host CPU) for a request to process
+            m_signal.await();
+
+            //Work through the queue until it is empty
+            boolean more = true;
+            while (more)
+            {
+                LatencyModel.sleep(startRequest());
+
+                more = finishRequest();
+            }
+        }//while
+    }//run
+
+};//class DiskDevice
@@ -0,0 +1,217 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * This class measures how well the scheduling policies meet deadlines as
+ * the load grows.  It writes a periodic task program (like deadline.asm)
+ * and a program that EXECs a number of copies of it, then runs Sim under
+ * each policy with the period shortened step by step so the tasks need a
+ * growing share of the CPU.  A first run of a single task measures how
+ * long a job really takes so the tasks can declare it as their budget.
+ * For each load and policy it reports the jobs run, the share of them that
+ * missed their deadlines, the tasks refused by admission control and how
+ * late the jobs were.
+ *
+ * Usage: java sos.EdfBench [tasks] [jobs] [work] [policy ...]
+ *
+ * work is the number of loop iterations (two instructions each) in a job.
+ * The policies default to rr and edf.
+ *
+ * @see Scheduler
+ * @see SchedHarness
+ */
+public class EdfBench
+{
+    /** the loads to try (the CPU the tasks need, 1.0 is all of it) */
+    private static final double[] LOADS = { 0.25, 0.5, 0.75, 0.9, 1.0, 1.25, 1.5 };
+
+    /** the Sim arguments used for every run (before the programs) */
+    private static final String[] SIM_ARGS = { "-l", "0", "-r", "20000", "-t", "200" };
+
+    /**
+     * writeTask
+     *
+     * writes a periodic task program
+     *
+     * @param f         the file
+     * @param budgetUs  the budget it declares for each job
+     * @param periodUs  its period and relative deadline
+     * @param jobs      how many jobs it runs
+     * @param work      the loop iterations in each job
+     */
+    private static void writeTask(File f, long budgetUs, long periodUs,
+                                  int jobs, int work) throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileWriter(f));
+        out.println("SET r0 " + budgetUs);
+        out.println("PUSH r0");
+        out.println("SET r0 " + periodUs);
+        out.println("PUSH r0");
+        out.println("SET r0 " + periodUs);
+        out.println("PUSH r0");
+        out.println("SET r0 " + SOS.SYSCALL_DEADLINE);
+        out.println("PUSH r0");
+        out.println("TRAP");
+        out.println("POP r4");
+        out.println("SET r0 0");
+        out.println("BNE r0 r4 exit");
+        out.println("SET r1 0");
+        out.println("SET r2 1");
+        out.println("SET r3 " + jobs);
+        out.println(":job");
+        out.println("SET r4 0");
+        out.println("SET r0 " + work);
+        out.println(":work");
+        out.println("ADD r4 r2 r4");
+        out.println("BNE r4 r0 work");
+        out.println("ADD r1 r2 r1");
+        out.println("BLT r1 r3 next");
+        out.println("BRANCH exit");
+        out.println(":next");
+        out.println("SET r0 " + SOS.SYSCALL_YIELD);
+        out.println("PUSH r0");
+        out.println("TRAP");
+        out.println("BRANCH job");
+        out.println(":exit");
+        out.println("SET r4 " + SOS.SYSCALL_EXIT);
+        out.println("PUSH r4");
+        out.println("TRAP");
+        out.close();
+    }//writeTask
+
+    /**
+     * writeSpawner
+     *
+     * writes a program that EXECs a number of processes and exits
+     */
+    private static void writeSpawner(File f, int count) throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileWriter(f));
+        out.println("SET r1 0");
+        out.println("SET r2 1");
+        out.println("SET r3 " + count);
+        out.println(":loop");
+        out.println("ADD r1 r2 r1");
+        out.println("SET r4 " + SOS.SYSCALL_EXEC);
+        out.println("PUSH r4");
+        out.println("TRAP");
+        out.println("BNE r1 r3 loop");
+        out.println("SET r4 " + SOS.SYSCALL_EXIT);
+        out.println("PUSH r4");
+        out.println("TRAP");
+        out.close();
+    }//writeSpawner
+
+    /**
+     * runTasks
+     *
+     * runs the tasks under a policy
+     *
+     * @return the numbers from the deadlines line (jobs, missed, refused)
+     *         followed by the mean and 99th percentile of the job time and
+     *         of the lateness (us)
+     */
+    private static double[] runTasks(String policy, File spawner, File task)
+        throws IOException, InterruptedException
+    {
+        ArrayList<String> simArgs = new ArrayList<String>(Arrays.asList(SIM_ARGS));
+        simArgs.add(spawner.getPath());
+        simArgs.add(task.getPath());
+
+        double[] result = new double[7];
+        for(String line : SchedHarness.runSimOutput(policy, simArgs))
+        {
+            String[] words = line.trim().split("[\\s(%,)]+");
+            if (line.startsWith("  deadlines:"))
+            {
+                result[0] = Double.parseDouble(words[1]);
+                result[1] = Double.parseDouble(words[3]);
+                result[2] = Double.parseDouble(words[6]);
+            }
+            else if (line.startsWith("  job time"))
+            {
+                result[3] = Double.parseDouble(words[3]);
+                result[4] = Double.parseDouble(words[5]);
+            }
+            else if (line.startsWith("  lateness"))
+            {
+                result[5] = Double.parseDouble(words[2]);
+                result[6] = Double.parseDouble(words[4]);
+            }
+        }
+        return result;
+    }//runTasks
+
+    public static void main(String[] args) throws Exception
+    {
+        int tasks = 4;
+        int jobs = 20;
+        int work = 20000;
+        ArrayList<String> policies = new ArrayList<String>();
+        if (args.length > 0)
+        {
+            tasks = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1)
+        {
+            jobs = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2)
+        {
+            work = Integer.parseInt(args[2]);
+        }
+        for(int i = 3; i < args.length; i++)
+        {
+            Scheduler.parse(args[i]);   // check it before running anything
+            policies.add(args[i]);
+        }
+        if (policies.isEmpty())
+        {
+            policies.add("rr");
+            policies.add("edf");
+        }
+
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                            "edfbench" + ProcessHandle.current().pid());
+        dir.mkdirs();
+        File task = new File(dir, "task.asm");
+        File one = new File(dir, "spawn1.asm");
+        File all = new File(dir, "spawn" + tasks + ".asm");
+        writeSpawner(one, 1);
+        writeSpawner(all, tasks);
+
+        //Time a job of a task running alone
+        writeTask(task, 1, 100000, 10, work);
+        double[] alone = runTasks("edf", one, task);
+        long budgetUs = Math.max(1, (long)Math.ceil(alone[3]));
+        System.out.println(tasks + " tasks of " + jobs + " jobs, "
+                           + budgetUs + "us per job (measured alone)");
+        System.out.println(String.format("%5s %-8s %9s %6s %7s %7s %12s %12s %12s",
+                                         "load", "policy", "period", "jobs",
+                                         "missed", "refused", "job p99(us)",
+                                         "late(us)", "late99(us)"));
+
+        for(double load : LOADS)
+        {
+            long periodUs = (long)((tasks * budgetUs) / load);
+            writeTask(task, budgetUs, periodUs, jobs, work);
+            for(String policy : policies)
+            {
+                double[] r = runTasks(policy, all, task);
+                System.out.println(String.format(
+                    "%5.2f %-8s %7dus %6.0f %6.1f%% %7.0f %12.1f %12.1f %12.1f",
+                    load, policy, periodUs, r[0],
+                    (100.0 * r[1]) / Math.max(1, r[0]), r[2], r[4], r[5], r[6]));
+            }
+        }
+
+        task.delete();
+        one.delete();
+        all.delete();
+        dir.delete();
+        System.exit(0);
+    }//main
+
+};//class EdfBench
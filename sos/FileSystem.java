@@ -0,0 +1,1150 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class is a small file system that SOS keeps on a block device.  Files
+ * are named by a single word (up to four characters packed into an int, e.g.
+ * 'data' is 0x64617461) and are read and written a word at a time through an
+ * offset that starts at the beginning of the file.
+ *
+ * The disk is laid out as:
+ *
+ * <pre>
+ * sector 0              superblock: MAGIC, sectors, bitmap start, bitmap
+ *                       sectors, inode start, inode sectors, data start
+ * bitmap                one bit per sector (1 = in use)
+ * inodes                {@link #INODE_SECTORS} sectors of {@link #INODE_WORDS}
+ *                       word inodes: name (0 = free), size in words and
+ *                       {@link #MAX_EXTENTS} extents (first sector, length)
+ * data                  everything else
+ * </pre>
+ *
+ * There is one flat directory: the inode table itself.  Sectors are given
+ * to files {@link #ALLOC_CHUNK} at a time, extending the file's last extent
+ * when the sectors after it are free.  A disk without a valid superblock is
+ * formatted the first time it is used.
+ *
+ * Every sector the file system touches, data or metadata, goes through an
+ * LRU buffer cache kept in a reserved area of RAM (the disk transfers
+ * sectors to and from RAM).  Dirty sectors are written back when they are
+ * evicted and when a file is closed.  Reading the first word of a sector
+ * of a file that is being read in order starts reading the next
+ * {@link #READ_AHEAD} sectors of it.
+ *
+ * The disk is asynchronous, so an operation that needs a sector that isn't
+ * in the cache starts reading it and returns {@link #RET_WAIT}.  SOS blocks
+ * the process until the sector named by {@link #getWaitSector} arrives and
+ * then restarts the system call from the beginning.  Operations are
+ * written so restarting them is harmless: nothing is changed until every
+ * sector the operation needs is in the cache, or the change is one the
+ * restarted operation will simply find already made.
+ *
+ * @see SOS
+ * @see BlockDevice
+ */
+public class FileSystem
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the first word of the superblock of a formatted disk ("SOSF") */
+    public static final int MAGIC = 0x534F5346;
+
+    /** the number of words in an inode */
+    public static final int INODE_WORDS = 16;
+
+    /** the number of extents an inode holds */
+    public static final int MAX_EXTENTS = (INODE_WORDS - 2) / 2;
+
+    /** the number of sectors in the inode table */
+    public static final int INODE_SECTORS = 8;
+
+    /** the most sectors given to a file at once */
+    public static final int ALLOC_CHUNK = 8;
+
+    /** the number of sectors read ahead of a sequential reader */
+    public static final int READ_AHEAD = 2;
+
+    /** the number of cache sectors by default */
+    public static final int DEFAULT_CACHE_SECTORS = 16;
+
+    /** the fewest cache sectors that still leave room to work (an open
+     *  looks through the whole inode table) */
+    public static final int MIN_CACHE_SECTORS = INODE_SECTORS + 4;
+
+    /** the number of files that can be open at once */
+    public static final int MAX_OPEN = 64;
+
+    /** tags of the file system's own requests are KERNEL_TAG - buffer */
+    public static final int KERNEL_TAG = -1000;
+
+    /** returned instead of a SOS.SYSCALL_RET_ code by an operation that must
+     *  be restarted once the disk catches up (see {@link #getWaitSector}) */
+    public static final int RET_WAIT = -1;
+
+    /** modes for {@link #open} */
+    public static final int MODE_READ  = 0;     // read from the start
+    public static final int MODE_WRITE = 1;     // create or truncate
+
+    //Superblock words
+    private static final int SB_MAGIC          = 0;
+    private static final int SB_SECTORS        = 1;
+    private static final int SB_BITMAP         = 2;
+    private static final int SB_BITMAP_SECTORS = 3;
+    private static final int SB_INODES         = 4;
+    private static final int SB_INODE_SECTORS  = 5;
+    private static final int SB_DATA           = 6;
+
+    //Inode words
+    private static final int IN_NAME    = 0;
+    private static final int IN_SIZE    = 1;
+    private static final int IN_EXTENTS = 2;
+
+    //Buffer states
+    private static final int BUF_EMPTY   = 0;
+    private static final int BUF_VALID   = 1;
+    private static final int BUF_READING = 2;
+    private static final int BUF_WRITING = 3;
+
+    //Ways to get a buffer
+    private static final int GET_READ  = 0;     // with the sector's contents
+    private static final int GET_FRESH = 1;     // zeroed (a new sector)
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Wait
+     *
+     * thrown inside the file system when an operation can't finish until
+     * the disk does something.  The public operations turn it into
+     * {@link #RET_WAIT}.
+     */
+    private static class Wait extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int m_sector;
+
+        /**
+         * @param sector  the sector being transferred -OR- -1 if the disk
+         *                had no room for a request
+         */
+        public Wait(int sector)
+        {
+            super(null, null, false, false);
+            m_sector = sector;
+        }
+
+        /**
+         * getSector
+         *
+         * @return the sector to wait for -OR- -1 if the operation should just
+         *         be tried again later
+         */
+        public int getSector()
+        {
+            return m_sector;
+        }
+    }//class Wait
+
+    /**
+     * interface BlockIssuer
+     *
+     * how the file system hands sector transfers to the OS, which issues
+     * them to the disk (or to its I/O scheduler)
+     */
+    public interface BlockIssuer
+    {
+        /**
+         * issue
+         *
+         * @return false if the disk has no room for the request
+         */
+        public boolean issue(boolean write, int sector, int physAddr, int tag);
+    }
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private BlockDevice m_disk;         // the disk the files are on
+    private RAM m_RAM;                  // where the cache is
+    private BlockIssuer m_issuer;       // starts transfers
+    private int m_sectorWords;          // words in a sector
+
+    //The buffer cache
+    private int m_cacheBase;            // RAM address of the first buffer
+    private int m_numBufs;              // number of buffers
+    private int[] m_bufSector;          // the sector in each buffer (-1 for none)
+    private int[] m_bufState;           // BUF_ constants
+    private boolean[] m_bufDirty;       // changed since it was read/written
+    private boolean[] m_bufAhead;       // read ahead and not used yet
+    private long[] m_bufUsed;           // when each buffer was last used
+    private long m_clock = 0;           // ticks once per buffer use
+    private long m_opStart = 0;         // m_clock when this operation began
+    private HashMap<Integer, Integer> m_cached = new HashMap<Integer, Integer>();
+
+    //The layout (from the superblock)
+    private boolean m_mounted = false;
+    private int m_numSectors;
+    private int m_bitmapStart;
+    private int m_inodeStart;
+    private int m_dataStart;
+
+    //The open files, by file descriptor
+    private int[] m_openInode = new int[MAX_OPEN];   // -1 if not open
+    private int[] m_openPid = new int[MAX_OPEN];
+    private int[] m_openOffset = new int[MAX_OPEN];
+    private int[] m_openLast = new int[MAX_OPEN];    // file sector last read
+
+    private int m_value = 0;            // result of the last open or read
+    private int m_waitSector = -1;      // what the last RET_WAIT waits for
+
+    //Statistics
+    private long m_wordReads = 0;       // words read
+    private long m_wordWrites = 0;      // words written
+    private long m_hits = 0;            // reads and writes that didn't wait
+    private long m_misses = 0;          // reads and writes that did
+    private long m_diskReads = 0;       // sectors read from the disk
+    private long m_diskWrites = 0;      // sectors written to the disk
+    private long m_aheadIssued = 0;     // sectors read ahead
+    private long m_aheadUsed = 0;       // sectors read ahead and then used
+    private long m_evictions = 0;       // buffers reused for another sector
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param disk        the disk to keep the files on
+     * @param ram         the RAM the cache is in
+     * @param cacheBase   the address of the cache in RAM.  The OS must not
+     *                    give this memory to processes.
+     * @param numBufs     the number of sectors the cache holds
+     * @param issuer      starts sector transfers
+     */
+    public FileSystem(BlockDevice disk, RAM ram, int cacheBase, int numBufs,
+                      BlockIssuer issuer)
+    {
+        m_disk = disk;
+        m_RAM = ram;
+        m_issuer = issuer;
+        m_sectorWords = disk.getSectorSize();
+        m_cacheBase = cacheBase;
+        m_numBufs = Math.max(MIN_CACHE_SECTORS, numBufs);
+        m_bufSector = new int[m_numBufs];
+        m_bufState = new int[m_numBufs];
+        m_bufDirty = new boolean[m_numBufs];
+        m_bufAhead = new boolean[m_numBufs];
+        m_bufUsed = new long[m_numBufs];
+        Arrays.fill(m_bufSector, -1);
+        Arrays.fill(m_openInode, -1);
+    }//ctor
+
+    /**
+     * getValue
+     *
+     * @return the file descriptor from the last successful open or the word
+     *         from the last successful read
+     */
+    public int getValue()
+    {
+        return m_value;
+    }
+
+    /**
+     * getWaitSector
+     *
+     * @return the sector the last operation that returned {@link #RET_WAIT}
+     *         is waiting for -OR- -1 if the disk had no room for a request
+     *         and the operation should just be tried again later
+     */
+    public int getWaitSector()
+    {
+        return m_waitSector;
+    }
+
+    /**
+     * waitFor
+     *
+     * remembers what an operation is waiting for
+     *
+     * @return RET_WAIT
+     */
+    private int waitFor(Wait w)
+    {
+        m_waitSector = w.getSector();
+        return RET_WAIT;
+    }
+
+    //----------------------------------------------------------------------
+    // The buffer cache
+    //----------------------------------------------------------------------
+
+    /** @return the RAM address of a buffer */
+    private int bufAddr(int b)
+    {
+        return m_cacheBase + (b * m_sectorWords);
+    }
+
+    /** @return a word of a buffer */
+    private int getWord(int b, int idx)
+    {
+        return m_RAM.read(bufAddr(b) + idx);
+    }
+
+    /** changes a word of a buffer (which makes it dirty) */
+    private void setWord(int b, int idx, int value)
+    {
+        m_RAM.write(bufAddr(b) + idx, value);
+        m_bufDirty[b] = true;
+    }
+
+    /**
+     * getBuffer
+     *
+     * @param sector  the sector
+     * @param how     GET_READ for the sector's contents or GET_FRESH for a
+     *                zeroed buffer for a newly allocated sector
+     * @return the buffer holding the sector
+     * @throws Wait if the sector (or room for it) isn't ready yet
+     */
+    private int getBuffer(int sector, int how) throws Wait
+    {
+        Integer cached = m_cached.get(sector);
+        int b;
+        if (cached != null)
+        {
+            b = cached;
+            if (m_bufState[b] == BUF_READING)
+            {
+                throw new Wait(sector);
+            }
+            if (m_bufAhead[b])
+            {
+                m_aheadUsed++;
+                m_bufAhead[b] = false;
+            }
+        }
+        else
+        {
+            b = findVictim(true);
+            if (how == GET_READ)
+            {
+                if (! m_issuer.issue(false, sector, bufAddr(b), KERNEL_TAG - b))
+                {
+                    throw new Wait(-1);
+                }
+                assign(b, sector, BUF_READING);
+                m_diskReads++;
+                throw new Wait(sector);
+            }
+            assign(b, sector, BUF_VALID);
+        }
+
+        if (how == GET_FRESH)
+        {
+            for(int i = 0; i < m_sectorWords; i++)
+            {
+                m_RAM.write(bufAddr(b) + i, 0);
+            }
+            m_bufDirty[b] = true;
+        }
+        m_bufUsed[b] = ++m_clock;
+        return b;
+    }//getBuffer
+
+    /**
+     * assign
+     *
+     * puts a sector in a buffer
+     */
+    private void assign(int b, int sector, int state)
+    {
+        if (m_bufSector[b] >= 0)
+        {
+            m_cached.remove(m_bufSector[b]);
+            m_evictions++;
+        }
+        m_bufSector[b] = sector;
+        m_bufState[b] = state;
+        m_bufDirty[b] = false;
+        m_bufAhead[b] = false;
+        m_bufUsed[b] = ++m_clock;
+        m_cached.put(sector, b);
+    }//assign
+
+    /**
+     * findVictim
+     *
+     * finds a buffer to reuse: an empty one or else the least recently used
+     * one that isn't being transferred or used by this operation.  Dirty
+     * buffers on the way are written back.
+     *
+     * @param mustFind  if false, give up (return -1) rather than write
+     *                  anything back or wait
+     * @return the buffer
+     * @throws Wait if every buffer is busy
+     */
+    private int findVictim(boolean mustFind) throws Wait
+    {
+        int busy = -1;
+        while (true)
+        {
+            int best = -1;
+            for(int b = 0; b < m_numBufs; b++)
+            {
+                if (m_bufState[b] == BUF_EMPTY)
+                {
+                    return b;
+                }
+                if (m_bufState[b] != BUF_VALID)
+                {
+                    busy = b;
+                }
+                else if ((m_bufUsed[b] <= m_opStart)
+                         && ((best < 0) || (m_bufUsed[b] < m_bufUsed[best])))
+                {
+                    best = b;
+                }
+            }//for
+
+            if (best >= 0 && ! m_bufDirty[best])
+            {
+                return best;
+            }
+            if (! mustFind)
+            {
+                return -1;
+            }
+            if (best < 0)
+            {
+                if (busy < 0)
+                {
+                    //Only possible if one operation needs the whole cache
+                    throw new IllegalStateException("file system cache is too small");
+                }
+                throw new Wait(m_bufSector[busy]);
+            }
+
+            //Write back the dirty one and look again
+            writeBack(best);
+        }//while
+    }//findVictim
+
+    /**
+     * writeBack
+     *
+     * starts writing a dirty buffer to the disk
+     *
+     * @throws Wait if the disk has no room for the request
+     */
+    private void writeBack(int b) throws Wait
+    {
+        if (! m_issuer.issue(true, m_bufSector[b], bufAddr(b), KERNEL_TAG - b))
+        {
+            throw new Wait(-1);
+        }
+        m_bufState[b] = BUF_WRITING;
+        m_bufDirty[b] = false;
+        m_diskWrites++;
+    }//writeBack
+
+    /**
+     * readAhead
+     *
+     * starts reading a sector into the cache if it isn't there and a clean
+     * buffer is free.  Never waits.
+     */
+    private void readAhead(int sector)
+    {
+        if (m_cached.containsKey(sector))
+        {
+            return;
+        }
+        try
+        {
+            int b = findVictim(false);
+            if ((b < 0)
+                || ! m_issuer.issue(false, sector, bufAddr(b), KERNEL_TAG - b))
+            {
+                return;
+            }
+            assign(b, sector, BUF_READING);
+            m_bufAhead[b] = true;
+            m_bufUsed[b] = 0;       // first to go if it is never used
+            m_diskReads++;
+            m_aheadIssued++;
+        }
+        catch(Wait w)
+        {
+            //findVictim(false) doesn't wait
+        }
+    }//readAhead
+
+    /**
+     * isKernelTag
+     *
+     * @return true if a completed request was one of the file system's
+     */
+    public static boolean isKernelTag(int tag)
+    {
+        return tag <= KERNEL_TAG;
+    }
+
+    /**
+     * blockDone
+     *
+     * is told that one of the file system's transfers has completed
+     *
+     * @param tag  the tag of the request
+     * @return the sector that was transferred
+     */
+    public int blockDone(int tag)
+    {
+        int b = KERNEL_TAG - tag;
+        if ((m_bufState[b] == BUF_READING) || (m_bufState[b] == BUF_WRITING))
+        {
+            m_bufState[b] = BUF_VALID;
+        }
+        return m_bufSector[b];
+    }//blockDone
+
+    //----------------------------------------------------------------------
+    // The layout
+    //----------------------------------------------------------------------
+
+    /**
+     * mount
+     *
+     * reads the superblock, formatting the disk if it doesn't have one
+     */
+    private void mount() throws Wait
+    {
+        if (m_mounted)
+        {
+            return;
+        }
+
+        int sb = getBuffer(0, GET_READ);
+        if (getWord(sb, SB_MAGIC) != MAGIC)
+        {
+            format(sb);
+        }
+        m_numSectors = getWord(sb, SB_SECTORS);
+        m_bitmapStart = getWord(sb, SB_BITMAP);
+        m_inodeStart = getWord(sb, SB_INODES);
+        m_dataStart = getWord(sb, SB_DATA);
+        m_mounted = true;
+    }//mount
+
+    /**
+     * format
+     *
+     * writes an empty file system onto the disk.  The superblock is written
+     * last so a format that has to wait is just started over.
+     *
+     * @param sb the buffer holding sector 0
+     */
+    private void format(int sb) throws Wait
+    {
+        int n = m_disk.getNumSectors();
+        int bitsPerSector = m_sectorWords * 32;
+        int bitmapSectors = (n + bitsPerSector - 1) / bitsPerSector;
+        int inodeStart = 1 + bitmapSectors;
+        int dataStart = inodeStart + INODE_SECTORS;
+        if (dataStart >= n)
+        {
+            throw new IllegalStateException("disk is too small for a file system");
+        }
+
+        for(int s = 1; s < dataStart; s++)
+        {
+            getBuffer(s, GET_FRESH);
+        }
+
+        //Mark the metadata as in use
+        m_bitmapStart = 1;
+        for(int s = 0; s < dataStart; s++)
+        {
+            setUsed(s, true);
+        }
+
+        setWord(sb, SB_SECTORS, n);
+        setWord(sb, SB_BITMAP, 1);
+        setWord(sb, SB_BITMAP_SECTORS, bitmapSectors);
+        setWord(sb, SB_INODES, inodeStart);
+        setWord(sb, SB_INODE_SECTORS, INODE_SECTORS);
+        setWord(sb, SB_DATA, dataStart);
+        setWord(sb, SB_MAGIC, MAGIC);
+    }//format
+
+    /** @return the bitmap buffer holding a sector's bit */
+    private int bitmapBuffer(int sector) throws Wait
+    {
+        return getBuffer(m_bitmapStart + (sector / (m_sectorWords * 32)), GET_READ);
+    }
+
+    /** @return true if a sector is not in use */
+    private boolean isFree(int sector) throws Wait
+    {
+        int bit = sector % (m_sectorWords * 32);
+        int word = getWord(bitmapBuffer(sector), bit / 32);
+        return (word & (1 << (bit % 32))) == 0;
+    }
+
+    /** marks a sector as in use or free */
+    private void setUsed(int sector, boolean used) throws Wait
+    {
+        int b = bitmapBuffer(sector);
+        int bit = sector % (m_sectorWords * 32);
+        int word = getWord(b, bit / 32);
+        if (used)
+        {
+            word |= (1 << (bit % 32));
+        }
+        else
+        {
+            word &= ~(1 << (bit % 32));
+        }
+        setWord(b, bit / 32, word);
+    }//setUsed
+
+    /** @return the buffer holding an inode */
+    private int inodeBuffer(int ino) throws Wait
+    {
+        int perSector = m_sectorWords / INODE_WORDS;
+        return getBuffer(m_inodeStart + (ino / perSector), GET_READ);
+    }
+
+    /** @return the index in its buffer of an inode's first word */
+    private int inodeBase(int ino)
+    {
+        return (ino % (m_sectorWords / INODE_WORDS)) * INODE_WORDS;
+    }
+
+    /**
+     * findInode
+     *
+     * @param name the name to look for (0 for a free inode)
+     * @return the inode with the name -OR- -1
+     */
+    private int findInode(int name) throws Wait
+    {
+        int numInodes = INODE_SECTORS * (m_sectorWords / INODE_WORDS);
+        for(int ino = 0; ino < numInodes; ino++)
+        {
+            if (getWord(inodeBuffer(ino), inodeBase(ino) + IN_NAME) == name)
+            {
+                return ino;
+            }
+        }
+        return -1;
+    }//findInode
+
+    /**
+     * fileSector
+     *
+     * @param b     the buffer holding the inode
+     * @param base  the inode's first word in the buffer
+     * @param idx   a sector of the file (0 for the first)
+     * @return the disk sector -OR- -1 if the file doesn't have that many
+     */
+    private int fileSector(int b, int base, int idx)
+    {
+        for(int e = 0; e < MAX_EXTENTS; e++)
+        {
+            int start = getWord(b, base + IN_EXTENTS + (2 * e));
+            int len = getWord(b, base + IN_EXTENTS + (2 * e) + 1);
+            if (idx < len)
+            {
+                return start + idx;
+            }
+            idx -= len;
+        }
+        return -1;
+    }//fileSector
+
+    /**
+     * allocate
+     *
+     * gives a file up to ALLOC_CHUNK more sectors, after its last extent if
+     * they are free and otherwise as a new extent at the first free sectors
+     *
+     * @return false if the disk (or the inode) is full
+     */
+    private boolean allocate(int b, int base) throws Wait
+    {
+        //Find the last extent
+        int e = 0;
+        while ((e < MAX_EXTENTS)
+               && (getWord(b, base + IN_EXTENTS + (2 * e) + 1) > 0))
+        {
+            e++;
+        }
+        int start;
+        int len = 0;
+        if (e > 0)
+        {
+            start = getWord(b, base + IN_EXTENTS + (2 * (e - 1)));
+            len = getWord(b, base + IN_EXTENTS + (2 * (e - 1)) + 1);
+        }
+        else
+        {
+            start = m_dataStart;
+        }
+
+        //Grow the last extent...
+        int first = start + len;
+        int count = 0;
+        while ((count < ALLOC_CHUNK) && (first + count < m_numSectors)
+               && isFree(first + count))
+        {
+            count++;
+        }
+        if ((count > 0) && (e > 0))
+        {
+            e--;
+        }
+        else
+        {
+            //...or start a new one
+            if (e == MAX_EXTENTS)
+            {
+                return false;
+            }
+            first = m_dataStart;
+            while ((first < m_numSectors) && !isFree(first))
+            {
+                first++;
+            }
+            count = 0;
+            while ((count < ALLOC_CHUNK) && (first + count < m_numSectors)
+                   && isFree(first + count))
+            {
+                count++;
+            }
+            if (count == 0)
+            {
+                return false;
+            }
+            start = first;
+            len = 0;
+        }
+
+        for(int s = first; s < first + count; s++)
+        {
+            setUsed(s, true);
+        }
+        setWord(b, base + IN_EXTENTS + (2 * e), start);
+        setWord(b, base + IN_EXTENTS + (2 * e) + 1, len + count);
+        return true;
+    }//allocate
+
+    /**
+     * truncate
+     *
+     * frees all of a file's sectors.  Nothing is freed until the bitmap
+     * sectors are in the cache and none of the file's sectors is being
+     * transferred, so a freed sector can't be given to another file while
+     * the disk is still using its buffer.
+     */
+    private void truncate(int b, int base) throws Wait
+    {
+        //Getting the bitmap can start writing back any dirty buffer, so
+        //look for transfers only once it is all here
+        for(int e = 0; e < MAX_EXTENTS; e++)
+        {
+            int start = getWord(b, base + IN_EXTENTS + (2 * e));
+            int len = getWord(b, base + IN_EXTENTS + (2 * e) + 1);
+            for(int s = start; s < start + len; s++)
+            {
+                bitmapBuffer(s);
+            }
+        }
+        for(int e = 0; e < MAX_EXTENTS; e++)
+        {
+            int start = getWord(b, base + IN_EXTENTS + (2 * e));
+            int len = getWord(b, base + IN_EXTENTS + (2 * e) + 1);
+            for(int s = start; s < start + len; s++)
+            {
+                Integer cached = m_cached.get(s);
+                if ((cached != null) && (m_bufState[cached] != BUF_VALID))
+                {
+                    throw new Wait(s);
+                }
+            }
+        }
+
+        for(int e = 0; e < MAX_EXTENTS; e++)
+        {
+            int start = getWord(b, base + IN_EXTENTS + (2 * e));
+            int len = getWord(b, base + IN_EXTENTS + (2 * e) + 1);
+            for(int s = start; s < start + len; s++)
+            {
+                setUsed(s, false);
+
+                //Its cached contents don't need writing any more
+                Integer cached = m_cached.get(s);
+                if (cached != null)
+                {
+                    m_cached.remove(s);
+                    m_bufSector[cached] = -1;
+                    m_bufState[cached] = BUF_EMPTY;
+                    m_bufDirty[cached] = false;
+                }
+            }
+        }
+        for(int i = IN_SIZE; i < INODE_WORDS; i++)
+        {
+            setWord(b, base + i, 0);
+        }
+    }//truncate
+
+    //----------------------------------------------------------------------
+    // Operations
+    //----------------------------------------------------------------------
+
+    /**
+     * checkFd
+     *
+     * @return true if a file descriptor is open by a process
+     */
+    private boolean checkFd(int fd, int pid)
+    {
+        return (fd >= 0) && (fd < MAX_OPEN) && (m_openInode[fd] >= 0)
+            && (m_openPid[fd] == pid);
+    }
+
+    /**
+     * open
+     *
+     * opens a file.  The file descriptor is available from {@link #getValue}.
+     *
+     * @param name  the file's name (not 0)
+     * @param mode  MODE_READ to read an existing file from the start or
+     *              MODE_WRITE to create or truncate it
+     * @param pid   the process opening it
+     * @return a SOS.SYSCALL_RET_ code -OR- RET_WAIT
+     */
+    public int open(int name, int mode, int pid)
+    {
+        try
+        {
+            return doOpen(name, mode, pid);
+        }
+        catch(Wait w)
+        {
+            return waitFor(w);
+        }
+    }//open
+
+    /** does the work of {@link #open} */
+    private int doOpen(int name, int mode, int pid) throws Wait
+    {
+        m_opStart = m_clock;
+        mount();
+        if ((name == 0) || ((mode != MODE_READ) && (mode != MODE_WRITE)))
+        {
+            return SOS.SYSCALL_RET_BAD_ARG;
+        }
+
+        int fd = 0;
+        while ((fd < MAX_OPEN) && (m_openInode[fd] >= 0))
+        {
+            fd++;
+        }
+        if (fd == MAX_OPEN)
+        {
+            return SOS.SYSCALL_RET_NO_SPACE;
+        }
+
+        int ino = findInode(name);
+        if (mode == MODE_WRITE)
+        {
+            if (ino < 0)
+            {
+                ino = findInode(0);
+                if (ino < 0)
+                {
+                    return SOS.SYSCALL_RET_NO_SPACE;
+                }
+            }
+            int b = inodeBuffer(ino);
+            truncate(b, inodeBase(ino));
+            setWord(b, inodeBase(ino) + IN_NAME, name);
+        }
+        else if (ino < 0)
+        {
+            return SOS.SYSCALL_RET_DNE;
+        }
+
+        m_openInode[fd] = ino;
+        m_openPid[fd] = pid;
+        m_openOffset[fd] = 0;
+        m_openLast[fd] = -1;
+        m_value = fd;
+        return SOS.SYSCALL_RET_SUCCESS;
+    }//doOpen
+
+    /**
+     * read
+     *
+     * reads the next word of a file.  The word is available from
+     * {@link #getValue}.
+     *
+     * @param fd     the file descriptor
+     * @param pid    the process reading
+     * @param retry  true if this read was restarted after waiting
+     * @return a SOS.SYSCALL_RET_ code -OR- RET_WAIT
+     */
+    public int read(int fd, int pid, boolean retry)
+    {
+        try
+        {
+            return doRead(fd, pid, retry);
+        }
+        catch(Wait w)
+        {
+            return waitFor(w);
+        }
+    }//read
+
+    /** does the work of {@link #read} */
+    private int doRead(int fd, int pid, boolean retry) throws Wait
+    {
+        m_opStart = m_clock;
+        if (!checkFd(fd, pid))
+        {
+            return SOS.SYSCALL_RET_NOT_OPEN;
+        }
+
+        int ino = m_openInode[fd];
+        int offset = m_openOffset[fd];
+        int ib = inodeBuffer(ino);
+        int base = inodeBase(ino);
+        int size = getWord(ib, base + IN_SIZE);
+        if (offset >= size)
+        {
+            return SOS.SYSCALL_RET_EOF;
+        }
+
+        int idx = offset / m_sectorWords;
+        int b = getBuffer(fileSector(ib, base, idx), GET_READ);
+        m_value = getWord(b, offset % m_sectorWords);
+        m_openOffset[fd] = offset + 1;
+        m_wordReads++;
+        if (retry)
+        {
+            m_misses++;
+        }
+        else
+        {
+            m_hits++;
+        }
+
+        //Reading in order: fetch the next sectors before they are wanted
+        if ((offset % m_sectorWords == 0) && (m_openLast[fd] == idx - 1))
+        {
+            int last = (size - 1) / m_sectorWords;
+            for(int i = idx + 1; (i <= idx + READ_AHEAD) && (i <= last); i++)
+            {
+                readAhead(fileSector(ib, base, i));
+            }
+        }
+        m_openLast[fd] = idx;
+        return SOS.SYSCALL_RET_SUCCESS;
+    }//doRead
+
+    /**
+     * write
+     *
+     * writes the next word of a file
+     *
+     * @param fd     the file descriptor
+     * @param pid    the process writing
+     * @param value  the word to write
+     * @param retry  true if this write was restarted after waiting
+     * @return a SOS.SYSCALL_RET_ code -OR- RET_WAIT
+     */
+    public int write(int fd, int pid, int value, boolean retry)
+    {
+        try
+        {
+            return doWrite(fd, pid, value, retry);
+        }
+        catch(Wait w)
+        {
+            return waitFor(w);
+        }
+    }//write
+
+    /** does the work of {@link #write} */
+    private int doWrite(int fd, int pid, int value, boolean retry) throws Wait
+    {
+        m_opStart = m_clock;
+        if (!checkFd(fd, pid))
+        {
+            return SOS.SYSCALL_RET_NOT_OPEN;
+        }
+
+        int ino = m_openInode[fd];
+        int offset = m_openOffset[fd];
+        int ib = inodeBuffer(ino);
+        int base = inodeBase(ino);
+        int size = getWord(ib, base + IN_SIZE);
+
+        int idx = offset / m_sectorWords;
+        int sector = fileSector(ib, base, idx);
+        if (sector < 0)
+        {
+            if (! allocate(ib, base))
+            {
+                return SOS.SYSCALL_RET_NO_SPACE;
+            }
+            sector = fileSector(ib, base, idx);
+        }
+
+        //A sector the file hasn't used yet has nothing worth reading
+        boolean fresh = (offset % m_sectorWords == 0) && (offset >= size);
+        int b = getBuffer(sector, fresh ? GET_FRESH : GET_READ);
+        setWord(b, offset % m_sectorWords, value);
+        if (offset >= size)
+        {
+            setWord(ib, base + IN_SIZE, offset + 1);
+        }
+        m_openOffset[fd] = offset + 1;
+        m_wordWrites++;
+        if (retry)
+        {
+            m_misses++;
+        }
+        else
+        {
+            m_hits++;
+        }
+        return SOS.SYSCALL_RET_SUCCESS;
+    }//doWrite
+
+    /**
+     * close
+     *
+     * writes the file's dirty sectors and the file system's metadata back
+     * to the disk and then closes the file
+     *
+     * @param fd     the file descriptor
+     * @param pid    the process closing it
+     * @return a SOS.SYSCALL_RET_ code -OR- RET_WAIT
+     */
+    public int close(int fd, int pid)
+    {
+        try
+        {
+            return doClose(fd, pid);
+        }
+        catch(Wait w)
+        {
+            return waitFor(w);
+        }
+    }//close
+
+    /** does the work of {@link #close} */
+    private int doClose(int fd, int pid) throws Wait
+    {
+        m_opStart = m_clock;
+        if (!checkFd(fd, pid))
+        {
+            return SOS.SYSCALL_RET_NOT_OPEN;
+        }
+
+        int ino = m_openInode[fd];
+        int ib = inodeBuffer(ino);
+        int base = inodeBase(ino);
+
+        //Start writing everything that needs it
+        int waitFor = -1;
+        for(int b = 0; b < m_numBufs; b++)
+        {
+            int s = m_bufSector[b];
+            if ((s < 0) || ((s >= m_dataStart) && !inFile(ib, base, s)))
+            {
+                continue;
+            }
+            if (m_bufDirty[b] && (m_bufState[b] == BUF_VALID))
+            {
+                try
+                {
+                    writeBack(b);
+                }
+                catch(Wait w)
+                {
+                    if (waitFor < 0)
+                    {
+                        throw w;
+                    }
+                }
+            }
+            if (m_bufState[b] == BUF_WRITING)
+            {
+                waitFor = s;
+            }
+        }//for
+
+        //...and wait until it is on the disk
+        if (waitFor >= 0)
+        {
+            throw new Wait(waitFor);
+        }
+
+        m_openInode[fd] = -1;
+        return SOS.SYSCALL_RET_SUCCESS;
+    }//doClose
+
+    /** @return true if a sector belongs to a file */
+    private boolean inFile(int b, int base, int sector)
+    {
+        for(int e = 0; e < MAX_EXTENTS; e++)
+        {
+            int start = getWord(b, base + IN_EXTENTS + (2 * e));
+            int len = getWord(b, base + IN_EXTENTS + (2 * e) + 1);
+            if ((sector >= start) && (sector < start + len))
+            {
+                return true;
+            }
+        }
+        return false;
+    }//inFile
+
+    /**
+     * printStats
+     *
+     * prints the cache hit rate and how many disk requests the cache saved
+     * compared with reading and writing the disk a word at a time
+     *
+     * @param name a name for the disk
+     */
+    public void printStats(String name)
+    {
+        long words = m_wordReads + m_wordWrites;
+        long sectors = m_diskReads + m_diskWrites;
+        System.out.println("FILE SYSTEM on " + name + ": " + m_numBufs
+                           + " cache sectors");
+        System.out.println(String.format(
+            "  word reads=%d writes=%d  cache hits=%d (%.1f%%) misses=%d evictions=%d",
+            m_wordReads, m_wordWrites, m_hits,
+            100.0 * m_hits / Math.max(1, m_hits + m_misses), m_misses,
+            m_evictions));
+        System.out.println(String.format(
+            "  disk sector reads=%d (%d read ahead, %d of them used) writes=%d",
+            m_diskReads, m_aheadIssued, m_aheadUsed, m_diskWrites));
+        System.out.println(String.format(
+            "  disk requests=%d vs %d a word at a time (%d saved)",
+            sectors, words, words - sectors));
+    }//printStats
+
+};//class FileSystem
@@ -0,0 +1,503 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class decides the order in which the OS hands requests to a device.
+ * Without one, SOS gives each READ or WRITE straight to the device and a
+ * process that finds the device busy traps again later, so requests reach
+ * the device in no particular order.  With one, SOS queues every request
+ * here and issues them to the device whenever it has room, in the order the
+ * policy chooses:
+ *
+ * <ul>
+ * <li>fifo             - in the order they arrived</li>
+ * <li>elevator         - SCAN: sweep across the disk in one direction,
+ *     serving the nearest request, and turn around at the last one</li>
+ * <li>deadline[:R[:W]] - sweep across the disk in one direction (C-SCAN)
+ *     but serve the oldest request first once it has waited longer than
+ *     its deadline (R for reads, W for writes; 20ms and 100ms by
+ *     default)</li>
+ * <li>fair             - per-process fair queuing: serve the request of the
+ *     process that has had the least service so far</li>
+ * </ul>
+ *
+ * Whatever the policy, a request that duplicates the newest one queued for
+ * the same word or sector is merged with it: a read of a word that is
+ * already being read shares the result, and a write to a word or sector
+ * that is already waiting to be written replaces the queued data.  A
+ * request is never merged past another request for the same word or
+ * sector, so a read still sees the writes queued before it and not those
+ * after.  Every process whose request was merged
+ * is woken when the one device request completes.
+ *
+ * Times are in nanoseconds unless they end in us, ms or s.
+ *
+ * @see SOS
+ * @see DiskDevice
+ */
+public abstract class IOScheduler
+{
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Request
+     *
+     * one request from a process (plus any merged with it)
+     */
+    public static class Request
+    {
+        public int op;          // the system call (SOS.SYSCALL_READ etc.)
+        public int addr;        // the word address or sector
+        public int data;        // the value or buffer address
+        public int tag;         // the tag (pid) of the first process
+        public int pos;         // where on the device it is (e.g. the sector)
+        public long time;       // when it was queued (nanoTime)
+        public int[] merged = null; // the tags of requests merged with it
+        public int numMerged = 0;
+
+        /**
+         * constructor
+         */
+        public Request(int op, int addr, int data, int tag, int pos)
+        {
+            this.op = op;
+            this.addr = addr;
+            this.data = data;
+            this.tag = tag;
+            this.pos = pos;
+        }
+
+        /** @return true for a request that writes to the device */
+        public boolean isWrite()
+        {
+            return (op == SOS.SYSCALL_WRITE) || (op == SOS.SYSCALL_WRITEBLOCK);
+        }
+
+        /** adds the tag of a request merged with this one */
+        private void merge(int otherTag)
+        {
+            if (merged == null)
+            {
+                merged = new int[4];
+            }
+            else if (numMerged == merged.length)
+            {
+                merged = Arrays.copyOf(merged, numMerged * 2);
+            }
+            merged[numMerged++] = otherTag;
+        }
+    }//class Request
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    /** requests waiting to be issued, oldest first */
+    protected ArrayList<Request> m_pending = new ArrayList<Request>();
+
+    /** requests issued to the device that have not completed */
+    private ArrayList<Request> m_inFlight = new ArrayList<Request>();
+
+    /** the position of the last request issued (where the head is) */
+    protected int m_headPos = 0;
+
+    //Statistics
+    private long m_completed = 0;       // requests completed (incl. merged)
+    private long m_merges = 0;          // requests merged into another
+    private long m_issued = 0;          // requests issued to the device
+    private long m_seekDistance = 0;    // sum of the head movements
+    private long m_firstTime = 0;       // when the first request arrived
+    private long m_lastTime = 0;        // when the last one completed
+    private LatencyHistogram m_wait = new LatencyHistogram(); // queued to complete
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * select
+     *
+     * chooses the next request to issue
+     *
+     * @return the index in m_pending of the request (m_pending is not empty)
+     */
+    protected abstract int select();
+
+    /**
+     * issued
+     *
+     * tells the policy a request has been issued.  By default does nothing.
+     */
+    protected void issued(Request r)
+    {
+    }
+
+    /**
+     * parse
+     *
+     * creates a scheduler from its command line description (see above)
+     *
+     * @param spec the description
+     * @return the scheduler
+     * @throws IllegalArgumentException if the description is not valid
+     */
+    public static IOScheduler parse(String spec)
+    {
+        String[] parts = spec.split(":");
+        try
+        {
+            if (parts[0].equals("fifo") && (parts.length == 1))
+            {
+                return fifo();
+            }
+            if (parts[0].equals("elevator") && (parts.length == 1))
+            {
+                return elevator();
+            }
+            if (parts[0].equals("deadline") && (parts.length <= 3))
+            {
+                long read = (parts.length > 1) ? LatencyModel.parseTime(parts[1])
+                                               : 20000000L;
+                long write = (parts.length > 2) ? LatencyModel.parseTime(parts[2])
+                                                : 5 * read;
+                return deadline(read, write);
+            }
+            if (parts[0].equals("fair") && (parts.length == 1))
+            {
+                return fair();
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("bad time in I/O scheduler `"
+                                               + spec + "'");
+        }
+        throw new IllegalArgumentException("unknown I/O scheduler `" + spec + "'");
+    }//parse
+
+    /**
+     * fifo
+     *
+     * @return a scheduler that issues requests in the order they arrive
+     */
+    public static IOScheduler fifo()
+    {
+        return new Fifo();
+    }
+
+    /**
+     * elevator
+     *
+     * @return a SCAN scheduler
+     */
+    public static IOScheduler elevator()
+    {
+        return new Elevator();
+    }
+
+    /**
+     * deadline
+     *
+     * @return a C-SCAN scheduler that serves expired requests first
+     */
+    public static IOScheduler deadline(long readExpire, long writeExpire)
+    {
+        return new Deadline(readExpire, writeExpire);
+    }
+
+    /**
+     * fair
+     *
+     * @return a per-process fair queuing scheduler
+     */
+    public static IOScheduler fair()
+    {
+        return new Fair();
+    }
+
+    /**
+     * add
+     *
+     * queues a request, merging it with a queued one if it duplicates it
+     *
+     * @param r the request
+     * @return true if it was merged (it will complete with the other one)
+     */
+    public boolean add(Request r)
+    {
+        r.time = System.nanoTime();
+        if (m_firstTime == 0)
+        {
+            m_firstTime = r.time;
+        }
+
+        //A word read or a write can share the newest queued request for
+        //the same word (or sector) if it is the same operation.  Merging
+        //with an older one would reorder it around the requests between.
+        if (r.op != SOS.SYSCALL_READBLOCK)
+        {
+            boolean sectorOp = (r.op == SOS.SYSCALL_WRITEBLOCK);
+            for(int i = m_pending.size() - 1; i >= 0; i--)
+            {
+                Request q = m_pending.get(i);
+                boolean qSectorOp = (q.op == SOS.SYSCALL_READBLOCK)
+                    || (q.op == SOS.SYSCALL_WRITEBLOCK);
+                if ((q.addr != r.addr) || (qSectorOp != sectorOp))
+                {
+                    continue;
+                }
+                if (q.op != r.op)
+                {
+                    break;
+                }
+                q.data = r.data;            // the later write wins
+                q.merge(r.tag);
+                m_merges++;
+                return true;
+            }
+        }
+
+        m_pending.add(r);
+        return false;
+    }//add
+
+    /**
+     * hasPending
+     *
+     * @return true if there are requests waiting to be issued
+     */
+    public boolean hasPending()
+    {
+        return !m_pending.isEmpty();
+    }
+
+    /**
+     * getInFlight
+     *
+     * @return the number of requests issued that haven't completed
+     */
+    public int getInFlight()
+    {
+        return m_inFlight.size();
+    }
+
+    /**
+     * next
+     *
+     * removes the next request to issue from the queue
+     *
+     * @return the request
+     */
+    public Request next()
+    {
+        Request r = m_pending.remove(select());
+        m_seekDistance += Math.abs(r.pos - m_headPos);
+        m_headPos = r.pos;
+        m_issued++;
+        issued(r);
+        m_inFlight.add(r);
+        return r;
+    }//next
+
+    /**
+     * complete
+     *
+     * finds (and forgets) the issued request that just completed
+     *
+     * @param tag the tag the device handed back
+     * @return the request -OR- null if no issued request has the tag
+     */
+    public Request complete(int tag)
+    {
+        for(int i = 0; i < m_inFlight.size(); i++)
+        {
+            Request r = m_inFlight.get(i);
+            if (r.tag == tag)
+            {
+                m_inFlight.remove(i);
+                long now = System.nanoTime();
+                m_wait.record(now - r.time);
+                m_completed += 1 + r.numMerged;
+                m_lastTime = now;
+                return r;
+            }
+        }
+        return null;
+    }//complete
+
+    /**
+     * printStats
+     *
+     * prints the throughput and wait times of the requests this scheduler
+     * has handled
+     *
+     * @param name a name for the device it schedules
+     */
+    public void printStats(String name)
+    {
+        double secs = Math.max(1, m_lastTime - m_firstTime) / 1e9;
+        System.out.println(String.format(
+            "%s: I/O scheduler %s: %d requests (%d merged) %.1f req/s"
+            + " mean seek %.1f sectors",
+            name, this, m_completed, m_merges, m_completed / secs,
+            m_seekDistance / (double)Math.max(1, m_issued)));
+        System.out.println("  wait " + LatencyHistogram.header());
+        System.out.println("       " + m_wait);
+    }//printStats
+
+    /**
+     * class Fifo
+     */
+    private static class Fifo extends IOScheduler
+    {
+        protected int select()
+        {
+            return 0;
+        }
+
+        public String toString()
+        {
+            return "fifo";
+        }
+    }//class Fifo
+
+    /**
+     * class Elevator
+     */
+    private static class Elevator extends IOScheduler
+    {
+        private boolean m_up = true;    // direction the head is sweeping
+
+        protected int select()
+        {
+            int best = nearest(m_up);
+            if (best < 0)
+            {
+                //Nothing further this way so turn around
+                m_up = !m_up;
+                best = nearest(m_up);
+            }
+            return best;
+        }
+
+        /**
+         * nearest
+         *
+         * @return the index of the closest request in the given direction
+         *         from the head (the oldest if there is a tie) -OR- -1
+         */
+        private int nearest(boolean up)
+        {
+            int best = -1;
+            for(int i = 0; i < m_pending.size(); i++)
+            {
+                int pos = m_pending.get(i).pos;
+                if ((up ? (pos >= m_headPos) : (pos <= m_headPos))
+                    && ((best < 0)
+                        || (Math.abs(pos - m_headPos)
+                            < Math.abs(m_pending.get(best).pos - m_headPos))))
+                {
+                    best = i;
+                }
+            }
+            return best;
+        }//nearest
+
+        public String toString()
+        {
+            return "elevator";
+        }
+    }//class Elevator
+
+    /**
+     * class Deadline
+     */
+    private static class Deadline extends IOScheduler
+    {
+        private long m_readExpire;
+        private long m_writeExpire;
+        private long m_expired = 0;     // requests issued because they expired
+
+        public Deadline(long readExpire, long writeExpire)
+        {
+            m_readExpire = Math.max(0, readExpire);
+            m_writeExpire = Math.max(0, writeExpire);
+        }
+
+        protected int select()
+        {
+            //The oldest request goes first once it is overdue
+            long now = System.nanoTime();
+            Request oldest = m_pending.get(0);
+            if (now - oldest.time > (oldest.isWrite() ? m_writeExpire : m_readExpire))
+            {
+                m_expired++;
+                return 0;
+            }
+
+            //Otherwise the next one up from the head, wrapping to the lowest
+            int best = -1;
+            int lowest = 0;
+            for(int i = 0; i < m_pending.size(); i++)
+            {
+                int pos = m_pending.get(i).pos;
+                if ((pos >= m_headPos)
+                    && ((best < 0) || (pos < m_pending.get(best).pos)))
+                {
+                    best = i;
+                }
+                if (pos < m_pending.get(lowest).pos)
+                {
+                    lowest = i;
+                }
+            }
+            return (best >= 0) ? best : lowest;
+        }//select
+
+        public String toString()
+        {
+            return "deadline (" + m_expired + " expired)";
+        }
+    }//class Deadline
+
+    /**
+     * class Fair
+     */
+    private static class Fair extends IOScheduler
+    {
+        /** the number of requests issued for each process, by tag */
+        private HashMap<Integer, Long> m_service = new HashMap<Integer, Long>();
+
+        protected int select()
+        {
+            int best = 0;
+            long bestService = Long.MAX_VALUE;
+            for(int i = 0; i < m_pending.size(); i++)
+            {
+                Long service = m_service.get(m_pending.get(i).tag);
+                long s = (service == null) ? 0 : service;
+                if (s < bestService)
+                {
+                    best = i;
+                    bestService = s;
+                }
+            }
+            return best;
+        }//select
+
+        protected void issued(Request r)
+        {
+            Long service = m_service.get(r.tag);
+            m_service.put(r.tag, (service == null) ? 1 : service + 1);
+        }
+
+        public String toString()
+        {
+            return "fair";
+        }
+    }//class Fair
+
+};//class IOScheduler
@@ -21,6 +21,9 @@ public class InterruptController
     //Each interrupt that this controller handles has a unique ID
     public static final int INT_READ_DONE   = 100;
     public static final int INT_WRITE_DONE  = 101;
+    public static final int INT_BLOCK_DONE  = 102;  // sector transfer done
+    public static final int INT_CLOCK       = 103;  // timer tick
+    public static final int INT_ROOM        = 104;  // command queue has room
     
     //======================================================================
     // Variables
@@ -29,7 +32,12 @@ public class InterruptController
     private int m_devNum = 0;       // the id of the device that has data
     private int m_addr = 0;         // the address where data was read/wrote
     private int m_data = 0;         // the data 
+    private int m_tag = -1;         // the tag of the request that completed
     private boolean m_empty = true; // whether or not there is an interrupt
+    private long m_postTime = 0;    // System.nanoTime() when it was posted
+    private long m_lastPostTime = 0;     // post time of the last interrupt taken
+    private long m_lastDispatchTime = 0; // when the last interrupt was taken
+    private InterruptStats m_stats = new InterruptStats(); // latency histograms
     
     //======================================================================
     // Methods
@@ -43,6 +51,41 @@ public class InterruptController
     {
     }
 
+    /**
+     * getStats
+     *
+     * @return the latency histograms for interrupts passing through this
+     *         controller
+     */
+    public InterruptStats getStats()
+    {
+        return m_stats;
+    }
+
+    /**
+     * getLastPostTime
+     *
+     * @return System.nanoTime() when the interrupt most recently returned by
+     *         {@link #getData} was posted.  Only meaningful to the thread that
+     *         called getData.
+     */
+    public long getLastPostTime()
+    {
+        return m_lastPostTime;
+    }
+
+    /**
+     * getLastDispatchTime
+     *
+     * @return System.nanoTime() when the interrupt most recently returned by
+     *         {@link #getData} was taken.  Only meaningful to the thread that
+     *         called getData.
+     */
+    public long getLastDispatchTime()
+    {
+        return m_lastDispatchTime;
+    }
+
     /**
      * Is there data available to take?
      *
@@ -52,6 +95,38 @@ public class InterruptController
         return m_empty;
     }
 
+    /**
+     * waitForInterrupt
+     *
+     * is used by a halted CPU to sleep until a device posts an interrupt
+     *
+     * @param until  System.nanoTime() when to give up waiting (0 to wait as
+     *               long as it takes)
+     */
+    public synchronized void waitForInterrupt(long until)
+    {
+        while(m_empty)
+        {
+            try
+            {
+                if (until == 0)
+                {
+                    wait();
+                }
+                else
+                {
+                    long left = until - System.nanoTime();
+                    if (left <= 0)
+                    {
+                        return;
+                    }
+                    wait(left / 1000000, (int)(left % 1000000));
+                }
+            }
+            catch(InterruptedException e) {} // should never happen
+        }
+    }//waitForInterrupt
+
     /**
      * getData
      *
@@ -68,12 +143,19 @@ public class InterruptController
             catch(InterruptedException e) {} // should never happen
         }
 
-        //Fill an array with the device number and data
-        int[] retVal = new int[4];
+        //Fill an array with the device number, data and tag
+        int[] retVal = new int[5];
         retVal[0] = m_operation;
         retVal[1] = m_devNum;
         retVal[2] = m_addr;
         retVal[3] = m_data;
+        retVal[4] = m_tag;
+
+        //Record how long the interrupt waited to be taken
+        m_lastPostTime = m_postTime;
+        m_lastDispatchTime = System.nanoTime();
+        m_stats.recordDispatch(m_operation, m_devNum, m_lastPostTime,
+                               m_lastDispatchTime);
 
         //Make the interrupt controller available for other devices
         m_empty = true;
@@ -83,29 +165,51 @@ public class InterruptController
         
     }//getData
 
+    /**
+     * putData
+     *
+     * is used by a device to signal that it has data for the CPU.  The
+     * interrupt is not tagged.
+     */
+    public void putData(int operation, int devNum, int addr, int data)
+    {
+        putData(operation, devNum, addr, data, -1);
+    }//putData
+
     /**
      * putData
      *
      * is used by a device to signal that it has data for the CPU.
+     *
+     * @param tag  the tag the OS gave the request that completed
      */
-    public synchronized void putData(int operation, int devNum, int addr, int data)
+    public void putData(int operation, int devNum, int addr, int data, int tag)
     {
-        while(!m_empty)
+        //Time spent getting the lock counts as stall time too
+        long start = System.nanoTime();
+        
+        synchronized(this)
         {
-            try
+            while(!m_empty)
             {
-                wait();
+                try
+                {
+                    wait();
+                }
+                catch(InterruptedException e) {} // should never happen
             }
-            catch(InterruptedException e) {} // should never happen
+
+            //Make the data on the bus available to the CPU
+            m_empty = false;
+            m_devNum = devNum;
+            m_operation = operation;
+            m_addr = addr;
+            m_data = data;
+            m_tag = tag;
+            m_postTime = System.nanoTime();
+            m_stats.recordStall(devNum, m_postTime - start);
+            notifyAll();
         }
-        
-        //Make the data on the bus available to the CPU
-        m_empty = false;
-        m_devNum = devNum;
-        m_operation = operation;
-        m_addr = addr;
-        m_data = data;
-        notifyAll();
             
     }//putData
     
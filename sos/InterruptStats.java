@@ -0,0 +1,280 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class collects latency histograms for the interrupts that pass
+ * through the {@link InterruptController}.  Each interrupt is timestamped
+ * when a device posts it, when the CPU dispatches it to the OS and when the
+ * process it unblocked next gets the CPU.  From those stamps it keeps, per
+ * device and interrupt type:
+ *
+ * <ul>
+ * <li>post to dispatch: how long the interrupt sat in the controller</li>
+ * <li>dispatch to run: how long the OS took to schedule the woken process</li>
+ * <li>post to run: the end-to-end latency seen by the process</li>
+ * </ul>
+ *
+ * It also records, per device, how long the device thread stalled in
+ * {@link InterruptController#putData} waiting for the slot to clear.
+ *
+ * All recording is done with primitive timestamps into preallocated
+ * histograms so it is cheap enough to leave on.  Dispatch and stall samples
+ * are recorded while holding the interrupt controller's lock and wakeup
+ * samples are recorded by the CPU thread, so each histogram only ever has
+ * one writer at a time.
+ *
+ * @see LatencyHistogram
+ * @see InterruptController
+ */
+public class InterruptStats
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    //Indexes of the histograms kept for each device/interrupt type
+    public static final int POST_TO_DISPATCH = 0;
+    public static final int DISPATCH_TO_RUN  = 1;
+    public static final int POST_TO_RUN      = 2;
+    public static final int NUM_KINDS        = 3;
+
+    //Labels for the kinds above
+    private static final String[] KIND_NAMES = {
+        "post->dispatch", "dispatch->run", "post->run"
+    };
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    /**
+     * histograms indexed by [device id][interrupt type][kind].  Rows are
+     * created the first time a device is seen.
+     */
+    private LatencyHistogram[][][] m_latency = new LatencyHistogram[0][][];
+
+    /**
+     * putData stall histograms indexed by device id
+     */
+    private LatencyHistogram[] m_stall = new LatencyHistogram[0];
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * the constructor does nothing special
+     */
+    public InterruptStats()
+    {
+    }
+
+    /**
+     * typeIndex
+     *
+     * @param operation one of the INT_ constants in InterruptController
+     * @return a zero based index for the given interrupt type
+     */
+    private static int typeIndex(int operation)
+    {
+        return operation - InterruptController.INT_READ_DONE;
+    }
+
+    /**
+     * getLatency
+     *
+     * finds (creating if necessary) the histogram for a given device,
+     * interrupt type and kind of latency.
+     *
+     * @return the histogram or null if the device id or type is invalid
+     */
+    private synchronized LatencyHistogram getLatency(int devNum, int operation, int kind)
+    {
+        int type = typeIndex(operation);
+        if ((devNum < 0) || (type < 0))
+        {
+            return null;
+        }
+
+        //Grow the tables to fit this device and type
+        if (devNum >= m_latency.length)
+        {
+            m_latency = Arrays.copyOf(m_latency, devNum + 1);
+        }
+        if (m_latency[devNum] == null)
+        {
+            m_latency[devNum] = new LatencyHistogram[type + 1][];
+        }
+        else if (type >= m_latency[devNum].length)
+        {
+            m_latency[devNum] = Arrays.copyOf(m_latency[devNum], type + 1);
+        }
+        if (m_latency[devNum][type] == null)
+        {
+            LatencyHistogram[] row = new LatencyHistogram[NUM_KINDS];
+            for(int i = 0; i < NUM_KINDS; i++)
+            {
+                row[i] = new LatencyHistogram();
+            }
+            m_latency[devNum][type] = row;
+        }
+
+        return m_latency[devNum][type][kind];
+    }//getLatency
+
+    /**
+     * getStall
+     *
+     * finds (creating if necessary) the putData stall histogram for a device
+     *
+     * @return the histogram or null if the device id is invalid
+     */
+    private synchronized LatencyHistogram getStall(int devNum)
+    {
+        if (devNum < 0)
+        {
+            return null;
+        }
+        if (devNum >= m_stall.length)
+        {
+            m_stall = Arrays.copyOf(m_stall, devNum + 1);
+        }
+        if (m_stall[devNum] == null)
+        {
+            m_stall[devNum] = new LatencyHistogram();
+        }
+
+        return m_stall[devNum];
+    }//getStall
+
+    /**
+     * recordStall
+     *
+     * records how long a device waited in putData for the interrupt slot
+     *
+     * @param devNum the id of the device that posted the interrupt
+     * @param ns     the time spent waiting in nanoseconds
+     */
+    public void recordStall(int devNum, long ns)
+    {
+        LatencyHistogram h = getStall(devNum);
+        if (h != null)
+        {
+            h.record(ns);
+        }
+    }//recordStall
+
+    /**
+     * recordDispatch
+     *
+     * records the time between a device posting an interrupt and the CPU
+     * taking it from the controller
+     *
+     * @param operation  the interrupt type
+     * @param devNum     the id of the device that posted the interrupt
+     * @param postTime   System.nanoTime() when the interrupt was posted
+     * @param dispatchTime System.nanoTime() when the CPU took the interrupt
+     */
+    public void recordDispatch(int operation, int devNum, long postTime,
+                               long dispatchTime)
+    {
+        LatencyHistogram h = getLatency(devNum, operation, POST_TO_DISPATCH);
+        if (h != null)
+        {
+            h.record(dispatchTime - postTime);
+        }
+    }//recordDispatch
+
+    /**
+     * recordRun
+     *
+     * records the latency between an interrupt and the process it woke
+     * getting the CPU
+     *
+     * @param operation  the interrupt type
+     * @param devNum     the id of the device that posted the interrupt
+     * @param postTime   System.nanoTime() when the interrupt was posted
+     * @param dispatchTime System.nanoTime() when the CPU took the interrupt
+     * @param runTime    System.nanoTime() when the process was restored
+     */
+    public void recordRun(int operation, int devNum, long postTime,
+                          long dispatchTime, long runTime)
+    {
+        LatencyHistogram h = getLatency(devNum, operation, DISPATCH_TO_RUN);
+        if (h != null)
+        {
+            h.record(runTime - dispatchTime);
+            getLatency(devNum, operation, POST_TO_RUN).record(runTime - postTime);
+        }
+    }//recordRun
+
+    /**
+     * typeName
+     *
+     * @return a printable name for an interrupt type
+     */
+    private static String typeName(int type)
+    {
+        switch(type + InterruptController.INT_READ_DONE)
+        {
+            case InterruptController.INT_READ_DONE:
+                return "READ";
+            case InterruptController.INT_WRITE_DONE:
+                return "WRITE";
+            case InterruptController.INT_BLOCK_DONE:
+                return "BLOCK";
+            case InterruptController.INT_CLOCK:
+                return "CLOCK";
+            case InterruptController.INT_ROOM:
+                return "ROOM";
+            default:
+                return "INT" + (type + InterruptController.INT_READ_DONE);
+        }
+    }//typeName
+
+    /**
+     * print
+     *
+     * prints a table of every histogram that has samples in it
+     */
+    public synchronized void print()
+    {
+        System.out.println("");
+        System.out.println("INTERRUPT LATENCY");
+        System.out.println(String.format("%-4s %-6s %-15s ", "dev", "type", "latency")
+                           + LatencyHistogram.header());
+        for(int dev = 0; dev < m_latency.length; dev++)
+        {
+            if (m_latency[dev] == null)
+            {
+                continue;
+            }
+            for(int type = 0; type < m_latency[dev].length; type++)
+            {
+                if (m_latency[dev][type] == null)
+                {
+                    continue;
+                }
+                for(int kind = 0; kind < NUM_KINDS; kind++)
+                {
+                    System.out.println(String.format("%-4d %-6s %-15s ", dev,
+                                                     typeName(type),
+                                                     KIND_NAMES[kind])
+                                       + m_latency[dev][type][kind]);
+                }
+            }
+        }//for
+
+        for(int dev = 0; dev < m_stall.length; dev++)
+        {
+            if (m_stall[dev] != null)
+            {
+                System.out.println(String.format("%-4d %-6s %-15s ", dev, "-",
+                                                 "putData stall")
+                                   + m_stall[dev]);
+            }
+        }//for
+    }//print
+
+};//class InterruptStats
@@ -1,23 +1,60 @@
 package sos;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * This class simulates a simple, non-sharable read-only device.  It always
  * returns a random number to the CPU via the data bus.  
  *
+ * If it is given a {@link TypeAheadBuffer} it returns the values from that
+ * buffer instead.  A read that finds a value already buffered completes
+ * immediately; one that finds the buffer empty takes the full device
+ * latency and then, if there still is no input, is set aside until the
+ * buffer's filling thread reports some.  No device thread (or event loop)
+ * waits for the typist.
+ *
  * @see Sim
  * @see CPU
  * @see Device
  */
-public class KeyboardDevice implements Device, Runnable
+public class KeyboardDevice implements Device, Runnable, DeviceEventLoop.Serviceable
 {
     private int m_Id = -1;             // The OS assigned device ID
-    private boolean m_request = false; // is the device currently processing a request?
-    private int m_addr = 0;            // address to read from
-    private int m_maxLatency = 10000;  // maximum latency in ns
-    private int m_minLatency = 500;    // minimum latnecy in ns
+    private DeviceQueue m_queue = new DeviceQueue(1); // pending requests
+    private LatencyModel m_latency = LatencyModel.uniform(500, 10000); // request time in ns
+    private SplittableRandom m_random = new SplittableRandom(); // source of values
     private InterruptController m_IC = null; // reference to the interrupt controller
+    private DeviceSignal m_signal = new DeviceSignal(); // wakes run() on a request
+    private DeviceEventLoop.Handle m_loop = null; // set if driven by an event loop
+    private int m_data = 0;            // the value for the current request
+
+    private TypeAheadBuffer m_typeAhead = null; // buffered input (null for random)
+    private boolean m_missed = false;  // did the current request miss the buffer?
+    private AtomicBoolean m_awaitingInput = new AtomicBoolean(false); // set aside for input
+    private long m_hits = 0;           // reads served from the type-ahead buffer
+    private long m_misses = 0;         // reads that found the buffer empty
+    private long m_eofReads = 0;       // reads after the input ran out
+    private LatencyHistogram m_readLatency = new LatencyHistogram(); // read to interrupt
+
+    /**
+     * class Provider
+     *
+     * creates keyboards for a machine description (type "keyboard")
+     */
+    public static class Provider implements DeviceProvider
+    {
+        public String getType()
+        {
+            return "keyboard";
+        }
+
+        public Device create(InterruptController ic, RAM ram, int id,
+                             Properties params)
+        {
+            return new KeyboardDevice(ic);
+        }
+    }//class Provider
 
     /**
      * Verbose mode generates helpful debugging printlns
@@ -46,8 +83,7 @@ public class KeyboardDevice implements Device, Runnable
             min = tmp;
         }
         
-        m_minLatency = min;
-        m_maxLatency = max;
+        m_latency = LatencyModel.uniform(min, max);
         m_IC = ic;
     }//ctor
 
@@ -86,13 +122,146 @@ public class KeyboardDevice implements Device, Runnable
     /**
      * isAvailable
      *
-     * @return true
+     * @return true if the command queue has room for another request
      */
     public boolean isAvailable()
     {
-        return !m_request;
+        return !m_queue.isFull();
+    }
+
+    /**
+     * getQueueDepth
+     *
+     * @return the number of requests the device can hold at once
+     */
+    public int getQueueDepth()
+    {
+        return m_queue.getDepth();
+    }
+
+    /**
+     * setQueueDepth
+     *
+     * sets the number of requests the device can hold at once.  Must be
+     * called before the device is used.
+     *
+     * @param depth the new queue depth
+     */
+    public void setQueueDepth(int depth)
+    {
+        m_queue = new DeviceQueue(depth);
+    }
+
+    /**
+     * getQueue
+     *
+     * @return the device's command queue (for statistics)
+     */
+    public DeviceQueue getQueue()
+    {
+        return m_queue;
     }
     
+    /**
+     * setLatencyModel
+     *
+     * replaces the model that decides how long each read takes (when it
+     * misses the type-ahead buffer)
+     *
+     * @param model the new model
+     */
+    public void setLatencyModel(LatencyModel model)
+    {
+        m_latency = model;
+    }
+
+    /**
+     * setSeed
+     *
+     * restarts the generators for the values read and for the latency from
+     * a seed
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed)
+    {
+        SplittableRandom r = new SplittableRandom(seed);
+        m_random = r.split();
+        m_latency.setSeed(r.nextLong());
+    }
+
+    /**
+     * setTypeAhead
+     *
+     * has this keyboard return values from a type-ahead buffer instead of
+     * random numbers.  Must be called before the device is used.
+     *
+     * @param buf the buffer (which should already be started)
+     */
+    public void setTypeAhead(TypeAheadBuffer buf)
+    {
+        m_typeAhead = buf;
+        buf.setListener(new Runnable()
+        {
+            public void run()
+            {
+                inputArrived();
+            }
+        });
+    }
+
+    /**
+     * inputArrived
+     *
+     * called on the type-ahead buffer's filling thread when input arrives.
+     * Restarts a request that was set aside waiting for it.
+     */
+    private void inputArrived()
+    {
+        if (m_awaitingInput.compareAndSet(true, false))
+        {
+            restart();
+        }
+    }
+
+    /**
+     * restart
+     *
+     * has the request at the head of the queue started (again) by the
+     * event loop or the device thread
+     */
+    private void restart()
+    {
+        if (m_loop != null)
+        {
+            m_loop.submit();
+        }
+        else
+        {
+            m_signal.post();
+        }
+    }
+
+    /**
+     * printStats
+     *
+     * prints the type-ahead hit rate (reads after the end of input are
+     * counted as hits) and the distribution of the time from
+     * each read request to its completion interrupt
+     *
+     * @param name a name for this device
+     */
+    public void printStats(String name)
+    {
+        long reads = m_readLatency.getCount();
+        System.out.println(String.format(
+            "%s: reads=%d type-ahead hits=%d (%.1f%%) misses=%d after eof=%d",
+            name, reads, m_hits, (reads == 0) ? 0.0 : (100.0 * m_hits) / reads,
+            m_misses, m_eofReads));
+        System.out.println("  read latency " + LatencyHistogram.header());
+        System.out.println("               " + m_readLatency);
+    }//printStats
+
     /**
      * isReadable
      *
@@ -121,10 +290,13 @@ public class KeyboardDevice implements Device, Runnable
      * method records a request for service from the device and as such is
      * analagous to setting a value in a register on the device's controller.
      */
-    public int read(int addr)
+    public int read(int addr, int tag)
     {
-        m_addr = addr;
-        m_request = true;
+        //If the device was idle it must be started
+        if (m_queue.add(addr, 0, tag))
+        {
+            restart();
+        }
 
         return -9999;           // no longer used
     }//read
@@ -134,16 +306,115 @@ public class KeyboardDevice implements Device, Runnable
      *
      * not implemented
      */
-    public void write(int addr, int data)
+    public void write(int addr, int data, int tag)
     {
         //This method should never be called
     }
     
+    /**
+     * setEventLoop
+     *
+     * has this device driven by an event loop rather than by its own
+     * thread.  Must be called before the device is used and {@link #run}
+     * must not be called afterwards.
+     *
+     * @param loop the loop that will service this device's requests
+     */
+    public void setEventLoop(DeviceEventLoop loop)
+    {
+        m_loop = loop.register(this);
+    }
+
+    /**
+     * startRequest
+     *
+     * generates the value for the request at the head of the queue
+     *
+     * @return the latency of the request in nanoseconds
+     */
+    public long startRequest()
+    {
+        //Take buffered input if there is some, otherwise wait for the
+        //"typist" (the value itself is taken in finishRequest)
+        if (m_typeAhead != null)
+        {
+            //A request that was set aside has already taken its latency
+            if (m_missed)
+            {
+                return 0;
+            }
+            if (m_typeAhead.isReady())
+            {
+                if (m_typeAhead.isExhausted())
+                {
+                    m_eofReads++;
+                }
+                m_hits++;
+                m_missed = false;
+                m_data = m_typeAhead.take();
+                return 0;
+            }
+            m_misses++;
+            m_missed = true;
+            return m_latency.next();
+        }
+
+        //generate a random multiple of 1000
+        m_data = m_random.nextInt(999999) * 1000;
+
+        return m_latency.next();
+    }//startRequest
+
+    /**
+     * finishRequest
+     *
+     * removes the request at the head of the queue and puts its value on
+     * the data bus.  A request that missed the buffer and still has no
+     * input is left at the head of the queue until {@link #inputArrived}
+     * restarts it.
+     *
+     * @return true if there are more requests to service now
+     */
+    public boolean finishRequest()
+    {
+        //A read that missed the buffer gets the next value typed
+        if (m_missed)
+        {
+            if (!m_typeAhead.isReady())
+            {
+                //Set it aside unless input arrived before the filling
+                //thread could see it was wanted
+                m_awaitingInput.set(true);
+                if (!m_typeAhead.isReady()
+                    || !m_awaitingInput.compareAndSet(true, false))
+                {
+                    return false;
+                }
+            }
+            m_data = m_typeAhead.take();
+            m_missed = false;
+        }
+
+        //Notify the interrupt controller of the available data
+        if (m_verbose)
+        {
+            System.out.println("Keyboard puts '" + m_data + "' on the data bus.");
+        }
+        int addr = m_queue.getAddr();
+        int tag = m_queue.getTag();
+        m_readLatency.record(System.nanoTime() - m_queue.getAddTime());
+
+        //Make room for another request (before the CPU hears there is some)
+        boolean more = m_queue.remove();
+        m_IC.putData(InterruptController.INT_READ_DONE, m_Id, addr, m_data, tag);
+        return more;
+    }//finishRequest
+
     /**
      * run
      *
      * This method represents the device + controller.  It watches for reqeusts
-     * (via m_request and m_data) and handles them.  It also inserts a random
+     * (via m_queue) and handles them.  It also inserts a random
      * latency to simulate the amount of time required.
      *
      */
@@ -152,32 +423,18 @@ public class KeyboardDevice implements Device, Runnable
         //Device runs until program ends
         while(true)
         {
-            //If there is no request to process, yield the CPU to another thread
-            while (!m_request)
-            {
-                Thread.yield();
-            }
+            //Wait (without burning the host CPU) for a request to process
+            m_signal.await();
 
-            //generate a random multiple of 1000
-            int rn = (int)(Math.random() * 999999) * 1000;
-
-            //Sleep to simulate the latency
-            try
+            //Work through the queue until it is empty
+            boolean more = true;
+            while (more)
             {
-                int latency = (rn % (m_maxLatency - m_minLatency)) + m_minLatency;
-                Thread.sleep(latency / 1000, latency % 1000);
-            }
-            catch(InterruptedException e) {} // should never happen
-            
-            //Notify the interrupt controller of the available data
-            if (m_verbose)
-            {
-                System.out.println("Keyboard puts '" + rn + "' on the data bus.");
-            }
-            m_IC.putData(InterruptController.INT_READ_DONE, m_Id, m_addr, rn);
+                //Sleep to simulate the latency
+                LatencyModel.sleep(startRequest());
 
-            //Make the device available for another request
-            m_request = false;
+                more = finishRequest();
+            }
         }//while
     }//run
 
@@ -0,0 +1,139 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * This class is where the keyboard's input comes from when it has a
+ * type-ahead buffer.  A source is either a stream of whitespace separated
+ * integers (an input file or stdin) or a seeded generator that produces the
+ * same kind of values the keyboard has always produced, but reproducibly.
+ *
+ * @see TypeAheadBuffer
+ * @see KeyboardDevice
+ */
+public abstract class KeyboardSource
+{
+    /**
+     * next
+     *
+     * @return the next value "typed" on the keyboard.  May wait for input.
+     * @throws EOFException when the source has no more input
+     */
+    public abstract int next() throws IOException;
+
+    /**
+     * parse
+     *
+     * creates a source from its command line description: "-" for stdin,
+     * "seed:N" for a generator seeded with N, otherwise the name of an input
+     * file
+     *
+     * @param spec the description of the source
+     * @return the source
+     */
+    public static KeyboardSource parse(String spec) throws IOException
+    {
+        if (spec.equals("-"))
+        {
+            return fromStream(System.in);
+        }
+        if (spec.startsWith("seed:"))
+        {
+            try
+            {
+                return seeded(Long.parseLong(spec.substring(5)));
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IOException("bad seed in `" + spec + "'");
+            }
+        }
+        return fromStream(new FileInputStream(spec));
+    }//parse
+
+    /**
+     * fromStream
+     *
+     * @return a source that reads whitespace separated integers from a stream
+     */
+    public static KeyboardSource fromStream(InputStream in)
+    {
+        return new StreamSource(in);
+    }
+
+    /**
+     * seeded
+     *
+     * @return a source that generates random multiples of 1000 from a seed
+     */
+    public static KeyboardSource seeded(long seed)
+    {
+        return new SeededSource(seed);
+    }
+
+    /**
+     * class StreamSource
+     *
+     * reads whitespace separated integers from a stream.  Anything else in
+     * the stream is skipped.
+     */
+    private static class StreamSource extends KeyboardSource
+    {
+        private InputStream m_in;
+
+        public StreamSource(InputStream in)
+        {
+            m_in = new BufferedInputStream(in);
+        }
+
+        public int next() throws IOException
+        {
+            //Skip to the start of the next number
+            int c = m_in.read();
+            while ((c >= 0) && (c != '-') && ((c < '0') || (c > '9')))
+            {
+                c = m_in.read();
+            }
+            if (c < 0)
+            {
+                throw new EOFException();
+            }
+
+            boolean negative = (c == '-');
+            if (negative)
+            {
+                c = m_in.read();
+            }
+            int value = 0;
+            while ((c >= '0') && (c <= '9'))
+            {
+                value = (value * 10) + (c - '0');
+                c = m_in.read();
+            }
+            return negative ? -value : value;
+        }//next
+    }//class StreamSource
+
+    /**
+     * class SeededSource
+     *
+     * generates the same range of values as the keyboard without a
+     * type-ahead buffer, from a fixed seed
+     */
+    private static class SeededSource extends KeyboardSource
+    {
+        private SplittableRandom m_random;
+
+        public SeededSource(long seed)
+        {
+            m_random = new SplittableRandom(seed);
+        }
+
+        public int next()
+        {
+            return m_random.nextInt(999999) * 1000;
+        }
+    }//class SeededSource
+
+};//class KeyboardSource
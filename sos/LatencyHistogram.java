@@ -0,0 +1,258 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class records a distribution of latencies (in nanoseconds) using a
+ * fixed set of log-linear buckets in the style of an HDR histogram.  Every
+ * power of two is split into {@link #SUB_BUCKETS} equal sub-buckets so values
+ * are kept to within about 3% of their true size no matter how large they
+ * are.
+ *
+ * Recording a value is a handful of integer operations and an array
+ * increment with no allocation, so histograms can be left on for every run
+ * of the simulation.  This class is not synchronized: each histogram must
+ * only be recorded to by one thread at a time.
+ *
+ * @see InterruptStats
+ */
+public class LatencyHistogram
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** number of bits of precision kept for each recorded value */
+    public static final int SUB_BUCKET_BITS = 6;
+
+    /** number of sub-buckets per power of two */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** half of the sub-buckets (the top half of each power of two) */
+    private static final int HALF_BUCKETS = SUB_BUCKETS >> 1;
+
+    /** total number of buckets needed to cover every positive long */
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * HALF_BUCKETS
+                                           + SUB_BUCKETS;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private long[] m_counts = new long[NUM_BUCKETS]; // samples per bucket
+    private long m_total = 0;                        // number of samples
+    private long m_sum = 0;                          // sum of all samples
+    private long m_max = 0;                          // largest sample
+    private long m_min = Long.MAX_VALUE;             // smallest sample
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * the constructor does nothing special
+     */
+    public LatencyHistogram()
+    {
+    }
+
+    /**
+     * bucketIndex
+     *
+     * @param value a non-negative value
+     * @return the index of the bucket that holds the given value
+     */
+    private static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int)value;
+        }
+
+        //Keep only the top SUB_BUCKET_BITS bits of the value
+        int shift = (64 - SUB_BUCKET_BITS) - Long.numberOfLeadingZeros(value);
+        return (shift * HALF_BUCKETS) + (int)(value >>> shift);
+    }//bucketIndex
+
+    /**
+     * bucketValue
+     *
+     * @param idx a bucket index
+     * @return the largest value that would be recorded in the given bucket
+     */
+    private static long bucketValue(int idx)
+    {
+        if (idx < SUB_BUCKETS)
+        {
+            return idx;
+        }
+
+        int shift = (idx / HALF_BUCKETS) - 1;
+        long sub = idx - (shift * HALF_BUCKETS);
+        return ((sub + 1) << shift) - 1;
+    }//bucketValue
+
+    /**
+     * record
+     *
+     * adds a single sample to the histogram.  Negative values (which can
+     * only come from a misbehaving clock) are recorded as zero.
+     *
+     * @param value the latency to record in nanoseconds
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+
+        m_counts[bucketIndex(value)]++;
+        m_total++;
+        m_sum += value;
+        if (value > m_max)
+        {
+            m_max = value;
+        }
+        if (value < m_min)
+        {
+            m_min = value;
+        }
+    }//record
+
+    /**
+     * getCount
+     *
+     * @return the number of samples recorded
+     */
+    public long getCount()
+    {
+        return m_total;
+    }
+
+    /**
+     * getMax
+     *
+     * @return the largest sample recorded (or 0 if there are none)
+     */
+    public long getMax()
+    {
+        return m_max;
+    }
+
+    /**
+     * getMin
+     *
+     * @return the smallest sample recorded (or 0 if there are none)
+     */
+    public long getMin()
+    {
+        return (m_total == 0) ? 0 : m_min;
+    }
+
+    /**
+     * getMean
+     *
+     * @return the average of all samples recorded (or 0 if there are none)
+     */
+    public double getMean()
+    {
+        return (m_total == 0) ? 0.0 : ((double)m_sum / m_total);
+    }
+
+    /**
+     * getValueAtPercentile
+     *
+     * @param percentile a percentile between 0.0 and 100.0
+     * @return a value that is at least as large as the given percentile of
+     *         all the samples recorded (and never more than the largest
+     *         sample)
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (m_total == 0)
+        {
+            return 0;
+        }
+
+        //Find the rank of the sample we are looking for
+        long rank = (long)Math.ceil((percentile / 100.0) * m_total);
+        if (rank < 1)
+        {
+            rank = 1;
+        }
+
+        long seen = 0;
+        for(int i = 0; i < NUM_BUCKETS; i++)
+        {
+            seen += m_counts[i];
+            if (seen >= rank)
+            {
+                return Math.min(bucketValue(i), m_max);
+            }
+        }
+
+        return m_max;
+    }//getValueAtPercentile
+
+    /**
+     * add
+     *
+     * adds all the samples from another histogram to this one
+     *
+     * @param other the histogram to copy samples from
+     */
+    public void add(LatencyHistogram other)
+    {
+        for(int i = 0; i < NUM_BUCKETS; i++)
+        {
+            m_counts[i] += other.m_counts[i];
+        }
+        m_total += other.m_total;
+        m_sum += other.m_sum;
+        m_max = Math.max(m_max, other.m_max);
+        m_min = Math.min(m_min, other.m_min);
+    }//add
+
+    /**
+     * reset
+     *
+     * discards all samples recorded so far
+     */
+    public void reset()
+    {
+        Arrays.fill(m_counts, 0);
+        m_total = 0;
+        m_sum = 0;
+        m_max = 0;
+        m_min = Long.MAX_VALUE;
+    }//reset
+
+    /**
+     * toString
+     *
+     * @return a one line summary of the histogram in microseconds
+     */
+    public String toString()
+    {
+        return String.format("%9d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                             m_total,
+                             getMean() / 1000.0,
+                             getValueAtPercentile(50.0) / 1000.0,
+                             getValueAtPercentile(99.0) / 1000.0,
+                             getValueAtPercentile(99.9) / 1000.0,
+                             m_max / 1000.0);
+    }//toString
+
+    /**
+     * header
+     *
+     * @return column headings that line up with {@link #toString}
+     */
+    public static String header()
+    {
+        return String.format("%9s %10s %10s %10s %10s %10s",
+                             "count", "mean(us)", "p50(us)", "p99(us)",
+                             "p999(us)", "max(us)");
+    }//header
+
+};//class LatencyHistogram
@@ -0,0 +1,393 @@
+package sos;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.io.*;
+
+/**
+ * This class decides how long each request to a device takes.  Every device
+ * has its own model with its own random number generator, so devices don't
+ * contend for (or disturb) a shared generator and a run can be repeated
+ * exactly by giving the same seeds.
+ *
+ * Models are described on the command line as:
+ *
+ * <ul>
+ * <li>const:T           - every request takes T</li>
+ * <li>uniform:MIN:MAX   - uniformly distributed between MIN and MAX</li>
+ * <li>exp:MEAN[:MIN]    - MIN plus an exponential delay with the given mean</li>
+ * <li>lognormal:MEDIAN:SIGMA - lognormally distributed (SIGMA is the
+ *     standard deviation of the underlying normal distribution)</li>
+ * <li>trace:FILE        - replays the whitespace separated times in FILE,
+ *     starting over at the end</li>
+ * </ul>
+ *
+ * Times are in nanoseconds unless they end in us, ms or s.
+ *
+ * @see Device
+ * @see Sim
+ */
+public abstract class LatencyModel
+{
+    /** the generator for this model's random delays */
+    protected SplittableRandom m_random = new SplittableRandom();
+
+    /**
+     * next
+     *
+     * @return the latency of the next request in nanoseconds
+     */
+    public abstract long next();
+
+    /**
+     * setSeed
+     *
+     * restarts this model's random number generator from a seed
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed)
+    {
+        m_random = new SplittableRandom(seed);
+    }
+
+    /**
+     * seedFor
+     *
+     * @return a seed for a given device derived from a seed for the whole
+     *         machine, so each device gets a different but repeatable stream
+     */
+    public static long seedFor(long seed, int devId)
+    {
+        return new SplittableRandom(seed + (devId * 0x9E3779B97F4A7C15L)).nextLong();
+    }
+
+    /**
+     * sleep
+     *
+     * waits for a number of nanoseconds (as closely as the host allows).
+     * Unlike Thread.sleep this doesn't round short delays up to a whole
+     * millisecond.
+     *
+     * @param ns the time to wait
+     */
+    public static void sleep(long ns)
+    {
+        long end = System.nanoTime() + ns;
+        while (ns > 0)
+        {
+            LockSupport.parkNanos(ns);
+            ns = end - System.nanoTime();
+        }
+    }//sleep
+
+    /**
+     * parseTime
+     *
+     * @return a time in nanoseconds from a number optionally ending in ns,
+     *         us, ms or s
+     * @throws NumberFormatException if it is not a valid time
+     */
+    public static long parseTime(String value)
+    {
+        return parseTime(value, 1L);
+    }//parseTime
+
+    /**
+     * parseTime
+     *
+     * @param value the time: a number optionally ending in ns, us, ms or s
+     * @param unit  the nanoseconds a number without one of those stands for
+     * @return the time in nanoseconds
+     * @throws NumberFormatException if it is not a valid time
+     */
+    public static long parseTime(String value, long unit)
+    {
+        //"s" comes last since the others end in it too
+        String[] suffixes = { "ns", "us", "ms", "s" };
+        long[] scales = { 1L, 1000L, 1000000L, 1000000000L };
+        for (int i = 0; i < suffixes.length; ++i)
+        {
+            if (value.endsWith(suffixes[i]))
+            {
+                String num = value.substring(0, value.length() - suffixes[i].length());
+                return (long)(Double.parseDouble(num) * scales[i]);
+            }
+        }
+        return (long)(Double.parseDouble(value) * unit);
+    }//parseTime
+
+    /**
+     * parse
+     *
+     * creates a model from its command line description (see above)
+     *
+     * @param spec the description
+     * @return the model
+     * @throws IOException if the description is not valid or a trace file
+     *         can't be read
+     */
+    public static LatencyModel parse(String spec) throws IOException
+    {
+        String[] parts = spec.split(":");
+        try
+        {
+            if (parts[0].equals("const") && (parts.length == 2))
+            {
+                return constant(parseTime(parts[1]));
+            }
+            if (parts[0].equals("uniform") && (parts.length == 3))
+            {
+                return uniform(parseTime(parts[1]), parseTime(parts[2]));
+            }
+            if (parts[0].equals("exp") && (parts.length == 2))
+            {
+                return exponential(parseTime(parts[1]), 0);
+            }
+            if (parts[0].equals("exp") && (parts.length == 3))
+            {
+                return exponential(parseTime(parts[1]), parseTime(parts[2]));
+            }
+            if (parts[0].equals("lognormal") && (parts.length == 3))
+            {
+                return lognormal(parseTime(parts[1]), Double.parseDouble(parts[2]));
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IOException("bad number in latency model `" + spec + "'");
+        }
+        if (parts[0].equals("trace") && (parts.length >= 2))
+        {
+            return trace(spec.substring(6));
+        }
+        throw new IOException("unknown latency model `" + spec + "'");
+    }//parse
+
+    /**
+     * constant
+     *
+     * @return a model where every request takes the same time
+     */
+    public static LatencyModel constant(long ns)
+    {
+        return new Constant(ns);
+    }
+
+    /**
+     * uniform
+     *
+     * @return a model with uniformly distributed latencies in [min, max)
+     */
+    public static LatencyModel uniform(long min, long max)
+    {
+        return new Uniform(Math.min(min, max), Math.max(min, max));
+    }
+
+    /**
+     * exponential
+     *
+     * @return a model with exponentially distributed latencies with the
+     *         given mean, offset by a minimum
+     */
+    public static LatencyModel exponential(long mean, long min)
+    {
+        return new Exponential(mean, min);
+    }
+
+    /**
+     * lognormal
+     *
+     * @return a model with lognormally distributed latencies
+     */
+    public static LatencyModel lognormal(long median, double sigma)
+    {
+        return new LogNormal(median, sigma);
+    }
+
+    /**
+     * trace
+     *
+     * @return a model that replays the latencies in a file
+     */
+    public static LatencyModel trace(String fileName) throws IOException
+    {
+        return new Trace(fileName);
+    }
+
+    /**
+     * class Constant
+     */
+    private static class Constant extends LatencyModel
+    {
+        private long m_ns;
+
+        public Constant(long ns)
+        {
+            m_ns = Math.max(0, ns);
+        }
+
+        public long next()
+        {
+            return m_ns;
+        }
+
+        public String toString()
+        {
+            return "const:" + m_ns;
+        }
+    }//class Constant
+
+    /**
+     * class Uniform
+     */
+    private static class Uniform extends LatencyModel
+    {
+        private long m_min;
+        private long m_max;
+
+        public Uniform(long min, long max)
+        {
+            m_min = Math.max(0, min);
+            m_max = Math.max(m_min, max);
+        }
+
+        public long next()
+        {
+            if (m_max == m_min)
+            {
+                return m_min;
+            }
+            return m_random.nextLong(m_min, m_max);
+        }
+
+        public String toString()
+        {
+            return "uniform:" + m_min + ":" + m_max;
+        }
+    }//class Uniform
+
+    /**
+     * class Exponential
+     */
+    private static class Exponential extends LatencyModel
+    {
+        private double m_mean;
+        private long m_min;
+
+        public Exponential(long mean, long min)
+        {
+            m_mean = Math.max(0, mean);
+            m_min = Math.max(0, min);
+        }
+
+        public long next()
+        {
+            //1 - nextDouble() is in (0, 1] so the log is finite
+            return m_min + (long)(-m_mean * Math.log(1.0 - m_random.nextDouble()));
+        }
+
+        public String toString()
+        {
+            return "exp:" + (long)m_mean + ":" + m_min;
+        }
+    }//class Exponential
+
+    /**
+     * class LogNormal
+     */
+    private static class LogNormal extends LatencyModel
+    {
+        private double m_mu;
+        private double m_sigma;
+
+        public LogNormal(long median, double sigma)
+        {
+            m_mu = Math.log(Math.max(1, median));
+            m_sigma = Math.max(0, sigma);
+        }
+
+        /**
+         * gaussian
+         *
+         * @return a standard normal value (Box-Muller)
+         */
+        private double gaussian()
+        {
+            double u = 1.0 - m_random.nextDouble();
+            double v = m_random.nextDouble();
+            return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+        }
+
+        public long next()
+        {
+            return (long)Math.exp(m_mu + (m_sigma * gaussian()));
+        }
+
+        public String toString()
+        {
+            return "lognormal:" + (long)Math.exp(m_mu) + ":" + m_sigma;
+        }
+    }//class LogNormal
+
+    /**
+     * class Trace
+     */
+    private static class Trace extends LatencyModel
+    {
+        private String m_fileName;
+        private long[] m_times = new long[64];
+        private int m_count = 0;
+        private int m_next = 0;
+
+        public Trace(String fileName) throws IOException
+        {
+            m_fileName = fileName;
+            BufferedReader in = new BufferedReader(new FileReader(fileName));
+            try
+            {
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    for(String word : line.trim().split("\\s+"))
+                    {
+                        if (word.length() == 0)
+                        {
+                            continue;
+                        }
+                        if (m_count == m_times.length)
+                        {
+                            m_times = Arrays.copyOf(m_times, m_count * 2);
+                        }
+                        m_times[m_count++] = Math.max(0, parseTime(word));
+                    }
+                }
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IOException("bad time in trace " + fileName);
+            }
+            finally
+            {
+                in.close();
+            }
+            if (m_count == 0)
+            {
+                throw new IOException("empty trace " + fileName);
+            }
+        }//ctor
+
+        public long next()
+        {
+            long ns = m_times[m_next];
+            m_next = (m_next + 1) % m_count;
+            return ns;
+        }
+
+        public String toString()
+        {
+            return "trace:" + m_fileName + " (" + m_count + " times)";
+        }
+    }//class Trace
+
+};//class LatencyModel
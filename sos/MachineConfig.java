@@ -0,0 +1,390 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * This class describes the hardware of a simulated machine: the size and
+ * latency of its RAM and the devices attached to it.  It is normally read
+ * from a machine description file like this one:
+ *
+ * <pre>
+ * # comments start with a hash
+ * ram size=4000 latency=10
+ * device keyboard id=0
+ * device console id=1 count=64 latency=uniform:500:1000
+ * device keyboard id=100 count=4 pool=99
+ * device disk image=disk%d.img sectors=2048
+ * </pre>
+ *
+ * Each device line names a kind of device (see {@link DeviceProvider})
+ * followed by settings.  These settings apply to every kind of device:
+ *
+ * <ul>
+ * <li>id      - the id of the (first) device.  Defaults to one more than
+ *               the highest id so far.</li>
+ * <li>count   - how many devices to create, with consecutive ids</li>
+ * <li>latency - a latency model (see {@link LatencyModel#parse})</li>
+ * <li>seed    - seeds the devices' random number generators</li>
+ * <li>pool    - puts the devices in the pool with this id.  A process that
+ *               opens the pool is given any of its devices that is free.</li>
+ * <li>sched   - the I/O scheduler that orders requests to the devices
+ *               (see {@link IOScheduler#parse})</li>
+ * </ul>
+ *
+ * Any other settings are handed to the device's provider.
+ *
+ * @see Sim
+ * @see DeviceProvider
+ */
+public class MachineConfig
+{
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class DeviceSpec
+     *
+     * one device line from the description
+     */
+    public static class DeviceSpec
+    {
+        public String type;         // the kind of device
+        public int id;              // the id of the first device
+        public int count;           // the number of devices
+        public Properties params;   // all of the settings
+    }//class DeviceSpec
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private int m_ramSize = -1;         // RAM size in words (-1 for default)
+    private int m_ramLatency = -1;      // RAM latency in ns (-1 for default)
+    private ArrayList<DeviceSpec> m_devices = new ArrayList<DeviceSpec>();
+    private int m_nextId = 0;           // default id for the next device
+
+    /** the ids of the devices in each pool, by pool id */
+    private LinkedHashMap<Integer, ArrayList<Integer>> m_pools =
+        new LinkedHashMap<Integer, ArrayList<Integer>>();
+
+    /** the device providers found on the class path, by type */
+    private static HashMap<String, DeviceProvider> s_providers = null;
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * the constructor creates a machine with no devices
+     */
+    public MachineConfig()
+    {
+    }
+
+    /**
+     * load
+     *
+     * reads a machine description file
+     *
+     * @param fileName the name of the file
+     * @return the machine it describes
+     * @throws IOException if the file can't be read or has an error in it
+     */
+    public static MachineConfig load(String fileName) throws IOException
+    {
+        MachineConfig config = new MachineConfig();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        try
+        {
+            String line;
+            int lineNum = 0;
+            while ((line = in.readLine()) != null)
+            {
+                lineNum++;
+                int hash = line.indexOf('#');
+                if (hash >= 0)
+                {
+                    line = line.substring(0, hash);
+                }
+                String[] words = line.trim().split("\\s+");
+                if (words[0].length() == 0)
+                {
+                    continue;
+                }
+
+                try
+                {
+                    config.parseLine(words);
+                }
+                catch(IOException e)
+                {
+                    throw new IOException(fileName + ":" + lineNum + ": "
+                                          + e.getMessage());
+                }
+            }//while
+        }
+        finally
+        {
+            in.close();
+        }
+        return config;
+    }//load
+
+    /**
+     * parseLine
+     *
+     * adds the settings from one line of a machine description
+     *
+     * @param words the words on the line
+     */
+    private void parseLine(String[] words) throws IOException
+    {
+        //Gather the key=value settings
+        int first = words[0].equals("device") ? 2 : 1;
+        if (words.length < first)
+        {
+            throw new IOException("device type expected");
+        }
+        Properties params = new Properties();
+        for(int i = first; i < words.length; i++)
+        {
+            int eq = words[i].indexOf('=');
+            if (eq <= 0)
+            {
+                throw new IOException("key=value expected instead of `"
+                                      + words[i] + "'");
+            }
+            params.setProperty(words[i].substring(0, eq),
+                               words[i].substring(eq + 1));
+        }
+
+        if (words[0].equals("ram"))
+        {
+            m_ramSize = getInt(params, "size", m_ramSize);
+            m_ramLatency = getInt(params, "latency", m_ramLatency);
+        }
+        else if (words[0].equals("device"))
+        {
+            int id = getInt(params, "id", m_nextId);
+            int count = getInt(params, "count", 1);
+            addDevice(words[1], id, count, params);
+            int pool = getInt(params, "pool", -1);
+            if (pool >= 0)
+            {
+                addToPool(pool, id, count);
+            }
+        }
+        else
+        {
+            throw new IOException("unknown setting `" + words[0] + "'");
+        }
+    }//parseLine
+
+    /**
+     * getInt
+     *
+     * @return the value of an integer setting, or a default if it isn't set
+     * @throws IOException if it is set but is not an integer
+     */
+    public static int getInt(Properties params, String key, int def)
+        throws IOException
+    {
+        String value = params.getProperty(key);
+        if (value == null)
+        {
+            return def;
+        }
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IOException(key + " must be a number");
+        }
+    }//getInt
+
+    /**
+     * addDevice
+     *
+     * adds devices to the machine
+     *
+     * @param type    the kind of device
+     * @param id      the id of the first device
+     * @param count   how many devices to add (with consecutive ids)
+     * @param params  the device settings
+     */
+    public void addDevice(String type, int id, int count, Properties params)
+    {
+        DeviceSpec spec = new DeviceSpec();
+        spec.type = type;
+        spec.id = id;
+        spec.count = Math.max(1, count);
+        spec.params = params;
+        m_devices.add(spec);
+        m_nextId = Math.max(m_nextId, id + spec.count);
+    }//addDevice
+
+    /**
+     * addToPool
+     *
+     * puts devices in a pool
+     *
+     * @param poolId  the id of the pool
+     * @param id      the id of the first device
+     * @param count   how many devices to add (with consecutive ids)
+     */
+    public void addToPool(int poolId, int id, int count)
+    {
+        ArrayList<Integer> members = m_pools.get(poolId);
+        if (members == null)
+        {
+            members = new ArrayList<Integer>();
+            m_pools.put(poolId, members);
+        }
+        for(int i = 0; i < Math.max(1, count); i++)
+        {
+            members.add(id + i);
+        }
+        m_nextId = Math.max(m_nextId, poolId + 1);
+    }//addToPool
+
+    /**
+     * getPools
+     *
+     * @return the ids of the devices in each pool, by pool id
+     */
+    public Map<Integer, int[]> getPools()
+    {
+        LinkedHashMap<Integer, int[]> pools = new LinkedHashMap<Integer, int[]>();
+        for(Map.Entry<Integer, ArrayList<Integer>> e : m_pools.entrySet())
+        {
+            int[] ids = new int[e.getValue().size()];
+            for(int i = 0; i < ids.length; i++)
+            {
+                ids[i] = e.getValue().get(i);
+            }
+            pools.put(e.getKey(), ids);
+        }
+        return pools;
+    }//getPools
+
+    /**
+     * getDeviceSetting
+     *
+     * @return a setting from the line that describes a device -OR- null if
+     *         the device or the setting isn't there
+     */
+    public String getDeviceSetting(int id, String key)
+    {
+        for(DeviceSpec spec : m_devices)
+        {
+            if ((id >= spec.id) && (id < spec.id + spec.count))
+            {
+                return spec.params.getProperty(key);
+            }
+        }
+        return null;
+    }//getDeviceSetting
+
+    /** @return the RAM size in words (-1 if not given) */
+    public int getRamSize()
+    {
+        return m_ramSize;
+    }
+
+    /** @return the RAM latency in ns (-1 if not given) */
+    public int getRamLatency()
+    {
+        return m_ramLatency;
+    }
+
+    /** @return one more than the highest device id */
+    public int getNextId()
+    {
+        return m_nextId;
+    }
+
+    /**
+     * getProvider
+     *
+     * @return the provider for a kind of device
+     * @throws IOException if there is no provider for it on the class path
+     */
+    public static synchronized DeviceProvider getProvider(String type)
+        throws IOException
+    {
+        if (s_providers == null)
+        {
+            s_providers = new HashMap<String, DeviceProvider>();
+            for(DeviceProvider p : ServiceLoader.load(DeviceProvider.class))
+            {
+                s_providers.put(p.getType(), p);
+            }
+        }
+
+        DeviceProvider p = s_providers.get(type);
+        if (p == null)
+        {
+            throw new IOException("unknown device type `" + type + "'");
+        }
+        return p;
+    }//getProvider
+
+    /**
+     * createDevices
+     *
+     * creates every device in the machine
+     *
+     * @param ic   the interrupt controller the devices post to
+     * @param ram  the machine's RAM
+     * @return the devices in the order they were described
+     * @throws IOException if a device can't be created or two devices (or
+     *         a device and a pool) have the same id
+     */
+    public ArrayList<Device> createDevices(InterruptController ic, RAM ram)
+        throws IOException
+    {
+        ArrayList<Device> devices = new ArrayList<Device>();
+        HashSet<Integer> ids = new HashSet<Integer>();
+        for(DeviceSpec spec : m_devices)
+        {
+            DeviceProvider provider = getProvider(spec.type);
+            String latency = spec.params.getProperty("latency");
+            String seed = spec.params.getProperty("seed");
+            for(int i = 0; i < spec.count; i++)
+            {
+                int id = spec.id + i;
+                if (!ids.add(id))
+                {
+                    throw new IOException("more than one device has id " + id);
+                }
+
+                Device dev = provider.create(ic, ram, id, spec.params);
+                dev.setId(id);
+                if (latency != null)
+                {
+                    dev.setLatencyModel(LatencyModel.parse(latency));
+                }
+                if (seed != null)
+                {
+                    dev.setSeed(LatencyModel.seedFor(getInt(spec.params, "seed", 0),
+                                                     id));
+                }
+                devices.add(dev);
+            }
+        }//for
+
+        for(Integer poolId : m_pools.keySet())
+        {
+            if (ids.contains(poolId))
+            {
+                throw new IOException("pool " + poolId + " has the same id as a device");
+            }
+        }
+
+        return devices;
+    }//createDevices
+
+};//class MachineConfig
@@ -0,0 +1,216 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * This class is a benchmark for {@link NetworkDevice}.  For each node count
+ * it builds a cluster of that many nodes in one JVM, each with its own
+ * interrupt controller and a thread playing the part of its CPU, and has
+ * every node stream words to the next node in a ring while reading the
+ * words the previous node sends it.  It runs the same cluster without
+ * batching, with batching of whatever is waiting when the link is free and
+ * with a flush time, and reports the words delivered per second, how many
+ * words went in each frame and the time from each write to the word's
+ * arrival.
+ *
+ * Usage: java sos.NetworkBench [millis_per_run] [bandwidth] [link] [nodes ...]
+ *
+ * The bandwidth is in words per second and the link is local (in-JVM
+ * channels, the default) or tcp:PORT (loopback sockets).
+ *
+ * @see NetworkDevice
+ * @see NetworkLink
+ */
+public class NetworkBench
+{
+    /** the number of runs so far (each gets its own link) */
+    private static int s_runs = 0;
+
+    /**
+     * class Node
+     *
+     * acts as the CPU of one node: keeps a write to the next node and a
+     * read from the previous node outstanding at all times
+     */
+    private static class Node extends Thread
+    {
+        NetworkDevice dev;
+        InterruptController ic = new InterruptController();
+        int next;
+        int prev;
+        volatile long received = 0;
+        volatile boolean running = true;
+
+        public void run()
+        {
+            boolean reading = false;
+            boolean writing = false;
+            int value = 0;
+            while (running)
+            {
+                if (!reading)
+                {
+                    awaitAvailable();
+                    dev.read(prev, 1);
+                    reading = true;
+                }
+                if (!writing)
+                {
+                    awaitAvailable();
+                    dev.write(next, value++, 2);
+                    writing = true;
+                }
+
+                int[] intData = ic.getData();
+                if (intData[0] == InterruptController.INT_READ_DONE)
+                {
+                    received++;
+                    reading = false;
+                }
+                else
+                {
+                    writing = false;
+                }
+            }//while
+        }//run
+
+        /**
+         * awaitAvailable
+         *
+         * waits for the device to take the last request from its queue
+         */
+        private void awaitAvailable()
+        {
+            while (!dev.isAvailable())
+            {
+                Thread.onSpinWait();
+            }
+        }
+    }//class Node
+
+    /**
+     * runOnce
+     *
+     * runs one measurement
+     *
+     * @param spec       the link ("local" or "tcp:PORT")
+     * @param numNodes   how many nodes to create
+     * @param bandwidth  the link speed in words per second
+     * @param batch      the most words per frame
+     * @param flushNs    how long to wait for a frame to fill
+     * @param millis     how long to measure for
+     */
+    private static void runOnce(String spec, int numNodes, long bandwidth,
+                                int batch, long flushNs, long millis)
+        throws IOException
+    {
+        //Every run gets a fresh link so the nodes of earlier runs (which are
+        //left blocked) can't interfere
+        int run = s_runs++;
+        NetworkLink link = spec.startsWith("tcp:")
+            ? NetworkLink.tcp(Integer.parseInt(spec.substring(4)) + (run * numNodes))
+            : NetworkLink.local("bench" + run);
+
+        Node[] nodes = new Node[numNodes];
+        for(int i = 0; i < numNodes; i++)
+        {
+            nodes[i] = new Node();
+            nodes[i].dev = new NetworkDevice(nodes[i].ic, link, i);
+            nodes[i].dev.setId(0);
+            nodes[i].dev.setLinkParams(bandwidth, batch, flushNs,
+                                       NetworkDevice.DEFAULT_BUFFER);
+            nodes[i].next = (i + 1) % numNodes;
+            nodes[i].prev = (i + numNodes - 1) % numNodes;
+            Thread t = new Thread(nodes[i].dev);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        //Give the nodes time to attach to the link before sending
+        LatencyModel.sleep(100000000L);
+        for(Node n : nodes)
+        {
+            n.setDaemon(true);
+            n.start();
+        }
+
+        //Measure after a short warm up
+        LatencyModel.sleep(millis * 100000L);
+        long start = System.nanoTime();
+        long before = 0;
+        for(Node n : nodes)
+        {
+            before += n.received;
+            n.dev.getWordLatency().reset();
+        }
+        LatencyModel.sleep(millis * 1000000L);
+        long elapsed = System.nanoTime() - start;
+
+        long words = 0;
+        long sent = 0;
+        long frames = 0;
+        LatencyHistogram latency = new LatencyHistogram();
+        for(Node n : nodes)
+        {
+            n.running = false;
+            words += n.received;
+            sent += n.dev.getWordsSent();
+            frames += n.dev.getFramesSent();
+            latency.add(n.dev.getWordLatency());
+        }
+        words -= before;
+
+        System.out.println(String.format("%-6s %5d %5d %6s %12.0f %8.1f ",
+                                         spec.startsWith("tcp") ? "tcp" : "local",
+                                         numNodes, batch, (flushNs / 1000) + "us",
+                                         words / (elapsed / 1e9),
+                                         sent / (double)Math.max(1, frames))
+                           + latency);
+    }//runOnce
+
+    public static void main(String[] args) throws IOException
+    {
+        long millis = 2000;
+        long bandwidth = 1000000;
+        String spec = "local";
+        int[] counts = { 2, 4, 8 };
+        if (args.length > 0)
+        {
+            millis = Long.parseLong(args[0]);
+        }
+        if (args.length > 1)
+        {
+            bandwidth = Long.parseLong(args[1]);
+        }
+        if (args.length > 2)
+        {
+            spec = args[2];
+        }
+        if (args.length > 3)
+        {
+            counts = new int[args.length - 3];
+            for(int i = 3; i < args.length; i++)
+            {
+                counts[i - 3] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("bandwidth " + bandwidth + " words/s per node, "
+                           + NetworkDevice.FRAME_HEADER_WORDS
+                           + " words of header per frame");
+        System.out.println(String.format("%-6s %5s %5s %6s %12s %8s ", "link",
+                                         "nodes", "batch", "flush", "words/s",
+                                         "w/frame")
+                           + LatencyHistogram.header());
+        for(int n : counts)
+        {
+            runOnce(spec, n, bandwidth, 1, 0, millis);
+            runOnce(spec, n, bandwidth, NetworkDevice.DEFAULT_BATCH, 0, millis);
+            runOnce(spec, n, bandwidth, NetworkDevice.DEFAULT_BATCH, 20000, millis);
+        }
+
+        System.exit(0);
+    }//main
+
+};//class NetworkBench
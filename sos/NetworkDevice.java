@@ -0,0 +1,823 @@
+package sos;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.io.*;
+
+/**
+ * This class simulates a sharable network interface that sends single words
+ * to the other nodes of a cluster over a {@link NetworkLink}.  The address of
+ * a request is a node number:
+ *
+ * <ul>
+ * <li>WRITE(addr, word) sends the word to node addr.  The write completes as
+ *     soon as the word is in the device's transmit buffer, so a process can
+ *     keep several words in flight.  A write to a full buffer stays in the
+ *     command queue until there is room.</li>
+ * <li>READ(addr) takes the next word that arrived from node addr, or from
+ *     any node if addr is {@link #ANY_NODE}.  It completes when there is
+ *     one.  Reads wait beside the command queue (like the receive buffers of
+ *     a real NIC) so an outstanding read doesn't keep the device from
+ *     sending.  Moving reads out of a full command queue posts an
+ *     {@link InterruptController#INT_ROOM} interrupt.</li>
+ * </ul>
+ *
+ * The device models the link as well as the interface:
+ *
+ * <ul>
+ * <li>bandwidth - a frame takes (header + words) / bandwidth to transmit
+ *     and frames are transmitted one at a time</li>
+ * <li>latency   - each frame then takes the time from the receiving
+ *     device's latency model to arrive (frames still arrive in order)</li>
+ * <li>batching  - the words waiting in the transmit buffer for the same
+ *     node are sent as one frame of up to batch words, so small messages
+ *     share the per-frame header.  With a flush time the device also waits
+ *     up to that long for a frame to fill before sending it.</li>
+ * </ul>
+ *
+ * Unlike the other devices it always runs on its own threads, even when the
+ * machine uses an event loop, because frames arrive whenever the other nodes
+ * send them.
+ *
+ * @see NetworkLink
+ * @see NetworkBench
+ * @see Sim
+ */
+public class NetworkDevice implements Device, Runnable
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the address to READ from to take a word from any node */
+    public static final int ANY_NODE = -1;
+
+    /** the words of link overhead in each frame (source, count, time) */
+    public static final int FRAME_HEADER_WORDS = 4;
+
+    /** the link bandwidth by default in words per second */
+    public static final long DEFAULT_BANDWIDTH = 10000000L;
+
+    /** the number of words in a frame by default */
+    public static final int DEFAULT_BATCH = 16;
+
+    /** the size of the transmit buffer by default in words */
+    public static final int DEFAULT_BUFFER = 64;
+
+    //Operation codes for requests in the command queue
+    private static final int OP_READ  = 0;
+    private static final int OP_WRITE = 1;
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Provider
+     *
+     * creates network devices for a machine description (type "net").  The
+     * settings are node, link (see {@link NetworkLink#parse}), bandwidth
+     * (words per second, 0 for unlimited), batch, flush and buffer.
+     */
+    public static class Provider implements DeviceProvider
+    {
+        public String getType()
+        {
+            return "net";
+        }
+
+        public Device create(InterruptController ic, RAM ram, int id,
+                             Properties params)
+            throws IOException
+        {
+            NetworkDevice dev =
+                new NetworkDevice(ic, NetworkLink.parse(params.getProperty("link",
+                                                                           "local")),
+                                  MachineConfig.getInt(params, "node", 0));
+            long flush = 0;
+            try
+            {
+                flush = LatencyModel.parseTime(params.getProperty("flush", "0"));
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IOException("flush must be a time");
+            }
+            dev.setLinkParams(MachineConfig.getInt(params, "bandwidth",
+                                                   (int)DEFAULT_BANDWIDTH),
+                              MachineConfig.getInt(params, "batch", DEFAULT_BATCH),
+                              flush,
+                              MachineConfig.getInt(params, "buffer", DEFAULT_BUFFER));
+            return dev;
+        }
+    }//class Provider
+
+    /**
+     * class Frame
+     *
+     * a frame that has reached this node but may still be on the wire
+     */
+    private static class Frame
+    {
+        int src;        // the node that sent it
+        int[] words;    // its words
+        long sent;      // when its oldest word was sent (nanoTime)
+        long due;       // when it finishes arriving (nanoTime)
+    }//class Frame
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private int m_Id = -1;                  // the OS assigned device ID
+    private InterruptController m_IC;       // reference to the interrupt controller
+    private DeviceQueue m_queue = new DeviceQueue(1); // pending requests
+    private NetworkLink m_link;             // carries frames to the other nodes
+    private int m_node;                     // this node's number
+    private LatencyModel m_latency = LatencyModel.constant(50000); // time on the wire
+    private double m_nsPerWord = 1e9 / DEFAULT_BANDWIDTH; // transmit time per word
+    private int m_batch = DEFAULT_BATCH;    // the most words in a frame
+    private long m_flushNs = 0;             // how long to wait for a frame to fill
+
+    //The transmit buffer: a ring of words and their destinations guarded by
+    //m_txLock.  The device thread adds, the transmit thread takes.
+    private final Object m_txLock = new Object();
+    private int[] m_txDest = new int[DEFAULT_BUFFER];
+    private int[] m_txWord = new int[DEFAULT_BUFFER];
+    private long[] m_txTime = new long[DEFAULT_BUFFER];
+    private int m_txHead = 0;
+    private int m_txSize = 0;
+
+    //Frames that have reached this node in order of arrival (guarded by
+    //itself) and when the last one is due
+    private ArrayDeque<Frame> m_arrivals = new ArrayDeque<Frame>();
+    private long m_lastDue = 0;
+
+    //The words that have arrived, a ring for each node they came from, and
+    //the reads waiting for them.  Only used by the device thread.
+    private int[][] m_rxWords = new int[0][];
+    private int[] m_rxHead = new int[0];
+    private int[] m_rxSize = new int[0];
+    private int m_rxNext = 0;               // where a read from any node starts looking
+    private int[] m_readAddr = new int[8];
+    private int[] m_readTag = new int[8];
+    private long[] m_readTime = new long[8];
+    private int m_numReads = 0;
+
+    private volatile Thread m_thread = null; // the device thread
+    private volatile boolean m_wake = false; // is there work for the device thread?
+    private boolean m_started = false;
+
+    //Statistics
+    private volatile long m_wordsSent = 0;
+    private volatile long m_framesSent = 0;
+    private long m_wordsReceived = 0;
+    private long m_txFull = 0;              // writes that found the buffer full
+    private LatencyHistogram m_wordLatency = new LatencyHistogram(); // write to arrival
+    private LatencyHistogram m_readWait = new LatencyHistogram(); // read to completion
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param ic    the interrupt controller to post completions to
+     * @param link  the link to the other nodes
+     * @param node  this node's number
+     */
+    public NetworkDevice(InterruptController ic, NetworkLink link, int node)
+    {
+        m_IC = ic;
+        m_link = link;
+        m_node = node;
+    }//ctor
+
+    /**
+     * setLinkParams
+     *
+     * sets the timing of the link.  Must be called before the device is
+     * used.
+     *
+     * @param bandwidth  the link speed in words per second (0 for no limit)
+     * @param batch      the most words to send in one frame
+     * @param flushNs    how long to wait for a frame to fill (0 to send what
+     *                   is there as soon as the link is free)
+     * @param buffer     the size of the transmit buffer in words
+     */
+    public void setLinkParams(long bandwidth, int batch, long flushNs, int buffer)
+    {
+        m_nsPerWord = (bandwidth > 0) ? (1e9 / bandwidth) : 0;
+        m_batch = Math.max(1, batch);
+        m_flushNs = Math.max(0, flushNs);
+        buffer = Math.max(m_batch, buffer);
+        m_txDest = new int[buffer];
+        m_txWord = new int[buffer];
+        m_txTime = new long[buffer];
+    }//setLinkParams
+
+    /**
+     * setNode
+     *
+     * changes this node's number.  Must be called before the device is used.
+     */
+    public void setNode(int node)
+    {
+        m_node = node;
+    }
+
+    /** @return this node's number */
+    public int getNode()
+    {
+        return m_node;
+    }
+
+    /**
+     * getId
+     *
+     * @return the device id of this device
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the device id of this device
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * isSharable
+     *
+     * @return true
+     */
+    public boolean isSharable()
+    {
+        return true;
+    }
+
+    /**
+     * isAvailable
+     *
+     * @return true if the command queue has room for another request
+     */
+    public boolean isAvailable()
+    {
+        return !m_queue.isFull();
+    }
+
+    /**
+     * getQueueDepth
+     *
+     * @return the number of requests the device can hold at once
+     */
+    public int getQueueDepth()
+    {
+        return m_queue.getDepth();
+    }
+
+    /**
+     * setQueueDepth
+     *
+     * sets the number of requests the device can hold at once.  Must be
+     * called before the device is used.
+     *
+     * @param depth the new queue depth
+     */
+    public void setQueueDepth(int depth)
+    {
+        m_queue = new DeviceQueue(depth);
+    }
+
+    /**
+     * getQueue
+     *
+     * @return the device's command queue (for statistics)
+     */
+    public DeviceQueue getQueue()
+    {
+        return m_queue;
+    }
+
+    /**
+     * setEventLoop
+     *
+     * the network device can't be driven by an event loop so this starts
+     * its own thread instead
+     */
+    public void setEventLoop(DeviceEventLoop loop)
+    {
+        Thread t = new Thread(this);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * setLatencyModel
+     *
+     * replaces the model that decides how long frames to this node spend on
+     * the wire
+     *
+     * @param model the new model
+     */
+    public void setLatencyModel(LatencyModel model)
+    {
+        m_latency = model;
+    }
+
+    /**
+     * setSeed
+     *
+     * restarts the latency model's generator from a seed
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed)
+    {
+        m_latency.setSeed(seed);
+    }
+
+    /**
+     * isReadable
+     *
+     * @return whether this device can be read from (true/false)
+     */
+    public boolean isReadable()
+    {
+        return true;
+    }
+
+    /**
+     * isWriteable
+     *
+     * @return whether this device can be written to (true/false)
+     */
+    public boolean isWriteable()
+    {
+        return true;
+    }
+
+    /**
+     * read
+     *
+     * asks for the next word from a node (or from any node)
+     */
+    public int read(int addr, int tag)
+    {
+        m_queue.add(OP_READ, addr, 0, tag);
+        wake();
+        return -9999;           // no longer used
+    }//read
+
+    /**
+     * write
+     *
+     * asks for a word to be sent to a node
+     */
+    public void write(int addr, int data, int tag)
+    {
+        m_queue.add(OP_WRITE, addr, data, tag);
+        wake();
+    }//write
+
+    /**
+     * wake
+     *
+     * tells the device thread there is something for it to do
+     */
+    private void wake()
+    {
+        m_wake = true;
+        Thread t = m_thread;
+        if (t != null)
+        {
+            LockSupport.unpark(t);
+        }
+    }//wake
+
+    /**
+     * getWordsSent
+     *
+     * @return the number of words this node has put on the wire
+     */
+    public long getWordsSent()
+    {
+        return m_wordsSent;
+    }
+
+    /**
+     * getFramesSent
+     *
+     * @return the number of frames this node has put on the wire
+     */
+    public long getFramesSent()
+    {
+        return m_framesSent;
+    }
+
+    /**
+     * getWordLatency
+     *
+     * @return the distribution of the time from a word being written on
+     *         another node to its arrival here (the nodes must share a
+     *         clock, i.e. be on the same host)
+     */
+    public LatencyHistogram getWordLatency()
+    {
+        return m_wordLatency;
+    }
+
+    /**
+     * printStats
+     *
+     * prints how much was sent and received, how well words were batched
+     * into frames and how long words took to arrive and reads took to
+     * complete
+     *
+     * @param name a name for this device
+     */
+    public void printStats(String name)
+    {
+        System.out.println(String.format(
+            "%s: node %d on %s sent=%d words in %d frames (%.1f words/frame)"
+            + " received=%d buffer full=%d dropped frames=%d",
+            name, m_node, m_link, m_wordsSent, m_framesSent,
+            m_wordsSent / (double)Math.max(1, m_framesSent), m_wordsReceived,
+            m_txFull, m_link.getDropped()));
+        System.out.println("  word latency " + LatencyHistogram.header());
+        System.out.println("               " + m_wordLatency);
+        System.out.println("  read wait    " + m_readWait);
+    }//printStats
+
+    /**
+     * start
+     *
+     * attaches this node to the link and starts the transmit thread
+     */
+    private synchronized void start()
+    {
+        if (m_started)
+        {
+            return;
+        }
+        m_started = true;
+
+        try
+        {
+            m_link.attach(m_node, new NetworkLink.Receiver() {
+                public void deliver(int src, int[] words, int count, long sent)
+                {
+                    arrive(src, words, count, sent);
+                }
+            });
+        }
+        catch(IOException e)
+        {
+            System.out.println("ERROR: Network (device " + m_Id + "): node "
+                               + m_node + " could not attach to " + m_link
+                               + ": " + e.getMessage());
+        }
+
+        Thread t = new Thread() {
+            public void run()
+            {
+                transmit();
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }//start
+
+    /**
+     * transmit
+     *
+     * sends the words in the transmit buffer a frame at a time.  Runs on
+     * its own thread until the program ends.
+     */
+    private void transmit()
+    {
+        int[] frame = new int[m_batch];
+        while (true)
+        {
+            //Wait for words and gather the ones for the first word's node
+            int dest;
+            int count;
+            long oldest;
+            synchronized(m_txLock)
+            {
+                while (true)
+                {
+                    while (m_txSize == 0)
+                    {
+                        waitTx(0);
+                    }
+                    dest = m_txDest[m_txHead];
+                    oldest = m_txTime[m_txHead];
+                    count = 0;
+                    while ((count < m_txSize) && (count < m_batch)
+                           && (m_txDest[(m_txHead + count) % m_txDest.length] == dest))
+                    {
+                        count++;
+                    }
+
+                    //Give a short frame the flush time to fill
+                    long wait = oldest + m_flushNs - System.nanoTime();
+                    if ((count == m_batch) || (count < m_txSize) || (wait <= 0))
+                    {
+                        break;
+                    }
+                    waitTx(wait);
+                }
+                for(int i = 0; i < count; i++)
+                {
+                    frame[i] = m_txWord[(m_txHead + i) % m_txWord.length];
+                }
+            }
+
+            //Put the frame on the wire.  Its words hold their places in the
+            //buffer until it has gone.
+            if (m_nsPerWord > 0)
+            {
+                LatencyModel.sleep((long)((FRAME_HEADER_WORDS + count) * m_nsPerWord));
+            }
+            try
+            {
+                m_link.send(m_node, dest, frame, count, oldest);
+            }
+            catch(IOException e)
+            {
+                //The node is gone so the frame is lost
+            }
+            m_wordsSent += count;
+            m_framesSent++;
+
+            synchronized(m_txLock)
+            {
+                m_txHead = (m_txHead + count) % m_txDest.length;
+                m_txSize -= count;
+            }
+            wake();
+        }//while
+    }//transmit
+
+    /**
+     * waitTx
+     *
+     * waits on the transmit buffer lock (which must be held) for words to
+     * be added
+     *
+     * @param ns the longest to wait (0 to wait until notified)
+     */
+    private void waitTx(long ns)
+    {
+        try
+        {
+            m_txLock.wait(ns / 1000000, (int)(ns % 1000000));
+        }
+        catch(InterruptedException e) {} // should never happen
+    }//waitTx
+
+    /**
+     * arrive
+     *
+     * takes a frame from the link.  It is handed to the device thread once
+     * it has spent its time on the wire.
+     */
+    private void arrive(int src, int[] words, int count, long sent)
+    {
+        Frame f = new Frame();
+        f.src = src;
+        f.words = Arrays.copyOf(words, count);
+        f.sent = sent;
+        synchronized(m_arrivals)
+        {
+            f.due = Math.max(System.nanoTime() + m_latency.next(), m_lastDue);
+            m_lastDue = f.due;
+            m_arrivals.add(f);
+        }
+        wake();
+    }//arrive
+
+    /**
+     * addRxWord
+     *
+     * puts a word that has arrived in the ring for the node it came from
+     */
+    private void addRxWord(int src, int word)
+    {
+        if (src >= m_rxWords.length)
+        {
+            int n = Math.max(src + 1, m_rxWords.length * 2);
+            m_rxWords = Arrays.copyOf(m_rxWords, n);
+            m_rxHead = Arrays.copyOf(m_rxHead, n);
+            m_rxSize = Arrays.copyOf(m_rxSize, n);
+        }
+        int[] ring = m_rxWords[src];
+        if (ring == null)
+        {
+            ring = new int[DEFAULT_BUFFER];
+            m_rxWords[src] = ring;
+        }
+        else if (m_rxSize[src] == ring.length)
+        {
+            //Unroll the ring into a bigger one
+            int[] bigger = new int[ring.length * 2];
+            for(int i = 0; i < ring.length; i++)
+            {
+                bigger[i] = ring[(m_rxHead[src] + i) % ring.length];
+            }
+            ring = bigger;
+            m_rxWords[src] = ring;
+            m_rxHead[src] = 0;
+        }
+        ring[(m_rxHead[src] + m_rxSize[src]) % ring.length] = word;
+        m_rxSize[src]++;
+        m_wordsReceived++;
+    }//addRxWord
+
+    /**
+     * findRxNode
+     *
+     * @return the node to take a word from for a read -OR- -1 if no word
+     *         has arrived for it.  Reads from any node take turns among the
+     *         nodes that have sent something.
+     */
+    private int findRxNode(int addr)
+    {
+        if (addr != ANY_NODE)
+        {
+            return ((addr >= 0) && (addr < m_rxSize.length) && (m_rxSize[addr] > 0))
+                ? addr : -1;
+        }
+        for(int i = 0; i < m_rxSize.length; i++)
+        {
+            int src = (m_rxNext + i) % m_rxSize.length;
+            if (m_rxSize[src] > 0)
+            {
+                m_rxNext = src + 1;
+                return src;
+            }
+        }
+        return -1;
+    }//findRxNode
+
+    /**
+     * serviceCommands
+     *
+     * moves requests from the command queue: reads to the reads waiting
+     * for words and writes to the transmit buffer (as long as it has room).
+     * Reads leave the queue without completing, so if that makes room in a
+     * full queue the CPU is told with an INT_ROOM interrupt.
+     */
+    private void serviceCommands()
+    {
+        boolean wasFull = m_queue.isFull();
+        boolean readsMoved = false;
+        while (m_queue.size() > 0)
+        {
+            int addr = m_queue.getAddr();
+            int tag = m_queue.getTag();
+            if (m_queue.getOp() == OP_READ)
+            {
+                if (m_numReads == m_readAddr.length)
+                {
+                    m_readAddr = Arrays.copyOf(m_readAddr, m_numReads * 2);
+                    m_readTag = Arrays.copyOf(m_readTag, m_numReads * 2);
+                    m_readTime = Arrays.copyOf(m_readTime, m_numReads * 2);
+                }
+                m_readAddr[m_numReads] = addr;
+                m_readTag[m_numReads] = tag;
+                m_readTime[m_numReads] = m_queue.getAddTime();
+                m_numReads++;
+                m_queue.remove();
+                readsMoved = true;
+            }
+            else
+            {
+                int data = m_queue.getData();
+                synchronized(m_txLock)
+                {
+                    if (m_txSize == m_txDest.length)
+                    {
+                        m_txFull++;
+                        break;      // the transmit thread wakes us
+                    }
+                    int idx = (m_txHead + m_txSize) % m_txDest.length;
+                    m_txDest[idx] = addr;
+                    m_txWord[idx] = data;
+                    m_txTime[idx] = System.nanoTime();
+                    m_txSize++;
+                    m_txLock.notify();
+                }
+                m_queue.remove();
+                m_IC.putData(InterruptController.INT_WRITE_DONE, m_Id, addr,
+                             data, tag);
+            }
+        }//while
+
+        if (wasFull && readsMoved)
+        {
+            m_IC.putData(InterruptController.INT_ROOM, m_Id, 0, 0);
+        }
+    }//serviceCommands
+
+    /**
+     * serviceArrivals
+     *
+     * moves the words of frames that have finished arriving to the rings
+     * and completes the reads that are waiting for them
+     *
+     * @return when the next frame finishes arriving -OR- Long.MAX_VALUE
+     */
+    private long serviceArrivals()
+    {
+        long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+        while (true)
+        {
+            Frame f;
+            synchronized(m_arrivals)
+            {
+                f = m_arrivals.peek();
+                if ((f == null) || (f.due > now))
+                {
+                    next = (f == null) ? Long.MAX_VALUE : f.due;
+                    break;
+                }
+                m_arrivals.poll();
+            }
+            for(int w : f.words)
+            {
+                addRxWord(f.src, w);
+                m_wordLatency.record(now - f.sent);
+            }
+        }//while
+
+        //Complete the waiting reads in the order they were made
+        int kept = 0;
+        for(int i = 0; i < m_numReads; i++)
+        {
+            int src = findRxNode(m_readAddr[i]);
+            if (src < 0)
+            {
+                m_readAddr[kept] = m_readAddr[i];
+                m_readTag[kept] = m_readTag[i];
+                m_readTime[kept] = m_readTime[i];
+                kept++;
+                continue;
+            }
+            int word = m_rxWords[src][m_rxHead[src]];
+            m_rxHead[src] = (m_rxHead[src] + 1) % m_rxWords[src].length;
+            m_rxSize[src]--;
+            m_IC.putData(InterruptController.INT_READ_DONE, m_Id, m_readAddr[i],
+                         word, m_readTag[i]);
+            m_readWait.record(System.nanoTime() - m_readTime[i]);
+        }
+        m_numReads = kept;
+
+        return next;
+    }//serviceArrivals
+
+    /**
+     * run
+     *
+     * This method represents the device + controller.  It takes requests
+     * from the command queue and frames from the link and completes reads
+     * as their words arrive.
+     */
+    public void run()
+    {
+        start();
+        m_thread = Thread.currentThread();
+
+        //Device runs until program ends
+        while (true)
+        {
+            m_wake = false;
+            serviceCommands();
+            long next = serviceArrivals();
+
+            //Wait for a request, a frame or the next frame to arrive
+            if (!m_wake)
+            {
+                if (next == Long.MAX_VALUE)
+                {
+                    LockSupport.park(this);
+                }
+                else
+                {
+                    LockSupport.parkNanos(this, next - System.nanoTime());
+                }
+            }
+        }//while
+    }//run
+
+};//class NetworkDevice
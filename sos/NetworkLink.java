@@ -0,0 +1,372 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+
+/**
+ * This class carries frames of words between the {@link NetworkDevice}s of
+ * the nodes in a simulated cluster.  It only moves the frames; the devices
+ * model the time the frames spend on the wire.  There are two transports:
+ *
+ * <ul>
+ * <li>local:NAME - an in-JVM channel.  Every device attached to the local
+ *     link with the same name is in the same cluster, so it is only useful
+ *     for nodes that share a JVM (e.g. {@link NetworkBench}).</li>
+ * <li>tcp:PORT   - loopback sockets.  Node N listens on 127.0.0.1 at
+ *     PORT+N and connects to the other nodes as it first sends to them, so
+ *     each node can be a separate Sim.</li>
+ * </ul>
+ *
+ * Frames from one node to another arrive in the order they were sent.
+ *
+ * @see NetworkDevice
+ */
+public abstract class NetworkLink
+{
+    //======================================================================
+    // Callback Interface
+    //----------------------------------------------------------------------
+
+    /**
+     * Receiver
+     *
+     * This interface is implemented by whatever takes frames for a node
+     */
+    public interface Receiver
+    {
+        /**
+         * deliver
+         *
+         * called (on a link thread) when a frame arrives for the node.  The
+         * words must be copied before returning.
+         *
+         * @param src    the node that sent the frame
+         * @param words  the words in the frame
+         * @param count  how many of the words are in the frame
+         * @param sent   when the oldest word in the frame was sent (nanoTime)
+         */
+        public void deliver(int src, int[] words, int count, long sent);
+    };//interface Receiver
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    /** the in-JVM links, by name */
+    private static HashMap<String, Local> s_locals = new HashMap<String, Local>();
+
+    /** frames sent to a node that nothing was attached for */
+    protected volatile long m_dropped = 0;
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * attach
+     *
+     * connects a node to the link so it can receive frames
+     *
+     * @param node  the node's number
+     * @param r     where to deliver its frames
+     * @throws IOException if the node can't be attached (e.g. the number
+     *         is in use)
+     */
+    public abstract void attach(int node, Receiver r) throws IOException;
+
+    /**
+     * send
+     *
+     * sends a frame to another node
+     *
+     * @param src    the sending node
+     * @param dest   the node to send to
+     * @param words  the words to send
+     * @param count  how many of the words to send
+     * @param sent   when the oldest word was sent (nanoTime)
+     * @throws IOException if the frame can't be sent
+     */
+    public abstract void send(int src, int dest, int[] words, int count, long sent)
+        throws IOException;
+
+    /**
+     * getDropped
+     *
+     * @return the number of frames sent to nodes that weren't there
+     */
+    public long getDropped()
+    {
+        return m_dropped;
+    }
+
+    /**
+     * parse
+     *
+     * finds (or creates) a link from its description (see above)
+     *
+     * @param spec the description
+     * @return the link
+     * @throws IOException if the description is not valid
+     */
+    public static NetworkLink parse(String spec) throws IOException
+    {
+        String[] parts = spec.split(":");
+        if (parts[0].equals("local") && (parts.length <= 2))
+        {
+            return local((parts.length > 1) ? parts[1] : "default");
+        }
+        if (parts[0].equals("tcp") && (parts.length == 2))
+        {
+            try
+            {
+                return tcp(Integer.parseInt(parts[1]));
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IOException("bad port in link `" + spec + "'");
+            }
+        }
+        throw new IOException("unknown link `" + spec + "'");
+    }//parse
+
+    /**
+     * local
+     *
+     * @return the in-JVM link with the given name
+     */
+    public static synchronized NetworkLink local(String name)
+    {
+        Local link = s_locals.get(name);
+        if (link == null)
+        {
+            link = new Local(name);
+            s_locals.put(name, link);
+        }
+        return link;
+    }//local
+
+    /**
+     * tcp
+     *
+     * @return a loopback socket link whose nodes listen from the given port
+     */
+    public static NetworkLink tcp(int basePort)
+    {
+        return new Tcp(basePort);
+    }
+
+    /**
+     * class Local
+     */
+    private static class Local extends NetworkLink
+    {
+        private String m_name;
+        private Receiver[] m_nodes = new Receiver[8];
+
+        public Local(String name)
+        {
+            m_name = name;
+        }
+
+        public synchronized void attach(int node, Receiver r) throws IOException
+        {
+            if (node < 0)
+            {
+                throw new IOException("bad node number " + node);
+            }
+            if (node >= m_nodes.length)
+            {
+                m_nodes = Arrays.copyOf(m_nodes, Math.max(node + 1, m_nodes.length * 2));
+            }
+            if (m_nodes[node] != null)
+            {
+                throw new IOException("node " + node + " is already on " + this);
+            }
+            m_nodes[node] = r;
+        }//attach
+
+        public void send(int src, int dest, int[] words, int count, long sent)
+        {
+            Receiver r = null;
+            synchronized(this)
+            {
+                if ((dest >= 0) && (dest < m_nodes.length))
+                {
+                    r = m_nodes[dest];
+                }
+            }
+            if (r == null)
+            {
+                m_dropped++;
+                return;
+            }
+            r.deliver(src, words, count, sent);
+        }//send
+
+        public String toString()
+        {
+            return "local:" + m_name;
+        }
+    }//class Local
+
+    /**
+     * class Tcp
+     *
+     * Each frame is sent as the sending node, the word count, the send
+     * time and the words.
+     */
+    private static class Tcp extends NetworkLink
+    {
+        /** how long to keep trying to reach a node that isn't up yet (ms) */
+        private static final int CONNECT_TIMEOUT_MS = 30000;
+
+        private int m_basePort;
+        private HashMap<Integer, DataOutputStream> m_out =
+            new HashMap<Integer, DataOutputStream>();
+
+        public Tcp(int basePort)
+        {
+            m_basePort = basePort;
+        }
+
+        public void attach(int node, final Receiver r) throws IOException
+        {
+            final ServerSocket server =
+                new ServerSocket(m_basePort + node, 50, InetAddress.getLoopbackAddress());
+
+            //Take connections from the other nodes, each on its own thread
+            Thread t = new Thread() {
+                public void run()
+                {
+                    while (true)
+                    {
+                        try
+                        {
+                            receive(server.accept(), r);
+                        }
+                        catch(IOException e)
+                        {
+                            return;
+                        }
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }//attach
+
+        /**
+         * receive
+         *
+         * starts a thread that delivers the frames that arrive on a
+         * connection
+         */
+        private void receive(final Socket sock, final Receiver r) throws IOException
+        {
+            sock.setTcpNoDelay(true);
+            final DataInputStream in =
+                new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+            Thread t = new Thread() {
+                public void run()
+                {
+                    int[] words = new int[64];
+                    try
+                    {
+                        while (true)
+                        {
+                            int src = in.readInt();
+                            int count = in.readInt();
+                            long sent = in.readLong();
+                            if (count > words.length)
+                            {
+                                words = new int[count];
+                            }
+                            for(int i = 0; i < count; i++)
+                            {
+                                words[i] = in.readInt();
+                            }
+                            r.deliver(src, words, count, sent);
+                        }
+                    }
+                    catch(IOException e)
+                    {
+                        //The other node has gone
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }//receive
+
+        /**
+         * connect
+         *
+         * @return the stream to a node, connecting to it (and waiting for it
+         *         to start listening) if this is the first frame for it
+         */
+        private synchronized DataOutputStream connect(int dest) throws IOException
+        {
+            DataOutputStream out = m_out.get(dest);
+            if (out != null)
+            {
+                return out;
+            }
+
+            long giveUp = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+            while (true)
+            {
+                try
+                {
+                    Socket sock = new Socket(InetAddress.getLoopbackAddress(),
+                                             m_basePort + dest);
+                    sock.setTcpNoDelay(true);
+                    out = new DataOutputStream(
+                        new BufferedOutputStream(sock.getOutputStream()));
+                    m_out.put(dest, out);
+                    return out;
+                }
+                catch(ConnectException e)
+                {
+                    if (System.currentTimeMillis() > giveUp)
+                    {
+                        throw e;
+                    }
+                    LatencyModel.sleep(10000000L);
+                }
+            }
+        }//connect
+
+        public void send(int src, int dest, int[] words, int count, long sent)
+            throws IOException
+        {
+            DataOutputStream out;
+            try
+            {
+                out = connect(dest);
+            }
+            catch(ConnectException e)
+            {
+                m_dropped++;
+                return;
+            }
+            synchronized(out)
+            {
+                out.writeInt(src);
+                out.writeInt(count);
+                out.writeLong(sent);
+                for(int i = 0; i < count; i++)
+                {
+                    out.writeInt(words[i]);
+                }
+                out.flush();
+            }
+        }//send
+
+        public String toString()
+        {
+            return "tcp:" + m_basePort;
+        }
+    }//class Tcp
+
+};//class NetworkLink
@@ -0,0 +1,154 @@
+package sos;
+
+/**
+ * This class is a sharable, readable and writeable device that accepts any
+ * number of requests and never completes them.  The benchmarks use it to
+ * make the OS block processes on I/O and then send the completion
+ * interrupts themselves.
+ *
+ * @see WakeupBench
+ * @see SyscallBench
+ * @see Device
+ */
+public class NullDevice implements Device
+{
+    private int m_Id = -999;           // the OS assigned device ID
+
+    /**
+     * getId
+     *
+     * @return the OS assigned device ID
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the device id of this device
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * isSharable
+     *
+     * @return true
+     */
+    public boolean isSharable()
+    {
+        return true;
+    }
+
+    /**
+     * isAvailable
+     *
+     * @return true (there is always room for another request)
+     */
+    public boolean isAvailable()
+    {
+        return true;
+    }
+
+    /**
+     * getQueueDepth
+     *
+     * @return the number of requests the device can hold at once
+     */
+    public int getQueueDepth()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * setQueueDepth
+     *
+     * does nothing (there is no limit)
+     */
+    public void setQueueDepth(int depth)
+    {
+    }
+
+    /**
+     * getQueue
+     *
+     * @return null (requests are not kept)
+     */
+    public DeviceQueue getQueue()
+    {
+        return null;
+    }
+
+    /**
+     * setEventLoop
+     *
+     * does nothing (the device never runs)
+     */
+    public void setEventLoop(DeviceEventLoop loop)
+    {
+    }
+
+    /**
+     * isReadable
+     *
+     * @return true
+     */
+    public boolean isReadable()
+    {
+        return true;
+    }
+
+    /**
+     * isWriteable
+     *
+     * @return true
+     */
+    public boolean isWriteable()
+    {
+        return true;
+    }
+
+    /**
+     * read
+     *
+     * accepts a read request and forgets it
+     */
+    public int read(int addr, int tag)
+    {
+        return 0;
+    }
+
+    /**
+     * write
+     *
+     * accepts a write request and forgets it
+     */
+    public void write(int addr, int data, int tag)
+    {
+    }
+
+    /**
+     * setLatencyModel
+     *
+     * does nothing (the device never completes a request)
+     */
+    public void setLatencyModel(LatencyModel model)
+    {
+    }
+
+    /**
+     * setSeed
+     *
+     * does nothing (the device uses no random numbers)
+     */
+    public void setSeed(long seed)
+    {
+    }
+
+};//class NullDevice
@@ -0,0 +1,211 @@
+package sos;
+
+/**
+ * This class is a first-in first-out queue of processes.  The queue links
+ * the processes through fields in the processes themselves (see
+ * {@link Entry}), so adding a process, taking the first one and removing one
+ * from anywhere in the queue are all constant time and never allocate.  A
+ * process can be in at most one queue at a time.
+ *
+ * This class is not synchronized: it must only be used by the thread that
+ * runs SOS.
+ *
+ * @see SOS
+ */
+public class ProcessQueue
+{
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Entry
+     *
+     * Something that can be put in a ProcessQueue (SOS's process control
+     * blocks extend it)
+     */
+    public static class Entry
+    {
+        private Entry m_next = null;        // the entry behind this one
+        private Entry m_prev = null;        // the entry in front of this one
+        private ProcessQueue m_queue = null; // the queue this entry is in
+
+        //State the Scheduler keeps for the process (e.g. its priority level)
+        int m_schedLevel = 0;
+        long m_schedUsed = 0;
+        long m_schedMark = 0;
+
+        //The absolute deadline (System.nanoTime) SOS has given the process'
+        //current job (Long.MAX_VALUE if it has none)
+        long m_deadline = Long.MAX_VALUE;
+
+        //The share of the CPU an EDF scheduler has admitted the process for
+        //(0 if it has not been admitted)
+        double m_share = 0.0;
+
+        /**
+         * getQueue
+         *
+         * @return the queue this entry is in -OR- null if it is in none
+         */
+        public ProcessQueue getQueue()
+        {
+            return m_queue;
+        }
+    }//class Entry
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private Entry m_head = null;    // the first entry
+    private Entry m_tail = null;    // the last entry
+    private int m_size = 0;         // the number of entries
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * the constructor creates an empty queue
+     */
+    public ProcessQueue()
+    {
+    }
+
+    /**
+     * size
+     *
+     * @return the number of entries in the queue
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * isEmpty
+     *
+     * @return true if there are no entries in the queue
+     */
+    public boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    /**
+     * contains
+     *
+     * @return true if the entry is in this queue
+     */
+    public boolean contains(Entry e)
+    {
+        return e.m_queue == this;
+    }
+
+    /**
+     * add
+     *
+     * puts an entry at the back of the queue, taking it out of the queue it
+     * was in (if any)
+     *
+     * @param e the entry
+     */
+    public void add(Entry e)
+    {
+        if (e.m_queue != null)
+        {
+            e.m_queue.remove(e);
+        }
+
+        e.m_queue = this;
+        e.m_prev = m_tail;
+        e.m_next = null;
+        if (m_tail == null)
+        {
+            m_head = e;
+        }
+        else
+        {
+            m_tail.m_next = e;
+        }
+        m_tail = e;
+        m_size++;
+    }//add
+
+    /**
+     * peek
+     *
+     * @return the entry at the front of the queue -OR- null if it is empty
+     */
+    public Entry peek()
+    {
+        return m_head;
+    }
+
+    /**
+     * poll
+     *
+     * removes the entry at the front of the queue
+     *
+     * @return the entry -OR- null if the queue is empty
+     */
+    public Entry poll()
+    {
+        Entry e = m_head;
+        if (e != null)
+        {
+            remove(e);
+        }
+        return e;
+    }//poll
+
+    /**
+     * remove
+     *
+     * takes an entry out of the queue
+     *
+     * @param e the entry
+     * @return true if it was in this queue
+     */
+    public boolean remove(Entry e)
+    {
+        if (e.m_queue != this)
+        {
+            return false;
+        }
+
+        if (e.m_prev == null)
+        {
+            m_head = e.m_next;
+        }
+        else
+        {
+            e.m_prev.m_next = e.m_next;
+        }
+        if (e.m_next == null)
+        {
+            m_tail = e.m_prev;
+        }
+        else
+        {
+            e.m_next.m_prev = e.m_prev;
+        }
+        e.m_next = null;
+        e.m_prev = null;
+        e.m_queue = null;
+        m_size--;
+        return true;
+    }//remove
+
+    /**
+     * next
+     *
+     * @return the entry behind another in the queue -OR- null if it is the
+     *         last one (for walking the queue from {@link #peek})
+     */
+    public Entry next(Entry e)
+    {
+        return (e.m_queue == this) ? e.m_next : null;
+    }
+
+};//class ProcessQueue
@@ -0,0 +1,310 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class is the process table: a fixed set of slots, one per live
+ * process, that keeps the state SOS touches on every system call and
+ * interrupt in parallel primitive arrays indexed by slot (the process id,
+ * the saved registers and what the process is blocked for) rather than
+ * scattered through one object per process.
+ *
+ * The table hands out the process ids.  The low {@link #SLOT_BITS} bits of
+ * an id are the process' slot and the rest are the slot's generation, which
+ * goes up each time the slot is freed.  Finding a process is a mask and a
+ * check that the slot still holds that id, and ids of exited processes
+ * aren't handed out again until their slot's generation wraps.
+ *
+ * A slot is recycled when its process exits.  Its register bank and the
+ * {@link ProcessQueue.Entry} SOS stored in it stay with the slot, so once
+ * the table has grown to the most processes alive at once creating a
+ * process allocates nothing.
+ *
+ * This class is not synchronized: it must only be used by the thread that
+ * runs SOS.
+ *
+ * @see SOS
+ */
+public class ProcessTable
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** returned for a process id that has no slot */
+    public static final int NO_SLOT = -1;
+
+    /** the device id of a slot whose process is not blocked for a device */
+    public static final int NO_DEVICE = -1;
+
+    /** the number of low bits of a process id that hold its slot */
+    public static final int SLOT_BITS = 17;
+
+    /** the most slots (and so live processes) the table can have */
+    public static final int MAX_SLOTS = 1 << SLOT_BITS;
+
+    /** the bits of a process id that hold its slot */
+    private static final int SLOT_MASK = MAX_SLOTS - 1;
+
+    /** generations wrap here, so a process id is never negative */
+    private static final int GEN_LIMIT = 1 << (31 - SLOT_BITS);
+
+    /** the initial number of slots */
+    private static final int INITIAL_SLOTS = 16;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    //The state of each slot
+    private int[] m_pids;               // process id (-1 if the slot is free)
+    private int[] m_generations;        // the generation of each slot
+    private int[][] m_registers;        // register banks
+    private int[] m_blockedDev;         // id of the device it waits for
+    private int[] m_blockedOp;          // the operation it waits for
+    private int[] m_blockedAddr;        // the address it waits for
+    private ProcessQueue.Entry[] m_entries; // what SOS keeps for the process
+
+    private int[] m_free;               // stack of free slots below m_used
+    private int m_numFree = 0;
+    private int m_used = 0;             // slots [0, m_used) have been used
+    private int m_size = 0;             // the number of live processes
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * the constructor creates an empty table
+     */
+    public ProcessTable()
+    {
+        m_pids = new int[INITIAL_SLOTS];
+        m_generations = new int[INITIAL_SLOTS];
+        m_registers = new int[INITIAL_SLOTS][];
+        m_blockedDev = new int[INITIAL_SLOTS];
+        m_blockedOp = new int[INITIAL_SLOTS];
+        m_blockedAddr = new int[INITIAL_SLOTS];
+        m_entries = new ProcessQueue.Entry[INITIAL_SLOTS];
+        m_free = new int[INITIAL_SLOTS];
+    }
+
+    /**
+     * size
+     *
+     * @return the number of live processes
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * getSlotLimit
+     *
+     * @return one more than the highest slot that has ever been used (for
+     *         walking the table with {@link #isLive})
+     */
+    public int getSlotLimit()
+    {
+        return m_used;
+    }
+
+    /**
+     * allocate
+     *
+     * gives a new process a slot, reusing the most recently freed one, and
+     * an id (see {@link #getPid}).  The slot's registers are zeroed and it
+     * is not blocked.
+     *
+     * @return the slot
+     * @throws IllegalStateException if all MAX_SLOTS slots are in use
+     */
+    public int allocate()
+    {
+        int slot;
+        if (m_numFree > 0)
+        {
+            slot = m_free[--m_numFree];
+            Arrays.fill(m_registers[slot], 0);
+        }
+        else
+        {
+            if (m_used == MAX_SLOTS)
+            {
+                throw new IllegalStateException("the process table is full");
+            }
+            if (m_used == m_pids.length)
+            {
+                grow();
+            }
+            slot = m_used++;
+            m_registers[slot] = new int[CPU.NUMREG];
+            m_generations[slot] = 1;
+        }
+
+        m_pids[slot] = (m_generations[slot] << SLOT_BITS) | slot;
+        m_blockedDev[slot] = NO_DEVICE;
+        m_blockedOp[slot] = -1;
+        m_blockedAddr[slot] = -1;
+        m_size++;
+        return slot;
+    }//allocate
+
+    /**
+     * free
+     *
+     * gives up the slot of a process that has exited.  The slot keeps its
+     * register bank and entry for the next process that gets it, which gets
+     * the next generation's id.
+     *
+     * @param slot  the slot
+     */
+    public void free(int slot)
+    {
+        if (!isLive(slot))
+        {
+            return;
+        }
+        m_pids[slot] = -1;
+        m_generations[slot] = Math.max(1, (m_generations[slot] + 1) % GEN_LIMIT);
+        m_free[m_numFree++] = slot;
+        m_size--;
+    }//free
+
+    /**
+     * grow
+     *
+     * doubles the number of slots (up to MAX_SLOTS)
+     */
+    private void grow()
+    {
+        int n = Math.min(m_pids.length * 2, MAX_SLOTS);
+        m_pids = Arrays.copyOf(m_pids, n);
+        m_generations = Arrays.copyOf(m_generations, n);
+        m_registers = Arrays.copyOf(m_registers, n);
+        m_blockedDev = Arrays.copyOf(m_blockedDev, n);
+        m_blockedOp = Arrays.copyOf(m_blockedOp, n);
+        m_blockedAddr = Arrays.copyOf(m_blockedAddr, n);
+        m_entries = Arrays.copyOf(m_entries, n);
+        m_free = Arrays.copyOf(m_free, n);
+    }//grow
+
+    /**
+     * slotOf
+     *
+     * @param pid  a process id
+     * @return the slot of the live process with that id -OR- NO_SLOT
+     */
+    public int slotOf(int pid)
+    {
+        int slot = pid & SLOT_MASK;
+        if ((pid < 0) || (slot >= m_used) || (m_pids[slot] != pid))
+        {
+            return NO_SLOT;
+        }
+        return slot;
+    }
+
+    /**
+     * isLive
+     *
+     * @return true if a live process has the slot
+     */
+    public boolean isLive(int slot)
+    {
+        return (slot >= 0) && (slot < m_used) && (m_pids[slot] >= 0);
+    }
+
+    /**
+     * getPid
+     *
+     * @return the id of the process in a slot
+     */
+    public int getPid(int slot)
+    {
+        return m_pids[slot];
+    }
+
+    /**
+     * getRegisters
+     *
+     * @return the register bank of the process in a slot (the same array
+     *         for as long as it has the slot).  The CPU runs on it while
+     *         the process is running.
+     */
+    public int[] getRegisters(int slot)
+    {
+        return m_registers[slot];
+    }
+
+    /**
+     * getEntry
+     *
+     * @return what SOS stored in a slot (it stays after the slot is freed)
+     */
+    public ProcessQueue.Entry getEntry(int slot)
+    {
+        return m_entries[slot];
+    }
+
+    /**
+     * setEntry
+     *
+     * stores what SOS keeps for the process in a slot
+     */
+    public void setEntry(int slot, ProcessQueue.Entry e)
+    {
+        m_entries[slot] = e;
+    }
+
+    /**
+     * setBlocked
+     *
+     * records what the process in a slot is blocked for
+     *
+     * @param slot  the slot
+     * @param dev   the id of the device (NO_DEVICE when it is unblocked)
+     * @param op    the operation
+     * @param addr  the address
+     */
+    public void setBlocked(int slot, int dev, int op, int addr)
+    {
+        m_blockedDev[slot] = dev;
+        m_blockedOp[slot] = op;
+        m_blockedAddr[slot] = addr;
+    }//setBlocked
+
+    /**
+     * getBlockedDevice
+     *
+     * @return the id of the device the process in a slot is blocked for
+     *         -OR- NO_DEVICE
+     */
+    public int getBlockedDevice(int slot)
+    {
+        return m_blockedDev[slot];
+    }
+
+    /**
+     * getBlockedOperation
+     *
+     * @return the operation the process in a slot is blocked for (-1 if
+     *         none)
+     */
+    public int getBlockedOperation(int slot)
+    {
+        return m_blockedOp[slot];
+    }
+
+    /**
+     * getBlockedAddr
+     *
+     * @return the address the process in a slot is blocked for (-1 if none)
+     */
+    public int getBlockedAddr(int slot)
+    {
+        return m_blockedAddr[slot];
+    }
+
+};//class ProcessTable
@@ -136,4 +136,55 @@ public class RAM
         m_mem[addr] = val;
     }//write
 
+    /**
+     * readBlock
+     *
+     * copies a block of integers out of the simulated RAM in a single burst
+     * (as a DMA controller would), paying the RAM latency once
+     *
+     * @param addr  the location to start copying from
+     * @param dest  where to copy the integers to (its length is the size of
+     *              the block)
+     */
+    public void readBlock(int addr, int[] dest)
+    {
+        //Simulate RAM latency
+        if (m_latency > 0)
+        {
+            try
+            {
+                Thread.sleep(0, m_latency);
+            }
+            catch(InterruptedException ie)
+            {/* do nothing*/ }
+        }
+
+        System.arraycopy(m_mem, addr, dest, 0, dest.length);
+    }//readBlock
+
+    /**
+     * writeBlock
+     *
+     * copies a block of integers into the simulated RAM in a single burst
+     * (as a DMA controller would), paying the RAM latency once
+     *
+     * @param addr  the location to start copying to
+     * @param src   the integers to copy (its length is the size of the block)
+     */
+    public void writeBlock(int addr, int[] src)
+    {
+        //Simulate RAM latency
+        if (m_latency > 0)
+        {
+            try
+            {
+                Thread.sleep(0, m_latency);
+            }
+            catch(InterruptedException ie)
+            {/* do nothing*/ }
+        }
+
+        System.arraycopy(src, 0, m_mem, addr, src.length);
+    }//writeBlock
+
 };
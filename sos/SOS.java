@@ -33,15 +33,46 @@ public class SOS implements CPU.TrapHandler
     private ProcessControlBlock m_currProcess = null;
 
     /**
-     * List of all processes currently loaded into RAM and in one of the major states
+     * The process table: a slot for each process currently loaded into RAM
+     * and in one of the major states, found by process id in constant time
      **/
-    Vector<ProcessControlBlock> m_processes = null;
+    private ProcessTable m_procTable = new ProcessTable();
+
+    /**
+     * The scheduler holds the processes that are Ready and decides which
+     * runs next.  The processes that are Blocked waiting for a device are
+     * in m_waiting, indexed by the device, operation and address they are
+     * waiting for, so a completion interrupt finds its process without a
+     * search.  The running process is in neither.
+     **/
+    private Scheduler m_scheduler = new Scheduler.RoundRobin();
+    private WaitQueues m_waiting = new WaitQueues();
+
+    /**
+     * The periodic processes that finished a job before their next one is
+     * released, soonest release first
+     **/
+    private PriorityQueue<ProcessControlBlock> m_sleeping =
+        new PriorityQueue<ProcessControlBlock>(11, (a, b) -> Long.compare(a.wakeTime, b.wakeTime));
 
     /**
      * A Vector of DeviceInfo objects
      **/
     private Vector<DeviceInfo> m_devices = null;
 
+    /**
+     * A Vector of DevicePool objects (classes of interchangeable devices)
+     **/
+    private Vector<DevicePool> m_pools = null;
+
+    /**
+     * The registered devices and pools indexed by id (null where there is
+     * none) so a system call finds the one it names without a search.
+     * m_devices and m_pools list them in the order they were registered.
+     **/
+    private DeviceInfo[] m_deviceTable = new DeviceInfo[0];
+    private DevicePool[] m_poolTable = new DevicePool[0];
+
     /**
      * A Vector of all the Program objects that are available to the operating system.
      **/
@@ -52,11 +83,6 @@ public class SOS implements CPU.TrapHandler
      **/
     private int m_nextLoadPos = 0;
 
-    /**
-     * The ID which will be assigned to the next process that is loaded
-     **/
-    private int m_nextProcessID = 1001;
-    
     /**
      * The CPU the operating system is managing.
      **/
@@ -67,6 +93,77 @@ public class SOS implements CPU.TrapHandler
      **/
     private RAM m_RAM = null;
 
+    /**
+     * Latency histograms for interrupts.  SOS records how long a process
+     * woken by an interrupt waits before it runs.
+     **/
+    private InterruptStats m_intStats = null;
+
+    /**
+     * Scheduling statistics: clock interrupts taken, context switches (and
+     * how many of those were preemptions) and how long processes wait in
+     * the Ready state before they get the CPU.
+     **/
+    private long m_clockTicks = 0;
+    private long m_contextSwitches = 0;
+    private long m_preemptions = 0;
+    private LatencyHistogram m_readyWait = new LatencyHistogram();
+
+    /**
+     * The number of device requests that had to wait for room in the
+     * device's queue
+     **/
+    private long m_deviceWaits = 0;
+
+    /**
+     * The time from the creation of each process until it first ran
+     * (response) and until it exited (turnaround)
+     **/
+    private LatencyHistogram m_response = new LatencyHistogram();
+    private LatencyHistogram m_turnaround = new LatencyHistogram();
+
+    /**
+     * Deadline statistics: the jobs completed by processes with deadlines,
+     * how many of them missed, the processes refused by admission control,
+     * the time from each job's release until it was done and how late it
+     * was (0 if it was on time)
+     **/
+    private long m_deadlineJobs = 0;
+    private long m_deadlineMisses = 0;
+    private long m_deadlineRejects = 0;
+    private LatencyHistogram m_jobTime = new LatencyHistogram();
+    private LatencyHistogram m_lateness = new LatencyHistogram();
+
+    /**
+     * How long processes waited for an OPEN of a device that was in use
+     **/
+    private LatencyHistogram m_openWait = new LatencyHistogram();
+
+    /**
+     * The CPU's instruction count when the running process was last
+     * charged for the instructions it ran
+     **/
+    private long m_instrMark = 0;
+
+    /**
+     * Whether to keep the accounting of each process that exits for
+     * printProcessAccounting, and the rows kept (see ACCT_PID)
+     **/
+    private boolean m_keepAccounting = false;
+    private Vector<long[]> m_exitedAccounts = new Vector<long[]>();
+
+    /**
+     * The file system (null if none is mounted) and the disk it is on
+     **/
+    private FileSystem m_fs = null;
+    private DeviceInfo m_fsDisk = null;
+
+    /**
+     * The end of the RAM given to processes (the file system's buffer cache
+     * is above it)
+     **/
+    private int m_ramLimit = 0;
+
     //======================================================================
     //Constants
     //----------------------------------------------------------------------
@@ -82,6 +179,32 @@ public class SOS implements CPU.TrapHandler
     public static final int SYSCALL_EXEC    = 7;    /* spawn a new process */
     public static final int SYSCALL_YIELD   = 8;    /* yield the CPU to another process */
     public static final int SYSCALL_COREDUMP = 9;    /* print process state and exit */
+    public static final int SYSCALL_READBLOCK  = 10;  /* read a sector into memory */
+    public static final int SYSCALL_WRITEBLOCK = 11;  /* write memory to a sector */
+    public static final int SYSCALL_FOPEN   = 12;   /* open a file by name */
+    public static final int SYSCALL_FREAD   = 13;   /* read the next word of a file */
+    public static final int SYSCALL_FWRITE  = 14;   /* write the next word of a file */
+    public static final int SYSCALL_FCLOSE  = 15;   /* write back and close a file */
+    public static final int SYSCALL_DEADLINE = 16;  /* declare a deadline and period */
+    public static final int SYSCALL_PSTAT   = 17;   /* read a process' accounting counter */
+
+    /**The number of system calls (one more than the largest SYSCALL number)*/
+    private static final int NUM_SYSCALLS = SYSCALL_PSTAT + 1;
+
+    //The accounting counters SYSCALL_PSTAT can read
+    public static final int STAT_INSTRUCTIONS = 0;  /* instructions run */
+    public static final int STAT_READY_US     = 1;  /* time spent Ready (us) */
+    public static final int STAT_BLOCKED_US   = 2;  /* time spent Blocked on a device (us) */
+    public static final int STAT_SYSCALLS     = 3;  /* system calls of a type made */
+    public static final int STAT_SWITCHES_IN  = 4;  /* times switched onto the CPU */
+    public static final int STAT_SWITCHES_OUT = 5;  /* times switched off the CPU */
+
+    //The columns of a row of process accounting: the process id, the STAT
+    //totals (at ACCT_STATS + the STAT constant), the time (ns) Blocked on
+    //each device in m_devices and then the count of each system call
+    private static final int ACCT_PID     = 0;
+    private static final int ACCT_STATS   = 1;
+    private static final int ACCT_DEVICES = ACCT_STATS + STAT_SWITCHES_OUT + 1;
 
     //Return codes for syscalls
     public static final int SYSCALL_RET_SUCCESS = 0;    /* no problem */
@@ -91,9 +214,19 @@ public class SOS implements CPU.TrapHandler
     public static final int SYSCALL_RET_NOT_OPEN = 4;    /* device is not yet open */
     public static final int SYSCALL_RET_RO = 5;    /* device is read only */
     public static final int SYSCALL_RET_WO = 6;    /* device is write only */
+    public static final int SYSCALL_RET_BAD_ARG = 7;    /* not a block device, bad sector or bad buffer */
+    public static final int SYSCALL_RET_EOF = 8;    /* read past the end of a file */
+    public static final int SYSCALL_RET_NO_SPACE = 9;    /* no room for another file or sector */
+    public static final int SYSCALL_RET_OVERLOAD = 10;   /* admission control refused a deadline */
+
+    /**Processes waiting for the file system are blocked for this operation*/
+    private static final int WAIT_FILESYSTEM = -2;
 
-    /**This process is used as the idle process' id*/
-    public static final int IDLE_PROC_ID    = 999;  
+    /**Processes waiting for room in a device's queue are blocked for this operation*/
+    private static final int WAIT_DEVICE = -3;
+
+    /**The largest id a device or pool may have*/
+    public static final int MAX_DEVICE_ID   = 0xFFFF;
 
     /*======================================================================
      * Constructors & Debugging
@@ -109,10 +242,12 @@ public class SOS implements CPU.TrapHandler
         m_CPU = c;
         m_CPU.registerTrapHandler(this);
         m_RAM = r;
+        m_ramLimit = r.getSize();
+        m_intStats = c.getInterruptController().getStats();
 
         m_devices = new Vector<DeviceInfo>();
+        m_pools = new Vector<DevicePool>();
         m_programs = new Vector<Program>();
-        m_processes = new Vector<ProcessControlBlock>();
     }//SOS ctor
     
     /**
@@ -157,67 +292,171 @@ public class SOS implements CPU.TrapHandler
      */
 
     /**
-     * createIdleProcess
-     *
-     * creates a one instruction process that immediately exits.  This is used
-     * to buy time until device I/O completes and unblocks a legitimate
-     * process.
+     * printProcessTable      **DEBUGGING**
      *
+     * prints all the processes in the process table
      */
-    public void createIdleProcess()
+    private void printProcessTable()
     {
-        int progArr[] = { 0, 0, 0, 0,   //SET r0=0
-                          0, 0, 0, 0,   //SET r0=0
-                         //(repeated instruction to account for vagaries in student
-                         //implementation of the CPU class)
-                         10, 0, 0, 0,   //PUSH r0
-                         15, 0, 0, 0 }; //TRAP
+        //Don't build a string for every process just to throw it away
+        if (!m_verbose)
+        {
+            return;
+        }
+
+        debugPrintln("");
+        debugPrintln("Process Table (" + m_procTable.size() + " processes)");
+        debugPrintln("======================================================================");
+        for(int slot = 0; slot < m_procTable.getSlotLimit(); slot++)
+        {
+            if (m_procTable.isLive(slot))
+            {
+                debugPrintln("    " + m_procTable.getEntry(slot));
+            }
+        }//for
+        debugPrintln("----------------------------------------------------------------------");
 
-        //Initialize the starting position for this program
-        int baseAddr = m_nextLoadPos;
+    }//printProcessTable
 
-        //Load the program into RAM
-        for(int i = 0; i < progArr.length; i++)
+    /**
+     * printSchedStats
+     *
+     * prints the context switch counts and the distribution of the time
+     * processes spent Ready before they ran
+     */
+    public void printSchedStats()
+    {
+        System.out.println("");
+        System.out.println("SCHEDULING: clock ticks=" + m_clockTicks
+                           + " context switches=" + m_contextSwitches
+                           + " preemptions=" + m_preemptions);
+        System.out.println(String.format("  cpu halted %d times for %.1fms",
+                                         m_CPU.getHalts(),
+                                         m_CPU.getHaltedTime() / 1e6));
+        System.out.println("  device requests that waited for a full queue: "
+                           + m_deviceWaits);
+        System.out.println("  ready wait " + LatencyHistogram.header());
+        System.out.println("             " + m_readyWait);
+        System.out.println("  open wait  " + m_openWait);
+        System.out.println("  response   " + m_response);
+        System.out.println("  turnaround " + m_turnaround);
+        if ((m_deadlineJobs > 0) || (m_deadlineRejects > 0))
         {
-            m_RAM.write(baseAddr + i, progArr[i]);
+            System.out.println(String.format(
+                "  deadlines: %d jobs, %d missed (%.1f%%), %d processes refused",
+                m_deadlineJobs, m_deadlineMisses,
+                (100.0 * m_deadlineMisses) / Math.max(1, m_deadlineJobs),
+                m_deadlineRejects));
+            System.out.println("  job time   " + m_jobTime);
+            System.out.println("  lateness   " + m_lateness);
         }
-
-        //Save the register info from the current process (if there is one)
-        if (m_currProcess != null)
+        m_scheduler.printStats();
+        for(DevicePool pool : m_pools)
         {
-            m_currProcess.save(m_CPU);
+            System.out.println("  pool " + pool.getId() + ": "
+                               + pool.getMembers().size() + " devices, "
+                               + pool.getOpens() + " opens, "
+                               + pool.getWaits() + " waited");
         }
-        
-        //Set the appropriate registers
-        m_CPU.setPC(0);
-        m_CPU.setSP(progArr.length + 20);
-        m_CPU.setBASE(baseAddr);
-        m_CPU.setLIM(baseAddr + progArr.length + 20);
-
-        //Save the relevant info as a new entry in m_processes
-        m_currProcess = new ProcessControlBlock(IDLE_PROC_ID);  
-        m_processes.add(m_currProcess);
+    }//printSchedStats
 
-    }//createIdleProcess
-     
+    /**
+     * setKeepAccounting
+     *
+     * chooses whether to keep the accounting of each process that exits so
+     * {@link #printProcessAccounting} can print it
+     */
+    public void setKeepAccounting(boolean keep)
+    {
+        m_keepAccounting = keep;
+    }
 
     /**
-     * printProcessTable      **DEBUGGING**
+     * printProcessAccounting
      *
-     * prints all the processes in the process table
+     * prints a line for each process that has exited (if they were kept)
+     * and each one still alive: the instructions it ran, the time it spent
+     * Ready and Blocked (ms), how many times it was switched onto and off
+     * the CPU, the system calls it made, the time it spent Blocked on each
+     * device (id:ms) and its system calls by number (number:count)
      */
-    private void printProcessTable()
+    public void printProcessAccounting()
     {
-        debugPrintln("");
-        debugPrintln("Process Table (" + m_processes.size() + " processes)");
-        debugPrintln("======================================================================");
-        for(ProcessControlBlock pi : m_processes)
+        long now = System.nanoTime();
+        chargeInstructions();
+
+        System.out.println("");
+        System.out.println("PROCESSES:");
+        System.out.println(String.format("%7s %11s %10s %11s %6s %6s %8s  %-20s %s",
+                                         "pid", "instrs", "ready(ms)", "blocked(ms)",
+                                         "in", "out", "syscalls",
+                                         "blocked on (id:ms)", "syscalls (num:count)"));
+        for(long[] row : m_exitedAccounts)
         {
-            debugPrintln("    " + pi);
-        }//for
-        debugPrintln("----------------------------------------------------------------------");
+            printAccountingRow(row);
+        }
+        long[] row = new long[getAccountingRowLength()];
+        for(int slot = 0; slot < m_procTable.getSlotLimit(); slot++)
+        {
+            if (m_procTable.isLive(slot))
+            {
+                ProcessControlBlock pi = (ProcessControlBlock)m_procTable.getEntry(slot);
+                pi.getAccounting(row, now);
+                printAccountingRow(row);
+            }
+        }
+    }//printProcessAccounting
 
-    }//printProcessTable
+    /**
+     * getAccountingRowLength
+     *
+     * @return the number of columns in a row of process accounting
+     */
+    private int getAccountingRowLength()
+    {
+        return ACCT_DEVICES + m_devices.size() + NUM_SYSCALLS;
+    }
+
+    /**
+     * printAccountingRow
+     *
+     * prints a process' line of the table printed by printProcessAccounting
+     *
+     * @param row  the process' accounting (see ProcessControlBlock.getAccounting)
+     */
+    private void printAccountingRow(long[] row)
+    {
+        int numDevs = row.length - ACCT_DEVICES - NUM_SYSCALLS;
+        StringBuilder blocked = new StringBuilder();
+        for(int i = 0; i < numDevs; i++)
+        {
+            long ns = row[ACCT_DEVICES + i];
+            if (ns > 0)
+            {
+                blocked.append(String.format(" %d:%.1f", m_devices.get(i).getId(),
+                                             ns / 1e6));
+            }
+        }
+        StringBuilder calls = new StringBuilder();
+        for(int n = 0; n < NUM_SYSCALLS; n++)
+        {
+            long count = row[ACCT_DEVICES + numDevs + n];
+            if (count > 0)
+            {
+                calls.append(" " + n + ":" + count);
+            }
+        }
+        System.out.println(String.format("%7d %11d %10.1f %11.1f %6d %6d %8d  %-20s %s",
+                                         row[ACCT_PID],
+                                         row[ACCT_STATS + STAT_INSTRUCTIONS],
+                                         row[ACCT_STATS + STAT_READY_US] / 1e3,
+                                         row[ACCT_STATS + STAT_BLOCKED_US] / 1e3,
+                                         row[ACCT_STATS + STAT_SWITCHES_IN],
+                                         row[ACCT_STATS + STAT_SWITCHES_OUT],
+                                         row[ACCT_STATS + STAT_SYSCALLS],
+                                         blocked.toString().trim(),
+                                         calls.toString().trim()));
+    }//printAccountingRow
 
     /**
      * removeCurrentProcess
@@ -228,106 +467,221 @@ public class SOS implements CPU.TrapHandler
     public void removeCurrentProcess()
     {
         if (m_currProcess != null) {
-            m_processes.remove(m_currProcess);
+            m_currProcess.recordExit(m_turnaround);
+            chargeInstructions();
+            if (m_keepAccounting) {
+                long[] row = new long[getAccountingRowLength()];
+                m_currProcess.getAccounting(row, System.nanoTime());
+                m_exitedAccounts.add(row);
+            }
+            m_scheduler.onExit(m_currProcess);
+            m_procTable.free(m_currProcess.getSlot());
             m_currProcess = null;
         }
         scheduleNewProcess();
     }//removeCurrentProcess
 
+    /**
+     * chargeInstructions
+     *
+     * charges the running process (if any) for the instructions the CPU
+     * has run since the last charge
+     */
+    private void chargeInstructions()
+    {
+        long count = m_CPU.getInstructionCount();
+        if (m_currProcess != null) {
+            m_currProcess.instructions += count - m_instrMark;
+        }
+        m_instrMark = count;
+    }//chargeInstructions
+
+    /**
+     * setScheduler
+     *
+     * chooses how the next process to run is picked.  This must be called
+     * before any processes are created.
+     *
+     * @param sched the scheduler
+     */
+    public void setScheduler(Scheduler sched)
+    {
+        m_scheduler = sched;
+    }//setScheduler
+
+    /**
+     * wakeSleepers
+     *
+     * releases the next job of each periodic process whose release time
+     * has come
+     */
+    private void wakeSleepers()
+    {
+        if (m_sleeping.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        while (!m_sleeping.isEmpty() && (m_sleeping.peek().wakeTime - now <= 0)) {
+            ProcessControlBlock pcb = m_sleeping.poll();
+            pcb.releaseJob(pcb.wakeTime);
+            pcb.wakeTime = 0;
+            pcb.unblock();
+        }
+    }//wakeSleepers
+
+    /**
+     * getSliceUnit
+     *
+     * @return the length of a clock tick in the units processes are
+     *         charged in: instructions if the CPU's clock counts them,
+     *         otherwise 1 (a whole tick)
+     */
+    private int getSliceUnit()
+    {
+        return Math.max(1, m_CPU.getClockFreq());
+    }
+
     /**
      * selectBlockedProcess
      *
      * select a process to unblock that might be waiting to perform a given
      * action on a given device.  This is a helper method for system calls
-     * and interrupts that deal with devices.
+     * and interrupts that deal with devices.  Processes waiting for the
+     * same thing are selected in the order they blocked.
      *
      * @param dev   the Device that the process must be waiting for
      * @param op    the operation that the process wants to perform on the
      *              device.  Use the SYSCALL constants for this value.
-     * @param addr  the address the process is reading from.  If the
-     *              operation is a Write or Open then this value can be
-     *              anything
+     * @param addr  the address the process is reading from or writing to
+     *              (-1 for an Open)
      *
      * @return the process to unblock -OR- null if none match the given criteria
      */
     public ProcessControlBlock selectBlockedProcess(Device dev, int op, int addr)
     {
-        DeviceInfo devInfo = getDeviceInfo(dev.getId());
-        ProcessControlBlock selected = null;
-
-        for(ProcessControlBlock pi : devInfo.getPCBs())
+        ProcessQueue waiting = m_waiting.get(WaitQueues.key(dev.getId(), op, addr));
+        if (waiting == null)
         {
-            if (pi.isBlockedForDevice(dev, op, addr))
-            {
-                selected = pi;
-                break;
-            }
-        }//for
+            return null;
+        }
 
-        return selected;
+        return (ProcessControlBlock)waiting.peek();
         
     }//selectBlockedProcess
 
     /**
-     * getRandomProcess
+     * selectBlockedProcess
+     *
+     * select the process whose device request has completed.  Devices hand
+     * back the tag of the request with the completion interrupt; SOS tags
+     * each request with the id of the process that made it.
      *
-     * selects a non-Blocked process at random from the ProcessTable.
+     * @param dev   the Device that the process must be waiting for
+     * @param op    the operation that completed (SYSCALL_READ/SYSCALL_WRITE)
+     * @param addr  the address of the request
+     * @param tag   the tag handed back by the device
      *
-     * @return a reference to the ProcessControlBlock struct of the selected process
-     * -OR- null if no non-blocked process exists
+     * @return the process to unblock -OR- null if none match the given criteria
      */
-    ProcessControlBlock getRandomProcess()
+    public ProcessControlBlock selectBlockedProcess(Device dev, int op, int addr,
+                                                    int tag)
     {
-        //Calculate a random offset into the m_processes list
-        int offset = ((int)(Math.random() * 2147483647)) % m_processes.size();
-            
-        //Iterate until a non-blocked process is found
-        ProcessControlBlock newProc = null;
-        for(int i = 0; i < m_processes.size(); i++)
+        ProcessQueue waiting = m_waiting.get(WaitQueues.key(dev.getId(), op, addr));
+        if (waiting == null)
+        {
+            return null;
+        }
+
+        //The tag is the id of the process that made the request
+        int slot = m_procTable.slotOf(tag);
+        if (slot != ProcessTable.NO_SLOT)
         {
-            newProc = m_processes.get((i + offset) % m_processes.size());
-            if ( ! newProc.isBlocked())
+            ProcessQueue.Entry e = m_procTable.getEntry(slot);
+            if (e.getQueue() == waiting)
             {
-                return newProc;
+                return (ProcessControlBlock)e;
             }
-        }//for
+        }
+
+        //An untagged completion goes to the process that has waited longest
+        return (ProcessControlBlock)waiting.peek();
+        
+    }//selectBlockedProcess
 
-        return null;        // no processes are Ready
-    }//getRandomProcess
-    
     /**
      * scheduleNewProcess
      *
-     * Selects a new non-blocked process to run and replaces the old running process.
+     * Selects a new non-blocked process to run and replaces the old running
+     * process.  The scheduler picks the process; a process that is
+     * switched out without blocking goes back to it.
      */
     public void scheduleNewProcess()
     {
         printProcessTable();
 
-        if (m_processes.size() == 0) {
+        if (m_procTable.size() == 0) {
             System.exit(0);
         }
 
-        ProcessControlBlock proc = getRandomProcess();
+        wakeSleepers();
+        chargeInstructions();
+
+        //Charge the running process for the part of a tick it used if it
+        //yielded (a blocked process is charged nothing)
+        if ((m_currProcess != null) && !m_currProcess.isBlocked()) {
+            m_scheduler.onTick(m_currProcess, m_CPU.getClockCount(), getSliceUnit());
+        }
+
+        //The running process goes to the back of the queue if it is still
+        //Ready (it yielded or was preempted)
+        if ((m_currProcess != null) && !m_currProcess.isBlocked()) {
+            m_scheduler.enqueue(m_currProcess);
+        }
+
+        ProcessControlBlock proc = (ProcessControlBlock)m_scheduler.dequeue();
 
         if (proc == null) {
-            //Schedule an idle process.
-            createIdleProcess();
+            //Nothing is Ready so halt the CPU until an interrupt arrives or
+            //the next periodic job is released
+            if (m_currProcess != null) {
+                m_currProcess.save(m_CPU);
+                m_currProcess.switchesOut++;
+                m_currProcess = null;
+            }
+            long until = m_sleeping.isEmpty() ? 0 : m_sleeping.peek().wakeTime;
+            m_CPU.halt(until);
             return;
         }
 
+        //If an interrupt woke this process, it is finally getting to run
+        proc.recordWakeup(m_intStats);
+        proc.recordStart(m_response);
+
+        //The running process was picked again.  It has been charged for
+        //the instructions it ran so start its count again.
         if (proc == m_currProcess) {
+            m_CPU.resetClock();
             return;
         }
 
-        //Save the CPU registers
+        //Save the CPU registers.  A process that is switched out without
+        //blocking (it yielded or was preempted) goes back to Ready.
         if (m_currProcess != null) {
             m_currProcess.save(m_CPU);
+            m_currProcess.switchesOut++;
+            if (!m_currProcess.isBlocked()) {
+                m_currProcess.markReady();
+            }
         }
 
         //Set this process as the new current process
         m_currProcess = proc;
         m_currProcess.restore(m_CPU);
+        m_currProcess.switchesIn++;
+        m_currProcess.recordDispatch(m_readyWait);
+        m_contextSwitches++;
+        m_CPU.resetClock();
     }//scheduleNewProcess
 
     /**
@@ -364,7 +718,7 @@ public class SOS implements CPU.TrapHandler
         int base = m_nextLoadPos;
         int lim = base + allocSize;
 
-        if (lim >= m_RAM.getSize()) {
+        if (lim >= m_ramLimit) {
             debugPrintln("Error: Out of memory for new process!");
             System.exit(0);
         }
@@ -374,19 +728,27 @@ public class SOS implements CPU.TrapHandler
 
         if (m_currProcess != null) {
             debugPrintln("Moving proc " + m_currProcess.getProcessId() + " from RUNNING to READY.");
+            chargeInstructions();
             m_currProcess.save(m_CPU);
+            m_currProcess.switchesOut++;
+            m_scheduler.onTick(m_currProcess, m_CPU.getClockCount(), getSliceUnit());
+            m_currProcess.markReady();
+            m_scheduler.enqueue(m_currProcess);
+            m_contextSwitches++;
         }
 
+        //Switch the CPU to the new process' register bank
+        m_currProcess = newProcessControlBlock();
+        m_currProcess.restore(m_CPU);
+        m_currProcess.switchesIn++;
+        m_CPU.resetClock();
+
         m_CPU.setBASE(base);
         m_CPU.setLIM(lim);
         m_CPU.setPC(0); //We are going to use a logical (not physical) PC
         m_CPU.setSP(allocSize); //Stack starts at the bottom and grows up.
                                 //The Stack is also logical
 
-        m_currProcess = new ProcessControlBlock(m_nextProcessID++);
-        m_processes.add(m_currProcess);
-        m_currProcess.save(m_CPU);
-
         //Write the program code to memory
         int[] progArray = prog.export();
 
@@ -394,6 +756,26 @@ public class SOS implements CPU.TrapHandler
             m_RAM.write(base + progAddr, progArray[progAddr]);
         }
     }//createProcess
+
+    /**
+     * newProcessControlBlock
+     *
+     * gives a new process a slot (and with it an id) in the process table
+     * and a control block.  The control block left in the slot by the
+     * process that last had it is reused.
+     *
+     * @return the control block
+     */
+    private ProcessControlBlock newProcessControlBlock()
+    {
+        int slot = m_procTable.allocate();
+        ProcessControlBlock pcb = (ProcessControlBlock)m_procTable.getEntry(slot);
+        if (pcb == null) {
+            pcb = new ProcessControlBlock(slot);
+        }
+        pcb.reset();
+        return pcb;
+    }//newProcessControlBlock
  
 
     /*======================================================================
@@ -402,27 +784,131 @@ public class SOS implements CPU.TrapHandler
      */
 
 
-    public void interruptIOReadComplete(int devID, int addr, int data) {
-        Device dev = getDeviceInfo(devID).getDevice();
-        ProcessControlBlock blocked = selectBlockedProcess(dev, SYSCALL_READ, addr);
+    public void interruptIOReadComplete(int devID, int addr, int data, int tag) {
+        DeviceInfo devInfo = getDeviceInfo(devID);
+        IOScheduler.Request done = completeIO(devInfo, tag);
+
+        ioReadDone(devInfo.getDevice(), addr, data, tag);
+        for (int i = 0; (done != null) && (i < done.numMerged); i++) {
+            ioReadDone(devInfo.getDevice(), addr, data, done.merged[i]);
+        }
+        dispatchIO(devInfo);
+        issueWaitingIO(devInfo);
+    }
+
+    public void interruptIOWriteComplete(int devID, int addr, int tag) {
+        DeviceInfo devInfo = getDeviceInfo(devID);
+        IOScheduler.Request done = completeIO(devInfo, tag);
+
+        ioWriteDone(devInfo.getDevice(), addr, tag);
+        for (int i = 0; (done != null) && (i < done.numMerged); i++) {
+            ioWriteDone(devInfo.getDevice(), addr, done.merged[i]);
+        }
+        dispatchIO(devInfo);
+        issueWaitingIO(devInfo);
+    }
+
+    public void interruptIOBlockComplete(int devID, int sector, int tag) {
+        DeviceInfo devInfo = getDeviceInfo(devID);
+        IOScheduler.Request done = completeIO(devInfo, tag);
+
+        ioBlockDone(devInfo.getDevice(), sector, tag);
+        for (int i = 0; (done != null) && (i < done.numMerged); i++) {
+            ioBlockDone(devInfo.getDevice(), sector, done.merged[i]);
+        }
+        dispatchIO(devInfo);
+        issueWaitingIO(devInfo);
+    }
+
+    public void interruptIORoom(int devID) {
+        DeviceInfo devInfo = getDeviceInfo(devID);
+        dispatchIO(devInfo);
+        issueWaitingIO(devInfo);
+    }
+
+    /**
+     * fileSystemBlockDone
+     *
+     * tells the file system one of its transfers has completed and wakes
+     * every process waiting for that sector
+     */
+    private void fileSystemBlockDone(Device dev, int tag) {
+        int sector = m_fs.blockDone(tag);
+        ProcessQueue waiting =
+            m_waiting.get(WaitQueues.key(dev.getId(), WAIT_FILESYSTEM, sector));
+        while ((waiting != null) && !waiting.isEmpty()) {
+            ProcessControlBlock pi = (ProcessControlBlock)waiting.peek();
+            pi.unblock();
+            pi.markWoken(InterruptController.INT_BLOCK_DONE, dev.getId(),
+                         m_CPU.getInterruptController());
+        }
+    }
+
+    /**
+     * ioReadDone
+     *
+     * hands the data from a completed read to the process that asked for it
+     */
+    private void ioReadDone(Device dev, int addr, int data, int tag) {
+        int devID = dev.getId();
+        ProcessControlBlock blocked = selectBlockedProcess(dev, SYSCALL_READ, addr, tag);
 
         //Push the data and success code onto the stack.
-        m_CPU.pushStack(data, blocked.getRegisters());
-        m_CPU.pushStack(SYSCALL_RET_SUCCESS, blocked.getRegisters());
+        blocked.pushStack(data);
+        blocked.pushStack(SYSCALL_RET_SUCCESS);
 
         //unblock the blocked process
         blocked.unblock();
+        blocked.markWoken(InterruptController.INT_READ_DONE, devID,
+                          m_CPU.getInterruptController());
     }
 
-    public void interruptIOWriteComplete(int devID, int addr) {
-        Device dev = getDeviceInfo(devID).getDevice();
-        ProcessControlBlock blocked = selectBlockedProcess(dev, SYSCALL_WRITE, addr);
+    /**
+     * ioWriteDone
+     *
+     * tells the process that asked for a write that it has completed
+     */
+    private void ioWriteDone(Device dev, int addr, int tag) {
+        int devID = dev.getId();
+        ProcessControlBlock blocked = selectBlockedProcess(dev, SYSCALL_WRITE, addr, tag);
 
         //Push the success code onto the stack.
-        m_CPU.pushStack(SYSCALL_RET_SUCCESS, blocked.getRegisters());
+        blocked.pushStack(SYSCALL_RET_SUCCESS);
+
+        //unblock the blocked process
+        blocked.unblock();
+        blocked.markWoken(InterruptController.INT_WRITE_DONE, devID,
+                          m_CPU.getInterruptController());
+    }
+
+    /**
+     * ioBlockDone
+     *
+     * tells the process that asked for a sector transfer that it has
+     * completed
+     */
+    private void ioBlockDone(Device dev, int sector, int tag) {
+        if (FileSystem.isKernelTag(tag)) {
+            fileSystemBlockDone(dev, tag);
+            return;
+        }
+
+        int devID = dev.getId();
+        int op = SYSCALL_READBLOCK;
+        ProcessControlBlock blocked = selectBlockedProcess(dev, op, sector, tag);
+        if (blocked == null) {
+            op = SYSCALL_WRITEBLOCK;
+            blocked = selectBlockedProcess(dev, op, sector, tag);
+        }
+
+        //The sector is already in (or out of) the process' memory so just
+        //push the success code onto the stack.
+        blocked.pushStack(SYSCALL_RET_SUCCESS);
 
         //unblock the blocked process
         blocked.unblock();
+        blocked.markWoken(InterruptController.INT_BLOCK_DONE, devID,
+                          m_CPU.getInterruptController());
     }
 
     /**
@@ -462,6 +948,46 @@ public class SOS implements CPU.TrapHandler
         System.out.println("NOW YOU DIE!!!");
         System.exit(0);
     }
+
+    /**
+     * interruptClock
+     *
+     * Handles clock interrupts.  The running process has used up its time
+     * slice so it goes back to Ready and a new process is scheduled (which
+     * may turn out to be the same one) if the scheduler says its time
+     * slice is used up.
+     */
+    public void interruptClock() {
+        m_clockTicks++;
+
+        //The CPU is halted
+        if (m_currProcess == null) {
+            return;
+        }
+
+        m_currProcess.recordStart(m_response);
+        wakeSleepers();
+        if (!m_scheduler.onTick(m_currProcess, getSliceUnit(), getSliceUnit())) {
+            return;             // its time slice isn't used up yet
+        }
+
+        ProcessControlBlock preempted = m_currProcess;
+        scheduleNewProcess();
+        if (m_currProcess != preempted) {
+            m_preemptions++;
+        }
+    }
+    
+    /**
+     * interruptWake
+     *
+     * The CPU was halted because no process was Ready and an interrupt
+     * (which has been handled) or the release of a periodic job has woken
+     * it.  A process is scheduled or the CPU is halted again.
+     */
+    public void interruptWake() {
+        scheduleNewProcess();
+    }
     
     /*======================================================================
      * System Calls
@@ -475,6 +1001,7 @@ public class SOS implements CPU.TrapHandler
      */
     private void syscallExit() {
         debugPrintln("Removing proc " + m_currProcess.getProcessId() + " from RAM.");
+        m_currProcess.completeJob();
         removeCurrentProcess();
     }
 
@@ -506,6 +1033,12 @@ public class SOS implements CPU.TrapHandler
         DeviceInfo devInfo = getDeviceInfo(devNum);
 
         if (devInfo == null) {
+            DevicePool pool = getDevicePool(devNum);
+            if (pool != null) {
+                syscallOpenPool(pool);
+                return;
+            }
+
             m_CPU.pushStack(SYSCALL_RET_DNE);
             return;
         }
@@ -517,6 +1050,7 @@ public class SOS implements CPU.TrapHandler
 
             //addr = -1 because this is not a read
             m_currProcess.block(m_CPU, devInfo.getDevice(), SYSCALL_OPEN, -1);
+            m_currProcess.markOpenWait();
             devInfo.addProcess(m_currProcess);
             m_CPU.pushStack(SYSCALL_RET_SUCCESS);
             scheduleNewProcess();
@@ -528,6 +1062,41 @@ public class SOS implements CPU.TrapHandler
         m_CPU.pushStack(SYSCALL_RET_SUCCESS);
     }
 
+    /**
+     * syscallOpenPool
+     *
+     * Open any free device in a pool.  The process only waits if every
+     * device in the pool is in use.  Until it closes the pool the process
+     * uses the pool's id to read and write the device it was given.
+     */
+    private void syscallOpenPool(DevicePool pool) {
+        if (m_currProcess.getOpenDevice(pool.getId()) != null) {
+            m_CPU.pushStack(SYSCALL_RET_ALREADY_OPEN);
+            return;
+        }
+
+        pool.countOpen();
+        DeviceInfo devInfo = pool.findFree();
+        if (devInfo == null) {
+
+            //Wait for a device in the pool to be closed.  The pool's id is
+            //used as the addr so this can't be mistaken for an OPEN of the
+            //device itself.
+            pool.countWait();
+            m_currProcess.block(m_CPU, pool.getMembers().get(0).getDevice(),
+                                SYSCALL_OPEN, pool.getId());
+            m_currProcess.markOpenWait();
+            pool.addWaiter(m_currProcess);
+            m_CPU.pushStack(SYSCALL_RET_SUCCESS);
+            scheduleNewProcess();
+            return;
+        }
+
+        devInfo.addProcess(m_currProcess);
+        m_currProcess.setOpenDevice(pool.getId(), devInfo);
+        m_CPU.pushStack(SYSCALL_RET_SUCCESS);
+    }
+
     /**
      * syscallClose
      *
@@ -535,7 +1104,7 @@ public class SOS implements CPU.TrapHandler
      */
     private void syscallClose() {
         int devNum = m_CPU.popStack();
-        DeviceInfo devInfo = getDeviceInfo(devNum);
+        DeviceInfo devInfo = getOpenDeviceInfo(devNum);
 
         if (devInfo == null) {
             m_CPU.pushStack(SYSCALL_RET_DNE);
@@ -548,11 +1117,27 @@ public class SOS implements CPU.TrapHandler
 
         //De-associate the process with this device.
         devInfo.removeProcess(m_currProcess);
+        DevicePool pool = devInfo.getPool();
+        if ((pool != null) && (m_currProcess.getOpenDevice(pool.getId()) == devInfo)) {
+            m_currProcess.setOpenDevice(pool.getId(), null);
+        }
         m_CPU.pushStack(SYSCALL_RET_SUCCESS);
 
         //Unblock next proc which wants to open this device
         ProcessControlBlock proc = selectBlockedProcess(devInfo.getDevice(), SYSCALL_OPEN, -1);
         if (proc != null) { 
+            proc.recordOpenWait(m_openWait);
+            proc.unblock();
+            return;
+        }
+
+        //...or hand the device to the next proc waiting for its pool
+        if ((pool != null) && pool.hasWaiters()
+            && (devInfo.getDevice().isSharable() || devInfo.unused())) {
+            proc = pool.removeWaiter();
+            devInfo.addProcess(proc);
+            proc.setOpenDevice(pool.getId(), devInfo);
+            proc.recordOpenWait(m_openWait);
             proc.unblock();
         }
     }
@@ -565,27 +1150,12 @@ public class SOS implements CPU.TrapHandler
     private void syscallRead() {
         int addr = m_CPU.popStack();
         int devNum = m_CPU.popStack();
-        DeviceInfo devInfo = getDeviceInfo(devNum);
+        DeviceInfo devInfo = getOpenDeviceInfo(devNum);
 
         if (devInfo == null) {
             m_CPU.pushStack(SYSCALL_RET_DNE);
             return;
         }
-        if (! devInfo.device.isAvailable() ) {
-
-            //Push the addr, devNum, and syscall back onto the stack.
-            m_CPU.pushStack(devNum);
-            m_CPU.pushStack(addr);
-            m_CPU.pushStack(SYSCALL_READ);
-
-            //Decriment the PC counter so that the TRAP happens again
-            m_CPU.setPC( m_CPU.getPC() - m_CPU.INSTRSIZE );
-
-            //Try again later
-            scheduleNewProcess();
-
-            return;
-        }
         if (! devInfo.containsProcess(m_currProcess) ) {
             m_CPU.pushStack(SYSCALL_RET_NOT_OPEN);
             return;
@@ -595,8 +1165,17 @@ public class SOS implements CPU.TrapHandler
             return;
         }
 
-        //Start to read
-        devInfo.getDevice().read(addr);
+        //Start to read.  The request is tagged with our pid.
+        if (devInfo.getScheduler() != null) {
+            submitIO(devInfo, new IOScheduler.Request(SYSCALL_READ, addr, 0,
+                                                      m_currProcess.getProcessId(),
+                                                      ioPosition(devInfo, addr, false)));
+        } else if (! deviceHasRoom(devInfo)) {
+            waitForDevice(devInfo, SYSCALL_READ, addr, 0);
+            return;
+        } else {
+            issueIO(devInfo, SYSCALL_READ, addr, 0, m_currProcess.getProcessId());
+        }
 
         m_currProcess.block(m_CPU, devInfo.getDevice(), SYSCALL_READ, addr);
         scheduleNewProcess();
@@ -611,42 +1190,224 @@ public class SOS implements CPU.TrapHandler
         int value = m_CPU.popStack();
         int addr = m_CPU.popStack();
         int devNum = m_CPU.popStack();
-        DeviceInfo devInfo = getDeviceInfo(devNum);
+        DeviceInfo devInfo = getOpenDeviceInfo(devNum);
 
         if (devInfo == null) {
             m_CPU.pushStack(SYSCALL_RET_DNE);
             return;
         }
-        if (! devInfo.device.isAvailable() ) {
+        if (! devInfo.containsProcess(m_currProcess) ) {
+            m_CPU.pushStack(SYSCALL_RET_NOT_OPEN);
+            return;
+        }
+        if (! devInfo.device.isWriteable() ) {
+            m_CPU.pushStack(SYSCALL_RET_RO);
+            return;
+        }
 
-            //Push the value, addr, devNum and syscall back onto the stack.
-            m_CPU.pushStack(devNum);
-            m_CPU.pushStack(addr);
-            m_CPU.pushStack(value);
-            m_CPU.pushStack(SYSCALL_WRITE);
+        //Start to write.  The request is tagged with our pid.
+        if (devInfo.getScheduler() != null) {
+            submitIO(devInfo, new IOScheduler.Request(SYSCALL_WRITE, addr, value,
+                                                      m_currProcess.getProcessId(),
+                                                      ioPosition(devInfo, addr, false)));
+        } else if (! deviceHasRoom(devInfo)) {
+            waitForDevice(devInfo, SYSCALL_WRITE, addr, value);
+            return;
+        } else {
+            issueIO(devInfo, SYSCALL_WRITE, addr, value, m_currProcess.getProcessId());
+        }
 
-            //Decriment the PC counter so that the TRAP happens again
-            m_CPU.setPC( m_CPU.getPC() - m_CPU.INSTRSIZE );
-            m_currProcess.save(m_CPU);
+        m_currProcess.block(m_CPU, devInfo.getDevice(), SYSCALL_WRITE, addr);
+        scheduleNewProcess();
+    }
 
-            //Try again later
-            scheduleNewProcess();
+    /**
+     * syscallBlockTransfer
+     *
+     * Read a sector of a block device into the process' memory or write a
+     * sector's worth of the process' memory to a block device.  The device
+     * copies the sector directly to/from RAM.
+     *
+     * @param op  SYSCALL_READBLOCK or SYSCALL_WRITEBLOCK
+     */
+    private void syscallBlockTransfer(int op) {
+        int buf = m_CPU.popStack();
+        int sector = m_CPU.popStack();
+        int devNum = m_CPU.popStack();
+        DeviceInfo devInfo = getOpenDeviceInfo(devNum);
 
+        if (devInfo == null) {
+            m_CPU.pushStack(SYSCALL_RET_DNE);
             return;
         }
         if (! devInfo.containsProcess(m_currProcess) ) {
             m_CPU.pushStack(SYSCALL_RET_NOT_OPEN);
             return;
         }
-        if (! devInfo.device.isWriteable() ) {
+        if ((op == SYSCALL_READBLOCK) && ! devInfo.device.isReadable() ) {
+            m_CPU.pushStack(SYSCALL_RET_WO);
+            return;
+        }
+        if ((op == SYSCALL_WRITEBLOCK) && ! devInfo.device.isWriteable() ) {
             m_CPU.pushStack(SYSCALL_RET_RO);
             return;
         }
 
-        //Start to write
-        devInfo.getDevice().write(addr, value);
+        //The device must be a block device and the sector and the whole
+        //buffer must be valid
+        if (! (devInfo.device instanceof BlockDevice) ) {
+            m_CPU.pushStack(SYSCALL_RET_BAD_ARG);
+            return;
+        }
+        BlockDevice bd = (BlockDevice)devInfo.device;
+        int physAddr = m_CPU.getBASE() + buf;
+        if ((sector < 0) || (sector >= bd.getNumSectors()) || (buf < 0) ||
+            ! m_CPU.validMemory(physAddr + bd.getSectorSize() - 1)) {
+            m_CPU.pushStack(SYSCALL_RET_BAD_ARG);
+            return;
+        }
 
-        m_currProcess.block(m_CPU, devInfo.getDevice(), SYSCALL_WRITE, addr);
+        //Start the transfer.  The request is tagged with our pid.
+        if (devInfo.getScheduler() != null) {
+            submitIO(devInfo, new IOScheduler.Request(op, sector, physAddr,
+                                                      m_currProcess.getProcessId(),
+                                                      ioPosition(devInfo, sector, true)));
+        } else if (! deviceHasRoom(devInfo)) {
+            waitForDevice(devInfo, op, sector, physAddr);
+            return;
+        } else {
+            issueIO(devInfo, op, sector, physAddr, m_currProcess.getProcessId());
+        }
+
+        m_currProcess.block(m_CPU, devInfo.getDevice(), op, sector);
+        scheduleNewProcess();
+    }
+
+    /**
+     * syscallFileOpen
+     *
+     * Open a file by name: 0 to read it from the start, 1 to create (or
+     * truncate) it.  The file descriptor is returned under the success code.
+     */
+    private void syscallFileOpen() {
+        int mode = m_CPU.popStack();
+        int name = m_CPU.popStack();
+        if (m_fs == null) {
+            m_CPU.pushStack(SYSCALL_RET_DNE);
+            return;
+        }
+
+        int ret = m_fs.open(name, mode, m_currProcess.getProcessId());
+        if (ret == FileSystem.RET_WAIT) {
+            waitForFileSystem(SYSCALL_FOPEN, name, mode);
+            return;
+        }
+        if (ret == SYSCALL_RET_SUCCESS) {
+            m_CPU.pushStack(m_fs.getValue());
+        }
+        m_CPU.pushStack(ret);
+        m_currProcess.setFileSystemRetry(false);
+    }
+
+    /**
+     * syscallFileRead
+     *
+     * Read the next word of an open file.
+     */
+    private void syscallFileRead() {
+        int fd = m_CPU.popStack();
+        if (m_fs == null) {
+            m_CPU.pushStack(SYSCALL_RET_DNE);
+            return;
+        }
+
+        int ret = m_fs.read(fd, m_currProcess.getProcessId(),
+                            m_currProcess.isFileSystemRetry());
+        if (ret == FileSystem.RET_WAIT) {
+            waitForFileSystem(SYSCALL_FREAD, fd);
+            return;
+        }
+        if (ret == SYSCALL_RET_SUCCESS) {
+            m_CPU.pushStack(m_fs.getValue());
+        }
+        m_CPU.pushStack(ret);
+        m_currProcess.setFileSystemRetry(false);
+    }
+
+    /**
+     * syscallFileWrite
+     *
+     * Write the next word of an open file.
+     */
+    private void syscallFileWrite() {
+        int value = m_CPU.popStack();
+        int fd = m_CPU.popStack();
+        if (m_fs == null) {
+            m_CPU.pushStack(SYSCALL_RET_DNE);
+            return;
+        }
+
+        int ret = m_fs.write(fd, m_currProcess.getProcessId(), value,
+                             m_currProcess.isFileSystemRetry());
+        if (ret == FileSystem.RET_WAIT) {
+            waitForFileSystem(SYSCALL_FWRITE, fd, value);
+            return;
+        }
+        m_CPU.pushStack(ret);
+        m_currProcess.setFileSystemRetry(false);
+    }
+
+    /**
+     * syscallFileClose
+     *
+     * Close an open file.  Doesn't return until the file is on the disk.
+     */
+    private void syscallFileClose() {
+        int fd = m_CPU.popStack();
+        if (m_fs == null) {
+            m_CPU.pushStack(SYSCALL_RET_DNE);
+            return;
+        }
+
+        int ret = m_fs.close(fd, m_currProcess.getProcessId());
+        if (ret == FileSystem.RET_WAIT) {
+            waitForFileSystem(SYSCALL_FCLOSE, fd);
+            return;
+        }
+        m_CPU.pushStack(ret);
+        m_currProcess.setFileSystemRetry(false);
+    }
+
+    /**
+     * waitForFileSystem
+     *
+     * puts a file system call back on the stack so it is made again and
+     * blocks the process until the sector the file system is waiting for
+     * has been transferred or, if the disk had no room for a request, until
+     * it has some (see {@link #issueWaitingIO})
+     *
+     * @param syscall  the system call
+     * @param args     the arguments of the call in the order they were pushed
+     */
+    private void waitForFileSystem(int syscall, int... args) {
+        for (int arg : args) {
+            m_CPU.pushStack(arg);
+        }
+        m_CPU.pushStack(syscall);
+
+        //Decriment the PC counter so that the TRAP happens again
+        m_CPU.setPC( m_CPU.getPC() - CPU.INSTRSIZE );
+        m_currProcess.setFileSystemRetry(true);
+
+        int sector = m_fs.getWaitSector();
+        if (sector >= 0) {
+            m_currProcess.block(m_CPU, m_fsDisk.getDevice(), WAIT_FILESYSTEM,
+                                sector);
+        } else {
+            m_currProcess.pendingOp = WAIT_FILESYSTEM;
+            m_currProcess.block(m_CPU, m_fsDisk.getDevice(), WAIT_DEVICE, 0);
+            m_deviceWaits++;
+        }
         scheduleNewProcess();
     }
 
@@ -740,9 +1501,90 @@ public class SOS implements CPU.TrapHandler
      */
     private void syscallYield()
     {
+        //A periodic process yields when it has finished a job.  It sleeps
+        //until its next job is released (unless that is already late).
+        ProcessControlBlock pcb = m_currProcess;
+        if (pcb.getPeriod() > 0) {
+            pcb.completeJob();
+            long release = pcb.getRelease() + pcb.getPeriod();
+            if (release - System.nanoTime() > 0) {
+                pcb.sleep(release);
+            } else {
+                pcb.releaseJob(release);
+            }
+        }
+
         scheduleNewProcess();
     }//syscallYield
 
+    /**
+     * syscallDeadline
+     *
+     * Gives the current process a deadline.  The process pushes its budget
+     * (how long each job runs for), its relative deadline and its period,
+     * all in microseconds.  A period of 0 makes the whole process one job;
+     * otherwise each YIELD ends a job and the next one is released a period
+     * after the last.  The scheduler's admission control may refuse the
+     * deadline, in which case the process keeps the one it had (if any).
+     * The return code is pushed.
+     */
+    private void syscallDeadline()
+    {
+        long period = m_CPU.popStack() * 1000L;
+        long deadline = m_CPU.popStack() * 1000L;
+        long budget = m_CPU.popStack() * 1000L;
+
+        if ((budget <= 0) || (deadline < budget) || (period < 0)
+            || ((period > 0) && (period < budget))) {
+            m_CPU.pushStack(SYSCALL_RET_BAD_ARG);
+            return;
+        }
+        if (!m_scheduler.admit(m_currProcess, budget, deadline, period)) {
+            m_deadlineRejects++;
+            m_CPU.pushStack(SYSCALL_RET_OVERLOAD);
+            return;
+        }
+
+        m_currProcess.setDeadline(deadline, period);
+        m_CPU.pushStack(SYSCALL_RET_SUCCESS);
+    }//syscallDeadline
+
+    /**
+     * syscallProcessStat
+     *
+     * Reads one of a process' accounting counters.  The process pushes the
+     * id of the process (-1 for itself), the counter (a STAT constant) and,
+     * for STAT_BLOCKED_US and STAT_SYSCALLS, the id of the device or the
+     * number of the system call (-1 for the total; anything for the other
+     * counters).  The value (at most the largest int) is pushed under the
+     * return code.  SYSCALL_RET_DNE means there is no such process.
+     */
+    private void syscallProcessStat()
+    {
+        int index = m_CPU.popStack();
+        int counter = m_CPU.popStack();
+        int pid = m_CPU.popStack();
+
+        ProcessControlBlock pi = m_currProcess;
+        if (pid != -1) {
+            int slot = m_procTable.slotOf(pid);
+            if (slot == ProcessTable.NO_SLOT) {
+                m_CPU.pushStack(SYSCALL_RET_DNE);
+                return;
+            }
+            pi = (ProcessControlBlock)m_procTable.getEntry(slot);
+        }
+
+        chargeInstructions();
+        long value = pi.getStat(counter, index, System.nanoTime());
+        if (value < 0) {
+            m_CPU.pushStack(SYSCALL_RET_BAD_ARG);
+            return;
+        }
+        m_CPU.pushStack((int)Math.min(value, Integer.MAX_VALUE));
+        m_CPU.pushStack(SYSCALL_RET_SUCCESS);
+    }//syscallProcessStat
+
     
     /**
      * systemCall
@@ -753,6 +1595,12 @@ public class SOS implements CPU.TrapHandler
     {
         int syscallNum = m_CPU.popStack();
 
+        //A process that was running when it was created has run by now
+        m_currProcess.recordStart(m_response);
+        if ((syscallNum >= 0) && (syscallNum < NUM_SYSCALLS)) {
+            m_currProcess.syscalls[syscallNum]++;
+        }
+
         switch (syscallNum) {
             case SYSCALL_EXIT:
                 syscallExit();
@@ -784,6 +1632,28 @@ public class SOS implements CPU.TrapHandler
             case SYSCALL_COREDUMP:
                 syscallCoreDump();
                 break;
+            case SYSCALL_READBLOCK:
+            case SYSCALL_WRITEBLOCK:
+                syscallBlockTransfer(syscallNum);
+                break;
+            case SYSCALL_FOPEN:
+                syscallFileOpen();
+                break;
+            case SYSCALL_FREAD:
+                syscallFileRead();
+                break;
+            case SYSCALL_FWRITE:
+                syscallFileWrite();
+                break;
+            case SYSCALL_FCLOSE:
+                syscallFileClose();
+                break;
+            case SYSCALL_DEADLINE:
+                syscallDeadline();
+                break;
+            case SYSCALL_PSTAT:
+                syscallProcessStat();
+                break;
         }
     }
 
@@ -797,54 +1667,188 @@ public class SOS implements CPU.TrapHandler
      *
      * This class contains information about a currently active process.
      */
-    private class ProcessControlBlock
+    private class ProcessControlBlock extends ProcessQueue.Entry
     {
         /**
-         * a unique id for this process
+         * this process' slot in the process table, which holds its id and
+         * what it is blocked for (the id of the device, the type of I/O
+         * operation and the address)
          */
-        private int processId = 0;
+        private int slot;
 
         /**
-         * These are the process' current registers.  If the process is in the
-         * "running" state then these are out of date
+         * These are the process' registers (its slot's register bank).
+         * While the process is in the "running" state the CPU runs on this
+         * bank, so they are never out of date.
          */
-        private int[] registers = null;
+        private int[] registers;
 
         /**
-         * If this process is blocked a reference to the Device is stored here
+         * If an interrupt unblocked this process and it has not run since,
+         * the interrupt type is stored here (otherwise -1)
          */
-        private Device blockedForDevice = null;
-        
+        private int wokenByOperation;
+
         /**
-         * If this process is blocked a reference to the type of I/O operation
-         * is stored here (use the SYSCALL constants defined in SOS)
+         * The device that posted the interrupt that unblocked this process
          */
-        private int blockedForOperation = -1;
-        
+        private int wokenByDevice;
+
+        /**
+         * System.nanoTime() when the waking interrupt was posted and when
+         * the CPU dispatched it
+         */
+        private long wokenPostTime;
+        private long wokenDispatchTime;
+
+        /**
+         * System.nanoTime() when this process last became Ready (0 if it is
+         * running or blocked)
+         */
+        private long readyTime;
+
+        /**
+         * System.nanoTime() when this process started waiting for an OPEN
+         */
+        private long openWaitTime;
+
+        /**
+         * The devices this process has open indexed by id (null until it
+         * opens one).  The entry for a device is the device itself; the
+         * entry for a pool is the member this process was given.
+         */
+        private DeviceInfo[] openDevices;
+
+        /**
+         * true while a file system call that had to wait is being made again
+         */
+        private boolean fsRetry;
+
         /**
-         * If this process is blocked reading from a device, the requested
-         * address is stored here.
+         * The request this process is waiting to make of a device whose
+         * queue was full: the SYSCALL constant (-1 if none, WAIT_FILESYSTEM
+         * to make a file system call again), the address (or sector) and
+         * the value to write (or the buffer)
          */
-        private int blockedForAddr = -1;
+        private int pendingOp;
+        private int pendingAddr;
+        private int pendingData;
+
+        /**
+         * System.nanoTime() when this process was created and whether it
+         * has run yet
+         */
+        private long createTime;
+        private boolean started;
+
+        /**
+         * The process' relative deadline and period (ns, 0 if it has none),
+         * when its current job was released and whether the job is still
+         * running (the absolute deadline is the entry's m_deadline)
+         */
+        private long relDeadline;
+        private long period;
+        private long release;
+        private boolean jobActive;
+
+        /**
+         * System.nanoTime() when this process' next job is released if it
+         * is sleeping until then (otherwise 0)
+         */
+        private long wakeTime;
+
+        /**
+         * Accounting: the instructions this process has run, the time (ns)
+         * it has spent Ready, the time it has spent Blocked on each device
+         * (indexed by the device's place in m_devices, which unlike its id
+         * is dense) and when it last blocked, the system calls it has made
+         * (indexed by number) and how many times it has been switched onto
+         * and off the CPU.  The arrays stay with the slot.
+         */
+        private long instructions;
+        private long readyNs;
+        private long[] blockedNs;
+        private long blockTime;
+        private int[] syscalls = new int[NUM_SYSCALLS];
+        private int switchesIn;
+        private int switchesOut;
         
 
         /**
          * constructor
          *
-         * @param pid        a process id for the process.  The caller is
-         *                   responsible for making sure it is unique.
+         * @param slot       the process table slot this control block is
+         *                   for.  It stays with the slot and is reused (see
+         *                   {@link #reset}) by each process that gets it.
          */
-        public ProcessControlBlock(int pid)
+        public ProcessControlBlock(int slot)
         {
-            this.processId = pid;
+            this.slot = slot;
+            this.registers = m_procTable.getRegisters(slot);
+            this.blockedNs = new long[m_devices.size()];
+            m_procTable.setEntry(slot, this);
         }
 
+        /**
+         * reset
+         *
+         * clears what the last process in this control block's slot left
+         * in it so a new process can use it
+         */
+        public void reset()
+        {
+            wokenByOperation = -1;
+            wokenByDevice = -1;
+            wokenPostTime = 0;
+            wokenDispatchTime = 0;
+            readyTime = 0;
+            openWaitTime = 0;
+            fsRetry = false;
+            pendingOp = -1;
+            createTime = System.nanoTime();
+            started = false;
+            relDeadline = 0;
+            period = 0;
+            release = 0;
+            jobActive = false;
+            wakeTime = 0;
+            instructions = 0;
+            readyNs = 0;
+            if (blockedNs.length < m_devices.size())
+            {
+                //A device has been registered since the slot was made
+                blockedNs = new long[m_devices.size()];
+            }
+            Arrays.fill(blockedNs, 0);
+            blockTime = 0;
+            Arrays.fill(syscalls, 0);
+            switchesIn = 0;
+            switchesOut = 0;
+            if (openDevices != null)
+            {
+                Arrays.fill(openDevices, null);
+            }
+            m_schedLevel = 0;
+            m_schedUsed = 0;
+            m_schedMark = 0;
+            m_deadline = Long.MAX_VALUE;
+            m_share = 0.0;
+        }//reset
+
         /**
          * @return the current process' id
          */
         public int getProcessId()
         {
-            return this.processId;
+            return m_procTable.getPid(this.slot);
+        }
+
+        /**
+         * @return the current process' slot in the process table
+         */
+        public int getSlot()
+        {
+            return this.slot;
         }
 
         /**
@@ -857,37 +1861,46 @@ public class SOS implements CPU.TrapHandler
         /**
          * save
          *
-         * saves the current CPU registers into this.registers
+         * saves the current CPU registers into this.registers.  There is
+         * nothing to copy if the CPU is running on this process' bank,
+         * which it is whenever this process is the one running.
          *
          * @param cpu  the CPU object to save the values from
          */
         public void save(CPU cpu)
         {
-            int[] regs = cpu.getRegisters();
-            this.registers = new int[CPU.NUMREG];
-            for(int i = 0; i < CPU.NUMREG; i++)
+            if (cpu.getRegisters() != this.registers)
             {
-                this.registers[i] = regs[i];
+                System.arraycopy(cpu.getRegisters(), 0, this.registers, 0, CPU.NUMREG);
             }
         }//save
          
         /**
          * restore
          *
-         * restores the saved values in this.registers to the current CPU's
-         * registers
+         * switches the CPU to this process' register bank.  Nothing is
+         * copied: the bank of the process that was running keeps its
+         * registers.
          *
          * @param cpu  the CPU object to restore the values to
          */
         public void restore(CPU cpu)
         {
-            int[] regs = cpu.getRegisters();
-            for(int i = 0; i < CPU.NUMREG; i++)
-            {
-                regs[i] = this.registers[i];
-            }
-
+            cpu.setRegisters(this.registers);
         }//restore
+
+        /**
+         * pushStack
+         *
+         * pushes a value onto this process' stack, whether or not it is
+         * the process running
+         *
+         * @param value  the value to push
+         */
+        public void pushStack(int value)
+        {
+            m_CPU.pushStack(value, this.registers);
+        }//pushStack
          
         /**
          * getRegisterValue
@@ -940,7 +1953,9 @@ public class SOS implements CPU.TrapHandler
          */
         public String toString()
         {
-            String result = "Process id " + processId + " ";
+            String result = "Process id " + getProcessId() + " ";
+            int blockedForOperation = m_procTable.getBlockedOperation(slot);
+            int blockedForAddr = m_procTable.getBlockedAddr(slot);
             if (isBlocked())
             {
                 result = result + "is BLOCKED for ";
@@ -952,23 +1967,28 @@ public class SOS implements CPU.TrapHandler
                 {
                     result = result + "READ @" + blockedForAddr;
                 }
+                else if (blockedForOperation == SYSCALL_READBLOCK)
+                {
+                    result = result + "READBLOCK #" + blockedForAddr;
+                }
+                else if (blockedForOperation == SYSCALL_WRITEBLOCK)
+                {
+                    result = result + "WRITEBLOCK #" + blockedForAddr;
+                }
                 else if (blockedForOperation == SYSCALL_WRITE)
                 {
                     result = result + "WRITE @" + blockedForAddr;
                 }
-                else  
+                else if (blockedForOperation == WAIT_DEVICE)
                 {
-                    result = result + "unknown reason!";
+                    result = result + "room in the queue";
                 }
-                for(DeviceInfo di : m_devices)
+                else  
                 {
-                    if (di.getDevice() == blockedForDevice)
-                    {
-                        result = result + " on device #" + di.getId();
-                        break;
-                    }
+                    result = result + "unknown reason!";
                 }
-                result = result + ": ";
+                result = result + " on device #"
+                    + m_procTable.getBlockedDevice(slot) + ": ";
             }
             else if (this == m_currProcess)
             {
@@ -979,12 +1999,6 @@ public class SOS implements CPU.TrapHandler
                 result = result + "is READY: ";
             }
 
-            if (registers == null)
-            {
-                result = result + "<never saved>";
-                return result;
-            }
-            
             for(int i = 0; i < CPU.NUMGENREG; i++)
             {
                 result = result + ("r" + i + "=" + registers[i] + " ");
@@ -1001,9 +2015,9 @@ public class SOS implements CPU.TrapHandler
         /**
          * block
          *
-         * blocks the current process to wait for I/O.  The caller is
-         * responsible for calling {@link CPU#scheduleNewProcess}
-         * after calling this method.
+         * blocks the current process to wait for I/O and puts it in the
+         * Blocked queue.  The caller is responsible for calling
+         * {@link CPU#scheduleNewProcess} after calling this method.
          *
          * @param cpu   the CPU that the process is running on
          * @param dev   the Device that the process must wait for
@@ -1014,9 +2028,10 @@ public class SOS implements CPU.TrapHandler
          */
         public void block(CPU cpu, Device dev, int op, int addr)
         {
-            blockedForDevice = dev;
-            blockedForOperation = op;
-            blockedForAddr = addr;
+            m_procTable.setBlocked(slot, dev.getId(), op, addr);
+            m_waiting.add(WaitQueues.key(dev.getId(), op, addr), this);
+            m_scheduler.onBlock(this);
+            blockTime = System.nanoTime();
             
         }//block
         
@@ -1024,72 +2039,488 @@ public class SOS implements CPU.TrapHandler
          * unblock
          *
          * moves this process from the Blocked (waiting) state to the Ready
-         * state. 
+         * state (the scheduler decides where it waits)
          *
          */
         public void unblock()
         {
-            blockedForDevice = null;
-            blockedForOperation = -1;
-            blockedForAddr = -1;
+            int dev = m_procTable.getBlockedDevice(slot);
+            if (dev != ProcessTable.NO_DEVICE)
+            {
+                m_waiting.remove(WaitQueues.key(dev,
+                                                m_procTable.getBlockedOperation(slot),
+                                                m_procTable.getBlockedAddr(slot)), this);
+                m_procTable.setBlocked(slot, ProcessTable.NO_DEVICE, -1, -1);
+                int i = getDeviceIndex(dev);
+                if ((i >= 0) && (i < blockedNs.length))
+                {
+                    blockedNs[i] += System.nanoTime() - blockTime;
+                }
+            }
+            markReady();
+            m_scheduler.onUnblock(this);
             
         }//block
-        
+
         /**
-         * isBlocked
+         * moveWait
          *
-         * @return true if the process is blocked
+         * moves this Blocked process to wait for something else without
+         * making it Ready
+         *
+         * @param dev   the Device that the process must now wait for
+         * @param op    the operation it now waits for
+         * @param addr  the address it now waits for
          */
-        public boolean isBlocked()
+        public void moveWait(Device dev, int op, int addr)
         {
-            return (blockedForDevice != null);
-        }//isBlocked
-         
+            m_waiting.remove(WaitQueues.key(m_procTable.getBlockedDevice(slot),
+                                            m_procTable.getBlockedOperation(slot),
+                                            m_procTable.getBlockedAddr(slot)), this);
+            m_procTable.setBlocked(slot, dev.getId(), op, addr);
+            m_waiting.add(WaitQueues.key(dev.getId(), op, addr), this);
+        }//moveWait
+
         /**
-         * isBlockedForDevice
-         *
-         * Checks to see if the process is blocked for the given device,
-         * operation and address.  If the operation is not an open, the given
-         * address is ignored.
+         * recordStart
          *
-         * @param dev   check to see if the process is waiting for this device
-         * @param op    check to see if the process is waiting for this operation
-         * @param addr  check to see if the process is reading from this address
+         * records the time from this process' creation until it first ran
+         * (if it hasn't run before)
          *
-         * @return true if the process is blocked by the given parameters
+         * @param hist  where to record the time
          */
-        public boolean isBlockedForDevice(Device dev, int op, int addr)
+        public void recordStart(LatencyHistogram hist)
         {
-            if ( (blockedForDevice == dev) && (blockedForOperation == op) )
+            if (!started)
             {
-                if (op == SYSCALL_OPEN)
-                {
-                    return true;
-                }
+                started = true;
+                hist.record(System.nanoTime() - createTime);
+            }
+        }//recordStart
 
-                if (addr == blockedForAddr)
-                {
-                    return true;
-                }
-            }//if
+        /**
+         * setDeadline
+         *
+         * gives this process a deadline and releases its first job now
+         *
+         * @param deadline  the deadline relative to each job's release (ns)
+         * @param period    the time between job releases (ns, 0 if the
+         *                  whole process is one job)
+         */
+        public void setDeadline(long deadline, long period)
+        {
+            this.relDeadline = deadline;
+            this.period = period;
+            releaseJob(System.nanoTime());
+        }//setDeadline
 
-            return false;
-        }//isBlockedForDevice
-         
         /**
-         * compareTo              
+         * getPeriod
          *
-         * compares this to another ProcessControlBlock object based on the BASE addr
-         * register.  Read about Java's Collections class for info on
-         * how this method can be quite useful to you.
+         * @return the process' period (ns, 0 if it is not periodic)
          */
-        public int compareTo(ProcessControlBlock pi)
+        public long getPeriod()
         {
-            return this.registers[CPU.BASE] - pi.registers[CPU.BASE];
+            return period;
         }
 
-    }//class ProcessControlBlock
-
+        /**
+         * getRelease
+         *
+         * @return when the process' current (or last) job was released
+         */
+        public long getRelease()
+        {
+            return release;
+        }
+
+        /**
+         * releaseJob
+         *
+         * starts a new job with a deadline relative to its release time
+         *
+         * @param when  the release time (System.nanoTime)
+         */
+        public void releaseJob(long when)
+        {
+            release = when;
+            m_deadline = when + relDeadline;
+            jobActive = true;
+        }//releaseJob
+
+        /**
+         * completeJob
+         *
+         * records whether the process' current job met its deadline (if it
+         * has one)
+         */
+        public void completeJob()
+        {
+            if (!jobActive)
+            {
+                return;
+            }
+            jobActive = false;
+
+            long now = System.nanoTime();
+            long late = now - m_deadline;
+            m_deadlineJobs++;
+            m_jobTime.record(now - release);
+            if (late > 0)
+            {
+                m_deadlineMisses++;
+            }
+            m_lateness.record(Math.max(0, late));
+        }//completeJob
+
+        /**
+         * sleep
+         *
+         * blocks this process until a given time.  The caller is responsible
+         * for calling {@link SOS#scheduleNewProcess} after calling this
+         * method.
+         *
+         * @param until  when to wake it (System.nanoTime)
+         */
+        public void sleep(long until)
+        {
+            wakeTime = until;
+            m_sleeping.add(this);
+            m_scheduler.onBlock(this);
+        }//sleep
+
+        /**
+         * recordExit
+         *
+         * records the time from this process' creation until it exited
+         *
+         * @param hist  where to record the time
+         */
+        public void recordExit(LatencyHistogram hist)
+        {
+            hist.record(System.nanoTime() - createTime);
+        }//recordExit
+
+        /**
+         * markReady
+         *
+         * remembers when this process became Ready so the time it waits for
+         * the CPU can be recorded by {@link #recordDispatch}
+         */
+        public void markReady()
+        {
+            readyTime = System.nanoTime();
+        }//markReady
+
+        /**
+         * recordDispatch
+         *
+         * records how long this process was Ready before getting the CPU
+         *
+         * @param hist  where to record the wait
+         */
+        public void recordDispatch(LatencyHistogram hist)
+        {
+            if (readyTime != 0)
+            {
+                long wait = System.nanoTime() - readyTime;
+                hist.record(wait);
+                readyNs += wait;
+                readyTime = 0;
+            }
+        }//recordDispatch
+
+        /**
+         * getStat
+         *
+         * @param counter  a STAT constant
+         * @param index    the device id for STAT_BLOCKED_US or the system
+         *                 call number for STAT_SYSCALLS (-1 for the total)
+         * @param now      System.nanoTime() (a wait still going on counts
+         *                 up to now)
+         * @return the value of one of this process' accounting counters
+         *         -OR- -1 if there is no such counter
+         */
+        public long getStat(int counter, int index, long now)
+        {
+            switch (counter)
+            {
+                case STAT_INSTRUCTIONS:
+                    return instructions;
+                case STAT_READY_US:
+                    return (readyNs + ((readyTime != 0) ? now - readyTime : 0)) / 1000;
+                case STAT_BLOCKED_US:
+                    if (index == -1)
+                    {
+                        long total = 0;
+                        for(int d = 0; d < blockedNs.length; d++)
+                        {
+                            total += blockedNs[d];
+                        }
+                        return (total + getCurrentBlockedTime(-1, now)) / 1000;
+                    }
+                    if ((index < 0) || (index > MAX_DEVICE_ID))
+                    {
+                        return -1;
+                    }
+                    int i = getDeviceIndex(index);
+                    return ((((i >= 0) && (i < blockedNs.length)) ? blockedNs[i] : 0)
+                            + getCurrentBlockedTime(index, now)) / 1000;
+                case STAT_SYSCALLS:
+                    if (index == -1)
+                    {
+                        long total = 0;
+                        for(int n : syscalls)
+                        {
+                            total += n;
+                        }
+                        return total;
+                    }
+                    if ((index < 0) || (index >= NUM_SYSCALLS))
+                    {
+                        return -1;
+                    }
+                    return syscalls[index];
+                case STAT_SWITCHES_IN:
+                    return switchesIn;
+                case STAT_SWITCHES_OUT:
+                    return switchesOut;
+                default:
+                    return -1;
+            }//switch
+        }//getStat
+
+        /**
+         * getCurrentBlockedTime
+         *
+         * @param dev  a device id (-1 for any device)
+         * @param now  System.nanoTime()
+         * @return how long (ns) this process has been Blocked on the device
+         *         if it is Blocked on it now (otherwise 0)
+         */
+        private long getCurrentBlockedTime(int dev, long now)
+        {
+            int blockedDev = m_procTable.getBlockedDevice(slot);
+            if ((blockedDev == ProcessTable.NO_DEVICE)
+                || ((dev != -1) && (dev != blockedDev)))
+            {
+                return 0;
+            }
+            return now - blockTime;
+        }//getCurrentBlockedTime
+
+        /**
+         * getAccounting
+         *
+         * fills in this process' row of accounting (see ACCT_PID)
+         *
+         * @param row  getAccountingRowLength() longs
+         * @param now  System.nanoTime()
+         */
+        public void getAccounting(long[] row, long now)
+        {
+            row[ACCT_PID] = getProcessId();
+            for(int c = STAT_INSTRUCTIONS; c <= STAT_SWITCHES_OUT; c++)
+            {
+                row[ACCT_STATS + c] = getStat(c, -1, now);
+            }
+            int numDevs = row.length - ACCT_DEVICES - NUM_SYSCALLS;
+            for(int i = 0; i < numDevs; i++)
+            {
+                row[ACCT_DEVICES + i] = ((i < blockedNs.length) ? blockedNs[i] : 0)
+                    + getCurrentBlockedTime(m_devices.get(i).getId(), now);
+            }
+            for(int n = 0; n < NUM_SYSCALLS; n++)
+            {
+                row[ACCT_DEVICES + numDevs + n] = syscalls[n];
+            }
+        }//getAccounting
+
+        /**
+         * isFileSystemRetry
+         *
+         * @return true if this process' last file system call had to wait
+         *         and is being made again
+         */
+        public boolean isFileSystemRetry()
+        {
+            return fsRetry;
+        }
+
+        /**
+         * setFileSystemRetry
+         *
+         * remembers whether this process' file system call is being made
+         * again after waiting
+         */
+        public void setFileSystemRetry(boolean retry)
+        {
+            fsRetry = retry;
+        }
+
+        /**
+         * markOpenWait
+         *
+         * remembers when this process started waiting for a device to open
+         * so the wait can be recorded by {@link #recordOpenWait}
+         */
+        public void markOpenWait()
+        {
+            openWaitTime = System.nanoTime();
+        }//markOpenWait
+
+        /**
+         * recordOpenWait
+         *
+         * records how long this process waited for a device to open
+         *
+         * @param hist  where to record the wait
+         */
+        public void recordOpenWait(LatencyHistogram hist)
+        {
+            if (openWaitTime != 0)
+            {
+                hist.record(System.nanoTime() - openWaitTime);
+                openWaitTime = 0;
+            }
+        }//recordOpenWait
+
+        /**
+         * getOpenDevice
+         *
+         * @param id  the id of a device or pool
+         * @return the device this process has open by that id (for a pool,
+         *         the member it was given) -OR- null if it does not have it
+         *         open
+         */
+        public DeviceInfo getOpenDevice(int id)
+        {
+            if ((openDevices == null) || (id < 0) || (id >= openDevices.length))
+            {
+                return null;
+            }
+            return openDevices[id];
+        }//getOpenDevice
+
+        /**
+         * setOpenDevice
+         *
+         * records that this process has opened (or closed) a device or pool
+         *
+         * @param id       the id of the device or pool
+         * @param devInfo  the device (for a pool, the member this process
+         *                 was given) -OR- null when it is closed
+         */
+        public void setOpenDevice(int id, DeviceInfo devInfo)
+        {
+            if ((openDevices == null) || (id >= openDevices.length))
+            {
+                if (devInfo == null)
+                {
+                    return;
+                }
+                openDevices = Arrays.copyOf((openDevices == null)
+                                            ? new DeviceInfo[0] : openDevices,
+                                            m_deviceTable.length);
+            }
+            openDevices[id] = devInfo;
+        }//setOpenDevice
+
+        /**
+         * markWoken
+         *
+         * remembers which interrupt unblocked this process so the latency
+         * until it runs again can be recorded by {@link #recordWakeup}.
+         *
+         * @param operation  the interrupt type (INT_ constants)
+         * @param devID      the device that posted the interrupt
+         * @param ic         the interrupt controller the CPU took it from
+         */
+        public void markWoken(int operation, int devID, InterruptController ic)
+        {
+            wokenByOperation = operation;
+            wokenByDevice = devID;
+            wokenPostTime = ic.getLastPostTime();
+            wokenDispatchTime = ic.getLastDispatchTime();
+        }//markWoken
+
+        /**
+         * recordWakeup
+         *
+         * if this process was woken by an interrupt and has not run since,
+         * records the latency between that interrupt and now.
+         *
+         * @param stats  where to record the latency
+         */
+        public void recordWakeup(InterruptStats stats)
+        {
+            if (wokenByOperation < 0)
+            {
+                return;
+            }
+
+            stats.recordRun(wokenByOperation, wokenByDevice, wokenPostTime,
+                            wokenDispatchTime, System.nanoTime());
+            wokenByOperation = -1;
+        }//recordWakeup
+        
+        /**
+         * isBlocked
+         *
+         * @return true if the process is blocked
+         */
+        public boolean isBlocked()
+        {
+            return (m_procTable.getBlockedDevice(slot) != ProcessTable.NO_DEVICE)
+                || (wakeTime != 0);
+        }//isBlocked
+         
+        /**
+         * isBlockedForDevice
+         *
+         * Checks to see if the process is blocked for the given device,
+         * operation and address.  If the operation is not an open, the given
+         * address is ignored.
+         *
+         * @param dev   check to see if the process is waiting for this device
+         * @param op    check to see if the process is waiting for this operation
+         * @param addr  check to see if the process is reading from this address
+         *
+         * @return true if the process is blocked by the given parameters
+         */
+        public boolean isBlockedForDevice(Device dev, int op, int addr)
+        {
+            if ( (m_procTable.getBlockedDevice(slot) == dev.getId())
+                 && (m_procTable.getBlockedOperation(slot) == op) )
+            {
+                if (op == SYSCALL_OPEN)
+                {
+                    return true;
+                }
+
+                if (addr == m_procTable.getBlockedAddr(slot))
+                {
+                    return true;
+                }
+            }//if
+
+            return false;
+        }//isBlockedForDevice
+         
+        /**
+         * compareTo              
+         *
+         * compares this to another ProcessControlBlock object based on the BASE addr
+         * register.  Read about Java's Collections class for info on
+         * how this method can be quite useful to you.
+         */
+        public int compareTo(ProcessControlBlock pi)
+        {
+            return this.registers[CPU.BASE] - pi.registers[CPU.BASE];
+        }
+
+    }//class ProcessControlBlock
+
     /**
      * class DeviceInfo
      *
@@ -1100,10 +2531,17 @@ public class SOS implements CPU.TrapHandler
     {
         /** every device has a unique id */
         private int id;
+        /** the device's place in m_devices */
+        private int index;
         /** a reference to the device driver for this device */
         private Device device;
-        /** a list of processes that have opened this device */
-        private Vector<ProcessControlBlock> procs;
+        /** the number of processes that have opened this device (or are
+            blocked for it).  Each of them has it in its open devices. */
+        private int numProcs = 0;
+        /** the pool this device belongs to (null if none) */
+        private DevicePool pool = null;
+        /** orders the requests to this device (null to issue them directly) */
+        private IOScheduler sched = null;
 
         /**
          * constructor
@@ -1111,13 +2549,14 @@ public class SOS implements CPU.TrapHandler
          * @param d          a reference to the device driver for this device
          * @param initID     the id for this device.  The caller is responsible
          *                   for guaranteeing that this is a unique id.
+         * @param initIndex  the device's place in m_devices
          */
-        public DeviceInfo(Device d, int initID)
+        public DeviceInfo(Device d, int initID, int initIndex)
         {
             this.id = initID;
+            this.index = initIndex;
             this.device = d;
             d.setId(initID);
-            this.procs = new Vector<ProcessControlBlock>();
         }
 
         /** @return the device's id */
@@ -1126,6 +2565,12 @@ public class SOS implements CPU.TrapHandler
             return this.id;
         }
 
+        /** @return the device's place in m_devices */
+        public int getIndex()
+        {
+            return this.index;
+        }
+
         /** @return this device's driver */
         public Device getDevice()
         {
@@ -1135,34 +2580,184 @@ public class SOS implements CPU.TrapHandler
         /** Register a new process as having opened this device */
         public void addProcess(ProcessControlBlock pi)
         {
-            procs.add(pi);
+            pi.setOpenDevice(id, this);
+            numProcs++;
         }
         
         /** Register a process as having closed this device */
         public void removeProcess(ProcessControlBlock pi)
         {
-            procs.remove(pi);
+            if (containsProcess(pi))
+            {
+                pi.setOpenDevice(id, null);
+                numProcs--;
+            }
         }
 
         /** Does the given process currently have this device opened? */
         public boolean containsProcess(ProcessControlBlock pi)
         {
-            return procs.contains(pi);
+            return pi.getOpenDevice(id) == this;
         }
 
-        /** @return a vector of ProcessControlBlocks which have the device open (or are blocked for it.) */
-        public Vector<ProcessControlBlock> getPCBs() {
-            return procs;
+        /** @return the number of processes which have the device open (or are blocked for it.) */
+        public int getNumProcesses() {
+            return numProcs;
         }
         
         /** Is this device currently not opened by any process? */
         public boolean unused()
         {
-            return procs.size() == 0;
+            return numProcs == 0;
+        }
+
+        /** @return the pool this device belongs to (null if none) */
+        public DevicePool getPool()
+        {
+            return this.pool;
+        }
+
+        /** Make this device a member of a pool */
+        public void setPool(DevicePool p)
+        {
+            this.pool = p;
+        }
+
+        /** @return this device's I/O scheduler (null if it has none) */
+        public IOScheduler getScheduler()
+        {
+            return this.sched;
+        }
+
+        /** Have requests to this device ordered by an I/O scheduler */
+        public void setScheduler(IOScheduler s)
+        {
+            this.sched = s;
         }
         
     }//class DeviceInfo
 
+    /**
+     * class DevicePool
+     *
+     * This class contains information about a pool of interchangeable
+     * devices (e.g. several keyboards).  Processes open the pool by its own
+     * id and are given whichever member device is free.
+     */
+    private class DevicePool
+    {
+        /** the id processes use to open the pool */
+        private int id;
+        /** the devices in the pool */
+        private Vector<DeviceInfo> members;
+        /** processes waiting for a member to be closed, oldest first */
+        private LinkedList<ProcessControlBlock> waiters;
+        /** number of opens of this pool and how many of them had to wait */
+        private long opens = 0;
+        private long waits = 0;
+
+        /**
+         * constructor
+         *
+         * @param initID     the id for this pool.  The caller is responsible
+         *                   for guaranteeing that no device has this id.
+         */
+        public DevicePool(int initID)
+        {
+            this.id = initID;
+            this.members = new Vector<DeviceInfo>();
+            this.waiters = new LinkedList<ProcessControlBlock>();
+        }
+
+        /** @return the pool's id */
+        public int getId()
+        {
+            return this.id;
+        }
+
+        /** @return the devices in the pool */
+        public Vector<DeviceInfo> getMembers()
+        {
+            return this.members;
+        }
+
+        /** Add a device to the pool */
+        public void addMember(DeviceInfo devInfo)
+        {
+            members.add(devInfo);
+            devInfo.setPool(this);
+        }
+
+        /**
+         * findFree
+         *
+         * @return a member no process has open.  Sharable devices are never
+         *         busy so the one with the fewest processes is used.  Returns
+         *         null if every member is in use.
+         */
+        public DeviceInfo findFree()
+        {
+            DeviceInfo best = null;
+            for(DeviceInfo devInfo : members)
+            {
+                if (devInfo.unused())
+                {
+                    return devInfo;
+                }
+                if (devInfo.getDevice().isSharable()
+                    && ((best == null)
+                        || (devInfo.getNumProcesses() < best.getNumProcesses())))
+                {
+                    best = devInfo;
+                }
+            }//for
+            return best;
+        }//findFree
+
+        /** Queue a process until a member is closed */
+        public void addWaiter(ProcessControlBlock pi)
+        {
+            waiters.add(pi);
+        }
+
+        /** @return the process that has waited longest (and stop tracking it) */
+        public ProcessControlBlock removeWaiter()
+        {
+            return waiters.removeFirst();
+        }
+
+        /** Are any processes waiting for a member of this pool? */
+        public boolean hasWaiters()
+        {
+            return !waiters.isEmpty();
+        }
+
+        /** Count an open of the pool */
+        public void countOpen()
+        {
+            opens++;
+        }
+
+        /** Count an open of the pool that had to wait */
+        public void countWait()
+        {
+            waits++;
+        }
+
+        /** @return the number of opens of this pool */
+        public long getOpens()
+        {
+            return opens;
+        }
+
+        /** @return the number of opens that had to wait */
+        public long getWaits()
+        {
+            return waits;
+        }
+
+    }//class DevicePool
+
     
     /*======================================================================
      * Device Management Methods
@@ -1176,13 +2771,44 @@ public class SOS implements CPU.TrapHandler
      *
      * @param dev     the device driver
      * @param id      the id to assign to this device
+     * @throws IllegalArgumentException if the id is taken or is not between
+     *         0 and MAX_DEVICE_ID
      * 
      */
     public void registerDevice(Device dev, int id)
     {
-        m_devices.add(new DeviceInfo(dev, id));
+        if ((getDeviceInfo(id) != null) || (getDevicePool(id) != null)) {
+            throw new IllegalArgumentException("id " + id + " is already in use");
+        }
+        growDeviceTables(id);
+
+        DeviceInfo devInfo = new DeviceInfo(dev, id, m_devices.size());
+        m_devices.add(devInfo);
+        m_deviceTable[id] = devInfo;
     } //registerDevice
 
+    /**
+     * growDeviceTables
+     *
+     * makes room in the device and pool tables for an id
+     *
+     * @param id      the id of a device or pool
+     * @throws IllegalArgumentException if the id is not between 0 and
+     *         MAX_DEVICE_ID
+     */
+    private void growDeviceTables(int id) {
+        if ((id < 0) || (id > MAX_DEVICE_ID)) {
+            throw new IllegalArgumentException("id " + id + " is not between 0 and "
+                                               + MAX_DEVICE_ID);
+        }
+        if (id >= m_deviceTable.length) {
+            int size = Math.min(MAX_DEVICE_ID + 1,
+                                Math.max(id + 1, 2 * m_deviceTable.length));
+            m_deviceTable = Arrays.copyOf(m_deviceTable, size);
+            m_poolTable = Arrays.copyOf(m_poolTable, size);
+        }
+    }
+
     /**
      * getDeviceInfo
      *
@@ -1193,16 +2819,351 @@ public class SOS implements CPU.TrapHandler
      * 
      */
     private DeviceInfo getDeviceInfo(int id) {
-        Iterator<DeviceInfo> i = m_devices.iterator();
+        if ((id < 0) || (id >= m_deviceTable.length)) {
+            return null;
+        }
+        return m_deviceTable[id];
+    }
+
+    /**
+     * getDeviceIndex
+     *
+     * @param id      the id of a device
+     * @return        the device's place in m_devices -OR- -1 if there is no
+     *                such device
+     */
+    private int getDeviceIndex(int id) {
+        DeviceInfo devInfo = getDeviceInfo(id);
+        return (devInfo == null) ? -1 : devInfo.getIndex();
+    }
+
+    /**
+     * setIOScheduler
+     *
+     * has the requests to a device queued by an I/O scheduler, which
+     * decides the order the device gets them in, rather than handed to the
+     * device as they are made
+     *
+     * @param id      the id of a registered device
+     * @param sched   the scheduler
+     * @throws IllegalArgumentException if there is no such device
+     */
+    public void setIOScheduler(int id, IOScheduler sched)
+    {
+        DeviceInfo devInfo = getDeviceInfo(id);
+        if (devInfo == null) {
+            throw new IllegalArgumentException("no device " + id);
+        }
+        devInfo.setScheduler(sched);
+    } //setIOScheduler
+
+    /**
+     * mountFileSystem
+     *
+     * puts a file system on a disk, formatting it if it doesn't have one.
+     * The file system's buffer cache takes the top of RAM, which processes
+     * can't be loaded into.  Must be called before any process is created.
+     *
+     * @param id            the id of a registered block device
+     * @param cacheSectors  the number of sectors the buffer cache holds
+     * @throws IllegalArgumentException if there is no such block device or
+     *         the cache doesn't fit in RAM
+     */
+    public void mountFileSystem(int id, int cacheSectors)
+    {
+        DeviceInfo devInfo = getDeviceInfo(id);
+        if ((devInfo == null) || ! (devInfo.getDevice() instanceof BlockDevice)) {
+            throw new IllegalArgumentException("no block device " + id);
+        }
+        BlockDevice bd = (BlockDevice)devInfo.getDevice();
+        cacheSectors = Math.max(FileSystem.MIN_CACHE_SECTORS, cacheSectors);
+        int cacheBase = m_RAM.getSize() - (cacheSectors * bd.getSectorSize());
+        if (cacheBase <= m_nextLoadPos) {
+            throw new IllegalArgumentException("no room in RAM for the buffer cache");
+        }
+
+        m_ramLimit = cacheBase;
+        m_fsDisk = devInfo;
+        m_fs = new FileSystem(bd, m_RAM, cacheBase, cacheSectors,
+                              new FileSystem.BlockIssuer() {
+            public boolean issue(boolean write, int sector, int physAddr, int tag) {
+                return issueFileSystemBlock(write, sector, physAddr, tag);
+            }
+        });
+    } //mountFileSystem
+
+    /**
+     * issueFileSystemBlock
+     *
+     * starts one of the file system's sector transfers
+     *
+     * @return false if the disk has no room for it
+     */
+    private boolean issueFileSystemBlock(boolean write, int sector, int physAddr,
+                                         int tag) {
+        int op = write ? SYSCALL_WRITEBLOCK : SYSCALL_READBLOCK;
+        if (m_fsDisk.getScheduler() != null) {
+            submitIO(m_fsDisk, new IOScheduler.Request(op, sector, physAddr, tag,
+                                                       sector));
+            return true;
+        }
+
+        if (! m_fsDisk.getDevice().isAvailable()) {
+            return false;
+        }
+        issueIO(m_fsDisk, op, sector, physAddr, tag);
+        return true;
+    }
+
+    /**
+     * printFileSystemStats
+     *
+     * prints the file system's cache statistics (if one is mounted)
+     */
+    public void printFileSystemStats()
+    {
+        if (m_fs != null) {
+            System.out.println("");
+            m_fs.printStats("device " + m_fsDisk.getId());
+        }
+    }
+
+    /**
+     * ioPosition
+     *
+     * @return where on a device a request is, so the I/O scheduler can
+     *         order requests by it: the sector for a block device and 0 for
+     *         anything else
+     */
+    private int ioPosition(DeviceInfo devInfo, int addr, boolean sectorOp) {
+        if (! (devInfo.getDevice() instanceof BlockDevice) ) {
+            return 0;
+        }
+        if (sectorOp) {
+            return addr;
+        }
+        BlockDevice bd = (BlockDevice)devInfo.getDevice();
+        int size = bd.getNumSectors() * bd.getSectorSize();
+        return Math.floorMod(addr, size) / bd.getSectorSize();
+    }
 
-        while(i.hasNext()) {
-           DeviceInfo devInfo = i.next();
-           if (devInfo.getId() == id) {
-               return devInfo;
-           }
+    /**
+     * submitIO
+     *
+     * queues a request with a device's I/O scheduler and issues it (or
+     * another) if the device has room
+     */
+    private void submitIO(DeviceInfo devInfo, IOScheduler.Request req) {
+        devInfo.getScheduler().add(req);
+        dispatchIO(devInfo);
+    }
+
+    /**
+     * dispatchIO
+     *
+     * issues the requests the I/O scheduler picks until the device's queue
+     * is full
+     */
+    private void dispatchIO(DeviceInfo devInfo) {
+        IOScheduler sched = devInfo.getScheduler();
+        if (sched == null) {
+            return;
+        }
+
+        Device dev = devInfo.getDevice();
+        while (sched.hasPending() && (sched.getInFlight() < dev.getQueueDepth())) {
+            IOScheduler.Request r = sched.next();
+            issueIO(devInfo, r.op, r.addr, r.data, r.tag);
         }
+    }//dispatchIO
 
-        return null;
+    /**
+     * issueIO
+     *
+     * hands a request to a device.  The caller must have checked that the
+     * device's queue has room.
+     *
+     * @param op    the SYSCALL constant of the request
+     * @param addr  the address (or sector)
+     * @param data  the value to write (or the physical address of the
+     *              sector's buffer)
+     * @param tag   the tag the completion interrupt will carry
+     */
+    private void issueIO(DeviceInfo devInfo, int op, int addr, int data, int tag) {
+        Device dev = devInfo.getDevice();
+        switch (op) {
+            case SYSCALL_READ:
+                dev.read(addr, tag);
+                break;
+            case SYSCALL_WRITE:
+                dev.write(addr, data, tag);
+                break;
+            case SYSCALL_READBLOCK:
+                ((BlockDevice)dev).readBlock(addr, data, tag);
+                break;
+            case SYSCALL_WRITEBLOCK:
+                ((BlockDevice)dev).writeBlock(addr, data, tag);
+                break;
+        }
+    }//issueIO
+
+    /**
+     * deviceHasRoom
+     *
+     * @return true if a request can go straight to a device that has no I/O
+     *         scheduler: no process is already waiting for room and its
+     *         queue has room
+     */
+    private boolean deviceHasRoom(DeviceInfo devInfo) {
+        return devInfo.getDevice().isAvailable()
+            && (m_waiting.get(WaitQueues.key(devInfo.getId(), WAIT_DEVICE, 0)) == null);
+    }
+
+    /**
+     * waitForDevice
+     *
+     * blocks the current process until its device has room for its request.
+     * The request is kept with the process and made for it as soon as there
+     * is room (see {@link #issueWaitingIO}), so the process does not run
+     * again until the request is complete.  Devices take a request out of
+     * their queue before they post its completion interrupt (or post an
+     * interrupt of their own when room opens up some other way), so an
+     * interrupt always follows the room a waiting process needs.
+     *
+     * @param devInfo  the device
+     * @param op       the SYSCALL constant of the request
+     * @param addr     the address (or sector)
+     * @param data     the value to write (or the physical address of the
+     *                 sector's buffer)
+     */
+    private void waitForDevice(DeviceInfo devInfo, int op, int addr, int data) {
+        m_currProcess.pendingOp = op;
+        m_currProcess.pendingAddr = addr;
+        m_currProcess.pendingData = data;
+        m_currProcess.block(m_CPU, devInfo.getDevice(), WAIT_DEVICE, 0);
+        m_deviceWaits++;
+        scheduleNewProcess();
+    }
+
+    /**
+     * issueWaitingIO
+     *
+     * makes the requests of the processes waiting for room in a device's
+     * queue, oldest first, for as long as there is room.  Each process then
+     * waits for its request to complete like any other.  A process whose
+     * file system call found the disk full is made Ready to make the call
+     * again instead.
+     */
+    private void issueWaitingIO(DeviceInfo devInfo) {
+        Device dev = devInfo.getDevice();
+        long key = WaitQueues.key(dev.getId(), WAIT_DEVICE, 0);
+        ProcessQueue waiting = m_waiting.get(key);
+
+        //The queue is looked up again each time because it is reused once
+        //it empties
+        while ((waiting != null) && dev.isAvailable()) {
+            ProcessControlBlock pi = (ProcessControlBlock)waiting.peek();
+            if (pi.pendingOp == WAIT_FILESYSTEM) {
+                pi.unblock();
+            } else {
+                issueIO(devInfo, pi.pendingOp, pi.pendingAddr, pi.pendingData,
+                        pi.getProcessId());
+                pi.moveWait(dev, pi.pendingOp, pi.pendingAddr);
+            }
+            pi.pendingOp = -1;
+            waiting = m_waiting.get(key);
+        }
+    }//issueWaitingIO
+
+    /**
+     * completeIO
+     *
+     * @return the request the I/O scheduler issued that a completion
+     *         interrupt is for -OR- null if the device has no scheduler
+     */
+    private IOScheduler.Request completeIO(DeviceInfo devInfo, int tag) {
+        if (devInfo.getScheduler() == null) {
+            return null;
+        }
+        return devInfo.getScheduler().complete(tag);
+    }
+
+    /**
+     * registerDevicePool
+     *
+     * groups registered devices into a pool.  A process that opens the
+     * pool's id is given any member that is free and only waits when all of
+     * them are in use.
+     *
+     * @param id         the id of the pool.  No device may have this id.
+     * @param memberIds  the ids of the devices in the pool
+     * @throws IllegalArgumentException if the id is taken or out of range or
+     *         a member is not a registered device or is already in a pool
+     */
+    public void registerDevicePool(int id, int[] memberIds)
+    {
+        if ((getDeviceInfo(id) != null) || (getDevicePool(id) != null)) {
+            throw new IllegalArgumentException("id " + id + " is already in use");
+        }
+        if (memberIds.length == 0) {
+            throw new IllegalArgumentException("pool " + id + " has no devices");
+        }
+        growDeviceTables(id);
+
+        DevicePool pool = new DevicePool(id);
+        for (int memberId : memberIds) {
+            DeviceInfo devInfo = getDeviceInfo(memberId);
+            if ((devInfo == null) || (devInfo.getPool() != null)) {
+                throw new IllegalArgumentException("device " + memberId
+                                                   + " can't be put in pool " + id);
+            }
+            pool.addMember(devInfo);
+        }
+        m_pools.add(pool);
+        m_poolTable[id] = pool;
+    } //registerDevicePool
+
+    /**
+     * getDevicePool
+     *
+     * gets a device pool by id.
+     *
+     * @param id      the id of the pool
+     * @return        the pool if it exists, else null
+     */
+    private DevicePool getDevicePool(int id) {
+        if ((id < 0) || (id >= m_poolTable.length)) {
+            return null;
+        }
+        return m_poolTable[id];
+    }
+
+    /**
+     * getOpenDeviceInfo
+     *
+     * gets the device the current process means by an id.  For a pool that
+     * is the member the process was given when it opened the pool.
+     *
+     * @param id      the id of a device or pool
+     * @return        the device info.  For a pool the process doesn't have
+     *                open, this is a member the process doesn't have open
+     *                either.  Null if nothing has the id.
+     */
+    private DeviceInfo getOpenDeviceInfo(int id) {
+        DeviceInfo devInfo = getDeviceInfo(id);
+        if (devInfo != null) {
+            return devInfo;
+        }
+
+        DevicePool pool = getDevicePool(id);
+        if (pool == null) {
+            return null;
+        }
+        devInfo = m_currProcess.getOpenDevice(id);
+        if (devInfo == null) {
+            devInfo = pool.getMembers().get(0);
+        }
+        return devInfo;
     }
 
 };//class SOS
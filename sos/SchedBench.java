@@ -0,0 +1,152 @@
+package sos;
+
+import java.util.*;
+import java.lang.management.*;
+
+/**
+ * This class is a benchmark for the SOS scheduler.  For each process count
+ * it creates that many processes, blocks all but a few of them (they wait
+ * to OPEN a keyboard that one of them holds and is reading from) and then
+ * has the Ready processes YIELD over and over.  It plays the part of the
+ * CPU itself, making the system calls directly from this thread, so only
+ * the OS's work is timed.  It reports:
+ *
+ * <ul>
+ * <li>the time to create the processes and to block them</li>
+ * <li>the heap each process takes (measured after garbage collection, so
+ *     only roughly)</li>
+ * <li>the time per YIELD (one scheduling decision and context switch) and
+ *     the bytes it allocates</li>
+ * <li>fairness among the Ready processes: Jain's index of how many times
+ *     each one ran (1.0 is perfectly fair) and the most other processes
+ *     that ran between two turns of the same process</li>
+ * </ul>
+ *
+ * Usage: java sos.SchedBench [yields] [ready] [processes ...]
+ *
+ * @see SOS
+ */
+public class SchedBench
+{
+    /**
+     * runOnce
+     *
+     * runs one measurement
+     *
+     * @param numProcs  how many processes to create
+     * @param numReady  how many of them to leave Ready
+     * @param yields    how many times to yield
+     */
+    private static void runOnce(int numProcs, int numReady, int yields)
+    {
+        numReady = Math.min(numReady, numProcs);
+        BenchMachine m = new BenchMachine(numProcs, 1);
+        KeyboardDevice kbd = new KeyboardDevice(m.getInterruptController()); // never started
+        kbd.setId(0);
+        m.getOS().registerDevice(kbd, 0);
+
+        //Create the processes
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long heap = rt.totalMemory() - rt.freeMemory();
+        long start = System.nanoTime();
+        m.createProcesses(numProcs);
+        long createNs = System.nanoTime() - start;
+        System.gc();
+        heap = (rt.totalMemory() - rt.freeMemory()) - heap;
+
+        //Block all but numReady of them.  The first to OPEN the keyboard
+        //blocks reading it; the rest block waiting to OPEN it.
+        start = System.nanoTime();
+        for(int blocked = 0; blocked < numProcs - numReady; blocked++)
+        {
+            int pid = m.getPid();
+            m.syscall(SOS.SYSCALL_OPEN, 0);
+            if (m.getPid() == pid)
+            {
+                m.getCPU().popStack();      // the OPEN succeeded
+                m.syscall(SOS.SYSCALL_READ, 0, 0);
+            }
+        }
+        long blockNs = System.nanoTime() - start;
+
+        //Time the scheduling decisions
+        com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long allocated = mx.getCurrentThreadAllocatedBytes();
+        start = System.nanoTime();
+        for(int i = 0; i < yields; i++)
+        {
+            m.syscall(SOS.SYSCALL_YIELD);
+        }
+        long yieldNs = System.nanoTime() - start;
+        allocated = mx.getCurrentThreadAllocatedBytes() - allocated;
+
+        //See how fairly the CPU was shared
+        HashMap<Integer, Integer> runs = new HashMap<Integer, Integer>();
+        HashMap<Integer, Integer> lastRun = new HashMap<Integer, Integer>();
+        int maxGap = 0;
+        int fairYields = Math.min(yields, 100000);
+        for(int i = 0; i < fairYields; i++)
+        {
+            m.syscall(SOS.SYSCALL_YIELD);
+            int pid = m.getPid();
+            Integer n = runs.get(pid);
+            runs.put(pid, (n == null) ? 1 : n + 1);
+            Integer last = lastRun.put(pid, i);
+            if (last != null)
+            {
+                maxGap = Math.max(maxGap, i - last - 1);
+            }
+        }
+        double sum = 0;
+        double sumSq = 0;
+        for(int n : runs.values())
+        {
+            sum += n;
+            sumSq += (double)n * n;
+        }
+        double jain = (sum * sum) / (numReady * sumSq);
+
+        System.out.println(String.format("%9d %6d %10.1f %8.0f %10.1f %10.0f %8.1f %8.4f %7d",
+                                         numProcs, numReady, createNs / 1e6,
+                                         heap / (double)numProcs, blockNs / 1e6,
+                                         yieldNs / (double)yields,
+                                         allocated / (double)yields, jain, maxGap));
+    }//runOnce
+
+    public static void main(String[] args)
+    {
+        int yields = 1000000;
+        int ready = 10;
+        int[] counts = { 10, 1000, 100000 };
+        if (args.length > 0)
+        {
+            yields = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1)
+        {
+            ready = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2)
+        {
+            counts = new int[args.length - 2];
+            for(int i = 2; i < args.length; i++)
+            {
+                counts[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println(String.format("%9s %6s %10s %8s %10s %10s %8s %8s %7s",
+                                         "processes", "ready", "create(ms)", "B/proc",
+                                         "block(ms)", "ns/yield", "B/yield",
+                                         "jain", "maxgap"));
+        for(int n : counts)
+        {
+            runOnce(n, ready, yields);
+        }
+
+        System.exit(0);
+    }//main
+
+};//class SchedBench
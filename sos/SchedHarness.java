@@ -0,0 +1,199 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * This class compares the process scheduling policies on a workload.  It
+ * runs the same Sim command line under each policy (each run is a separate
+ * JVM since a Sim exits when it is done) and reads the scheduling
+ * statistics Sim prints with -p.  For each policy it reports the mean over
+ * the runs of:
+ *
+ * <ul>
+ * <li>throughput - processes completed per second of simulated time</li>
+ * <li>the mean and 99th percentile turnaround time (creation to exit)</li>
+ * <li>the mean time processes waited in the Ready state</li>
+ * <li>the number of context switches</li>
+ * </ul>
+ *
+ * Usage: java sos.SchedHarness [runs] [policy ...] [-- sim_args ...]
+ *
+ * By default every policy in {@link Scheduler#POLICIES} is run 5 times on
+ * a mix of a CPU bound program and I/O bound programs started by spawn8
+ * with a 200 instruction time slice.
+ *
+ * @see Scheduler
+ */
+public class SchedHarness
+{
+    /** the default workload (Sim arguments) */
+    private static final String[] DEFAULT_WORKLOAD = {
+        "-l", "0", "-r", "20000", "-t", "200",
+        "spawn8.asm", "spinexec.asm", "print10.asm", "readwrite.asm"
+    };
+
+    /** the statistics read from one run (times in microseconds) */
+    private static final int STAT_SIM_MS   = 0;
+    private static final int STAT_PROCS    = 1;
+    private static final int STAT_TURN     = 2;
+    private static final int STAT_TURN_P99 = 3;
+    private static final int STAT_WAIT     = 4;
+    private static final int STAT_SWITCHES = 5;
+    private static final int NUM_STATS     = 6;
+
+    /**
+     * runSimOutput
+     *
+     * runs one Sim with -p in its own JVM
+     *
+     * @param policy    the scheduling policy
+     * @param simArgs   the rest of the Sim command line
+     * @return the lines it printed
+     * @throws IOException if the Sim could not be run
+     */
+    static ArrayList<String> runSimOutput(String policy, List<String> simArgs)
+        throws IOException, InterruptedException
+    {
+        ArrayList<String> cmd = new ArrayList<String>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("sos.Sim");
+        cmd.add("-p");
+        cmd.add("-P");
+        cmd.add(policy);
+        cmd.addAll(simArgs);
+
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.redirectErrorStream(true);
+        Process proc = pb.start();
+        BufferedReader in =
+            new BufferedReader(new InputStreamReader(proc.getInputStream()));
+        ArrayList<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            lines.add(line);
+        }
+        proc.waitFor();
+        return lines;
+    }//runSimOutput
+
+    /**
+     * runSim
+     *
+     * runs one Sim and reads its statistics
+     *
+     * @param policy    the scheduling policy
+     * @param simArgs   the rest of the Sim command line
+     * @return the statistics (see the STAT constants)
+     * @throws IOException if the Sim could not be run or printed no
+     *         statistics
+     */
+    private static double[] runSim(String policy, List<String> simArgs)
+        throws IOException, InterruptedException
+    {
+        double[] stats = new double[NUM_STATS];
+        int found = 0;
+        boolean readyWaitNext = false;
+        for(String line : runSimOutput(policy, simArgs))
+        {
+            String[] words = line.trim().split("\\s+");
+            if (readyWaitNext)
+            {
+                stats[STAT_WAIT] = Double.parseDouble(words[1]);
+                readyWaitNext = false;
+                found++;
+            }
+            else if (line.startsWith("Total Simulation Time:"))
+            {
+                stats[STAT_SIM_MS] = Double.parseDouble(words[3].replace("ms", ""));
+                found++;
+            }
+            else if (line.startsWith("SCHEDULING:"))
+            {
+                String sw = line.substring(line.indexOf("switches=") + 9);
+                stats[STAT_SWITCHES] = Double.parseDouble(sw.split(" ")[0]);
+                found++;
+            }
+            else if (line.startsWith("  ready wait"))
+            {
+                readyWaitNext = true;
+            }
+            else if (line.startsWith("  turnaround"))
+            {
+                stats[STAT_PROCS] = Double.parseDouble(words[1]);
+                stats[STAT_TURN] = Double.parseDouble(words[2]);
+                stats[STAT_TURN_P99] = Double.parseDouble(words[4]);
+                found++;
+            }
+        }//for
+
+        if (found < 4)
+        {
+            throw new IOException("Sim -P " + policy + " " + simArgs
+                                  + " printed no statistics");
+        }
+        return stats;
+    }//runSim
+
+    public static void main(String[] args) throws Exception
+    {
+        int runs = 5;
+        ArrayList<String> policies = new ArrayList<String>();
+        ArrayList<String> simArgs = new ArrayList<String>();
+        int i = 0;
+        if ((args.length > 0) && !args[0].equals("--"))
+        {
+            runs = Integer.parseInt(args[0]);
+            i++;
+        }
+        for(; (i < args.length) && !args[i].equals("--"); i++)
+        {
+            Scheduler.parse(args[i]);   // check it before running anything
+            policies.add(args[i]);
+        }
+        for(i++; i < args.length; i++)
+        {
+            simArgs.add(args[i]);
+        }
+        if (policies.isEmpty())
+        {
+            policies.addAll(Arrays.asList(Scheduler.POLICIES));
+        }
+        if (simArgs.isEmpty())
+        {
+            simArgs.addAll(Arrays.asList(DEFAULT_WORKLOAD));
+        }
+
+        System.out.println("workload: " + String.join(" ", simArgs)
+                           + " (" + runs + " runs each)");
+        System.out.println(String.format("%-16s %10s %12s %12s %12s %10s",
+                                         "policy", "procs/s", "turn(us)",
+                                         "turn99(us)", "wait(us)", "switches"));
+        for(String policy : policies)
+        {
+            double[] sum = new double[NUM_STATS];
+            for(int r = 0; r < runs; r++)
+            {
+                double[] stats = runSim(policy, simArgs);
+                for(int s = 0; s < NUM_STATS; s++)
+                {
+                    sum[s] += stats[s];
+                }
+            }
+            System.out.println(String.format("%-16s %10.1f %12.0f %12.0f %12.1f %10.0f",
+                                             policy,
+                                             sum[STAT_PROCS] / (sum[STAT_SIM_MS] / 1000.0),
+                                             sum[STAT_TURN] / runs,
+                                             sum[STAT_TURN_P99] / runs,
+                                             sum[STAT_WAIT] / runs,
+                                             sum[STAT_SWITCHES] / runs));
+        }
+
+        System.exit(0);
+    }//main
+
+};//class SchedHarness
@@ -0,0 +1,500 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This interface decides which Ready process SOS runs next.  SOS tells the
+ * scheduler about every change in a process' state and asks it for the
+ * next process whenever the CPU changes hands.  The processes are
+ * {@link ProcessQueue.Entry}s, so a scheduler can keep them in
+ * ProcessQueues (the process the scheduler gives SOS must no longer be in
+ * any of them) and keep its own state for each one in the entry's sched
+ * fields.  The policies are:
+ *
+ * <ul>
+ * <li>rr     - round robin (the default)</li>
+ * <li>random - any Ready process at random</li>
+ * <li>mlfq[:LEVELS[:BOOST]] - a multilevel feedback queue with LEVELS
+ *     levels (3 by default).  Level L has a quantum of 2^L clock ticks.  A
+ *     process that uses its whole quantum (counting the parts of ticks it
+ *     ran before yielding) moves down a level, a process that blocks moves
+ *     up a level and every BOOST (10ms by default) all processes move back
+ *     to level 0 so none can be starved.</li>
+ * <li>edf    - earliest deadline first: the Ready process whose current
+ *     job has the earliest deadline runs, then the processes without
+ *     deadlines in the order they became Ready.  A deadline is only
+ *     accepted if the processes with deadlines would still need no more
+ *     than the whole CPU (the sum of budget / min(deadline, period) is at
+ *     most 1), so the deadlines that are accepted can all be met.</li>
+ * </ul>
+ *
+ * Times are in milliseconds unless they end in ns, us or s.
+ *
+ * @see SOS
+ * @see SchedHarness
+ */
+public interface Scheduler
+{
+    /** the names of the policies (for usage messages and SchedHarness) */
+    public static final String[] POLICIES = { "rr", "random", "mlfq", "edf" };
+
+    /**
+     * enqueue
+     *
+     * gives the scheduler a Ready process: one that was preempted, yielded
+     * or was switched out to run a process it created
+     *
+     * @param p  the process
+     */
+    public void enqueue(ProcessQueue.Entry p);
+
+    /**
+     * dequeue
+     *
+     * chooses the next process to run and takes it out of the scheduler
+     *
+     * @return the process -OR- null if no process is Ready
+     */
+    public ProcessQueue.Entry dequeue();
+
+    /**
+     * onBlock
+     *
+     * tells the scheduler the running process has blocked.  By default
+     * does nothing.
+     *
+     * @param p  the process
+     */
+    public default void onBlock(ProcessQueue.Entry p)
+    {
+    }
+
+    /**
+     * onUnblock
+     *
+     * tells the scheduler a blocked process is Ready again.  By default it
+     * is enqueued like any other Ready process.
+     *
+     * @param p  the process
+     */
+    public default void onUnblock(ProcessQueue.Entry p)
+    {
+        enqueue(p);
+    }
+
+    /**
+     * onTick
+     *
+     * charges the running process for time it has run.  SOS calls this with
+     * a whole tick on each clock interrupt, and with the part of a tick the
+     * process ran for when it yields or is switched out to run a process it
+     * created.  By default a process is preempted on every clock interrupt.
+     *
+     * @param p     the process
+     * @param used  how long it ran (in instructions if the CPU's clock
+     *              counts them, otherwise in whole ticks)
+     * @param tick  the length of a clock tick in the same units
+     * @return true if the process has used up its time slice and should
+     *         give up the CPU
+     */
+    public default boolean onTick(ProcessQueue.Entry p, int used, int tick)
+    {
+        return used >= tick;
+    }
+
+    /**
+     * onExit
+     *
+     * tells the scheduler the running process has exited.  By default does
+     * nothing.
+     *
+     * @param p  the process
+     */
+    public default void onExit(ProcessQueue.Entry p)
+    {
+    }
+
+    /**
+     * admit
+     *
+     * asks whether a process may have a deadline (admission control).  By
+     * default every deadline is accepted.
+     *
+     * @param p         the process
+     * @param budget    how long each of its jobs runs for (ns)
+     * @param deadline  each job's deadline relative to its release (ns)
+     * @param period    the time between job releases (ns, 0 if the whole
+     *                  process is one job)
+     * @return true if the deadline is accepted
+     */
+    public default boolean admit(ProcessQueue.Entry p, long budget, long deadline,
+                                 long period)
+    {
+        return true;
+    }
+
+    /**
+     * size
+     *
+     * @return the number of Ready processes the scheduler holds
+     */
+    public int size();
+
+    /**
+     * printStats
+     *
+     * prints the policy's own statistics.  By default prints nothing.
+     */
+    public default void printStats()
+    {
+    }
+
+    /**
+     * parse
+     *
+     * creates a scheduler from its command line description (see above)
+     *
+     * @param spec the description
+     * @return the scheduler
+     * @throws IllegalArgumentException if the description is not valid
+     */
+    public static Scheduler parse(String spec)
+    {
+        String[] parts = spec.split(":");
+        if (parts[0].equals("rr") && (parts.length == 1))
+        {
+            return new RoundRobin();
+        }
+        if (parts[0].equals("random") && (parts.length == 1))
+        {
+            return new RandomChoice();
+        }
+        if (parts[0].equals("edf") && (parts.length == 1))
+        {
+            return new Edf();
+        }
+        if (parts[0].equals("mlfq") && (parts.length <= 3))
+        {
+            try
+            {
+                int levels = (parts.length > 1) ? Integer.parseInt(parts[1])
+                                                : Mlfq.DEFAULT_LEVELS;
+                long boost = Mlfq.DEFAULT_BOOST_NS;
+                if (parts.length > 2)
+                {
+                    //a plain number is milliseconds
+                    boost = LatencyModel.parseTime(parts[2], 1000000L);
+                }
+                if ((levels >= 1) && (levels <= 16) && (boost > 0))
+                {
+                    return new Mlfq(levels, boost);
+                }
+            }
+            catch(NumberFormatException e)
+            {
+                //fall through to the error below
+            }
+            throw new IllegalArgumentException("bad number in scheduling policy `"
+                                               + spec + "'");
+        }
+        throw new IllegalArgumentException("unknown scheduling policy `"
+                                           + spec + "'");
+    }//parse
+
+    /**
+     * class RoundRobin
+     *
+     * runs the Ready processes in turn
+     */
+    public static class RoundRobin implements Scheduler
+    {
+        private ProcessQueue m_ready = new ProcessQueue();
+
+        public void enqueue(ProcessQueue.Entry p)
+        {
+            m_ready.add(p);
+        }
+
+        public ProcessQueue.Entry dequeue()
+        {
+            return m_ready.poll();
+        }
+
+        public int size()
+        {
+            return m_ready.size();
+        }
+    }//class RoundRobin
+
+    /**
+     * class RandomChoice
+     *
+     * runs any Ready process at random (which takes time in proportion to
+     * the number of them)
+     */
+    public static class RandomChoice implements Scheduler
+    {
+        private ProcessQueue m_ready = new ProcessQueue();
+        private Random m_random = new Random();
+
+        public void enqueue(ProcessQueue.Entry p)
+        {
+            m_ready.add(p);
+        }
+
+        public ProcessQueue.Entry dequeue()
+        {
+            if (m_ready.isEmpty())
+            {
+                return null;
+            }
+            ProcessQueue.Entry e = m_ready.peek();
+            for(int i = m_random.nextInt(m_ready.size()); i > 0; i--)
+            {
+                e = m_ready.next(e);
+            }
+            m_ready.remove(e);
+            return e;
+        }//dequeue
+
+        public int size()
+        {
+            return m_ready.size();
+        }
+    }//class RandomChoice
+
+    /**
+     * class Mlfq
+     *
+     * A multilevel feedback queue (see above).  The entry's sched fields
+     * hold the process' level, the time it has run for at that level and
+     * the number of priority boosts there had been when it was last seen.
+     * The Ready processes are moved up when there is a boost and the others
+     * when they are next seen, so a boost doesn't have to visit every
+     * process.  The boosts are timed on the host's clock rather than by
+     * clock ticks because the CPU's clock restarts whenever a new process
+     * is dispatched: processes that keep yielding would otherwise stop the
+     * boosts and starve the lower levels.
+     */
+    public static class Mlfq implements Scheduler
+    {
+        /** the default number of priority levels */
+        public static final int DEFAULT_LEVELS = 3;
+
+        /** the default time between priority boosts (ns) */
+        public static final long DEFAULT_BOOST_NS = 10000000L;
+
+        private ProcessQueue[] m_levels;
+        private long m_boostNs;
+        private long m_nextBoost;
+        private int m_boosts = 0;
+        private int m_tick = 1;     // the length of a tick in onTick's units
+
+        //Per level: the processes dispatched from the level, the time the
+        //processes at the level ran for and the sum over all scheduling
+        //decisions of the number of Ready processes at the level
+        private long[] m_dispatches;
+        private long[] m_used;
+        private long[] m_occupancy;
+        private long m_decisions = 0;
+
+        public Mlfq(int levels, long boostNs)
+        {
+            m_levels = new ProcessQueue[levels];
+            for(int i = 0; i < levels; i++)
+            {
+                m_levels[i] = new ProcessQueue();
+            }
+            m_boostNs = boostNs;
+            m_nextBoost = System.nanoTime() + boostNs;
+            m_dispatches = new long[levels];
+            m_used = new long[levels];
+            m_occupancy = new long[levels];
+        }
+
+        /**
+         * checkBoost
+         *
+         * moves a process to the top level if there has been a priority
+         * boost since it was last seen
+         */
+        private void checkBoost(ProcessQueue.Entry p)
+        {
+            if (p.m_schedMark != m_boosts)
+            {
+                p.m_schedMark = m_boosts;
+                p.m_schedLevel = 0;
+                p.m_schedUsed = 0;
+            }
+        }//checkBoost
+
+        /**
+         * boost
+         *
+         * moves every process to the top level (see above)
+         */
+        private void boost()
+        {
+            m_boosts++;
+            m_nextBoost = System.nanoTime() + m_boostNs;
+            for(int i = 1; i < m_levels.length; i++)
+            {
+                while (!m_levels[i].isEmpty())
+                {
+                    ProcessQueue.Entry p = m_levels[i].poll();
+                    checkBoost(p);
+                    m_levels[0].add(p);
+                }
+            }
+        }//boost
+
+        public void enqueue(ProcessQueue.Entry p)
+        {
+            checkBoost(p);
+            m_levels[p.m_schedLevel].add(p);
+        }
+
+        public ProcessQueue.Entry dequeue()
+        {
+            if (System.nanoTime() - m_nextBoost >= 0)
+            {
+                boost();
+            }
+
+            m_decisions++;
+            for(int i = 0; i < m_levels.length; i++)
+            {
+                m_occupancy[i] += m_levels[i].size();
+            }
+            for(int i = 0; i < m_levels.length; i++)
+            {
+                if (!m_levels[i].isEmpty())
+                {
+                    m_dispatches[i]++;
+                    return m_levels[i].poll();
+                }
+            }
+            return null;
+        }//dequeue
+
+        /** a process that gives up the CPU to wait moves up a level */
+        public void onBlock(ProcessQueue.Entry p)
+        {
+            checkBoost(p);
+            if (p.m_schedLevel > 0)
+            {
+                p.m_schedLevel--;
+            }
+            p.m_schedUsed = 0;
+        }//onBlock
+
+        public boolean onTick(ProcessQueue.Entry p, int used, int tick)
+        {
+            checkBoost(p);
+            m_tick = tick;
+            m_used[p.m_schedLevel] += used;
+            p.m_schedUsed += used;
+            if (p.m_schedUsed < ((long)tick << p.m_schedLevel))
+            {
+                return false;
+            }
+
+            p.m_schedUsed = 0;
+            if (p.m_schedLevel < m_levels.length - 1)
+            {
+                p.m_schedLevel++;
+            }
+            return true;
+        }//onTick
+
+        public int size()
+        {
+            int n = 0;
+            for(ProcessQueue q : m_levels)
+            {
+                n += q.size();
+            }
+            return n;
+        }//size
+
+        public void printStats()
+        {
+            System.out.println("  mlfq: " + m_boosts + " boosts every "
+                               + (m_boostNs / 1000) + "us");
+            for(int i = 0; i < m_levels.length; i++)
+            {
+                System.out.println(String.format(
+                    "  level %d: quantum %3d ticks, %8d dispatches, %10.1f ticks run, %6.2f ready on average",
+                    i, 1 << i, m_dispatches[i], m_used[i] / (double)m_tick,
+                    m_occupancy[i] / (double)Math.max(1, m_decisions)));
+            }
+        }//printStats
+    }//class Mlfq
+
+    /**
+     * class Edf
+     *
+     * Earliest deadline first (see above).  The Ready processes are in a
+     * heap ordered by deadline and then by the order they became Ready
+     * (kept in the entry's m_schedMark).
+     */
+    public static class Edf implements Scheduler
+    {
+        private PriorityQueue<ProcessQueue.Entry> m_ready =
+            new PriorityQueue<ProcessQueue.Entry>(11, (a, b) ->
+                (a.m_deadline != b.m_deadline) ? Long.compare(a.m_deadline, b.m_deadline)
+                                               : Long.compare(a.m_schedMark, b.m_schedMark));
+        private long m_order = 0;
+
+        //The total share of the CPU the admitted processes need (each
+        //process' own share is kept in its entry's m_share)
+        private double m_load = 0.0;
+        private double m_maxLoad = 0.0;
+
+        public void enqueue(ProcessQueue.Entry p)
+        {
+            p.m_schedMark = m_order++;
+            m_ready.add(p);
+        }
+
+        public ProcessQueue.Entry dequeue()
+        {
+            return m_ready.poll();
+        }
+
+        public boolean admit(ProcessQueue.Entry p, long budget, long deadline,
+                             long period)
+        {
+            long window = (period > 0) ? Math.min(deadline, period) : deadline;
+            double share = budget / (double)window;
+            double load = m_load + share - p.m_share;
+            if (load > 1.0)
+            {
+                return false;
+            }
+
+            p.m_share = share;
+            m_load = load;
+            m_maxLoad = Math.max(m_maxLoad, load);
+            return true;
+        }//admit
+
+        public void onExit(ProcessQueue.Entry p)
+        {
+            m_load -= p.m_share;
+            p.m_share = 0.0;
+        }//onExit
+
+        public int size()
+        {
+            return m_ready.size();
+        }
+
+        public void printStats()
+        {
+            System.out.println(String.format("  edf: most CPU admitted %.2f",
+                                             m_maxLoad));
+        }
+    }//class Edf
+
+};//interface Scheduler
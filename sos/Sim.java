@@ -21,6 +21,37 @@ public class Sim
     private int m_ramLatency = 10;
     private ExitCatcher m_ec = null;
     private DoNothingHandler m_dnh = null;
+    private boolean m_printIntStats = false;
+    private InterruptController m_IC = null;
+    private int m_deviceSpinLimit = 0;
+    private boolean m_virtualThreads = false;
+    private boolean m_eventLoop = false;
+    private int m_queueDepth = 1;
+    private boolean m_printQueueStats = false;
+    private KeyboardDevice m_keyboard = null;
+    private String m_diskImage = null;
+    private String m_machineFile = null;
+    private MachineConfig m_machine = null;
+    private ArrayList<Device> m_devices = new ArrayList<Device>();
+    private long m_startupNs = 0;
+    private String m_consoleOutput = null;
+    private ConsoleSink m_sink = null;
+    private String m_keyboardInput = null;
+    private int m_typeAheadSize = TypeAheadBuffer.DEFAULT_CAPACITY;
+    private int m_quantumInstrs = 0;
+    private long m_quantumNs = 0;
+    private boolean m_printSchedStats = false;
+    private SOS m_os = null;
+    private HashMap<Integer, LatencyModel> m_latencyModels =
+        new HashMap<Integer, LatencyModel>();
+    private boolean m_seeded = false;
+    private long m_seed = 0;
+    private String m_ioScheduler = null;
+    private Scheduler m_scheduler = null;
+    private int m_fsCacheSectors = 0;
+    private int m_node = -1;
+    private LinkedHashMap<Device, IOScheduler> m_ioSchedulers =
+        new LinkedHashMap<Device, IOScheduler>();
 
     public Sim(String [] args) {
 
@@ -76,6 +107,31 @@ public class Sim
         {
         	//do nothing
         }
+
+        public void checkWrite(String file)
+        {
+            //do nothing (devices such as the disk write to files)
+        }
+
+        public void checkWrite(java.io.FileDescriptor fd)
+        {
+            //do nothing (the console sink writes to stdout directly)
+        }
+
+        public void checkListen(int port)
+        {
+            //do nothing (net devices listen for the other nodes)
+        }
+
+        public void checkAccept(String host, int port)
+        {
+            //do nothing
+        }
+
+        public void checkConnect(String host, int port)
+        {
+            //do nothing (net devices connect to the other nodes)
+        }
         
     }//ExitCatcher
 
@@ -114,12 +170,266 @@ public class Sim
      */
     private void printUsage() {
         System.out.println(
-            "Usage: java sos.sim [-r ram_size] [-l ram_latency]" +
+            "Usage: java sos.sim [-r ram_size] [-l ram_latency] [-i] " +
+            "[-w device_spins] [-V] [-e] [-q queue_depth] [-d] " +
+            "[-k disk.img] [-o console_file] [-K keyboard_input] " +
+            "[-T type_ahead_size] [-t quantum] [-p] [-L id=model,...] " +
+            "[-S seed] [-m machine.cfg] [-I io_scheduler] [-F cache_sectors] " +
+            "[-N node] [-P policy] " +
             "prog.asm [-s size] [prog2.asm [-s size]] ..."
         );
+        System.out.println("  -r  RAM size in words");
+        System.out.println("  -l  RAM latency in ns");
+        System.out.println("  -i  print interrupt latency histograms at exit");
+        System.out.println("  -w  max spins by an idle device before it parks");
+        System.out.println("  -V  run devices on virtual threads if available");
+        System.out.println("  -e  drive all devices from one event loop thread");
+        System.out.println("  -q  number of requests each device can queue");
+        System.out.println("  -d  print device queue statistics at exit");
+        System.out.println("  -k  attach a disk (device 2) backed by this image file");
+        System.out.println("  -o  buffer console output to this file (- for stdout)");
+        System.out.println("  -K  type keyboard input from this file (- for stdin, seed:N for random)");
+        System.out.println("  -T  number of values the keyboard type-ahead buffer holds");
+        System.out.println("  -t  preempt processes every quantum instructions (or e.g. 1s, 2ms, 500us, 100000ns)");
+        System.out.println("  -p  print scheduling statistics and per-process accounting at exit");
+        System.out.println("  -L  latency models by device id: const:T, uniform:MIN:MAX,");
+        System.out.println("      exp:MEAN[:MIN], lognormal:MEDIAN:SIGMA or trace:FILE");
+        System.out.println("      (times in ns or ending in us/ms)");
+        System.out.println("  -S  seed every device's random number generator");
+        System.out.println("  -m  create the RAM and devices described in this file");
+        System.out.println("      (its RAM settings replace earlier -r and -l flags)");
+        System.out.println("  -I  I/O scheduler for disks: fifo, elevator, deadline[:R[:W]] or fair");
+        System.out.println("  -F  put a file system with this many cache sectors on the first disk");
+        System.out.println("  -N  this machine's node number in a cluster (for net devices)");
+        System.out.println("  -P  process scheduling policy: rr, random, mlfq[:levels[:boost_time]] or edf");
+        System.out.println("      (mlfq needs a clock: -t)");
+        System.out.println("  -s  address space size for the preceding program");
         System.exit(-1337);
     }
 
+    /**
+     * parseNumber
+     *
+     * Parses the numeric value of a command line flag.  Prints the usage
+     * message and exits if it is not a number.
+     *
+     * @param flag  the flag the value belongs to
+     * @param value the value to parse
+     * @return the parsed value
+     */
+    private int parseNumber(String flag, String value) {
+        int num = 0;
+        try {
+            num = Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            System.out.println( 
+                "Invalid value for " + flag + ". Number expected."
+            );
+            printUsage();
+        }
+        return num;
+    }
+
+    /**
+     * parseQuantum
+     *
+     * Parses the time slice given with -t: a plain number is a count of
+     * instructions, a number ending in ns, us, ms or s is a time.  Prints
+     * the usage message and exits if it is not valid.
+     *
+     * @param value the value to parse
+     */
+    private void parseQuantum(String value) {
+        if (value.isEmpty() || Character.isDigit(value.charAt(value.length() - 1))) {
+            m_quantumInstrs = parseNumber("-t", value);
+            m_quantumNs = 0;
+            return;
+        }
+        try {
+            m_quantumNs = LatencyModel.parseTime(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid value for -t. Time expected.");
+            printUsage();
+        }
+        m_quantumInstrs = 0;
+    }
+
+    /**
+     * parseLatencyModels
+     *
+     * Parses the device latency models given with -L as a comma separated
+     * list of id=model.  Prints the usage message and exits if one is not
+     * valid.
+     *
+     * @param value the value to parse
+     */
+    private void parseLatencyModels(String value) {
+        for (String item : value.split(",")) {
+            int eq = item.indexOf('=');
+            if (eq < 0) {
+                System.out.println("Invalid value for -L. id=model expected.");
+                printUsage();
+            }
+            int id = parseNumber("-L", item.substring(0, eq));
+            try {
+                m_latencyModels.put(id, LatencyModel.parse(item.substring(eq + 1)));
+            } catch (java.io.IOException e) {
+                System.out.println("Invalid value for -L: " + e.getMessage());
+                printUsage();
+            }
+        }
+    }
+
+    /**
+     * configureLatency
+     *
+     * Gives a device the latency model and seed requested on the command
+     * line (if any).
+     *
+     * @param dev the device, which must already have its id
+     */
+    private void configureLatency(Device dev) {
+        LatencyModel model = m_latencyModels.get(dev.getId());
+        if (model != null) {
+            dev.setLatencyModel(model);
+        }
+        if (m_seeded) {
+            dev.setSeed(LatencyModel.seedFor(m_seed, dev.getId()));
+        }
+    }
+
+    /**
+     * getMachine
+     *
+     * @return the machine to simulate: the one from the -m file or, by
+     *         default, a keyboard (device 0) and a console (device 1).
+     *         Either way the disk requested with -k is added to it.
+     */
+    private MachineConfig getMachine() {
+        MachineConfig machine = m_machine;
+        if (machine == null) {
+            machine = new MachineConfig();
+            machine.addDevice("keyboard", 0, 1, new Properties());
+            machine.addDevice("console", 1, 1, new Properties());
+        }
+        if (m_diskImage != null) {
+            Properties params = new Properties();
+            params.setProperty("image", m_diskImage.replace("%", "%%"));
+            machine.addDevice("disk", machine.getNextId(), 1, params);
+        }
+        return machine;
+    }
+
+    /**
+     * deviceName
+     *
+     * @return a printable name for a device, e.g. "Keyboard (device 0)"
+     */
+    private static String deviceName(Device dev) {
+        String type = dev.getClass().getSimpleName();
+        if (type.endsWith("Device")) {
+            type = type.substring(0, type.length() - "Device".length());
+        }
+        return type + " (device " + dev.getId() + ")";
+    }
+
+    /**
+     * takesValue
+     *
+     * @param flag a command line flag
+     * @return true if the flag is followed by a value
+     */
+    private boolean takesValue(String flag) {
+        return flag.equals("-r") || flag.equals("-l") || flag.equals("-w") ||
+               flag.equals("-q") || flag.equals("-k") || flag.equals("-o") ||
+               flag.equals("-K") || flag.equals("-T") || flag.equals("-t") ||
+               flag.equals("-L") || flag.equals("-S") || flag.equals("-m") ||
+               flag.equals("-I") || flag.equals("-F") || flag.equals("-N") ||
+               flag.equals("-P") || flag.equals("-s");
+    }
+
+    /**
+     * setFlag
+     *
+     * Records the setting of a command line flag in instance variables.
+     *
+     * @param flag  the flag being set
+     * @param value the value that followed the flag (null if it takes none)
+     */
+    private void setFlag(String flag, String value) {
+        if (flag.equals("-r")) {
+            m_ramAmount = parseNumber(flag, value);
+        } else if (flag.equals("-l")) {
+            m_ramLatency = parseNumber(flag, value);
+        } else if (flag.equals("-w")) {
+            m_deviceSpinLimit = parseNumber(flag, value);
+        } else if (flag.equals("-q")) {
+            m_queueDepth = parseNumber(flag, value);
+        } else if (flag.equals("-k")) {
+            m_diskImage = value;
+        } else if (flag.equals("-o")) {
+            m_consoleOutput = value;
+        } else if (flag.equals("-K")) {
+            m_keyboardInput = value;
+        } else if (flag.equals("-T")) {
+            m_typeAheadSize = parseNumber(flag, value);
+        } else if (flag.equals("-t")) {
+            parseQuantum(value);
+        } else if (flag.equals("-p")) {
+            m_printSchedStats = true;
+        } else if (flag.equals("-m")) {
+            m_machineFile = value;
+            try {
+                m_machine = MachineConfig.load(value);
+            } catch (java.io.IOException e) {
+                System.out.println("ERROR: Could not load machine description: "
+                                   + e.getMessage());
+                System.exit(-7);
+            }
+            if (m_machine.getRamSize() > 0) {
+                m_ramAmount = m_machine.getRamSize();
+            }
+            if (m_machine.getRamLatency() >= 0) {
+                m_ramLatency = m_machine.getRamLatency();
+            }
+        } else if (flag.equals("-L")) {
+            parseLatencyModels(value);
+        } else if (flag.equals("-S")) {
+            m_seed = parseNumber(flag, value);
+            m_seeded = true;
+        } else if (flag.equals("-I")) {
+            try {
+                IOScheduler.parse(value);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                printUsage();
+            }
+            m_ioScheduler = value;
+        } else if (flag.equals("-F")) {
+            m_fsCacheSectors = parseNumber(flag, value);
+        } else if (flag.equals("-N")) {
+            m_node = parseNumber(flag, value);
+        } else if (flag.equals("-P")) {
+            try {
+                m_scheduler = Scheduler.parse(value);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                printUsage();
+            }
+        } else if (flag.equals("-d")) {
+            m_printQueueStats = true;
+        } else if (flag.equals("-i")) {
+            m_printIntStats = true;
+        } else if (flag.equals("-V")) {
+            m_virtualThreads = true;
+        } else if (flag.equals("-e")) {
+            m_eventLoop = true;
+        } else {
+            System.out.println("Unknown flag " + flag + ".");
+            printUsage();
+        }
+    }
+
     /**
      * parseArgs
      *
@@ -136,87 +446,54 @@ public class Sim
 
         Program prog = null;
 
-        boolean ramSizeArgumentFound = false;
-        boolean ramSizeArgumentNext = false;
-        boolean ramLatencyArgumentFound = false;
-        boolean ramLatencyArgumentNext = false;
-        boolean sizeArgumentNext = false;
+        HashSet<String> flagsFound = new HashSet<String>();
+        String flagNext = null;     // flag whose value is the next argument
         for (int i=0; i < args.length; ++i) {
 
-            //If we just saw an -r -s or -l flag
-            if (ramSizeArgumentNext ||
-                ramLatencyArgumentNext ||
-                sizeArgumentNext)
-            {
-                int num = 0;
-                try {
-                    num = Integer.valueOf(args[i]);
-                } catch (NumberFormatException e) {
-                    System.out.println( 
-                        "Invalid value for " + args[i-1] + ". Number expected."
-                    );
-                    printUsage();
-                }
-
-                if (ramSizeArgumentNext) { m_ramAmount = num; }
-                if (ramLatencyArgumentNext) { m_ramLatency = num; }
-                if (sizeArgumentNext) {
-                    prog.setDefaultAllocSize(num);
+            //If we just saw a flag that expects a value
+            if (flagNext != null) {
+                if (flagNext.equals("-s")) {
+                    prog.setDefaultAllocSize(parseNumber(flagNext, args[i]));
                     prog = null;
+                } else {
+                    setFlag(flagNext, args[i]);
                 }
-
-                ramSizeArgumentNext = false;
-                ramLatencyArgumentNext = false;
-                sizeArgumentNext = false;
+                flagNext = null;
                 
                 continue;
             }
-            
-            //If we are looking at an -r flag.
-            if (args[i].equals("-r")) {
-                if (ramSizeArgumentFound) {
-                    System.out.println("Duplicate -r flag.");
-                    printUsage();
-                }
-                if (m_mainProgram != null) {
+
+            //If we are looking at a -s flag
+            if (args[i].equals("-s")) {
+                if (prog == null) {
                     System.out.println(
-                        "Flag -r must be before program arguments."
+                        "-s flag requires a progN.asm argument"
                     );
                     printUsage();
                 }
-                ramSizeArgumentFound = true;
-                ramSizeArgumentNext = true;
+                flagNext = args[i];
 
                 continue;
             }
 
-            //If we are looking at an -l flag.
-            if (args[i].equals("-l")) {
-                if (ramLatencyArgumentFound) {
-                    System.out.println("Duplicate -l flag.");
+            //If we are looking at any other flag
+            if (args[i].startsWith("-")) {
+                if (flagsFound.contains(args[i])) {
+                    System.out.println("Duplicate " + args[i] + " flag.");
                     printUsage();
                 }
                 if (m_mainProgram != null) {
                     System.out.println(
-                        "Flag -l must be before program arguments."
+                        "Flag " + args[i] + " must be before program arguments."
                     );
                     printUsage();
                 }
-                ramLatencyArgumentFound = true;
-                ramLatencyArgumentNext = true;
-
-                continue;
-            }
-
-            //If we are looking at a -s flag
-            if (args[i].equals("-s")) {
-                if (prog == null) {
-                    System.out.println(
-                        "-s flag requires a progN.asm argument"
-                    );
-                    printUsage();
+                flagsFound.add(args[i]);
+                if (takesValue(args[i])) {
+                    flagNext = args[i];
+                } else {
+                    setFlag(args[i], null);
                 }
-                sizeArgumentNext = true;
 
                 continue;
             }
@@ -246,7 +523,7 @@ public class Sim
             printUsage();
         }
 
-        if (ramSizeArgumentNext || ramLatencyArgumentNext || sizeArgumentNext){
+        if (flagNext != null){
             System.out.println(
                 "ERROR: " + args[args.length-1] + " expects an argument"
             );
@@ -255,6 +532,59 @@ public class Sim
 
     }
 
+    /**
+     * startDeviceThread
+     *
+     * Starts a thread to run a device.  If virtual threads were requested
+     * and the JVM supports them (Java 21+) the device runs on one,
+     * otherwise it gets a platform thread.
+     *
+     * @param dev the device to run
+     */
+    private void startDeviceThread(Runnable dev)
+    {
+        Thread t = null;
+        if (m_virtualThreads)
+        {
+            try
+            {
+                //Thread.ofVirtual().unstarted(dev) without requiring Java 21
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                t = (Thread)builder.getClass().getMethod("unstarted", Runnable.class)
+                                              .invoke(builder, dev);
+            }
+            catch(Exception e)
+            {
+                System.out.println("Virtual threads are not available. "
+                                   + "Using platform threads.");
+                m_virtualThreads = false;
+            }
+        }
+        if (t == null)
+        {
+            t = new Thread(dev);
+        }
+        t.setUncaughtExceptionHandler(m_dnh);
+        t.start();
+    }//startDeviceThread
+
+    /**
+     * getHostCpuTime
+     *
+     * @return the host CPU time used by this JVM in nanoseconds or -1 if
+     *         the JVM cannot report it
+     */
+    private static long getHostCpuTime()
+    {
+        java.lang.management.OperatingSystemMXBean os =
+            java.lang.management.ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+        {
+            return ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+        }
+        return -1;
+    }//getHostCpuTime
+
     /**
      * runSimulation
      *
@@ -265,20 +595,172 @@ public class Sim
     {
 
         //Create the simulated hardware and OS
+        long setupStart = System.nanoTime();
+        DeviceSignal.setDefaultSpinLimit(m_deviceSpinLimit);
         RAM ram = new RAM(m_ramAmount, m_ramLatency);
         InterruptController ic = new InterruptController();
-        KeyboardDevice kd = new KeyboardDevice(ic);
-        ConsoleDevice cd = new ConsoleDevice(ic);
-        kd.setId(0);
-        cd.setId(1);
+        m_IC = ic;
+        MachineConfig machine = getMachine();
+        try
+        {
+            m_devices = machine.createDevices(ic, ram);
+        }
+        catch(java.io.IOException e)
+        {
+            System.out.println("ERROR: Could not create devices: " + e.getMessage());
+            System.exit(-7);
+        }
+
+        //Buffer the console output if requested
+        if (m_consoleOutput != null)
+        {
+            try
+            {
+                m_sink = m_consoleOutput.equals("-")
+                    ? ConsoleSink.toStdout(ConsoleSink.DEFAULT_BUFFER_SIZE)
+                    : ConsoleSink.toFile(m_consoleOutput,
+                                         ConsoleSink.DEFAULT_BUFFER_SIZE);
+            }
+            catch(java.io.IOException e)
+            {
+                System.out.println("ERROR: Could not open console output `"
+                                   + m_consoleOutput + "': " + e.getMessage());
+                System.exit(-7);
+            }
+            m_sink.start();
+        }
+
+        //Apply the command line settings to the devices
+        for (Device dev : m_devices)
+        {
+            dev.setQueueDepth(m_queueDepth);
+            configureLatency(dev);
+            if ((dev instanceof KeyboardDevice) && (m_keyboard == null))
+            {
+                m_keyboard = (KeyboardDevice)dev;
+            }
+            if ((dev instanceof ConsoleDevice) && (m_sink != null))
+            {
+                ((ConsoleDevice)dev).setSink(m_sink);
+            }
+            if ((dev instanceof NetworkDevice) && (m_node >= 0))
+            {
+                ((NetworkDevice)dev).setNode(m_node);
+            }
+        }
+
+        //Give the (first) keyboard its input if requested
+        if ((m_keyboardInput != null) && (m_keyboard != null))
+        {
+            try
+            {
+                TypeAheadBuffer buf =
+                    new TypeAheadBuffer(KeyboardSource.parse(m_keyboardInput),
+                                        m_typeAheadSize);
+                buf.start();
+                m_keyboard.setTypeAhead(buf);
+            }
+            catch(java.io.IOException e)
+            {
+                System.out.println("ERROR: Could not open keyboard input `"
+                                   + m_keyboardInput + "': " + e.getMessage());
+                System.exit(-7);
+            }
+        }
+
         CPU cpu = new CPU(ram, ic);
         SOS os  = new SOS(cpu, ram);
+        m_os = os;
+        os.setKeepAccounting(m_printSchedStats);
+        if (m_scheduler != null)
+        {
+            os.setScheduler(m_scheduler);
+        }
+
+        //Time slice processes on an instruction count if requested
+        cpu.setClockFreq(m_quantumInstrs);
+
+        //...or on a timer device
+        TimerDevice timer = null;
+        if (m_quantumNs > 0)
+        {
+            timer = new TimerDevice(ic, m_quantumNs);
+            timer.setId(machine.getNextId());   // after all of the devices
+        }
 
         //Register the device drivers with the OS
-        os.registerDevice(kd, 0);
-        os.registerDevice(cd, 1);
+        for (Device dev : m_devices)
+        {
+            os.registerDevice(dev, dev.getId());
+        }
+        try
+        {
+            for (Map.Entry<Integer, int[]> pool : machine.getPools().entrySet())
+            {
+                os.registerDevicePool(pool.getKey(), pool.getValue());
+            }
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.out.println("ERROR: Could not create device pool: " + e.getMessage());
+            System.exit(-7);
+        }
 
-        //Load the program into RAM
+        //Give devices their I/O schedulers: the sched setting from the
+        //machine description or, for disks, the -I flag
+        for (Device dev : m_devices)
+        {
+            String sched = machine.getDeviceSetting(dev.getId(), "sched");
+            if ((sched == null) && (dev instanceof BlockDevice))
+            {
+                sched = m_ioScheduler;
+            }
+            if (sched == null)
+            {
+                continue;
+            }
+            try
+            {
+                IOScheduler ios = IOScheduler.parse(sched);
+                os.setIOScheduler(dev.getId(), ios);
+                m_ioSchedulers.put(dev, ios);
+            }
+            catch(IllegalArgumentException e)
+            {
+                System.out.println("ERROR: " + deviceName(dev) + ": " + e.getMessage());
+                System.exit(-7);
+            }
+        }
+
+        //Put a file system on the first disk if requested
+        if (m_fsCacheSectors > 0)
+        {
+            Device disk = null;
+            for (Device dev : m_devices)
+            {
+                if ((disk == null) && (dev instanceof BlockDevice))
+                {
+                    disk = dev;
+                }
+            }
+            try
+            {
+                if (disk == null)
+                {
+                    throw new IllegalArgumentException("there is no disk");
+                }
+                os.mountFileSystem(disk.getId(), m_fsCacheSectors);
+            }
+            catch(IllegalArgumentException e)
+            {
+                System.out.println("ERROR: Could not mount the file system: "
+                                   + e.getMessage());
+                System.exit(-7);
+            }
+        }
+
+        //Load the program into RAM (which doesn't count as machine startup)
+        long loadStart = System.nanoTime();
         os.createProcess(m_mainProgram, m_mainProgram.getDefaultAllocSize());
 
         //Register other programs as ones that can be run via an Exec
@@ -286,17 +768,40 @@ public class Sim
         for (Program prog : m_programs) {
             os.addProgram(prog);
         }
+        long loadTime = System.nanoTime() - loadStart;
 
-        //Start up the devices
-        Thread t = new Thread(cd);
-        t.setUncaughtExceptionHandler(m_dnh);
-        t.start();
-        t = new Thread(kd);
-        t.setUncaughtExceptionHandler(m_dnh);
-        t.start();
+        //Start up the devices, either on one event loop or a thread each
+        if (m_eventLoop)
+        {
+            DeviceEventLoop loop = new DeviceEventLoop();
+            for (Device dev : m_devices)
+            {
+                dev.setEventLoop(loop);
+            }
+            if (timer != null)
+            {
+                timer.setEventLoop(loop);
+            }
+            startDeviceThread(loop);
+        }
+        else
+        {
+            for (Device dev : m_devices)
+            {
+                if (dev instanceof Runnable)
+                {
+                    startDeviceThread((Runnable)dev);
+                }
+            }
+            if (timer != null)
+            {
+                startDeviceThread(timer);
+            }
+        }
+        m_startupNs = System.nanoTime() - setupStart - loadTime;
         
         //Run the simulation
-        t = new Thread(cpu);
+        Thread t = new Thread(cpu);
         t.setUncaughtExceptionHandler(m_dnh);
         t.start();
 
@@ -324,6 +829,8 @@ public class Sim
         //Do a timed run
         long startTime = System.currentTimeMillis();
         long endTime = System.currentTimeMillis();
+        long startCpu = getHostCpuTime();
+        long endCpu = startCpu;
         try
         {
             //Run the simulation
@@ -331,6 +838,7 @@ public class Sim
 
             //Record the ending time
             endTime = System.currentTimeMillis();
+            endCpu = getHostCpuTime();
 
             //Delay for any other threads that might be winding down
             Thread.sleep(1000);
@@ -338,14 +846,31 @@ public class Sim
         catch(SecurityException se)
         {
             endTime = System.currentTimeMillis();
+            endCpu = getHostCpuTime();
         }
         catch(Exception e)
         {
             endTime = System.currentTimeMillis();
+            endCpu = getHostCpuTime();
             System.out.println("EXCEPTION THROWN DURING SIMULATION:");
             e.printStackTrace();
         }
 
+        //Make sure all buffered console output has been written
+        if (m_sink != null)
+        {
+            m_sink.close();
+        }
+
+        //Make sure everything written to the disks is in the image files
+        for (Device dev : m_devices)
+        {
+            if (dev instanceof DiskDevice)
+            {
+                ((DiskDevice)dev).flush();
+            }
+        }
+
         //If System.exit was not called by any thread then bypass that
         //protection now
         if (! m_ec.isExitCaught())
@@ -358,6 +883,67 @@ public class Sim
         System.out.println("");
         System.out.println("END OF SIMULATION");
         System.out.println("Total Simulation Time: " + (endTime - startTime) + "ms");
+        if (startCpu >= 0)
+        {
+            System.out.println("Host CPU Time: " + ((endCpu - startCpu) / 1000000) + "ms");
+        }
+        if (m_machineFile != null)
+        {
+            System.out.println("Machine Startup Time: " + (m_startupNs / 1000000)
+                               + "ms (" + m_devices.size() + " devices)");
+        }
+
+        //Print the interrupt latency histograms if requested
+        if (m_printIntStats && (m_IC != null))
+        {
+            m_IC.getStats().print();
+        }
+
+        //Print the scheduling statistics if requested
+        if (m_printSchedStats && (m_os != null))
+        {
+            m_os.printSchedStats();
+            m_os.printProcessAccounting();
+        }
+
+        //Print the file system's cache statistics
+        if (m_os != null)
+        {
+            m_os.printFileSystemStats();
+        }
+
+        //Print the keyboard's read statistics if it had input (or if device
+        //statistics were requested)
+        if (((m_keyboardInput != null) || m_printQueueStats)
+            && (m_keyboard != null))
+        {
+            System.out.println("");
+            m_keyboard.printStats(deviceName(m_keyboard));
+        }
+
+        //Print what the network devices sent and received
+        for (Device dev : m_devices)
+        {
+            if (dev instanceof NetworkDevice)
+            {
+                System.out.println("");
+                ((NetworkDevice)dev).printStats(deviceName(dev));
+            }
+        }
+
+        //Print the device queue statistics if requested
+        if (m_printQueueStats && !m_devices.isEmpty())
+        {
+            System.out.println("");
+            for (Device dev : m_devices)
+            {
+                dev.getQueue().printStats(deviceName(dev));
+            }
+            for (Map.Entry<Device, IOScheduler> e : m_ioSchedulers.entrySet())
+            {
+                e.getValue().printStats(deviceName(e.getKey()));
+            }
+        }
 
         return 0;
     }
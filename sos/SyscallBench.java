@@ -0,0 +1,137 @@
+package sos;
+
+/**
+ * This class is a benchmark for the device system calls.  For each number
+ * of devices and processes it registers that many devices, creates that
+ * many processes and has every process OPEN every device.  Then the
+ * processes take turns making device system calls, so each call has to
+ * find the device it names and check whether the calling process has it
+ * open.  Like {@link SchedBench} it plays the part of the CPU, making the
+ * system calls directly from this thread, so only the OS's work is timed.
+ * It reports:
+ *
+ * <ul>
+ * <li>the time to register the devices and to open all of them in every
+ *     process</li>
+ * <li>the time per OPEN of a device the process already has open</li>
+ * <li>the time per CLOSE and OPEN of a device</li>
+ * </ul>
+ *
+ * Usage: java sos.SyscallBench [calls] [devices processes ...]
+ *
+ * @see SOS
+ * @see NullDevice
+ */
+public class SyscallBench
+{
+    /**
+     * check
+     *
+     * makes sure a system call returned what it should
+     */
+    private static void check(int result, int expected)
+    {
+        if (result != expected)
+        {
+            throw new IllegalStateException("system call returned " + result
+                                            + " instead of " + expected);
+        }
+    }//check
+
+    /**
+     * runOnce
+     *
+     * runs one measurement
+     *
+     * @param numDevs   how many devices to register
+     * @param numProcs  how many processes to create
+     * @param calls     how many of each kind of call to make
+     */
+    private static void runOnce(int numDevs, int numProcs, int calls)
+    {
+        BenchMachine m = new BenchMachine(numProcs, 64);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < numDevs; i++)
+        {
+            NullDevice dev = new NullDevice();
+            dev.setId(i);
+            m.getOS().registerDevice(dev, i);
+        }
+        long registerNs = System.nanoTime() - start;
+
+        //Create the processes and open every device in each one
+        m.createProcesses(numProcs);
+        start = System.nanoTime();
+        for(int i = 0; i < numProcs; i++)
+        {
+            for(int d = 0; d < numDevs; d++)
+            {
+                check(m.syscallResult(SOS.SYSCALL_OPEN, d), SOS.SYSCALL_RET_SUCCESS);
+            }
+            m.syscall(SOS.SYSCALL_YIELD);
+        }
+        long openAllNs = System.nanoTime() - start;
+
+        //Each process makes a call for every device and then yields
+        start = System.nanoTime();
+        for(int i = 0; i < calls; i++)
+        {
+            check(m.syscallResult(SOS.SYSCALL_OPEN, i % numDevs),
+                  SOS.SYSCALL_RET_ALREADY_OPEN);
+            if ((i % numDevs) == numDevs - 1)
+            {
+                m.syscall(SOS.SYSCALL_YIELD);
+            }
+        }
+        long openNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for(int i = 0; i < calls; i++)
+        {
+            check(m.syscallResult(SOS.SYSCALL_CLOSE, i % numDevs),
+                  SOS.SYSCALL_RET_SUCCESS);
+            check(m.syscallResult(SOS.SYSCALL_OPEN, i % numDevs),
+                  SOS.SYSCALL_RET_SUCCESS);
+            if ((i % numDevs) == numDevs - 1)
+            {
+                m.syscall(SOS.SYSCALL_YIELD);
+            }
+        }
+        long closeOpenNs = System.nanoTime() - start;
+
+        System.out.println(String.format("%7d %9d %12.2f %11.1f %9.0f %14.0f",
+                                         numDevs, numProcs, registerNs / 1e6,
+                                         openAllNs / 1e6, openNs / (double)calls,
+                                         closeOpenNs / (double)calls));
+    }//runOnce
+
+    public static void main(String[] args)
+    {
+        int calls = 1000000;
+        int[] sizes = { 10, 10, 100, 100, 500, 500, 500, 2000 };
+        if (args.length > 0)
+        {
+            calls = Integer.parseInt(args[0]);
+        }
+        if (args.length > 2)
+        {
+            sizes = new int[(args.length - 1) & ~1];
+            for(int i = 0; i < sizes.length; i++)
+            {
+                sizes[i] = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        System.out.println(String.format("%7s %9s %12s %11s %9s %14s",
+                                         "devices", "processes", "register(ms)",
+                                         "openall(ms)", "ns/open", "ns/close+open"));
+        for(int i = 0; i < sizes.length; i += 2)
+        {
+            runOnce(sizes[i], sizes[i + 1], calls);
+        }
+
+        System.exit(0);
+    }//main
+
+};//class SyscallBench
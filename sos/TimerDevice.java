@@ -0,0 +1,137 @@
+package sos;
+
+import java.util.concurrent.locks.*;
+
+/**
+ * This class simulates a programmable interval timer.  Once started it
+ * posts a clock interrupt to the {@link InterruptController} every period
+ * (measured in real nanoseconds) until the program ends.  The OS uses the
+ * clock interrupt to preempt the running process at the end of its time
+ * slice.
+ *
+ * The timer is not opened or read by processes so it is not a
+ * {@link Device}, but it can be driven by a {@link DeviceEventLoop} like
+ * the other devices.
+ *
+ * @see CPU
+ * @see SOS
+ */
+public class TimerDevice implements Runnable, DeviceEventLoop.Serviceable
+{
+    private int m_Id = -1;             // the id the timer's interrupts carry
+    private long m_period;             // time between ticks in ns
+    private InterruptController m_IC;  // reference to the interrupt controller
+    private long m_ticks = 0;          // number of ticks posted
+
+    /**
+     * constructor
+     *
+     * @param ic      the interrupt controller to post ticks to
+     * @param period  the time between ticks in nanoseconds
+     */
+    public TimerDevice(InterruptController ic, long period)
+    {
+        m_IC = ic;
+        m_period = Math.max(1, period);
+    }//ctor
+
+    /**
+     * getId
+     *
+     * @return the device id carried by this timer's interrupts
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the device id carried by this timer's interrupts
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * getTicks
+     *
+     * @return the number of clock interrupts posted so far
+     */
+    public long getTicks()
+    {
+        return m_ticks;
+    }
+
+    /**
+     * setEventLoop
+     *
+     * has this timer driven by an event loop rather than by its own thread
+     * and starts it.  {@link #run} must not be called afterwards.
+     *
+     * @param loop the loop that will drive this timer
+     */
+    public void setEventLoop(DeviceEventLoop loop)
+    {
+        loop.register(this).submit();
+    }
+
+    /**
+     * startRequest
+     *
+     * @return the time until the next tick in nanoseconds
+     */
+    public long startRequest()
+    {
+        return m_period;
+    }
+
+    /**
+     * finishRequest
+     *
+     * posts a clock interrupt
+     *
+     * @return true (the timer always has another tick coming)
+     */
+    public boolean finishRequest()
+    {
+        m_IC.putData(InterruptController.INT_CLOCK, m_Id, 0, 0);
+        m_ticks++;
+        return true;
+    }//finishRequest
+
+    /**
+     * run
+     *
+     * This method represents the timer.  It posts a tick every period.
+     * Ticks are kept on a fixed schedule so a late tick doesn't push back
+     * the ones after it; ticks that are missed entirely are skipped.
+     */
+    public void run()
+    {
+        long next = System.nanoTime() + m_period;
+        while (true)
+        {
+            long wait = next - System.nanoTime();
+            while (wait > 0)
+            {
+                LockSupport.parkNanos(this, wait);
+                wait = next - System.nanoTime();
+            }
+
+            finishRequest();
+
+            next += m_period;
+            long now = System.nanoTime();
+            if (next < now)
+            {
+                next = now + m_period;
+            }
+        }//while
+    }//run
+
+};//class TimerDevice
@@ -0,0 +1,356 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class is a hierarchical timing wheel used to fire many timers from a
+ * single thread.  Time is divided into ticks of 2^{@link #TICK_SHIFT} ns.
+ * Each of the {@link #LEVELS} wheels has {@link #SLOTS} slots; a slot on
+ * level n covers SLOTS^n ticks.  A timer is placed on the lowest level whose
+ * span reaches its deadline and is cascaded down one level each time the
+ * wheel below it wraps around, so scheduling and firing a timer are both
+ * constant time no matter how many timers are pending.
+ *
+ * Timers are intrusive doubly linked list nodes (see {@link Timer}) so the
+ * wheel never allocates once its slots are created.  This class is not
+ * synchronized: it must only be used by one thread.
+ *
+ * @see DeviceEventLoop
+ */
+public class TimerWheel
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** log2 of the number of nanoseconds in a tick (1.024us) */
+    public static final int TICK_SHIFT = 10;
+
+    /** log2 of the number of slots on each level */
+    private static final int SLOT_BITS = 8;
+
+    /** the number of slots on each level */
+    public static final int SLOTS = 1 << SLOT_BITS;
+
+    /** the number of levels (4 levels of 256 slots span about 73 minutes) */
+    public static final int LEVELS = 4;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Timer
+     *
+     * A timer that can be scheduled on a TimerWheel.  A timer may only be
+     * scheduled once at a time.
+     */
+    public static abstract class Timer
+    {
+        private Timer m_next = null;    // next timer in the same slot
+        private Timer m_prev = null;    // previous timer in the same slot
+        private long m_tick = 0;        // the tick this timer expires on
+        private boolean m_scheduled = false;
+
+        /**
+         * expire
+         *
+         * called by {@link TimerWheel#advance} when the timer's deadline
+         * has passed
+         */
+        protected abstract void expire();
+
+        /**
+         * isScheduled
+         *
+         * @return true if this timer is waiting on a wheel
+         */
+        public boolean isScheduled()
+        {
+            return m_scheduled;
+        }
+    }//class Timer
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    /**
+     * The sentinel heads of each slot's list, indexed by [level][slot].
+     * Each head is its own previous/next when the slot is empty.
+     */
+    private Timer[][] m_slots = null;
+
+    /** timers whose deadline had already passed when they were scheduled */
+    private Timer m_due = null;
+
+    /** the last tick that has been processed */
+    private long m_currentTick;
+
+    /** the number of timers currently scheduled */
+    private int m_count = 0;
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param now the current time in nanoseconds (System.nanoTime())
+     */
+    public TimerWheel(long now)
+    {
+        m_slots = new Timer[LEVELS][SLOTS];
+        for(int level = 0; level < LEVELS; level++)
+        {
+            for(int slot = 0; slot < SLOTS; slot++)
+            {
+                m_slots[level][slot] = newHead();
+            }
+        }
+        m_due = newHead();
+        m_currentTick = now >> TICK_SHIFT;
+    }//ctor
+
+    /**
+     * newHead
+     *
+     * @return an empty list head
+     */
+    private static Timer newHead()
+    {
+        Timer head = new Timer()
+        {
+            protected void expire() {}
+        };
+        head.m_next = head;
+        head.m_prev = head;
+        return head;
+    }//newHead
+
+    /**
+     * link
+     *
+     * appends a timer to the end of a slot list (so timers in a slot fire in
+     * the order they were scheduled)
+     */
+    private static void link(Timer head, Timer t)
+    {
+        t.m_prev = head.m_prev;
+        t.m_next = head;
+        head.m_prev.m_next = t;
+        head.m_prev = t;
+    }//link
+
+    /**
+     * unlink
+     *
+     * removes a timer from whichever slot list it is on
+     */
+    private static void unlink(Timer t)
+    {
+        t.m_prev.m_next = t.m_next;
+        t.m_next.m_prev = t.m_prev;
+        t.m_next = null;
+        t.m_prev = null;
+    }//unlink
+
+    /**
+     * place
+     *
+     * puts a timer in the slot that matches its tick
+     */
+    private void place(Timer t)
+    {
+        long delta = t.m_tick - m_currentTick;
+        if (delta <= 0)
+        {
+            link(m_due, t);
+            return;
+        }
+
+        //Find the lowest level whose span reaches the deadline.  Timers that
+        //are further out than the top level can reach are parked in the top
+        //level and re-placed whenever it cascades.
+        int level = 0;
+        while ((level < LEVELS - 1) && (delta >= (1L << (SLOT_BITS * (level + 1)))))
+        {
+            level++;
+        }
+        int slot = (int)((t.m_tick >> (SLOT_BITS * level)) & SLOT_MASK);
+        link(m_slots[level][slot], t);
+    }//place
+
+    /**
+     * schedule
+     *
+     * schedules a timer to expire at the given time
+     *
+     * @param t         the timer to schedule (must not already be scheduled)
+     * @param deadline  when to expire in nanoseconds (System.nanoTime())
+     */
+    public void schedule(Timer t, long deadline)
+    {
+        if (t.m_scheduled)
+        {
+            cancel(t);
+        }
+        t.m_tick = deadline >> TICK_SHIFT;
+        t.m_scheduled = true;
+        m_count++;
+        place(t);
+    }//schedule
+
+    /**
+     * cancel
+     *
+     * removes a timer from the wheel without expiring it
+     *
+     * @param t the timer to cancel
+     */
+    public void cancel(Timer t)
+    {
+        if (!t.m_scheduled)
+        {
+            return;
+        }
+        unlink(t);
+        t.m_scheduled = false;
+        m_count--;
+    }//cancel
+
+    /**
+     * fire
+     *
+     * expires every timer in a list
+     */
+    private void fire(Timer head)
+    {
+        while (head.m_next != head)
+        {
+            Timer t = head.m_next;
+            unlink(t);
+            t.m_scheduled = false;
+            m_count--;
+            t.expire();
+        }
+    }//fire
+
+    /**
+     * cascade
+     *
+     * moves every timer in a slot of a higher level down to the level(s)
+     * below it
+     */
+    private void cascade(Timer head)
+    {
+        Timer t = head.m_next;
+        head.m_next = head;
+        Timer last = head.m_prev;
+        head.m_prev = head;
+        while (t != head)
+        {
+            Timer next = t.m_next;
+            place(t);
+            if (t == last)
+            {
+                break;
+            }
+            t = next;
+        }
+    }//cascade
+
+    /**
+     * advance
+     *
+     * processes every tick up to the given time and expires each timer whose
+     * deadline has passed.  Timers may schedule other timers from their
+     * {@link Timer#expire} method.
+     *
+     * @param now the current time in nanoseconds (System.nanoTime())
+     */
+    public void advance(long now)
+    {
+        fire(m_due);
+
+        long nowTick = now >> TICK_SHIFT;
+        while (m_currentTick < nowTick)
+        {
+            //An empty wheel can jump straight to the present
+            if (m_count == 0)
+            {
+                m_currentTick = nowTick;
+                break;
+            }
+
+            m_currentTick++;
+
+            //When a level wraps around, pull the next slot of the level above
+            //down into it
+            for(int level = 1; level < LEVELS; level++)
+            {
+                if ((m_currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0)
+                {
+                    break;
+                }
+                int slot = (int)((m_currentTick >> (SLOT_BITS * level)) & SLOT_MASK);
+                cascade(m_slots[level][slot]);
+            }
+
+            fire(m_slots[0][(int)(m_currentTick & SLOT_MASK)]);
+            fire(m_due);
+        }
+    }//advance
+
+    /**
+     * nextDeadline
+     *
+     * @return the earliest time (System.nanoTime()) at which {@link #advance}
+     *         may have something to do, or Long.MAX_VALUE if no timers are
+     *         scheduled.  This is exact for timers on the lowest level and
+     *         the next cascade point otherwise.
+     */
+    public long nextDeadline()
+    {
+        if (m_count == 0)
+        {
+            return Long.MAX_VALUE;
+        }
+        if (m_due.m_next != m_due)
+        {
+            return m_currentTick << TICK_SHIFT;
+        }
+
+        //Look for the next non-empty slot on the lowest level
+        for(int i = 1; i <= SLOTS; i++)
+        {
+            long tick = m_currentTick + i;
+            Timer head = m_slots[0][(int)(tick & SLOT_MASK)];
+            if (head.m_next != head)
+            {
+                return tick << TICK_SHIFT;
+            }
+            if ((tick & SLOT_MASK) == 0)
+            {
+                //The next level cascades here so there may be work to do
+                return tick << TICK_SHIFT;
+            }
+        }
+
+        return (m_currentTick + SLOTS) << TICK_SHIFT;
+    }//nextDeadline
+
+    /**
+     * size
+     *
+     * @return the number of timers currently scheduled
+     */
+    public int size()
+    {
+        return m_count;
+    }
+
+};//class TimerWheel
@@ -0,0 +1,194 @@
+package sos;
+
+import java.io.*;
+
+/**
+ * This class is the keyboard's type-ahead buffer: a ring buffer of values
+ * that a background thread fills from a {@link KeyboardSource} while the
+ * keyboard takes them out.  When the buffer is full the filling thread
+ * waits for room; when it is empty a read has to wait for more input.  The
+ * filling thread runs a listener whenever input arrives so the keyboard
+ * doesn't have to block a thread waiting for it.
+ *
+ * @see KeyboardDevice
+ * @see KeyboardSource
+ */
+public class TypeAheadBuffer implements Runnable
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the default number of values the buffer holds */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /** the value read once the source has run out of input */
+    public static final int EOF_VALUE = -1;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private KeyboardSource m_source;    // where the values come from
+    private int[] m_values;             // the ring buffer
+    private int m_head = 0;             // index of the oldest value
+    private int m_size = 0;             // number of values buffered
+    private boolean m_eof = false;      // has the source run out?
+    private volatile Runnable m_listener = null; // run when input arrives
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param source   where the values come from
+     * @param capacity the number of values the buffer holds (at least 1)
+     */
+    public TypeAheadBuffer(KeyboardSource source, int capacity)
+    {
+        m_source = source;
+        m_values = new int[Math.max(1, capacity)];
+    }//ctor
+
+    /**
+     * start
+     *
+     * starts the background thread that fills the buffer
+     */
+    public void start()
+    {
+        Thread t = new Thread(this, "TypeAhead");
+        t.setDaemon(true);
+        t.start();
+    }//start
+
+    /**
+     * setListener
+     *
+     * sets what the filling thread runs (on its own thread) each time a
+     * value is added or the input runs out
+     *
+     * @param listener the listener (null for none)
+     */
+    public void setListener(Runnable listener)
+    {
+        m_listener = listener;
+    }
+
+    /**
+     * isReady
+     *
+     * @return true if a value (or the end of input) can be taken without
+     *         waiting
+     */
+    public synchronized boolean isReady()
+    {
+        return (m_size > 0) || m_eof;
+    }
+
+    /**
+     * isExhausted
+     *
+     * @return true if the source has run out and everything has been taken
+     */
+    public synchronized boolean isExhausted()
+    {
+        return (m_size == 0) && m_eof;
+    }
+
+    /**
+     * take
+     *
+     * removes the oldest value from the buffer, waiting for input if the
+     * buffer is empty (see {@link #isReady} to avoid waiting)
+     *
+     * @return the value, or EOF_VALUE once the source has run out
+     */
+    public synchronized int take()
+    {
+        while ((m_size == 0) && !m_eof)
+        {
+            try
+            {
+                wait();
+            }
+            catch(InterruptedException e) {} // should never happen
+        }
+        if (m_size == 0)
+        {
+            return EOF_VALUE;
+        }
+
+        int value = m_values[m_head];
+        m_head = (m_head + 1) % m_values.length;
+        m_size--;
+        notifyAll();
+        return value;
+    }//take
+
+    /**
+     * put
+     *
+     * adds a value to the buffer, waiting for room if it is full
+     */
+    private synchronized void put(int value)
+    {
+        while (m_size == m_values.length)
+        {
+            try
+            {
+                wait();
+            }
+            catch(InterruptedException e) {} // should never happen
+        }
+        m_values[(m_head + m_size) % m_values.length] = value;
+        m_size++;
+        notifyAll();
+    }//put
+
+    /**
+     * run
+     *
+     * The filling thread.  Copies values from the source into the buffer
+     * until the source runs out.
+     */
+    public void run()
+    {
+        try
+        {
+            while (true)
+            {
+                put(m_source.next());
+                notifyListener();
+            }
+        }
+        catch(EOFException e) {} // end of input
+        catch(IOException e)
+        {
+            System.err.println("KEYBOARD: input failed: " + e.getMessage());
+        }
+
+        synchronized(this)
+        {
+            m_eof = true;
+            notifyAll();
+        }
+        notifyListener();
+    }//run
+
+    /**
+     * notifyListener
+     *
+     * tells the listener (if any) that input has arrived
+     */
+    private void notifyListener()
+    {
+        Runnable listener = m_listener;
+        if (listener != null)
+        {
+            listener.run();
+        }
+    }//notifyListener
+
+};//class TypeAheadBuffer
@@ -0,0 +1,229 @@
+package sos;
+
+/**
+ * This class indexes the processes that are Blocked waiting for a device by
+ * what they are waiting for: a device, an operation and an address packed
+ * into one key (see {@link #key}).  The processes waiting for the same thing
+ * are kept in a {@link ProcessQueue}, oldest first, so finding the process
+ * a completed request belongs to is a hash lookup rather than a search of
+ * every process.
+ *
+ * The table is open addressed with linear probing on primitive keys and
+ * queues are reused once they empty, so nothing is allocated once the table
+ * has grown to the number of distinct things being waited for.  This class
+ * is not synchronized: it must only be used by the thread that runs SOS.
+ *
+ * @see SOS
+ */
+public class WaitQueues
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the initial number of slots (a power of two) */
+    private static final int INITIAL_SLOTS = 64;
+
+    /** the most empty queues kept for reuse */
+    private static final int MAX_SPARE = 64;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private long[] m_keys = new long[INITIAL_SLOTS];
+    private ProcessQueue[] m_queues = new ProcessQueue[INITIAL_SLOTS];
+    private int m_count = 0;    // the number of keys in the table
+
+    //Empty queues waiting to be reused
+    private ProcessQueue[] m_spare = new ProcessQueue[MAX_SPARE];
+    private int m_numSpare = 0;
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * the constructor creates an empty index
+     */
+    public WaitQueues()
+    {
+    }
+
+    /**
+     * key
+     *
+     * packs what a process is waiting for into a key
+     *
+     * @param devId  the id of the device (must fit in 24 bits)
+     * @param op     the operation (a SYSCALL constant or one of SOS' own
+     *               negative wait codes)
+     * @param addr   the address, sector or other qualifier
+     * @return the key
+     */
+    public static long key(int devId, int op, int addr)
+    {
+        return ((long)devId << 40) | ((long)(op & 0xff) << 32) | (addr & 0xffffffffL);
+    }
+
+    /**
+     * hash
+     *
+     * @return the home slot of a key before masking (spreads the bits of
+     *         keys that differ only in their device or operation)
+     */
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    /**
+     * slot
+     *
+     * @return the slot holding a key -OR- the empty slot it would go in
+     */
+    private int slot(long key)
+    {
+        int mask = m_keys.length - 1;
+        int i = hash(key) & mask;
+        while ((m_queues[i] != null) && (m_keys[i] != key))
+        {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }//slot
+
+    /**
+     * size
+     *
+     * @return the number of distinct keys processes are waiting on
+     */
+    public int size()
+    {
+        return m_count;
+    }
+
+    /**
+     * get
+     *
+     * @param key  a key from {@link #key}
+     * @return the processes waiting on the key, oldest first -OR- null if
+     *         there are none.  The caller must not add to or remove from
+     *         the queue directly.
+     */
+    public ProcessQueue get(long key)
+    {
+        return m_queues[slot(key)];
+    }
+
+    /**
+     * add
+     *
+     * puts an entry at the back of the queue for a key (taking it out of
+     * any queue it was in)
+     *
+     * @param key  a key from {@link #key}
+     * @param e    the entry
+     */
+    public void add(long key, ProcessQueue.Entry e)
+    {
+        int i = slot(key);
+        if (m_queues[i] == null)
+        {
+            if ((m_count + 1) * 2 > m_keys.length)
+            {
+                grow();
+                i = slot(key);
+            }
+            m_keys[i] = key;
+            m_queues[i] = (m_numSpare > 0) ? m_spare[--m_numSpare] : new ProcessQueue();
+            m_count++;
+        }
+        m_queues[i].add(e);
+    }//add
+
+    /**
+     * remove
+     *
+     * takes an entry out of the queue for a key and drops the key once no
+     * process is waiting on it
+     *
+     * @param key  the key the entry was added with
+     * @param e    the entry
+     * @return true if the entry was waiting on the key
+     */
+    public boolean remove(long key, ProcessQueue.Entry e)
+    {
+        int i = slot(key);
+        ProcessQueue q = m_queues[i];
+        if ((q == null) || !q.remove(e))
+        {
+            return false;
+        }
+        if (q.isEmpty())
+        {
+            removeSlot(i);
+            if (m_numSpare < MAX_SPARE)
+            {
+                m_spare[m_numSpare++] = q;
+            }
+        }
+        return true;
+    }//remove
+
+    /**
+     * removeSlot
+     *
+     * empties a slot and moves later keys of the same probe run back so
+     * every key can still be found from its home slot
+     */
+    private void removeSlot(int i)
+    {
+        int mask = m_keys.length - 1;
+        m_queues[i] = null;
+        m_count--;
+        int j = i;
+        while (true)
+        {
+            j = (j + 1) & mask;
+            if (m_queues[j] == null)
+            {
+                return;
+            }
+
+            //Leave the key where it is if its home is cyclically in (i, j]
+            int home = hash(m_keys[j]) & mask;
+            if ((i <= j) ? ((i < home) && (home <= j)) : ((i < home) || (home <= j)))
+            {
+                continue;
+            }
+            m_keys[i] = m_keys[j];
+            m_queues[i] = m_queues[j];
+            m_queues[j] = null;
+            i = j;
+        }
+    }//removeSlot
+
+    /**
+     * grow
+     *
+     * doubles the number of slots
+     */
+    private void grow()
+    {
+        long[] oldKeys = m_keys;
+        ProcessQueue[] oldQueues = m_queues;
+        m_keys = new long[oldKeys.length * 2];
+        m_queues = new ProcessQueue[oldQueues.length * 2];
+        for(int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldQueues[i] != null)
+            {
+                int j = slot(oldKeys[i]);
+                m_keys[j] = oldKeys[i];
+                m_queues[j] = oldQueues[i];
+            }
+        }
+    }//grow
+
+};//class WaitQueues
@@ -0,0 +1,178 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class is a benchmark for waking Blocked processes when their I/O
+ * completes.  For each process count it creates that many processes, has
+ * every one of them READ from a device that never answers on its own and
+ * then delivers the read completion interrupts itself.  Like
+ * {@link SchedBench} it plays the part of the CPU and the device, making
+ * the system calls and interrupts directly from this thread, so only the
+ * OS's work is timed.  It reports:
+ *
+ * <ul>
+ * <li>the time per READ that blocks</li>
+ * <li>the time per completion when each process reads its own address and
+ *     the completions (tagged with the process' id) arrive in random
+ *     order</li>
+ * <li>the time per completion when every process reads the same address
+ *     and the completions are untagged, and whether those processes were
+ *     woken in the order they blocked</li>
+ * </ul>
+ *
+ * Usage: java sos.WakeupBench [rounds] [processes ...]
+ *
+ * @see SOS
+ * @see WaitQueues
+ * @see NullDevice
+ */
+public class WakeupBench
+{
+    /** the value every read returns */
+    private static final int DATA = 42;
+
+    /**
+     * blockAll
+     *
+     * has every process (they must all be Ready) READ from the device.  A
+     * process that was woken by a completion first takes the results of
+     * its last READ off its stack.
+     *
+     * @param m         the machine
+     * @param pids      filled with the process ids in the order they blocked
+     * @param ownAddr   true if each process reads its own address (its id)
+     *                  rather than address 0
+     * @return the time it took (ns)
+     */
+    private static long blockAll(BenchMachine m, int[] pids, boolean ownAddr)
+    {
+        long start = System.nanoTime();
+        for(int i = 0; i < pids.length; i++)
+        {
+            int pid = m.getPid();
+            pids[i] = pid;
+            if ((m.getCPU().popStack() != SOS.SYSCALL_RET_SUCCESS)
+                || (m.getCPU().popStack() != DATA))
+            {
+                throw new IllegalStateException("process " + pid + " read the wrong data");
+            }
+            m.syscall(SOS.SYSCALL_READ, 0, ownAddr ? pid : 0);
+        }
+        return System.nanoTime() - start;
+    }//blockAll
+
+    /**
+     * runOnce
+     *
+     * runs one measurement
+     *
+     * @param numProcs  how many processes to create
+     * @param rounds    how many times to block and wake them all each way
+     */
+    private static void runOnce(int numProcs, int rounds)
+    {
+        BenchMachine m = new BenchMachine(numProcs, 64);
+        CPU cpu = m.getCPU();
+        SOS os = m.getOS();
+        NullDevice dev = new NullDevice();
+        dev.setId(0);
+        os.registerDevice(dev, 0);
+
+        //Create the processes and open the device in each of them.  Each
+        //one gets a fake READ result to take off its stack.
+        m.createProcesses(numProcs);
+        for(int i = 0; i < numProcs; i++)
+        {
+            m.syscall(SOS.SYSCALL_OPEN, 0);
+            cpu.popStack();
+            cpu.pushStack(DATA);
+            cpu.pushStack(SOS.SYSCALL_RET_SUCCESS);
+            m.syscall(SOS.SYSCALL_YIELD);
+        }
+
+        int[] pids = new int[numProcs];
+        int[] order = new int[numProcs];
+        Random rand = new Random(numProcs);
+        long blockNs = 0;
+        long taggedNs = 0;
+        long untaggedNs = 0;
+        boolean fifo = true;
+        for(int r = 0; r < rounds; r++)
+        {
+            //Each process waits for its own address and the completions
+            //arrive in any order
+            blockNs += blockAll(m, pids, true);
+            for(int i = numProcs - 1; i > 0; i--)
+            {
+                int j = rand.nextInt(i + 1);
+                int t = pids[i];
+                pids[i] = pids[j];
+                pids[j] = t;
+            }
+            long start = System.nanoTime();
+            for(int pid : pids)
+            {
+                os.interruptIOReadComplete(0, pid, DATA, pid);
+            }
+            taggedNs += System.nanoTime() - start;
+            os.interruptWake();             // as the halted CPU would
+
+            //Every process waits for address 0 and none of the completions
+            //say which process they are for
+            blockNs += blockAll(m, pids, false);
+            start = System.nanoTime();
+            for(int i = 0; i < numProcs; i++)
+            {
+                os.interruptIOReadComplete(0, 0, DATA, -1);
+            }
+            untaggedNs += System.nanoTime() - start;
+            os.interruptWake();
+
+            //The Ready processes run in the order they were woken
+            blockAll(m, order, false);
+            fifo = fifo && Arrays.equals(pids, order);
+            for(int i = 0; i < numProcs; i++)
+            {
+                os.interruptIOReadComplete(0, 0, DATA, -1);
+            }
+            os.interruptWake();
+        }//for
+
+        long wakeups = (long)numProcs * rounds;
+        System.out.println(String.format("%9d %10.0f %12.0f %12.0f %6s",
+                                         numProcs, blockNs / (2.0 * wakeups),
+                                         taggedNs / (double)wakeups,
+                                         untaggedNs / (double)wakeups,
+                                         fifo ? "yes" : "NO"));
+    }//runOnce
+
+    public static void main(String[] args)
+    {
+        int rounds = 5;
+        int[] counts = { 10, 1000, 10000, 100000 };
+        if (args.length > 0)
+        {
+            rounds = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1)
+        {
+            counts = new int[args.length - 1];
+            for(int i = 1; i < args.length; i++)
+            {
+                counts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println(String.format("%9s %10s %12s %12s %6s",
+                                         "processes", "ns/block", "ns/wake(tag)",
+                                         "ns/wake(any)", "fifo"));
+        for(int n : counts)
+        {
+            runOnce(n, rounds);
+        }
+
+        System.exit(0);
+    }//main
+
+};//class WakeupBench
@@ -0,0 +1,29 @@
+####################################################
+# This program spawns eight processes and exits.  The
+# programs for the new processes are the extra
+# programs given to Sim, so several copies of an I/O
+# bound program can be made to compete for a device.
+###################################################
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #increment amount
+SET r3 8       #limit
+
+#begin loop
+:loop
+ADD r1 r2 r1
+
+#spawn a new process
+SET r4 7       #EXEC sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #make the system call
+
+#end of loop
+BNE r1 r3 loop #repeat 8 times
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
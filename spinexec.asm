@@ -0,0 +1,28 @@
+####################################################
+# This program is CPU bound.  It spawns one process
+# running the extra program given to Sim and then
+# counts to 50000 without making any more system
+# calls, so unless it is preempted the spawned
+# process only runs when this one blocks or exits.
+###################################################
+
+#spawn the other process
+SET r4 7       #EXEC sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #make the system call
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #increment amount
+SET r3 50000   #limit
+
+#begin loop
+:loop
+ADD r1 r2 r1
+BNE r1 r3 loop #repeat until r1=r3
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program